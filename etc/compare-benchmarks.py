@@ -0,0 +1,40 @@
+#!/usr/bin/env python
+"""
+Compare two JMH result files in CSV format (written with '-rf csv').
+
+usage: compare-benchmarks.py BASE.csv NEW.csv
+"""
+
+import csv
+import sys
+
+
+def read_results(fn):
+    results = {}
+    with open(fn) as f:
+        for row in csv.DictReader(f):
+            params = sorted((k, v) for (k, v) in row.items()
+                            if k.startswith('Param: ') and v)
+            key = row['Benchmark'] + ''.join(' %s=%s' % (k[7:], v) for (k, v) in params)
+            results[key] = (float(row['Score']), row['Score Error (99.9%)'], row['Unit'])
+    return results
+
+
+def main(base_fn, new_fn):
+    base = read_results(base_fn)
+    new = read_results(new_fn)
+    for key in sorted(set(base) | set(new)):
+        if key not in base or key not in new:
+            print('%s: only in %s' % (key, base_fn if key in base else new_fn))
+            continue
+        (bs, be, unit) = base[key]
+        (ns, ne, _) = new[key]
+        ratio = ns / bs if bs else float('nan')
+        print('%s: %.3f +- %s -> %.3f +- %s %s (%.2fx)' % (key, bs, be, ns, ne, unit, ratio))
+
+
+if __name__ == '__main__':
+    if len(sys.argv) != 3:
+        sys.stderr.write(__doc__.lstrip())
+        sys.exit(2)
+    main(sys.argv[1], sys.argv[2])
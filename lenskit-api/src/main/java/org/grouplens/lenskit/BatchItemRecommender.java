@@ -0,0 +1,65 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit;
+
+import org.grouplens.lenskit.scored.ScoredId;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * Recommend items for many users at once.  This is the batch counterpart of
+ * {@link ItemRecommender}, intended for offline jobs that precompute
+ * recommendations for all users.  Implementations may process users in parallel.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @compat Experimental
+ * @since 2.1
+ */
+public interface BatchItemRecommender {
+    /**
+     * Recommend items for each of a sequence of users, using the default candidate
+     * and exclude sets.  The user IDs are consumed lazily.  This method returns once
+     * all users have been handled.
+     *
+     * @param users   The users to recommend for.
+     * @param n       The number of recommendations for each user.  If negative, there
+     *                is no specific recommendation list size requested.
+     * @param handler The handler to receive the recommendations.  It may be invoked
+     *                concurrently from multiple threads, and users are not necessarily
+     *                handled in the order they were supplied.
+     * @see ItemRecommender#recommend(long, int)
+     */
+    void recommend(@Nonnull Iterable<Long> users, int n, @Nonnull Handler handler);
+
+    /**
+     * Receive the recommendations for users in a batch.
+     */
+    interface Handler {
+        /**
+         * Handle the recommendations for a user.
+         *
+         * @param user            The user ID.
+         * @param recommendations The user's recommendations.
+         */
+        void handle(long user, @Nonnull List<ScoredId> recommendations);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit;
+
+import org.grouplens.lenskit.vectors.SparseVector;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+
+/**
+ * Score items for many users at once.  This is intended for offline jobs, such as
+ * precomputing scores for all users, where per-user setup costs (and the cost of
+ * scoring users one at a time) dominate.  Implementations may score users in
+ * parallel.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @compat Experimental
+ * @since 2.1
+ */
+public interface BatchItemScorer {
+    /**
+     * Score a collection of items for each of a sequence of users.  The user IDs are
+     * consumed lazily, so they can be read from a stream or a database cursor.  This
+     * method returns once all users have been scored and handled.
+     *
+     * @param users   The users to score.
+     * @param items   The items to score for every user.
+     * @param handler The handler to receive each user's scores.  It may be invoked
+     *                concurrently from multiple threads, and users are not necessarily
+     *                handled in the order they were supplied.
+     */
+    void score(@Nonnull Iterable<Long> users, @Nonnull Collection<Long> items,
+               @Nonnull Handler handler);
+
+    /**
+     * Receive the scores for users in a batch.
+     */
+    interface Handler {
+        /**
+         * Handle the scores for a user.
+         *
+         * @param user   The user ID.
+         * @param scores The user's scores.  As with {@link ItemScorer#score(long, Collection)},
+         *               this may not contain all requested items.
+         */
+        void handle(long user, @Nonnull SparseVector scores);
+    }
+}
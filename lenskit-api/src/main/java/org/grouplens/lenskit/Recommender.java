@@ -33,6 +33,11 @@ import javax.annotation.Nullable;
  * ensures that, if you can actually get an object implementing a particular interface,
  * you are guaranteed to be able to use it.
  *
+ * <p>Implementations may return wrappers around the configured components (for example,
+ * to record request metrics), so client code should not cast the returned objects to
+ * their configured implementation classes.  To get a specific component instance, use the
+ * implementation's own component lookup (such as {@code LenskitRecommender#get(Class)}).
+ *
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  * @compat Public
  * @see RecommenderEngine
@@ -0,0 +1,139 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.benchmarks;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measure the memory allocated by all threads of the JVM over a period of time.
+ * The per-thread allocation counters of HotSpot-compatible JVMs are sampled
+ * periodically from a background thread, so threads that start and exit during
+ * the measurement (such as the workers of a parallel model build) are counted.
+ * Allocation by a thread after its last sample before it exits is lost; with the
+ * default sampling interval this is negligible for any but very short builds.
+ */
+class AllocationMonitor implements Runnable {
+    private static final long INTERVAL_MS = 10;
+
+    private final com.sun.management.ThreadMXBean threadBean;
+    private final Long2LongMap baseline = new Long2LongOpenHashMap();
+    private final Long2LongMap latest = new Long2LongOpenHashMap();
+    private volatile boolean running;
+    private Thread thread;
+
+    AllocationMonitor() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            threadBean = (com.sun.management.ThreadMXBean) bean;
+            threadBean.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            threadBean = null;
+        }
+    }
+
+    /**
+     * Query whether this JVM supports measuring allocation.
+     * @return {@code true} if allocation can be measured.
+     */
+    boolean isSupported() {
+        return threadBean != null;
+    }
+
+    /**
+     * Start measuring allocation.
+     */
+    synchronized void start() {
+        if (threadBean == null) {
+            return;
+        }
+        baseline.clear();
+        latest.clear();
+        long[] ids = threadBean.getAllThreadIds();
+        long[] bytes = threadBean.getThreadAllocatedBytes(ids);
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] >= 0) {
+                baseline.put(ids[i], bytes[i]);
+                latest.put(ids[i], bytes[i]);
+            }
+        }
+        running = true;
+        thread = new Thread(this, "allocation-monitor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop measuring allocation.
+     *
+     * @return The number of bytes allocated since {@link #start()}, or -1 if allocation
+     *         cannot be measured.
+     */
+    long stop() throws InterruptedException {
+        if (threadBean == null) {
+            return -1;
+        }
+        running = false;
+        thread.interrupt();
+        thread.join();
+        synchronized (this) {
+            sample();
+            long total = 0;
+            long self = thread.getId();
+            for (Long2LongMap.Entry e: latest.long2LongEntrySet()) {
+                if (e.getLongKey() != self) {
+                    // threads started after the baseline started from 0
+                    total += e.getLongValue() - baseline.get(e.getLongKey());
+                }
+            }
+            return total;
+        }
+    }
+
+    private void sample() {
+        long[] ids = threadBean.getAllThreadIds();
+        long[] bytes = threadBean.getThreadAllocatedBytes(ids);
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] >= 0) {
+                latest.put(ids[i], bytes[i]);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            synchronized (this) {
+                sample();
+            }
+            try {
+                Thread.sleep(INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.benchmarks;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import org.apache.commons.cli.*;
+import org.grouplens.lenskit.ItemScorer;
+import org.grouplens.lenskit.RecommenderBuildException;
+import org.grouplens.lenskit.baseline.BaselineScorer;
+import org.grouplens.lenskit.baseline.ItemMeanRatingItemScorer;
+import org.grouplens.lenskit.baseline.UserMeanBaseline;
+import org.grouplens.lenskit.baseline.UserMeanItemScorer;
+import org.grouplens.lenskit.core.LenskitConfiguration;
+import org.grouplens.lenskit.core.LenskitRecommenderEngine;
+import org.grouplens.lenskit.data.dao.BinaryRatingDAO;
+import org.grouplens.lenskit.data.dao.EventDAO;
+import org.grouplens.lenskit.data.dao.SortOrder;
+import org.grouplens.lenskit.data.snapshot.PreferenceSnapshot;
+import org.grouplens.lenskit.iterative.IterationCount;
+import org.grouplens.lenskit.iterative.IterationCountStoppingCondition;
+import org.grouplens.lenskit.iterative.StoppingCondition;
+import org.grouplens.lenskit.knn.item.ModelBuildThreads;
+import org.grouplens.lenskit.knn.item.model.ItemItemModel;
+import org.grouplens.lenskit.knn.item.model.NormalizingItemItemModelBuilder;
+import org.grouplens.lenskit.mf.funksvd.FeatureCount;
+import org.grouplens.lenskit.mf.funksvd.FunkSVDModel;
+import org.grouplens.lenskit.mf.funksvd.TrainingThreadCount;
+import org.grouplens.lenskit.slopeone.SlopeOneModel;
+import org.grouplens.lenskit.util.table.TableLayout;
+import org.grouplens.lenskit.util.table.TableLayoutBuilder;
+import org.grouplens.lenskit.util.table.writer.CSVWriter;
+import org.grouplens.lenskit.util.table.writer.TableWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+
+/**
+ * Macro benchmark of model build time and memory use.  For each rating set size,
+ * this generates a synthetic rating set with {@link RatingGenerator}, stores it in a
+ * temporary {@linkplain BinaryRatingDAO binary rating file} (so the raw ratings do not
+ * occupy the heap), and builds each selected model on it.  For each build it records
+ * to a CSV file:
+ *
+ * <ul>
+ * <li>the wall-clock build time;</li>
+ * <li>the memory allocated by all threads during the build, and the allocation rate;</li>
+ * <li>the peak heap use during the build (the sum of the peak use of each heap pool);</li>
+ * <li>the retained size of the built recommender, measured as the growth in live heap
+ * after garbage collection.</li>
+ * </ul>
+ *
+ * <p>Run with {@code --help} for the options.  Memory measurements are only meaningful
+ * with one build per JVM at a time; run with a fixed heap size ({@code -Xms} equal to
+ * {@code -Xmx}) for stable results.
+ */
+public class ModelBuildBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(ModelBuildBenchmark.class);
+    private static final double MB = 1024 * 1024;
+
+    /**
+     * The model builders that can be benchmarked, and the configurations to build them.
+     */
+    enum Builder {
+        ITEM_ITEM("item-item") {
+            @Override
+            void configure(LenskitConfiguration config, int nthreads) {
+                config.addRoot(ItemItemModel.class);
+                config.set(ModelBuildThreads.class).to(nthreads);
+            }
+        },
+        NORMALIZING_ITEM_ITEM("normalizing-item-item") {
+            @Override
+            void configure(LenskitConfiguration config, int nthreads) {
+                config.bind(ItemItemModel.class).toProvider(NormalizingItemItemModelBuilder.class);
+                config.addRoot(ItemItemModel.class);
+            }
+        },
+        FUNKSVD("funksvd") {
+            @Override
+            @SuppressWarnings("unchecked")
+            void configure(LenskitConfiguration config, int nthreads) {
+                config.bind(BaselineScorer.class, ItemScorer.class).to(UserMeanItemScorer.class);
+                config.bind(UserMeanBaseline.class, ItemScorer.class).to(ItemMeanRatingItemScorer.class);
+                config.bind(StoppingCondition.class).to(IterationCountStoppingCondition.class);
+                config.set(IterationCount.class).to(20);
+                config.set(FeatureCount.class).to(20);
+                config.set(TrainingThreadCount.class).to(nthreads);
+                config.addRoot(FunkSVDModel.class);
+            }
+        },
+        SLOPE_ONE("slope-one") {
+            @Override
+            void configure(LenskitConfiguration config, int nthreads) {
+                config.set(ModelBuildThreads.class).to(nthreads);
+                config.addRoot(SlopeOneModel.class);
+            }
+        },
+        PACKED_SNAPSHOT("packed-snapshot") {
+            @Override
+            void configure(LenskitConfiguration config, int nthreads) {
+                config.addRoot(PreferenceSnapshot.class);
+            }
+        };
+
+        private final String name;
+
+        Builder(String n) {
+            name = n;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Configure the builder.
+         *
+         * @param config   The configuration, with the DAO already bound.
+         * @param nthreads The number of threads for builders that support parallel builds.
+         */
+        abstract void configure(LenskitConfiguration config, int nthreads);
+
+        static Builder forName(String name) {
+            for (Builder b: values()) {
+                if (b.getName().equals(name)) {
+                    return b;
+                }
+            }
+            throw new IllegalArgumentException("unknown builder " + name);
+        }
+    }
+
+    private final List<Long> sizes;
+    private final List<Builder> builders;
+    private final File outputFile;
+    private final File dataDir;
+    private final int repetitions;
+    private final int threadCount;
+    private final double meanRatings;
+    private final AllocationMonitor allocations = new AllocationMonitor();
+
+    ModelBuildBenchmark(CommandLine cmd) {
+        sizes = Lists.newArrayList();
+        for (String s: Splitter.on(',').trimResults().split(cmd.getOptionValue("s", "1000000"))) {
+            sizes.add(Long.parseLong(s));
+        }
+        builders = Lists.newArrayList();
+        if (cmd.hasOption("b")) {
+            for (String b: Splitter.on(',').trimResults().split(cmd.getOptionValue("b"))) {
+                builders.add(Builder.forName(b));
+            }
+        } else {
+            builders.addAll(Lists.newArrayList(Builder.values()));
+        }
+        outputFile = new File(cmd.getOptionValue("o", "model-build.csv"));
+        dataDir = new File(cmd.getOptionValue("d", System.getProperty("java.io.tmpdir")));
+        repetitions = Integer.parseInt(cmd.getOptionValue("r", "1"));
+        int n = Integer.parseInt(cmd.getOptionValue("j", "1"));
+        threadCount = n == 0 ? Runtime.getRuntime().availableProcessors() : n;
+        meanRatings = Double.parseDouble(cmd.getOptionValue("m", "50"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = makeOptions();
+        CommandLine cmd;
+        try {
+            cmd = new GnuParser().parse(options, args);
+        } catch (ParseException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (cmd.hasOption("h")) {
+            new HelpFormatter().printHelp("ModelBuildBenchmark [OPTIONS]", options);
+            return;
+        }
+        new ModelBuildBenchmark(cmd).run();
+    }
+
+    @SuppressWarnings({"static-access", "AccessStaticViaInstance"})
+    private static Options makeOptions() {
+        Options opts = new Options();
+        opts.addOption(OptionBuilder.withDescription("print this help")
+                                    .withLongOpt("help")
+                                    .create("h"));
+        opts.addOption(OptionBuilder.withDescription("comma-separated rating set sizes (default 1000000)")
+                                    .withLongOpt("sizes")
+                                    .hasArg().withArgName("N,...")
+                                    .create("s"));
+        opts.addOption(OptionBuilder.withDescription("comma-separated builders to run (default all): "
+                                                     + "item-item, normalizing-item-item, funksvd, "
+                                                     + "slope-one, packed-snapshot")
+                                    .withLongOpt("builders")
+                                    .hasArg().withArgName("NAME,...")
+                                    .create("b"));
+        opts.addOption(OptionBuilder.withDescription("CSV output file (default model-build.csv)")
+                                    .withLongOpt("output")
+                                    .hasArg().withArgName("FILE")
+                                    .create("o"));
+        opts.addOption(OptionBuilder.withDescription("directory for generated rating files")
+                                    .withLongOpt("data-dir")
+                                    .hasArg().withArgName("DIR")
+                                    .create("d"));
+        opts.addOption(OptionBuilder.withDescription("number of builds of each model (default 1)")
+                                    .withLongOpt("repeat")
+                                    .hasArg().withArgName("N")
+                                    .create("r"));
+        opts.addOption(OptionBuilder.withDescription("threads for parallel builders (default 1, 0 for all CPUs)")
+                                    .withLongOpt("threads")
+                                    .hasArg().withArgName("N")
+                                    .create("j"));
+        opts.addOption(OptionBuilder.withDescription("mean ratings per user (default 50)")
+                                    .withLongOpt("mean-ratings")
+                                    .hasArg().withArgName("N")
+                                    .create("m"));
+        return opts;
+    }
+
+    private static TableLayout makeLayout() {
+        TableLayoutBuilder builder = new TableLayoutBuilder();
+        builder.addColumn("Builder")
+               .addColumn("Size")
+               .addColumn("Ratings")
+               .addColumn("Users")
+               .addColumn("Items")
+               .addColumn("Threads")
+               .addColumn("Run")
+               .addColumn("BuildTime")
+               .addColumn("AllocatedMB")
+               .addColumn("AllocRateMBps")
+               .addColumn("PeakHeapMB")
+               .addColumn("RetainedMB");
+        return builder.build();
+    }
+
+    void run() throws IOException, InterruptedException, RecommenderBuildException {
+        if (!allocations.isSupported()) {
+            logger.warn("this JVM cannot measure allocation, allocation will not be reported");
+        }
+        TableWriter output = CSVWriter.open(outputFile, makeLayout());
+        try {
+            for (long size: sizes) {
+                RatingGenerator generator = RatingGenerator.forSize(size, meanRatings);
+                File file = new File(dataDir, String.format("lenskit-bench-%d.lkr", size));
+                logger.info("generating {} ratings into {}", size, file);
+                BinaryRatingDAO.write(generator.generate(), file, SortOrder.USER);
+                try {
+                    BinaryRatingDAO dao = BinaryRatingDAO.open(file);
+                    for (Builder builder: builders) {
+                        for (int run = 1; run <= repetitions; run++) {
+                            measure(output, builder, size, generator, dao, run);
+                        }
+                    }
+                } finally {
+                    if (!file.delete()) {
+                        logger.warn("could not delete {}", file);
+                    }
+                }
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    private void measure(TableWriter output, Builder builder, long size,
+                         RatingGenerator generator, BinaryRatingDAO dao, int run)
+            throws IOException, InterruptedException, RecommenderBuildException {
+        LenskitConfiguration config = new LenskitConfiguration();
+        config.bind(EventDAO.class).to(dao);
+        builder.configure(config, threadCount);
+
+        logger.info("building {} on {} ratings (run {})", builder.getName(), size, run);
+        long baseHeap = liveHeap();
+        resetPeakHeap();
+        allocations.start();
+        long start = System.nanoTime();
+        LenskitRecommenderEngine engine = LenskitRecommenderEngine.build(config);
+        double seconds = (System.nanoTime() - start) * 1.0e-9;
+        long allocated = allocations.stop();
+        long peak = peakHeap();
+        long retained = liveHeap() - baseHeap;
+        logger.info("built {} in {} seconds", builder.getName(), String.format("%.2f", seconds));
+
+        output.writeRow(builder.getName(), size, dao.getRatingCount(),
+                        generator.getUserCount(), generator.getItemCount(),
+                        threadCount, run, seconds,
+                        allocated < 0 ? null : allocated / MB,
+                        allocated < 0 ? null : allocated / MB / seconds,
+                        peak / MB, retained / MB);
+        // keep the engine live until its size is measured
+        logger.debug("finished measuring {}", engine);
+    }
+
+    /**
+     * Measure the live heap by collecting garbage until the heap stops shrinking.
+     */
+    private static long liveHeap() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(50);
+            long now = rt.totalMemory() - rt.freeMemory();
+            if (now >= used) {
+                return now;
+            }
+            used = now;
+        }
+        return used;
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
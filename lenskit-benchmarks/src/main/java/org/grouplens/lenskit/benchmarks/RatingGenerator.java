@@ -0,0 +1,192 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.benchmarks;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.grouplens.lenskit.cursors.AbstractPollingCursor;
+import org.grouplens.lenskit.cursors.Cursor;
+import org.grouplens.lenskit.cursors.Cursors;
+import org.grouplens.lenskit.data.event.MutableRating;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.Ratings;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic generator of synthetic rating data.  User activity and item popularity
+ * both follow power laws: the number of ratings of each user is drawn from a Pareto
+ * distribution, and items are drawn from a Zipf-like distribution in which the item
+ * with rank {@code r} has probability roughly proportional to {@code r^-itemSkew}.
+ * Rating values are integers from 1 to 5, and each user rates an item at most once.
+ *
+ * <p>The same parameters and seed always produce the same ratings, so benchmark results
+ * are comparable between runs and between commits.
+ */
+public class RatingGenerator {
+    private final int userCount;
+    private final int itemCount;
+    private final double meanRatings;
+    private final double userSkew;
+    private final double itemSkew;
+    private final long seed;
+
+    /**
+     * Create a new rating generator.
+     *
+     * @param users    The number of users.
+     * @param items    The number of items.
+     * @param mean     The mean number of ratings per user.
+     * @param userExp  The Pareto shape of the user activity distribution (must be greater
+     *                 than 1; smaller values are more skewed).
+     * @param itemExp  The exponent of the item popularity distribution (must be in
+     *                 [0,1); 0 is uniform, larger values are more skewed).
+     * @param seed     The random seed.
+     */
+    public RatingGenerator(int users, int items, double mean,
+                           double userExp, double itemExp, long seed) {
+        Preconditions.checkArgument(users > 0, "user count must be positive");
+        Preconditions.checkArgument(items > 0, "item count must be positive");
+        Preconditions.checkArgument(mean >= 1, "mean rating count must be at least 1");
+        Preconditions.checkArgument(userExp > 1, "user exponent must be greater than 1");
+        Preconditions.checkArgument(itemExp >= 0 && itemExp < 1, "item exponent must be in [0,1)");
+        userCount = users;
+        itemCount = items;
+        meanRatings = mean;
+        userSkew = userExp;
+        itemSkew = itemExp;
+        this.seed = seed;
+    }
+
+    /**
+     * Create a generator with the default skew (user shape 2, item exponent 0.5) and
+     * seed.
+     *
+     * @param users The number of users.
+     * @param items The number of items.
+     * @param mean  The mean number of ratings per user.
+     * @return The generator.
+     */
+    public static RatingGenerator create(int users, int items, double mean) {
+        return new RatingGenerator(users, items, mean, 2, 0.5, 42);
+    }
+
+    /**
+     * Create a generator for approximately a target number of ratings, with a fixed ratio
+     * of users to items (10 users per item) and the default skew and seed.
+     *
+     * @param nratings The approximate number of ratings.
+     * @param mean     The mean number of ratings per user.
+     * @return The generator.
+     */
+    public static RatingGenerator forSize(long nratings, double mean) {
+        int users = (int) Math.max(1, nratings / mean);
+        int items = Math.max(1, users / 10);
+        return create(users, items, mean);
+    }
+
+    public int getUserCount() {
+        return userCount;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Generate the ratings.  The ratings are generated user by user as the cursor is
+     * read, so arbitrarily large data sets can be streamed without holding them in
+     * memory.  The cursor's fast iterator reuses a single rating object.
+     *
+     * @return A cursor over the ratings, ordered by user.
+     */
+    public Cursor<Rating> generate() {
+        return new RatingCursor();
+    }
+
+    /**
+     * Generate the ratings into a list.
+     *
+     * @return The list of ratings.
+     */
+    public List<Rating> generateList() {
+        return Cursors.makeList(generate());
+    }
+
+    /**
+     * Draw a user's rating count from a Pareto distribution with the configured mean.
+     */
+    private int drawRatingCount(Random rng) {
+        // Pareto with shape a and minimum m has mean a*m/(a-1)
+        double min = meanRatings * (userSkew - 1) / userSkew;
+        double n = min / Math.pow(1 - rng.nextDouble(), 1 / userSkew);
+        // cap the count so users can always find enough distinct items
+        return (int) Math.max(1, Math.min(Math.round(n), Math.max(1, itemCount / 2)));
+    }
+
+    /**
+     * Draw an item with power-law popularity.
+     */
+    private long drawItem(Random rng) {
+        // inverse CDF of a continuous power law with exponent itemSkew on [0,1]
+        double x = Math.pow(rng.nextDouble(), 1 / (1 - itemSkew));
+        return Math.min((long) (x * itemCount), itemCount - 1) + 1;
+    }
+
+    private class RatingCursor extends AbstractPollingCursor<Rating> {
+        private final Random rng = new Random(seed);
+        private final MutableRating rating = new MutableRating();
+        private final LongSet userItems = new LongOpenHashSet();
+        private long user = 0;
+        private int remaining = 0;
+        private long count = 0;
+
+        @Override
+        protected Rating poll() {
+            while (remaining == 0) {
+                if (user >= userCount) {
+                    return null;
+                }
+                user += 1;
+                remaining = drawRatingCount(rng);
+                userItems.clear();
+            }
+            long item = drawItem(rng);
+            while (!userItems.add(item)) {
+                item = drawItem(rng);
+            }
+            remaining -= 1;
+            count += 1;
+            rating.setUserId(user);
+            rating.setItemId(item);
+            rating.setRating(rng.nextInt(5) + 1);
+            rating.setTimestamp(count);
+            return rating;
+        }
+
+        @Override
+        protected Rating copy(Rating r) {
+            return Ratings.copyBuilder(r).build();
+        }
+    }
+}
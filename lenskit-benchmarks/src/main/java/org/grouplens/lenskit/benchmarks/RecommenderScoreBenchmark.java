@@ -0,0 +1,136 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.benchmarks;
+
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.grouplens.lenskit.ItemScorer;
+import org.grouplens.lenskit.RecommenderBuildException;
+import org.grouplens.lenskit.baseline.BaselineScorer;
+import org.grouplens.lenskit.baseline.ItemMeanRatingItemScorer;
+import org.grouplens.lenskit.baseline.UserMeanBaseline;
+import org.grouplens.lenskit.baseline.UserMeanItemScorer;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.core.LenskitConfiguration;
+import org.grouplens.lenskit.core.LenskitRecommenderEngine;
+import org.grouplens.lenskit.data.dao.EventCollectionDAO;
+import org.grouplens.lenskit.data.dao.EventDAO;
+import org.grouplens.lenskit.data.snapshot.PackedPreferenceSnapshot;
+import org.grouplens.lenskit.data.snapshot.PreferenceSnapshot;
+import org.grouplens.lenskit.iterative.IterationCount;
+import org.grouplens.lenskit.iterative.IterationCountStoppingCondition;
+import org.grouplens.lenskit.iterative.StoppingCondition;
+import org.grouplens.lenskit.knn.item.ItemItemScorer;
+import org.grouplens.lenskit.knn.user.NeighborhoodFinder;
+import org.grouplens.lenskit.knn.user.SimpleNeighborhoodFinder;
+import org.grouplens.lenskit.knn.user.UserUserItemScorer;
+import org.grouplens.lenskit.mf.funksvd.FeatureCount;
+import org.grouplens.lenskit.mf.funksvd.FunkSVDItemScorer;
+import org.grouplens.lenskit.slopeone.SlopeOneItemScorer;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark per-request scoring with complete recommenders built on generated data.
+ * Each invocation scores a fixed set of candidate items for the next user in turn,
+ * as a recommender does when serving a request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+public class RecommenderScoreBenchmark {
+    @Param({"item-item", "user-user", "funksvd", "slope-one"})
+    public String algorithm;
+    @Param({"5000"})
+    public int userCount;
+    @Param({"2000"})
+    public int itemCount;
+    @Param({"25"})
+    public int meanRatings;
+    @Param({"100"})
+    public int candidateCount;
+
+    private ItemScorer scorer;
+    private LongSortedSet candidates;
+    private int nextUser;
+
+    @Setup
+    public void buildRecommender() throws RecommenderBuildException {
+        RatingGenerator generator = RatingGenerator.create(userCount, itemCount, meanRatings);
+        EventDAO dao = new EventCollectionDAO(generator.generateList());
+
+        LenskitConfiguration config = configure(algorithm);
+        config.bind(EventDAO.class).to(dao);
+        LenskitRecommenderEngine engine = LenskitRecommenderEngine.build(config);
+        scorer = engine.createRecommender().getItemScorer();
+
+        Random rng = new Random(42);
+        long[] items = new long[candidateCount];
+        for (int i = 0; i < candidateCount; i++) {
+            items[i] = rng.nextInt(itemCount) + 1;
+        }
+        candidates = LongUtils.packedSet(items);
+        nextUser = 0;
+    }
+
+    /**
+     * Configure an algorithm.
+     *
+     * @param name The algorithm name.
+     * @return The configuration, without a DAO.
+     */
+    @SuppressWarnings("unchecked")
+    static LenskitConfiguration configure(String name) {
+        LenskitConfiguration config = new LenskitConfiguration();
+        if (name.equals("item-item")) {
+            config.bind(ItemScorer.class).to(ItemItemScorer.class);
+        } else if (name.equals("user-user")) {
+            config.bind(ItemScorer.class).to(UserUserItemScorer.class);
+            config.bind(NeighborhoodFinder.class).to(SimpleNeighborhoodFinder.class);
+        } else if (name.equals("funksvd")) {
+            config.bind(PreferenceSnapshot.class).to(PackedPreferenceSnapshot.class);
+            config.bind(ItemScorer.class).to(FunkSVDItemScorer.class);
+            config.bind(BaselineScorer.class, ItemScorer.class).to(UserMeanItemScorer.class);
+            config.bind(UserMeanBaseline.class, ItemScorer.class).to(ItemMeanRatingItemScorer.class);
+            config.bind(StoppingCondition.class).to(IterationCountStoppingCondition.class);
+            config.set(IterationCount.class).to(20);
+            config.set(FeatureCount.class).to(20);
+        } else if (name.equals("slope-one")) {
+            config.bind(ItemScorer.class).to(SlopeOneItemScorer.class);
+        } else {
+            throw new IllegalArgumentException("unknown algorithm " + name);
+        }
+        return config;
+    }
+
+    @Benchmark
+    public MutableSparseVector scoreCandidates() {
+        // users are numbered from 1 by the generator
+        long user = nextUser + 1;
+        nextUser = (nextUser + 1) % userCount;
+        MutableSparseVector scores = MutableSparseVector.create(candidates);
+        scorer.score(user, scores);
+        return scores;
+    }
+}
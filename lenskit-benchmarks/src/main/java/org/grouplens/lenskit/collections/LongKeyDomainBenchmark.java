@@ -0,0 +1,86 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.collections;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark building key domains and looking up key indexes.  Half of the probed
+ * keys are in the domain.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+public class LongKeyDomainBenchmark {
+    @Param({"100", "10000", "1000000"})
+    public int size;
+
+    private LongList keys;
+    private long[] probes;
+    private LongKeyDomain domain;
+
+    @Setup
+    public void createDomain() {
+        Random rng = new Random(42);
+        keys = new LongArrayList(size);
+        for (int i = 0; i < size; i++) {
+            // odd keys, in random order
+            keys.add(2 * rng.nextInt(size * 4) + 1);
+        }
+        domain = LongKeyDomain.fromCollection(keys);
+
+        probes = new long[1000];
+        for (int i = 0; i < probes.length; i++) {
+            long key = keys.getLong(rng.nextInt(size));
+            // even probes are misses
+            probes[i] = i % 2 == 0 ? key - 1 : key;
+        }
+    }
+
+    @Benchmark
+    public LongKeyDomain fromCollection() {
+        return LongKeyDomain.fromCollection(keys);
+    }
+
+    @Benchmark
+    public int getIndex() {
+        int sum = 0;
+        for (long key: probes) {
+            sum += domain.getIndex(key);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int getIndexIfActive() {
+        int sum = 0;
+        for (long key: probes) {
+            sum += domain.getIndexIfActive(key);
+        }
+        return sum;
+    }
+}
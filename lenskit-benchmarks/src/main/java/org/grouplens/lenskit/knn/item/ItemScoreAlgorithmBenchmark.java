@@ -0,0 +1,105 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.knn.item.model.ItemItemModel;
+import org.grouplens.lenskit.knn.item.model.SimilarityMatrixModel;
+import org.grouplens.lenskit.scored.ScoredId;
+import org.grouplens.lenskit.scored.ScoredIdListBuilder;
+import org.grouplens.lenskit.scored.ScoredIds;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the item scoring algorithms on a synthetic item-item model.  Each
+ * invocation scores every item in the model for one user.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+public class ItemScoreAlgorithmBenchmark {
+    @Param({"5000"})
+    public int itemCount;
+    @Param({"200"})
+    public int modelSize;
+    @Param({"50"})
+    public int ratingCount;
+    @Param({"20"})
+    public int neighborhoodSize;
+    @Param({"default", "indexed"})
+    public String algorithm;
+
+    private ItemItemModel model;
+    private SparseVector userData;
+    private LongSortedSet items;
+    private ItemScoreAlgorithm scoreAlgorithm;
+    private NeighborhoodScorer scorer;
+
+    @Setup
+    public void createModel() {
+        Random rng = new Random(42);
+        long[] ids = new long[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            ids[i] = i + 1;
+        }
+        items = LongUtils.packedSet(ids);
+
+        Long2ObjectMap<List<ScoredId>> matrix = new Long2ObjectOpenHashMap<List<ScoredId>>(itemCount);
+        for (long item: ids) {
+            ScoredIdListBuilder row = ScoredIds.newListBuilder(modelSize);
+            for (int j = 0; j < modelSize; j++) {
+                row.add(rng.nextInt(itemCount) + 1, rng.nextDouble());
+            }
+            matrix.put(item, row.sort(ScoredIds.scoreOrder().reverse()).finish());
+        }
+        model = new SimilarityMatrixModel(items, matrix);
+
+        MutableSparseVector user = MutableSparseVector.create(items);
+        for (int j = 0; j < ratingCount; j++) {
+            user.set(rng.nextInt(itemCount) + 1, rng.nextDouble() * 4 - 2);
+        }
+        userData = user.shrinkDomain().freeze();
+
+        if (algorithm.equals("indexed")) {
+            scoreAlgorithm = new IndexedItemScoreAlgorithm(neighborhoodSize);
+        } else {
+            scoreAlgorithm = new DefaultItemScoreAlgorithm(neighborhoodSize);
+        }
+        scorer = new WeightedAverageNeighborhoodScorer();
+    }
+
+    @Benchmark
+    public MutableSparseVector scoreAllItems() {
+        MutableSparseVector scores = MutableSparseVector.create(items);
+        scoreAlgorithm.scoreItems(model, userData, scores, scorer);
+        return scores;
+    }
+}
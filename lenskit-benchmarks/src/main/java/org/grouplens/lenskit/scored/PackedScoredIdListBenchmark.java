@@ -0,0 +1,91 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.scored;
+
+import org.grouplens.lenskit.collections.CollectionUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark building, sorting and iterating packed scored ID lists.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+public class PackedScoredIdListBenchmark {
+    @Param({"20", "1000"})
+    public int size;
+
+    private long[] ids;
+    private double[] scores;
+    private PackedScoredIdList list;
+
+    @Setup
+    public void createList() {
+        Random rng = new Random(42);
+        ids = new long[size];
+        scores = new double[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = rng.nextInt(size * 10);
+            scores[i] = rng.nextDouble();
+        }
+        list = build();
+    }
+
+    @Benchmark
+    public PackedScoredIdList build() {
+        ScoredIdListBuilder builder = ScoredIds.newListBuilder(size);
+        for (int i = 0; i < size; i++) {
+            builder.add(ids[i], scores[i]);
+        }
+        return builder.finish();
+    }
+
+    @Benchmark
+    public PackedScoredIdList buildSorted() {
+        ScoredIdListBuilder builder = ScoredIds.newListBuilder(size);
+        for (int i = 0; i < size; i++) {
+            builder.add(ids[i], scores[i]);
+        }
+        return builder.sort(ScoredIds.scoreOrder().reverse()).finish();
+    }
+
+    @Benchmark
+    public double iterate() {
+        double sum = 0;
+        for (ScoredId id: list) {
+            sum += id.getScore();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double fastIterate() {
+        double sum = 0;
+        for (ScoredId id: CollectionUtils.fast(list)) {
+            sum += id.getScore();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.slopeone;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.grouplens.lenskit.benchmarks.RatingGenerator;
+import org.grouplens.lenskit.data.dao.EventCollectionDAO;
+import org.grouplens.lenskit.data.dao.EventDAO;
+import org.grouplens.lenskit.data.dao.PrefetchingItemDAO;
+import org.grouplens.lenskit.data.dao.PrefetchingUserDAO;
+import org.grouplens.lenskit.data.dao.PrefetchingUserEventDAO;
+import org.grouplens.lenskit.data.dao.SimpleFileRatingDAO;
+import org.grouplens.lenskit.data.dao.UserEventDAO;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.history.History;
+import org.grouplens.lenskit.data.history.RatingVectorUserHistorySummarizer;
+import org.grouplens.lenskit.data.history.UserHistory;
+import org.grouplens.lenskit.knn.item.model.ItemItemBuildContextFactory;
+import org.grouplens.lenskit.transform.normalize.DefaultUserVectorNormalizer;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.VectorEntry;
+import org.openjdk.jmh.annotations.*;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare Slope-One scoring with per-pair model lookups against the merge-join
+ * kernel.  Each invocation scores every item in the model for one user.
+ *
+ * <p>By default the ratings are {@linkplain RatingGenerator synthetic}.  To use a
+ * real data set such as ML-100K, pass its tab-separated rating file with
+ * {@code -p ratingFile=ml-100k/u.data}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+public class SlopeOneScoreBenchmark {
+    @Param({""})
+    public String ratingFile;
+    @Param({"100000"})
+    public int itemCount;
+    @Param({"20000"})
+    public int userCount;
+    @Param({"20"})
+    public int ratingsPerUser;
+    @Param({"lookup", "joined"})
+    public String kernel;
+
+    private LongSortedSet items;
+    private long[] users;
+    private int nextUser;
+    private SlopeOneItemScorer scorer;
+
+    @Setup
+    public void createModel() {
+        EventDAO dao;
+        if (ratingFile.isEmpty()) {
+            dao = new EventCollectionDAO(RatingGenerator.create(userCount, itemCount, ratingsPerUser)
+                                                        .generateList());
+        } else {
+            dao = SimpleFileRatingDAO.create(new File(ratingFile), "\t");
+        }
+        UserEventDAO udao = new PrefetchingUserEventDAO(dao);
+        ItemItemBuildContextFactory contextFactory = new ItemItemBuildContextFactory(
+                udao, new DefaultUserVectorNormalizer(), new RatingVectorUserHistorySummarizer());
+        SlopeOneModel model = new SlopeOneModelBuilder(new PrefetchingItemDAO(dao),
+                                                       contextFactory, 0, 0).get();
+        items = model.getItemUniverse();
+        users = new PrefetchingUserDAO(dao).getUserIds().toLongArray();
+        if (kernel.equals("lookup")) {
+            scorer = new LookupSlopeOneItemScorer(udao, model);
+        } else {
+            scorer = new SlopeOneItemScorer(udao, model, null);
+        }
+    }
+
+    @Benchmark
+    public MutableSparseVector scoreAllItems() {
+        long user = users[nextUser];
+        nextUser = (nextUser + 1) % users.length;
+        MutableSparseVector scores = MutableSparseVector.create(items);
+        scorer.score(user, scores);
+        return scores;
+    }
+
+    /**
+     * Slope-One scorer that looks up each item pair in the model separately.
+     */
+    private static class LookupSlopeOneItemScorer extends SlopeOneItemScorer {
+        public LookupSlopeOneItemScorer(UserEventDAO dao, SlopeOneModel model) {
+            super(dao, model, null);
+        }
+
+        @Override
+        public void score(long uid, @Nonnull MutableSparseVector scores) {
+            UserHistory<Rating> history = dao.getEventsForUser(uid, Rating.class);
+            if (history == null) {
+                history = History.forUser(uid);
+            }
+            SparseVector user = RatingVectorUserHistorySummarizer.makeRatingVector(history);
+
+            for (VectorEntry e : scores.fast(VectorEntry.State.EITHER)) {
+                final long predicteeItem = e.getKey();
+                if (!user.containsKey(predicteeItem)) {
+                    double total = 0;
+                    int nitems = 0;
+                    LongIterator ratingIter = user.keySet().iterator();
+                    while (ratingIter.hasNext()) {
+                        long currentItem = ratingIter.nextLong();
+                        int nusers = model.getCoratings(predicteeItem, currentItem);
+                        if (nusers != 0) {
+                            double currentDev = model.getDeviation(predicteeItem, currentItem);
+                            total += currentDev + user.get(currentItem);
+                            nitems++;
+                        }
+                    }
+                    if (nitems != 0) {
+                        scores.set(e, total / nitems);
+                    } else {
+                        scores.unset(e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util;
+
+import org.grouplens.lenskit.scored.ScoredId;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark selecting the top N of a stream of scored items.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+public class TopNScoredItemAccumulatorBenchmark {
+    @Param({"10", "100"})
+    public int listSize;
+    @Param({"10000"})
+    public int itemCount;
+
+    private double[] scores;
+
+    @Setup
+    public void createScores() {
+        Random rng = new Random(42);
+        scores = new double[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            scores[i] = rng.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public List<ScoredId> topN() {
+        TopNScoredItemAccumulator accum = new TopNScoredItemAccumulator(listSize);
+        for (int i = 0; i < scores.length; i++) {
+            accum.put(i, scores[i]);
+        }
+        return accum.finish();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.vectors;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the basic sparse vector operations: building, lookup, iteration and
+ * intersection.  The two vectors share about half of their keys.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+public class SparseVectorBenchmark {
+    @Param({"20", "1000", "100000"})
+    public int size;
+
+    private long[] keys;
+    private long[] probes;
+    private SparseVector vector1;
+    private SparseVector vector2;
+
+    @Setup
+    public void createVectors() {
+        Random rng = new Random(42);
+        keys = new long[size];
+        long[] otherKeys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = 2 * i;
+            // every other key is shared with the first vector
+            otherKeys[i] = i % 2 == 0 ? 2 * i : 2 * i + 1;
+        }
+        vector1 = makeVector(keys, rng);
+        vector2 = makeVector(otherKeys, rng);
+
+        probes = new long[1000];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = keys[rng.nextInt(size)];
+        }
+    }
+
+    private static SparseVector makeVector(long[] keys, Random rng) {
+        MutableSparseVector vec = MutableSparseVector.create(keys);
+        for (VectorEntry e: vec.fast(VectorEntry.State.EITHER)) {
+            vec.set(e, rng.nextGaussian());
+        }
+        return vec.freeze();
+    }
+
+    @Benchmark
+    public MutableSparseVector buildMutable() {
+        MutableSparseVector vec = MutableSparseVector.create(keys);
+        double value = 0;
+        for (VectorEntry e: vec.fast(VectorEntry.State.EITHER)) {
+            vec.set(e, value);
+            value += 1;
+        }
+        return vec;
+    }
+
+    @Benchmark
+    public double getByKey() {
+        double sum = 0;
+        for (long key: probes) {
+            sum += vector1.get(key);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double fastIterate() {
+        double sum = 0;
+        for (VectorEntry e: vector1.fast()) {
+            sum += e.getValue();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double fastIntersect() {
+        double sum = 0;
+        for (Pair<VectorEntry,VectorEntry> pair: Vectors.fastIntersect(vector1, vector2)) {
+            sum += pair.getLeft().getValue() * pair.getRight().getValue();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double dot() {
+        return vector1.dot(vector2);
+    }
+}
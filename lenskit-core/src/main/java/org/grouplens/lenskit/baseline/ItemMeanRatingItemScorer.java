@@ -25,10 +25,12 @@ package org.grouplens.lenskit.baseline;
 
 import org.grouplens.grapht.annotation.DefaultProvider;
 import org.grouplens.lenskit.basic.AbstractItemScorer;
+import org.grouplens.lenskit.core.IncrementalProvider;
 import org.grouplens.lenskit.core.Shareable;
 import org.grouplens.lenskit.core.Transient;
 import org.grouplens.lenskit.cursors.Cursor;
 import org.grouplens.lenskit.data.dao.EventDAO;
+import org.grouplens.lenskit.data.event.Event;
 import org.grouplens.lenskit.data.event.Rating;
 import org.grouplens.lenskit.data.pref.Preference;
 import org.grouplens.lenskit.util.IdMeanAccumulator;
@@ -38,9 +40,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.inject.Inject;
-import javax.inject.Provider;
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * Rating scorer that returns the item's mean rating for all predictions.
@@ -57,11 +60,13 @@ import java.io.Serializable;
 @Shareable
 public class ItemMeanRatingItemScorer extends AbstractItemScorer implements Serializable {
     /**
-     * A builder to create ItemMeanPredictors.
+     * A builder to create ItemMeanPredictors.  Models it builds keep their rating sums, so
+     * it can {@linkplain #update(ItemMeanRatingItemScorer, List) update} them with new
+     * ratings.
      *
      * @author <a href="http://www.grouplens.org">GroupLens Research</a>
      */
-    public static class Builder implements Provider<ItemMeanRatingItemScorer> {
+    public static class Builder implements IncrementalProvider<ItemMeanRatingItemScorer> {
         private double damping = 0;
         private EventDAO dao;
 
@@ -81,25 +86,37 @@ public class ItemMeanRatingItemScorer extends AbstractItemScorer implements Seri
 
         @Override
         public ItemMeanRatingItemScorer get() {
-            final ImmutableSparseVector itemMeans;
-            final double globalMean;
-
+            IdMeanAccumulator accum = new IdMeanAccumulator();
             Cursor<Rating> ratings = dao.streamEvents(Rating.class);
             try {
-                IdMeanAccumulator accum = new IdMeanAccumulator();
                 for (Rating r: ratings.fast()) {
                     Preference p = r.getPreference();
                     if (p != null) {
                         accum.put(p.getItemId(), p.getValue());
                     }
                 }
-                globalMean = accum.globalMean();
-                itemMeans = accum.idMeanOffsets(damping);
             } finally {
                 ratings.close();
             }
 
-            return new ItemMeanRatingItemScorer(itemMeans, globalMean, damping);
+            return new ItemMeanRatingItemScorer(accum, damping);
+        }
+
+        @Override
+        public ItemMeanRatingItemScorer update(ItemMeanRatingItemScorer model, List<Event> delta) {
+            if (model.accumulator == null || model.damping != damping) {
+                return null;
+            }
+            IdMeanAccumulator accum = model.accumulator.copy();
+            for (Event e: delta) {
+                if (e instanceof Rating) {
+                    Preference p = ((Rating) e).getPreference();
+                    if (p != null) {
+                        accum.put(p.getItemId(), p.getValue());
+                    }
+                }
+            }
+            return new ItemMeanRatingItemScorer(accum, damping);
         }
     }
 
@@ -109,6 +126,8 @@ public class ItemMeanRatingItemScorer extends AbstractItemScorer implements Seri
     private final ImmutableSparseVector itemMeans;  // offsets from the global mean
     private final double globalMean;
     private final double damping;
+    @Nullable
+    private final IdMeanAccumulator accumulator;
 
     /**
      * Construct a new scorer. This assumes ownership of the provided map.
@@ -121,6 +140,21 @@ public class ItemMeanRatingItemScorer extends AbstractItemScorer implements Seri
         this.itemMeans = itemMeans;
         this.globalMean = globalMean;
         this.damping = damping;
+        accumulator = null;
+    }
+
+    /**
+     * Construct a new scorer from accumulated item ratings.  The scorer keeps the
+     * accumulator, so that it can be updated with new ratings.
+     *
+     * @param accum   The accumulated item ratings.  The scorer assumes ownership of it.
+     * @param damping The damping factor.
+     */
+    ItemMeanRatingItemScorer(IdMeanAccumulator accum, double damping) {
+        itemMeans = accum.idMeanOffsets(damping);
+        globalMean = accum.globalMean();
+        this.damping = damping;
+        accumulator = accum;
     }
 
     @Override
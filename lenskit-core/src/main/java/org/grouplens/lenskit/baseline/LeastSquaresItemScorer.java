@@ -20,25 +20,27 @@
  */
 package org.grouplens.lenskit.baseline;
 
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
 import org.grouplens.grapht.annotation.DefaultProvider;
 import org.grouplens.lenskit.basic.AbstractItemScorer;
-import org.grouplens.lenskit.collections.CollectionUtils;
-import org.grouplens.lenskit.collections.FastCollection;
+import org.grouplens.lenskit.basic.BatchableItemScorer;
 import org.grouplens.lenskit.core.Shareable;
 import org.grouplens.lenskit.core.Transient;
-import org.grouplens.lenskit.data.pref.IndexedPreference;
 import org.grouplens.lenskit.data.snapshot.PreferenceSnapshot;
+import org.grouplens.lenskit.data.snapshot.RatingMatrix;
 import org.grouplens.lenskit.iterative.LearningRate;
 import org.grouplens.lenskit.iterative.RegularizationTerm;
 import org.grouplens.lenskit.iterative.StoppingCondition;
 import org.grouplens.lenskit.iterative.TrainingLoopController;
 import org.grouplens.lenskit.vectors.ImmutableSparseVector;
 import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
 import org.grouplens.lenskit.vectors.VectorEntry;
 import org.grouplens.lenskit.vectors.VectorEntry.State;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nonnull;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import java.io.Serializable;
@@ -51,7 +53,7 @@ import java.io.Serializable;
  */
 @DefaultProvider(LeastSquaresItemScorer.Builder.class)
 @Shareable
-public class LeastSquaresItemScorer extends AbstractItemScorer implements Serializable {
+public class LeastSquaresItemScorer extends AbstractItemScorer implements BatchableItemScorer, Serializable {
     private static final long serialVersionUID = 1L;
 
     private final ImmutableSparseVector userOffsets;
@@ -81,6 +83,33 @@ public class LeastSquaresItemScorer extends AbstractItemScorer implements Serial
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>The item offsets are looked up once for the batch, so scoring a user only
+     * requires one lookup.
+     */
+    @Nonnull
+    @Override
+    public UserScorer prepareBatch(@Nonnull LongSortedSet items) {
+        final long[] keys = items.toLongArray();
+        final double[] itemScores = new double[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            itemScores[i] = mean + itemOffsets.get(keys[i], 0);
+        }
+        return new UserScorer() {
+            @Nonnull
+            @Override
+            public SparseVector score(long user) {
+                final double uoff = userOffsets.get(user, 0);
+                double[] values = new double[keys.length];
+                for (int i = 0; i < keys.length; i++) {
+                    values[i] = itemScores[i] + uoff;
+                }
+                return MutableSparseVector.wrap(keys, values).freeze();
+            }
+        };
+    }
+
     /**
      * The builder for the least squares predictor.
      */
@@ -113,30 +142,39 @@ public class LeastSquaresItemScorer extends AbstractItemScorer implements Serial
             double rmse = 0.0;
             double uoff[] = new double[snapshot.getUserIds().size()];
             double ioff[] = new double[snapshot.getItemIds().size()];
-            FastCollection<IndexedPreference> ratings = snapshot.getRatings();
+            RatingMatrix ratings = RatingMatrix.fromSnapshot(snapshot);
+            final int nchunks = ratings.getChunkCount();
 
             logger.debug("training predictor on {} ratings", ratings.size());
 
             double sum = 0.0;
-            double n = 0;
-            for (IndexedPreference r : CollectionUtils.fast(ratings)) {
-                sum += r.getValue();
-                n += 1;
+            for (int c = 0; c < nchunks; c++) {
+                final double[] values = ratings.getValues(c);
+                final int n = ratings.getChunkSize(c);
+                for (int j = 0; j < n; j++) {
+                    sum += values[j];
+                }
             }
-            final double mean = sum / n;
+            final double mean = sum / ratings.size();
             logger.debug("mean rating is {}", mean);
 
             final TrainingLoopController trainingController = stoppingCondition.newLoop();
             while (trainingController.keepTraining(rmse)) {
                 double sse = 0;
-                for (IndexedPreference r : CollectionUtils.fast(ratings)) {
-                    final int uidx = r.getUserIndex();
-                    final int iidx = r.getItemIndex();
-                    final double p = mean + uoff[uidx] + ioff[iidx];
-                    final double err = r.getValue() - p;
-                    uoff[uidx] += learningRate * (err - regularizationFactor * uoff[uidx]);
-                    ioff[iidx] += learningRate * (err - regularizationFactor * ioff[iidx]);
-                    sse += err * err;
+                for (int c = 0; c < nchunks; c++) {
+                    final int[] uidxs = ratings.getUserIndexes(c);
+                    final int[] iidxs = ratings.getItemIndexes(c);
+                    final double[] values = ratings.getValues(c);
+                    final int n = ratings.getChunkSize(c);
+                    for (int j = 0; j < n; j++) {
+                        final int uidx = uidxs[j];
+                        final int iidx = iidxs[j];
+                        final double p = mean + uoff[uidx] + ioff[iidx];
+                        final double err = values[j] - p;
+                        uoff[uidx] += learningRate * (err - regularizationFactor * uoff[uidx]);
+                        ioff[iidx] += learningRate * (err - regularizationFactor * ioff[iidx]);
+                        sse += err * err;
+                    }
                 }
                 rmse = Math.sqrt(sse / ratings.size());
 
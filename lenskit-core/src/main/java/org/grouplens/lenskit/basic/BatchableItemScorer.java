@@ -0,0 +1,64 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.basic;
+
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.grouplens.lenskit.ItemScorer;
+import org.grouplens.lenskit.vectors.SparseVector;
+
+import javax.annotation.Nonnull;
+
+/**
+ * An item scorer with optimized support for scoring the same items for many users.
+ * {@link SimpleBatchItemScorer} uses this interface, when the scorer supports it,
+ * to do per-batch setup (such as looking up the items in the model) only once.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+public interface BatchableItemScorer extends ItemScorer {
+    /**
+     * Prepare to score a set of items for many users.
+     *
+     * @param items The items to score.
+     * @return A user scorer that scores {@code items} for individual users.
+     */
+    @Nonnull
+    UserScorer prepareBatch(@Nonnull LongSortedSet items);
+
+    /**
+     * Scorer for a fixed set of items, prepared by {@link #prepareBatch(LongSortedSet)}.
+     * User scorers must be safe to use from multiple threads, so long as the
+     * item scorer's own dependencies are.
+     */
+    interface UserScorer {
+        /**
+         * Score the batch's items for a user.
+         *
+         * @param user The user ID.
+         * @return The user's scores.  This must produce the same scores as
+         *         {@link ItemScorer#score(long, java.util.Collection)}, but may omit
+         *         items that cannot be scored.
+         */
+        @Nonnull
+        SparseVector score(long user);
+    }
+}
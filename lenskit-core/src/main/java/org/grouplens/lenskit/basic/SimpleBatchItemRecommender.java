@@ -0,0 +1,88 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.basic;
+
+import org.grouplens.lenskit.BatchItemRecommender;
+import org.grouplens.lenskit.ItemRecommender;
+import org.grouplens.lenskit.util.parallel.ExecHelpers;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+/**
+ * Batch item recommender backed by an item recommender.  Users are processed with
+ * {@link BatchThreadCount} threads.  With a {@link TopNItemRecommender} over a
+ * {@link StreamingItemScorer}, each user only needs memory for its top-<i>N</i> list.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+public class SimpleBatchItemRecommender implements BatchItemRecommender {
+    private final ItemRecommender recommender;
+    private final int threadCount;
+
+    @Inject
+    public SimpleBatchItemRecommender(ItemRecommender rec, @BatchThreadCount int nthreads) {
+        recommender = rec;
+        threadCount = ExecHelpers.resolveThreadCount(nthreads);
+    }
+
+    public ItemRecommender getRecommender() {
+        return recommender;
+    }
+
+    @Override
+    public void recommend(@Nonnull Iterable<Long> users, final int n,
+                          @Nonnull final Handler handler) {
+        UserBatchRunner.run(users, threadCount, new UserBatchRunner.UserOperation() {
+            @Override
+            public void apply(long user) {
+                handler.handle(user, recommender.recommend(user, n));
+            }
+        });
+    }
+
+    /**
+     * Provide a batch item recommender if there is an {@link ItemRecommender}
+     * available, and {@code null} otherwise.  This is the default provider for
+     * {@link BatchItemRecommender}.
+     */
+    public static class Provider implements javax.inject.Provider<SimpleBatchItemRecommender> {
+        private final ItemRecommender recommender;
+        private final int threadCount;
+
+        @Inject
+        public Provider(@Nullable ItemRecommender rec, @BatchThreadCount int nthreads) {
+            recommender = rec;
+            threadCount = nthreads;
+        }
+
+        @Override
+        public SimpleBatchItemRecommender get() {
+            if (recommender == null) {
+                return null;
+            } else {
+                return new SimpleBatchItemRecommender(recommender, threadCount);
+            }
+        }
+    }
+}
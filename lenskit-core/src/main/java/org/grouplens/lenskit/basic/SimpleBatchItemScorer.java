@@ -0,0 +1,107 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.basic;
+
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.grouplens.lenskit.BatchItemScorer;
+import org.grouplens.lenskit.ItemScorer;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.util.parallel.ExecHelpers;
+import org.grouplens.lenskit.vectors.SparseVector;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.util.Collection;
+
+/**
+ * Batch item scorer backed by an item scorer.  If the item scorer is a
+ * {@link BatchableItemScorer}, it is prepared once per batch; otherwise, this
+ * scores each user with {@link ItemScorer#score(long, Collection)}.  Users are
+ * processed with {@link BatchThreadCount} threads.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+public class SimpleBatchItemScorer implements BatchItemScorer {
+    private final ItemScorer scorer;
+    private final int threadCount;
+
+    @Inject
+    public SimpleBatchItemScorer(ItemScorer scorer, @BatchThreadCount int nthreads) {
+        this.scorer = scorer;
+        threadCount = ExecHelpers.resolveThreadCount(nthreads);
+    }
+
+    public ItemScorer getScorer() {
+        return scorer;
+    }
+
+    @Override
+    public void score(@Nonnull Iterable<Long> users, @Nonnull Collection<Long> items,
+                      @Nonnull final Handler handler) {
+        final BatchableItemScorer.UserScorer userScorer = prepare(LongUtils.packedSet(items));
+        UserBatchRunner.run(users, threadCount, new UserBatchRunner.UserOperation() {
+            @Override
+            public void apply(long user) {
+                handler.handle(user, userScorer.score(user));
+            }
+        });
+    }
+
+    private BatchableItemScorer.UserScorer prepare(final LongSortedSet items) {
+        if (scorer instanceof BatchableItemScorer) {
+            return ((BatchableItemScorer) scorer).prepareBatch(items);
+        } else {
+            return new BatchableItemScorer.UserScorer() {
+                @Nonnull
+                @Override
+                public SparseVector score(long user) {
+                    return scorer.score(user, items);
+                }
+            };
+        }
+    }
+
+    /**
+     * Provide a batch item scorer if there is an {@link ItemScorer} available, and
+     * {@code null} otherwise.  This is the default provider for {@link BatchItemScorer}.
+     */
+    public static class Provider implements javax.inject.Provider<SimpleBatchItemScorer> {
+        private final ItemScorer scorer;
+        private final int threadCount;
+
+        @Inject
+        public Provider(@Nullable ItemScorer s, @BatchThreadCount int nthreads) {
+            scorer = s;
+            threadCount = nthreads;
+        }
+
+        @Override
+        public SimpleBatchItemScorer get() {
+            if (scorer == null) {
+                return null;
+            } else {
+                return new SimpleBatchItemScorer(scorer, threadCount);
+            }
+        }
+    }
+}
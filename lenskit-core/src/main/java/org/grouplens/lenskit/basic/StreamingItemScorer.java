@@ -0,0 +1,59 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.basic;
+
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import org.grouplens.lenskit.ItemScorer;
+import org.grouplens.lenskit.util.ScoredItemAccumulator;
+
+import javax.annotation.Nonnull;
+
+/**
+ * An item scorer that can stream its scores into an accumulator instead of
+ * producing a score vector over all items.  {@link TopNItemRecommender} uses
+ * this interface when the scorer supports it, so that producing the top
+ * <i>N</i> recommendations from a large candidate set only requires memory
+ * proportional to <i>N</i> (plus whatever working space the scorer needs).
+ *
+ * <p>Implementations will typically do their per-user setup once, and then
+ * score the items in blocks of at most {@link #BLOCK_SIZE} items.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+public interface StreamingItemScorer extends ItemScorer {
+    /**
+     * The suggested number of items to score at a time.
+     */
+    int BLOCK_SIZE = 1024;
+
+    /**
+     * Score items for a user, putting the scores into an accumulator.  Only
+     * items that can be scored are put in the accumulator; it must produce the
+     * same scores as {@link #score(long, java.util.Collection)}.
+     *
+     * @param user   The user ID.
+     * @param items  The items to score.
+     * @param output The accumulator to receive the item scores.
+     */
+    void score(long user, @Nonnull LongCollection items,
+               @Nonnull ScoredItemAccumulator output);
+}
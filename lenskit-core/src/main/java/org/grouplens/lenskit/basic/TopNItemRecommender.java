@@ -36,6 +36,7 @@ import org.grouplens.lenskit.data.history.UserHistory;
 import org.grouplens.lenskit.scored.ScoredId;
 import org.grouplens.lenskit.util.ScoredItemAccumulator;
 import org.grouplens.lenskit.util.TopNScoredItemAccumulator;
+import org.grouplens.lenskit.util.UnlimitedScoredItemAccumulator;
 import org.grouplens.lenskit.vectors.SparseVector;
 import org.grouplens.lenskit.vectors.VectorEntry;
 
@@ -73,6 +74,8 @@ public class TopNItemRecommender extends AbstractItemRecommender {
     /**
      * Implement the ID-based recommendation in terms of the scorer. This method
      * uses {@link #getDefaultExcludes(long)} to supply a missing exclude set.
+     * If the scorer is a {@link StreamingItemScorer}, its scores are streamed
+     * directly into the accumulator rather than collected into a vector.
      */
     @Override
     protected List<ScoredId> recommend(long user, int n, LongSet candidates, LongSet exclude) {
@@ -86,6 +89,17 @@ public class TopNItemRecommender extends AbstractItemRecommender {
             candidates = LongUtils.setDifference(candidates, exclude);
         }
 
+        if (scorer instanceof StreamingItemScorer) {
+            ScoredItemAccumulator accum;
+            if (n < 0) {
+                accum = new UnlimitedScoredItemAccumulator();
+            } else {
+                accum = new TopNScoredItemAccumulator(n);
+            }
+            ((StreamingItemScorer) scorer).score(user, candidates, accum);
+            return accum.finish();
+        }
+
         SparseVector scores = scorer.score(user, candidates);
         return recommend(n, scores);
     }
@@ -0,0 +1,112 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.basic;
+
+import com.google.common.base.Throwables;
+import org.grouplens.lenskit.util.parallel.ExecHelpers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Apply an operation to each of a sequence of users, possibly in parallel.  Worker
+ * threads pull users from the shared iterator, so the users are consumed lazily and
+ * the work balances itself across threads.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+final class UserBatchRunner {
+    private static final Logger logger = LoggerFactory.getLogger(UserBatchRunner.class);
+
+    private UserBatchRunner() {}
+
+    /**
+     * An operation to apply to each user.  It must be thread-safe if the batch uses
+     * more than one thread.
+     */
+    static interface UserOperation {
+        void apply(long user);
+    }
+
+    /**
+     * Apply an operation to each user.
+     *
+     * @param users    The users.
+     * @param nthreads The number of threads to use.
+     * @param op       The operation.
+     */
+    static void run(Iterable<Long> users, int nthreads, UserOperation op) {
+        if (nthreads <= 1) {
+            for (long user: users) {
+                op.apply(user);
+            }
+            return;
+        }
+
+        logger.debug("processing user batch with {} threads", nthreads);
+        Iterator<Long> iter = users.iterator();
+        List<Worker> workers = new ArrayList<Worker>(nthreads);
+        for (int i = 0; i < nthreads; i++) {
+            workers.add(new Worker(iter, op));
+        }
+
+        ExecutorService exec = Executors.newFixedThreadPool(nthreads);
+        try {
+            ExecHelpers.parallelRun(exec, workers);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(ExecHelpers.unwrapExecutionException(e));
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    private static class Worker implements Callable<Void> {
+        private final Iterator<Long> users;
+        private final UserOperation operation;
+
+        public Worker(Iterator<Long> iter, UserOperation op) {
+            users = iter;
+            operation = op;
+        }
+
+        @Override
+        public Void call() {
+            while (true) {
+                long user;
+                synchronized (users) {
+                    if (!users.hasNext()) {
+                        return null;
+                    }
+                    user = users.next();
+                }
+                operation.apply(user);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.core;
+
+import org.grouplens.lenskit.data.event.Event;
+
+import javax.annotation.Nullable;
+import javax.inject.Provider;
+import java.util.List;
+
+/**
+ * A model provider that can fold new events into a previously-built model instead of
+ * building it from scratch.  When a recommender engine is
+ * {@linkplain LenskitRecommenderEngine#update(org.grouplens.lenskit.cursors.Cursor) updated},
+ * the providers of shared components that implement this interface are asked to update
+ * the components they built before; other shared components are rebuilt.
+ *
+ * <p>The provider is instantiated with its dependencies resolved against the updated
+ * data, so its DAOs already include the new events.
+ *
+ * @param <T> The type of model provided.
+ * @since 2.1
+ * @compat Experimental
+ */
+public interface IncrementalProvider<T> extends Provider<T> {
+    /**
+     * Update a model with new events.
+     *
+     * @param model The model previously built by a provider with this configuration, from the
+     *              data before the new events were added.
+     * @param delta The new events.
+     * @return The updated model, or {@code null} if the model cannot be updated and must be
+     *         rebuilt with {@link #get()}.  The previous model must not be modified.
+     */
+    @Nullable
+    T update(T model, List<Event> delta);
+}
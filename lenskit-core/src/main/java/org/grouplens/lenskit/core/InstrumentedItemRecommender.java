@@ -0,0 +1,93 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.core;
+
+import org.grouplens.lenskit.ItemRecommender;
+import org.grouplens.lenskit.scored.ScoredId;
+import org.grouplens.lenskit.util.metrics.MetricRegistry;
+import org.grouplens.lenskit.util.metrics.Timer;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Item recommender wrapper that times each recommendation request in the
+ * {@code recommend.<class>} timer.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+class InstrumentedItemRecommender implements ItemRecommender {
+    private final ItemRecommender delegate;
+    private final Timer timer;
+
+    InstrumentedItemRecommender(ItemRecommender rec, MetricRegistry registry) {
+        delegate = rec;
+        timer = registry.timer("recommend." + rec.getClass().getName());
+    }
+
+    @Override
+    public List<ScoredId> recommend(long user) {
+        Timer.Context ctx = timer.time();
+        try {
+            return delegate.recommend(user);
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    @Override
+    public List<ScoredId> recommend(long user, int n) {
+        Timer.Context ctx = timer.time();
+        try {
+            return delegate.recommend(user, n);
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    @Override
+    public List<ScoredId> recommend(long user, @Nullable Set<Long> candidates) {
+        Timer.Context ctx = timer.time();
+        try {
+            return delegate.recommend(user, candidates);
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    @Override
+    public List<ScoredId> recommend(long user, int n, @Nullable Set<Long> candidates,
+                                    @Nullable Set<Long> exclude) {
+        Timer.Context ctx = timer.time();
+        try {
+            return delegate.recommend(user, n, candidates, exclude);
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Instrumented(" + delegate + ")";
+    }
+}
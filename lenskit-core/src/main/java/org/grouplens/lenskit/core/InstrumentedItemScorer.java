@@ -0,0 +1,184 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.core;
+
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.grouplens.lenskit.ItemScorer;
+import org.grouplens.lenskit.basic.BatchableItemScorer;
+import org.grouplens.lenskit.basic.StreamingItemScorer;
+import org.grouplens.lenskit.util.ScoredItemAccumulator;
+import org.grouplens.lenskit.util.metrics.MetricRegistry;
+import org.grouplens.lenskit.util.metrics.Timer;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+
+/**
+ * Item scorer wrapper that times each scoring request in the {@code score.<class>} timer.
+ * Use {@link #wrap(ItemScorer, MetricRegistry)} to create wrappers; it keeps the
+ * {@link StreamingItemScorer} and {@link BatchableItemScorer} capabilities of the wrapped
+ * scorer, so callers that check for them still get the optimized code paths.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+class InstrumentedItemScorer implements ItemScorer {
+    protected final ItemScorer delegate;
+    protected final Timer timer;
+
+    private InstrumentedItemScorer(ItemScorer scorer, MetricRegistry registry) {
+        delegate = scorer;
+        timer = registry.timer("score." + scorer.getClass().getName());
+    }
+
+    /**
+     * Wrap an item scorer.
+     *
+     * @param scorer   The scorer to wrap.
+     * @param registry The registry for the scorer's timer.
+     * @return A wrapper implementing the same optional scorer interfaces as {@code scorer}.
+     */
+    static InstrumentedItemScorer wrap(ItemScorer scorer, MetricRegistry registry) {
+        boolean streaming = scorer instanceof StreamingItemScorer;
+        boolean batchable = scorer instanceof BatchableItemScorer;
+        if (streaming && batchable) {
+            return new StreamingBatchable(scorer, registry);
+        } else if (streaming) {
+            return new Streaming(scorer, registry);
+        } else if (batchable) {
+            return new Batchable(scorer, registry);
+        } else {
+            return new InstrumentedItemScorer(scorer, registry);
+        }
+    }
+
+    @Override
+    public double score(long user, long item) {
+        Timer.Context ctx = timer.time();
+        try {
+            return delegate.score(user, item);
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    @Nonnull
+    @Override
+    public SparseVector score(long user, @Nonnull Collection<Long> items) {
+        Timer.Context ctx = timer.time();
+        try {
+            return delegate.score(user, items);
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    @Override
+    public void score(long user, @Nonnull MutableSparseVector scores) {
+        Timer.Context ctx = timer.time();
+        try {
+            delegate.score(user, scores);
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Instrumented(" + delegate + ")";
+    }
+
+    /**
+     * Time a batch scoring request.
+     */
+    @Nonnull
+    static BatchableItemScorer.UserScorer prepareBatch(ItemScorer scorer, final Timer timer,
+                                                       LongSortedSet items) {
+        final BatchableItemScorer.UserScorer users =
+                ((BatchableItemScorer) scorer).prepareBatch(items);
+        return new BatchableItemScorer.UserScorer() {
+            @Nonnull
+            @Override
+            public SparseVector score(long user) {
+                Timer.Context ctx = timer.time();
+                try {
+                    return users.score(user);
+                } finally {
+                    ctx.stop();
+                }
+            }
+        };
+    }
+
+    /**
+     * Wrapper for streaming item scorers.
+     */
+    private static class Streaming extends InstrumentedItemScorer implements StreamingItemScorer {
+        Streaming(ItemScorer scorer, MetricRegistry registry) {
+            super(scorer, registry);
+        }
+
+        @Override
+        public void score(long user, @Nonnull LongCollection items,
+                          @Nonnull ScoredItemAccumulator output) {
+            Timer.Context ctx = timer.time();
+            try {
+                ((StreamingItemScorer) delegate).score(user, items, output);
+            } finally {
+                ctx.stop();
+            }
+        }
+    }
+
+    /**
+     * Wrapper for batchable item scorers.  Each user scored in a batch is timed as one
+     * request.
+     */
+    private static class Batchable extends InstrumentedItemScorer implements BatchableItemScorer {
+        Batchable(ItemScorer scorer, MetricRegistry registry) {
+            super(scorer, registry);
+        }
+
+        @Nonnull
+        @Override
+        public UserScorer prepareBatch(@Nonnull LongSortedSet items) {
+            return InstrumentedItemScorer.prepareBatch(delegate, timer, items);
+        }
+    }
+
+    /**
+     * Wrapper for item scorers that are both streaming and batchable.
+     */
+    private static class StreamingBatchable extends Streaming implements BatchableItemScorer {
+        StreamingBatchable(ItemScorer scorer, MetricRegistry registry) {
+            super(scorer, registry);
+        }
+
+        @Nonnull
+        @Override
+        public UserScorer prepareBatch(@Nonnull LongSortedSet items) {
+            return InstrumentedItemScorer.prepareBatch(delegate, timer, items);
+        }
+    }
+}
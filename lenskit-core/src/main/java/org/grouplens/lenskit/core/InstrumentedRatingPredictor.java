@@ -0,0 +1,83 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.core;
+
+import org.grouplens.lenskit.RatingPredictor;
+import org.grouplens.lenskit.util.metrics.MetricRegistry;
+import org.grouplens.lenskit.util.metrics.Timer;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+
+/**
+ * Rating predictor wrapper that times each prediction request in the {@code predict.<class>}
+ * timer.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+class InstrumentedRatingPredictor implements RatingPredictor {
+    private final RatingPredictor delegate;
+    private final Timer timer;
+
+    InstrumentedRatingPredictor(RatingPredictor pred, MetricRegistry registry) {
+        delegate = pred;
+        timer = registry.timer("predict." + pred.getClass().getName());
+    }
+
+    @Override
+    public double predict(long user, long item) {
+        Timer.Context ctx = timer.time();
+        try {
+            return delegate.predict(user, item);
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    @Nonnull
+    @Override
+    public SparseVector predict(long user, @Nonnull Collection<Long> items) {
+        Timer.Context ctx = timer.time();
+        try {
+            return delegate.predict(user, items);
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    @Override
+    public void predict(long user, @Nonnull MutableSparseVector predictions) {
+        Timer.Context ctx = timer.time();
+        try {
+            delegate.predict(user, predictions);
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Instrumented(" + delegate + ")";
+    }
+}
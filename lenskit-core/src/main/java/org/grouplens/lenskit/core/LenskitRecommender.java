@@ -22,6 +22,7 @@ package org.grouplens.lenskit.core;
 
 import org.grouplens.grapht.Injector;
 import org.grouplens.lenskit.*;
+import org.grouplens.lenskit.util.metrics.MetricRegistry;
 
 import java.lang.annotation.Annotation;
 
@@ -35,11 +36,20 @@ import java.lang.annotation.Annotation;
  * recommender (e.g. extract the item-item similarity matrix), this class and its
  * {@link #get(Class)} method can be useful.
  *
+ * <p>If {@linkplain MetricRegistry#isEnabled() instrumentation is enabled} when the recommender
+ * is created, the item scorer, rating predictor, and item recommender returned by its getters
+ * record the latency of each request in the default metric registry.  These getters then
+ * return wrappers rather than the configured implementation classes; the item scorer wrapper
+ * still implements {@link org.grouplens.lenskit.basic.StreamingItemScorer} and
+ * {@link org.grouplens.lenskit.basic.BatchableItemScorer} if the scorer does.
+ * {@link #get(Class)} always returns the components themselves.</p>
+ *
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  * @compat Public
  */
 public class LenskitRecommender implements Recommender {
     private final StaticInjector injector;
+    private final boolean instrumented;
 
     /**
      * Create a new LensKit recommender.
@@ -48,6 +58,7 @@ public class LenskitRecommender implements Recommender {
      */
     public LenskitRecommender(StaticInjector injector) {
         this.injector = injector;
+        instrumented = MetricRegistry.isEnabled();
     }
 
     /**
@@ -81,7 +92,11 @@ public class LenskitRecommender implements Recommender {
 
     @Override
     public ItemScorer getItemScorer() {
-        return get(ItemScorer.class);
+        ItemScorer scorer = get(ItemScorer.class);
+        if (instrumented && scorer != null) {
+            scorer = InstrumentedItemScorer.wrap(scorer, MetricRegistry.getDefault());
+        }
+        return scorer;
     }
 
     @Override
@@ -91,12 +106,20 @@ public class LenskitRecommender implements Recommender {
 
     @Override
     public RatingPredictor getRatingPredictor() {
-        return get(RatingPredictor.class);
+        RatingPredictor pred = get(RatingPredictor.class);
+        if (instrumented && pred != null) {
+            pred = new InstrumentedRatingPredictor(pred, MetricRegistry.getDefault());
+        }
+        return pred;
     }
 
     @Override
     public ItemRecommender getItemRecommender() {
-        return get(ItemRecommender.class);
+        ItemRecommender rec = get(ItemRecommender.class);
+        if (instrumented && rec != null) {
+            rec = new InstrumentedItemRecommender(rec, MetricRegistry.getDefault());
+        }
+        return rec;
     }
 
     @Override
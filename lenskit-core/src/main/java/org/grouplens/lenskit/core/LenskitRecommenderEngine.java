@@ -27,9 +27,17 @@ import org.grouplens.grapht.spi.InjectSPI;
 import org.grouplens.grapht.spi.reflect.ReflectionInjectSPI;
 import org.grouplens.lenskit.RecommenderBuildException;
 import org.grouplens.lenskit.RecommenderEngine;
+import org.grouplens.lenskit.cursors.Cursor;
+import org.grouplens.lenskit.cursors.Cursors;
+import org.grouplens.lenskit.data.event.Event;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillClose;
 import java.io.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * LensKit implementation of a recommender engine.  It uses containers set up by
@@ -49,11 +57,25 @@ public final class LenskitRecommenderEngine implements RecommenderEngine {
 
     private final InjectSPI spi;
 
+    /* the unbuilt graph and the objects built from it, used to update the engine */
+    @Nullable
+    private final RecommenderInstantiator instantiator;
+    @Nullable
+    private final Map<Node, Object> instances;
+
     LenskitRecommenderEngine(Graph dependencies, InjectSPI spi) {
+        this(dependencies, spi, null, null);
+    }
+
+    private LenskitRecommenderEngine(Graph dependencies, InjectSPI spi,
+                                     @Nullable RecommenderInstantiator inst,
+                                     @Nullable Map<Node, Object> built) {
         Preconditions.checkArgument(spi instanceof ReflectionInjectSPI,
                                     "SPI must be a reflection SPI");
         this.dependencies = dependencies;
         this.spi = spi;
+        instantiator = inst;
+        instances = built;
 
         rootNode = dependencies.getNode(null);
     }
@@ -164,7 +186,47 @@ public final class LenskitRecommenderEngine implements RecommenderEngine {
      * @return The recommender engine.
      */
     public static LenskitRecommenderEngine build(LenskitConfiguration config) throws RecommenderBuildException {
-        Graph graph = RecommenderInstantiator.forConfig(config).instantiate();
-        return new LenskitRecommenderEngine(graph, config.getSPI());
+        RecommenderInstantiator inst = RecommenderInstantiator.forConfig(config);
+        Map<Node, Object> built = new HashMap<Node, Object>();
+        Graph graph = inst.instantiate(built);
+        return new LenskitRecommenderEngine(graph, config.getSPI(), inst, built);
+    }
+
+    /**
+     * Query whether this engine can be {@linkplain #update(Cursor) updated}.  Engines
+     * built from a configuration can be updated; engines loaded from a file cannot.
+     *
+     * @return {@code true} if the engine can be updated with new events.
+     * @since 2.1
+     */
+    public boolean isUpdatable() {
+        return instantiator != null;
+    }
+
+    /**
+     * Create a new engine that incorporates new events.  Each event DAO in the configuration is
+     * replaced with one that adds the new events to its data.  Shared components whose
+     * providers implement {@link IncrementalProvider} fold the new events into the models
+     * this engine built; everything else is rebuilt from the updated data.  This engine is
+     * not modified.  The new events are kept in memory along with those of earlier updates
+     * (see {@link org.grouplens.lenskit.data.dao.MergedEventDAO}), so an engine that is
+     * updated indefinitely should periodically be rebuilt from a data source that includes
+     * the new events.
+     *
+     * @param delta The new events.  The cursor is closed.
+     * @return A new engine built on the data with the new events.
+     * @throws RecommenderBuildException if there is an error building the updated engine.
+     * @throws IllegalStateException if the engine was loaded from a file, and therefore
+     *                               does not have the configuration needed to update it.
+     * @since 2.1
+     */
+    public LenskitRecommenderEngine update(@WillClose Cursor<? extends Event> delta) throws RecommenderBuildException {
+        List<Event> events = Cursors.makeList(delta);
+        Preconditions.checkState(instantiator != null && instances != null,
+                                 "engine was loaded without its configuration and cannot be updated");
+        RecommenderInstantiator updated = instantiator.withAddedEvents(events);
+        Map<Node, Object> built = new HashMap<Node, Object>();
+        Graph graph = updated.update(instances, events, built);
+        return new LenskitRecommenderEngine(graph, spi, updated, built);
     }
 }
@@ -28,15 +28,22 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.grouplens.grapht.graph.Edge;
 import org.grouplens.grapht.graph.Graph;
 import org.grouplens.grapht.graph.Node;
+import org.grouplens.grapht.spi.CachePolicy;
 import org.grouplens.grapht.spi.CachedSatisfaction;
 import org.grouplens.grapht.spi.Desire;
 import org.grouplens.grapht.spi.InjectSPI;
 import org.grouplens.grapht.spi.Satisfaction;
 import org.grouplens.lenskit.RecommenderBuildException;
+import org.grouplens.lenskit.data.dao.EventDAO;
+import org.grouplens.lenskit.data.dao.MergedEventDAO;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.util.metrics.MetricRegistry;
+import org.grouplens.lenskit.util.metrics.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import javax.inject.Provider;
 import java.util.*;
 
 /**
@@ -84,6 +91,17 @@ public final class RecommenderInstantiator {
      * @throws RecommenderBuildException If there is an error instantiating the graph.
      */
     public Graph instantiate() throws RecommenderBuildException {
+        return instantiate(new HashMap<Node, Object>());
+    }
+
+    /**
+     * Instantiate the recommender graph, recording the objects built for the shared nodes.
+     *
+     * @param instances A map to receive the object built for each shared node of this
+     *                  instantiator's graph.
+     * @return A new instantiated recommender graph.
+     */
+    Graph instantiate(final Map<Node, Object> instances) {
         final StaticInjector injector = new StaticInjector(spi, graph, null);
         return replaceShareableNodes(new Function<Node, Node>() {
             @Nullable
@@ -93,19 +111,110 @@ public final class RecommenderInstantiator {
                 Preconditions.checkNotNull(node);
                 assert node != null;
                 Object obj = injector.instantiate(node);
-                CachedSatisfaction label = node.getLabel();
-                assert label != null;
-                Satisfaction instanceSat;
+                return makeInstanceNode(node, obj, instances);
+            }
+        });
+    }
+
+    /**
+     * Instantiate the recommender graph after new events have been added, updating the
+     * objects from a previous instantiation where possible.  Shared nodes that have a
+     * previous instance and are satisfied by an {@link IncrementalProvider} are updated
+     * with the new events; all other shared nodes are rebuilt.
+     *
+     * @param previous  The objects built for the shared nodes by the previous instantiation.
+     * @param delta     The new events.
+     * @param instances A map to receive the object built for each shared node.
+     * @return A new instantiated recommender graph.
+     * @see #withAddedEvents(List)
+     */
+    Graph update(final Map<Node, Object> previous, final List<Event> delta,
+                 final Map<Node, Object> instances) {
+        final StaticInjector injector = new StaticInjector(spi, graph, null);
+        return replaceShareableNodes(new Function<Node, Node>() {
+            @Nullable
+            @Override
+            @SuppressFBWarnings("NP_PARAMETER_MUST_BE_NONNULL_BUT_MARKED_AS_NULLABLE")
+            @SuppressWarnings({"rawtypes", "unchecked"})
+            public Node apply(@Nullable Node node) {
+                Preconditions.checkNotNull(node);
+                assert node != null;
+                Object obj = null;
+                Object prev = previous.get(node);
+                if (prev != null) {
+                    Provider<?> provider = injector.instantiateProvider(node);
+                    if (provider instanceof IncrementalProvider) {
+                        Timer.Context timing = null;
+                        if (MetricRegistry.isEnabled()) {
+                            CachedSatisfaction label = node.getLabel();
+                            assert label != null;
+                            String name = "update." + label.getSatisfaction().getErasedType().getName();
+                            timing = MetricRegistry.getDefault().timer(name).time();
+                        }
+                        try {
+                            obj = ((IncrementalProvider) provider).update(prev, delta);
+                        } finally {
+                            if (timing != null) {
+                                timing.stop();
+                            }
+                        }
+                    }
+                }
                 if (obj == null) {
-                    instanceSat = spi.satisfyWithNull(label.getSatisfaction().getErasedType());
+                    obj = injector.instantiate(node);
                 } else {
-                    instanceSat = spi.satisfy(obj);
+                    logger.debug("updated {} with {} events", obj, delta.size());
+                    // make nodes depending on this one use the updated object
+                    injector.setInstance(node, obj);
                 }
-                return new Node(instanceSat, label.getCachePolicy());
+                return makeInstanceNode(node, obj, instances);
             }
         });
     }
 
+    /**
+     * Make a node to replace a shared node with its instance.
+     */
+    private Node makeInstanceNode(Node node, @Nullable Object obj, Map<Node, Object> instances) {
+        CachedSatisfaction label = node.getLabel();
+        assert label != null;
+        Satisfaction instanceSat;
+        if (obj == null) {
+            instanceSat = spi.satisfyWithNull(label.getSatisfaction().getErasedType());
+        } else {
+            instanceSat = spi.satisfy(obj);
+            instances.put(node, obj);
+        }
+        return new Node(instanceSat, label.getCachePolicy());
+    }
+
+    /**
+     * Create an instantiator for this instantiator's graph with events added to its data.
+     * Each event DAO in the graph is replaced with a {@link MergedEventDAO} adding the
+     * events to it; all other nodes are unchanged.
+     *
+     * @param events The events to add.
+     * @return An instantiator for the graph with the new data.
+     */
+    RecommenderInstantiator withAddedEvents(List<Event> events) {
+        Graph modified = graph.clone();
+        StaticInjector injector = new StaticInjector(spi, graph, null);
+        for (Node node: new ArrayList<Node>(modified.getNodes())) {
+            CachedSatisfaction label = node.getLabel();
+            if (label == null || !EventDAO.class.isAssignableFrom(label.getSatisfaction().getErasedType())) {
+                continue;
+            }
+            EventDAO dao = (EventDAO) injector.instantiate(node);
+            if (dao != null) {
+                logger.debug("adding {} events to {}", events.size(), dao);
+                Node repl = new Node(spi.satisfy(MergedEventDAO.create(dao, events)),
+                                     CachePolicy.MEMOIZE);
+                modified.replaceNode(node, repl);
+            }
+        }
+        return new RecommenderInstantiator(spi, modified);
+    }
+
     /**
      * Simulate instantiating a graph.
      * @return The simulated graph.
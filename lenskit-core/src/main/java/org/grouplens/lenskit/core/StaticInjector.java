@@ -26,13 +26,17 @@ import org.grouplens.grapht.graph.Graph;
 import org.grouplens.grapht.graph.Node;
 import org.grouplens.grapht.spi.*;
 import org.grouplens.grapht.util.MemoizingProvider;
+import org.grouplens.grapht.util.Providers;
+import org.grouplens.lenskit.util.metrics.MetricRegistry;
 
 import javax.inject.Provider;
 import java.lang.annotation.Annotation;
 import java.util.*;
 
 /**
- * A Grapht injector that uses a precomputed graph.
+ * A Grapht injector that uses a precomputed graph.  If {@linkplain MetricRegistry#isEnabled()
+ * instrumentation is enabled}, the time to build each component is recorded in the
+ * {@code build.<class>} timer of the default metric registry.
  *
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
@@ -146,6 +150,43 @@ class StaticInjector implements Injector {
         return p.get();
     }
 
+    /**
+     * Use an existing object as the instance of a node.  Subsequent instantiations of
+     * the node, including as a dependency of other nodes, will return this object.
+     *
+     * @param node The node.
+     * @param obj  The object to use for the node.
+     */
+    public synchronized void setInstance(Node node, Object obj) {
+        providerCache.put(node, Providers.of(obj));
+    }
+
+    /**
+     * Get the provider that a node is configured to use, with its dependencies
+     * injected.  This instantiates the provider, but does not invoke it.
+     *
+     * @param node The node.
+     * @return The provider for the node, or {@code null} if the node is not satisfied
+     *         by a provider.
+     */
+    public Provider<?> instantiateProvider(final Node node) {
+        CachedSatisfaction lbl = node.getLabel();
+        assert lbl != null;
+        return lbl.getSatisfaction().visit(new AbstractSatisfactionVisitor<Provider<?>>(null) {
+            @Override
+            public Provider<?> visitProviderClass(Class<? extends Provider<?>> pclass) {
+                // satisfy the provider class as a component; it has the same dependencies
+                Satisfaction psat = spi.satisfy(pclass);
+                return (Provider<?>) psat.makeProvider(new DepSrc(node)).get();
+            }
+
+            @Override
+            public Provider<?> visitProviderInstance(Provider<?> provider) {
+                return provider;
+            }
+        });
+    }
+
     @SuppressWarnings({"rawtypes", "unchecked"})
     private synchronized Provider<?> getProvider(Node node) {
         Provider<?> provider = providerCache.get(node);
@@ -153,6 +194,10 @@ class StaticInjector implements Injector {
             CachedSatisfaction lbl = node.getLabel();
             assert lbl != null;
             provider = lbl.getSatisfaction().makeProvider(new DepSrc(node));
+            if (MetricRegistry.isEnabled() && !lbl.getSatisfaction().hasInstance()) {
+                String name = "build." + lbl.getSatisfaction().getErasedType().getName();
+                provider = new TimedProvider(provider, MetricRegistry.getDefault().timer(name));
+            }
             CachePolicy pol = lbl.getCachePolicy();
             if (pol == CachePolicy.NO_PREFERENCE) {
                 pol = lbl.getSatisfaction().getDefaultCachePolicy();
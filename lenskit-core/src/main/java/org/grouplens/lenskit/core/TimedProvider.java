@@ -0,0 +1,70 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.core;
+
+import org.grouplens.lenskit.util.metrics.Timer;
+
+import javax.inject.Provider;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provider wrapper that records the time taken to build each object in a timer.  Providers
+ * build their dependencies within their own {@link #get()}, so the time spent in nested timed
+ * providers on the same thread is subtracted; each timer therefore records only the time
+ * spent building its own component.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+class TimedProvider<T> implements Provider<T> {
+    /**
+     * The time spent in nested timed providers by the current provider on each thread.
+     */
+    private static final ThreadLocal<long[]> nestedTime = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    private final Provider<T> delegate;
+    private final Timer timer;
+
+    TimedProvider(Provider<T> dlg, Timer tmr) {
+        delegate = dlg;
+        timer = tmr;
+    }
+
+    @Override
+    public T get() {
+        long[] nested = nestedTime.get();
+        long outer = nested[0];
+        nested[0] = 0;
+        long start = System.nanoTime();
+        try {
+            return delegate.get();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            timer.update(elapsed - nested[0], TimeUnit.NANOSECONDS);
+            nested[0] = outer + elapsed;
+        }
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.dao;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Closer;
+import com.google.common.io.Files;
+import org.grouplens.lenskit.cursors.AbstractPollingCursor;
+import org.grouplens.lenskit.cursors.Cursor;
+import org.grouplens.lenskit.cursors.Cursors;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.event.MutableRating;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.Ratings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.WillClose;
+import java.io.*;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Comparator;
+
+/**
+ * Rating DAO backed by a memory-mapped binary rating file.  Ratings are read directly
+ * from the mapped file, so opening the DAO is cheap and streaming ratings does not
+ * parse any text or copy the data set onto the heap.  The mapping may be shared by
+ * any number of concurrent cursors.
+ *
+ * <p>Rating files are written with {@link #write(EventDAO, File, SortOrder)}.  A file
+ * is a header followed by fixed-width columns of rating data, in big-endian byte order:
+ *
+ * <ol>
+ * <li>A header of 24 bytes: the 32-bit magic number {@code LKRF}, the 32-bit format
+ * version, the 32-bit code of the {@linkplain SortOrder sort order} of the ratings,
+ * 32 reserved bits, and the 64-bit number of ratings <i>n</i>.</li>
+ * <li>The <i>n</i> 64-bit user IDs.</li>
+ * <li>The <i>n</i> 64-bit item IDs.</li>
+ * <li>The <i>n</i> 64-bit floating-point rating values (NaN for an unrate event).</li>
+ * <li>The <i>n</i> 64-bit timestamps.</li>
+ * </ol>
+ *
+ * <p>The <i>i</i>th entry of each column belongs to the <i>i</i>th rating.
+ *
+ * <p>Requests for ratings in the order the file was written with (or in
+ * {@link SortOrder#ANY any order}) stream straight from the file; other orders
+ * are sorted in memory, as in {@link SimpleFileRatingDAO}.
+ *
+ * @since 2.1
+ * @compat Experimental
+ */
+public class BinaryRatingDAO implements EventDAO, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(BinaryRatingDAO.class);
+
+    /**
+     * The magic number at the start of rating files ({@code LKRF}).
+     */
+    static final int MAGIC = 0x4C4B5246;
+    /**
+     * The current file format version.
+     */
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 24;
+    /**
+     * The size of a single column entry.
+     */
+    static final int FIELD_SIZE = 8;
+    /**
+     * The number of columns.
+     */
+    static final int COLUMN_COUNT = 4;
+    /**
+     * The number of entries in each mapped segment of a column; segments are kept
+     * below the 2GiB limit on individual mappings.
+     */
+    static final int SEGMENT_RECORDS = 1 << 25;
+
+    private final File sourceFile;
+    private transient SortOrder sortOrder;
+    private transient long ratingCount;
+    private transient LongBuffer[] userColumn;
+    private transient LongBuffer[] itemColumn;
+    private transient DoubleBuffer[] valueColumn;
+    private transient LongBuffer[] timestampColumn;
+
+    private BinaryRatingDAO(File file) throws IOException {
+        sourceFile = file;
+        map();
+    }
+
+    /**
+     * Open a binary rating file.
+     *
+     * @param file The rating file.
+     * @return A DAO reading ratings from the file.
+     * @throws IOException if the file cannot be opened or is not a valid rating file.
+     */
+    public static BinaryRatingDAO open(File file) throws IOException {
+        return new BinaryRatingDAO(file);
+    }
+
+    /**
+     * Get the file backing this DAO.
+     *
+     * @return The rating file.
+     */
+    public File getSourceFile() {
+        return sourceFile;
+    }
+
+    /**
+     * Get the order in which the ratings are stored in the file.
+     *
+     * @return The sort order of the file.
+     */
+    public SortOrder getSortOrder() {
+        return sortOrder;
+    }
+
+    /**
+     * Get the number of ratings in the file.
+     *
+     * @return The number of ratings.
+     */
+    public long getRatingCount() {
+        return ratingCount;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        map();
+    }
+
+    /**
+     * Map the rating file.
+     */
+    private void map() throws IOException {
+        logger.info("mapping ratings from {}", sourceFile);
+        RandomAccessFile raf = new RandomAccessFile(sourceFile, "r");
+        try {
+            if (raf.length() < HEADER_SIZE) {
+                throw new IOException(sourceFile + ": file too short for rating file");
+            }
+            if (raf.readInt() != MAGIC) {
+                throw new IOException(sourceFile + ": not a binary rating file");
+            }
+            int version = raf.readInt();
+            if (version != VERSION) {
+                throw new IOException(sourceFile + ": unsupported rating file version " + version);
+            }
+            sortOrder = decodeOrder(raf.readInt());
+            raf.readInt();
+            ratingCount = raf.readLong();
+            if (sortOrder == null || ratingCount < 0) {
+                throw new IOException(sourceFile + ": invalid rating file header");
+            }
+            long size = HEADER_SIZE + COLUMN_COUNT * FIELD_SIZE * ratingCount;
+            if (raf.length() != size) {
+                throw new IOException(String.format("%s: expected %d bytes, found %d",
+                                                    sourceFile, size, raf.length()));
+            }
+
+            FileChannel chan = raf.getChannel();
+            int nsegs = (int) ((ratingCount + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS);
+            userColumn = new LongBuffer[nsegs];
+            itemColumn = new LongBuffer[nsegs];
+            valueColumn = new DoubleBuffer[nsegs];
+            timestampColumn = new LongBuffer[nsegs];
+            for (int i = 0; i < nsegs; i++) {
+                userColumn[i] = mapSegment(chan, 0, i).asLongBuffer();
+                itemColumn[i] = mapSegment(chan, 1, i).asLongBuffer();
+                valueColumn[i] = mapSegment(chan, 2, i).asDoubleBuffer();
+                timestampColumn[i] = mapSegment(chan, 3, i).asLongBuffer();
+            }
+        } finally {
+            // the mappings remain valid after the file is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * Map a segment of a column.
+     *
+     * @param chan   The file channel.
+     * @param column The column number.
+     * @param seg    The segment number.
+     * @return The mapped segment.
+     */
+    private MappedByteBuffer mapSegment(FileChannel chan, int column, int seg) throws IOException {
+        long first = (long) seg * SEGMENT_RECORDS;
+        long n = Math.min(SEGMENT_RECORDS, ratingCount - first);
+        long start = HEADER_SIZE + FIELD_SIZE * (column * ratingCount + first);
+        return chan.map(FileChannel.MapMode.READ_ONLY, start, FIELD_SIZE * n);
+    }
+
+    @Override
+    public Cursor<Event> streamEvents() {
+        return streamEvents(Event.class, SortOrder.ANY);
+    }
+
+    @Override
+    public <E extends Event> Cursor<E> streamEvents(Class<E> type) {
+        return streamEvents(type, SortOrder.ANY);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <E extends Event> Cursor<E> streamEvents(Class<E> type, SortOrder order) {
+        // if they don't want ratings, they get nothing
+        if (!type.isAssignableFrom(Rating.class)) {
+            return Cursors.empty();
+        }
+
+        Cursor<Rating> cursor = new RatingCursor();
+        Comparator<Event> comp = order.getEventComparator();
+        if (comp == null || order == sortOrder) {
+            return (Cursor<E>) cursor;
+        } else {
+            return (Cursor<E>) Cursors.sort(cursor, comp);
+        }
+    }
+
+    /**
+     * Cursor over the mapped rating columns.
+     */
+    private class RatingCursor extends AbstractPollingCursor<Rating> {
+        private MutableRating rating = new MutableRating();
+        private long position = 0;
+
+        RatingCursor() {
+            super(ratingCount > Integer.MAX_VALUE ? -1 : (int) ratingCount);
+        }
+
+        @Override
+        protected Rating poll() {
+            Preconditions.checkState(rating != null, "cursor is closed");
+            if (position >= ratingCount) {
+                return null;
+            }
+            int seg = (int) (position / SEGMENT_RECORDS);
+            int off = (int) (position % SEGMENT_RECORDS);
+            // absolute reads, so cursors can share the buffers
+            rating.setUserId(userColumn[seg].get(off));
+            rating.setItemId(itemColumn[seg].get(off));
+            rating.setRating(valueColumn[seg].get(off));
+            rating.setTimestamp(timestampColumn[seg].get(off));
+            position += 1;
+            return rating;
+        }
+
+        @Override
+        protected Rating copy(Rating r) {
+            return Ratings.copyBuilder(r).build();
+        }
+
+        @Override
+        public void close() {
+            rating = null;
+        }
+    }
+
+    /**
+     * Write the ratings from a DAO to a binary rating file that can be opened with
+     * {@link #open(File)}.
+     *
+     * @param dao   The DAO whose ratings should be written.
+     * @param file  The file to write.
+     * @param order The order in which to store the ratings.  Storing them in the order
+     *              they will most often be read in ({@link SortOrder#USER} for most
+     *              model builders) avoids sorting them on every read.
+     * @throws IOException if there is an error writing the file.
+     */
+    public static void write(EventDAO dao, File file, SortOrder order) throws IOException {
+        write(dao.streamEvents(Rating.class, order), file, order);
+    }
+
+    /**
+     * Write ratings to a binary rating file.
+     *
+     * @param ratings The ratings to write.  They must be in the order specified by
+     *                {@code order}; this is not checked.  The item, value, and timestamp
+     *                columns are spooled to temporary files next to {@code file} while
+     *                the user column is written.
+     * @param file    The file to write.
+     * @param order   The order of the ratings.
+     * @throws IOException if there is an error writing the file.
+     */
+    public static void write(@WillClose Cursor<Rating> ratings, File file,
+                             SortOrder order) throws IOException {
+        logger.info("writing ratings to {} in {} order", file, order);
+        long n = 0;
+        File dir = file.getAbsoluteFile().getParentFile();
+        File[] spools = new File[COLUMN_COUNT - 1];
+        Closer closer = Closer.create();
+        try {
+            closer.register(ratings);
+            DataOutputStream out = closer.register(openOutput(file));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(encodeOrder(order));
+            out.writeInt(0);
+            // the rating count is filled in when we are done
+            out.writeLong(0);
+
+            DataOutputStream[] spoolOuts = new DataOutputStream[spools.length];
+            try {
+                for (int i = 0; i < spools.length; i++) {
+                    spools[i] = File.createTempFile(file.getName(), ".col", dir);
+                    spoolOuts[i] = openOutput(spools[i]);
+                }
+                for (Rating r: ratings.fast()) {
+                    out.writeLong(r.getUserId());
+                    spoolOuts[0].writeLong(r.getItemId());
+                    spoolOuts[1].writeDouble(r.hasValue() ? r.getValue() : Double.NaN);
+                    spoolOuts[2].writeLong(r.getTimestamp());
+                    n += 1;
+                }
+            } finally {
+                for (DataOutputStream spool: spoolOuts) {
+                    if (spool != null) {
+                        spool.close();
+                    }
+                }
+            }
+
+            for (File spool: spools) {
+                Files.copy(spool, out);
+            }
+        } catch (Throwable th) {
+            throw closer.rethrow(th);
+        } finally {
+            try {
+                closer.close();
+            } finally {
+                for (File spool: spools) {
+                    if (spool != null && !spool.delete()) {
+                        logger.warn("could not delete temporary file {}", spool);
+                    }
+                }
+            }
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(HEADER_SIZE - 8);
+            raf.writeLong(n);
+        } finally {
+            raf.close();
+        }
+        logger.info("wrote {} ratings to {}", n, file);
+    }
+
+    private static DataOutputStream openOutput(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    //CHECKSTYLE:OFF MagicNumber
+    private static int encodeOrder(SortOrder order) {
+        switch (order) {
+        case ANY:
+            return 0;
+        case TIMESTAMP:
+            return 1;
+        case USER:
+            return 2;
+        case ITEM:
+            return 3;
+        default:
+            throw new IllegalArgumentException("unsupported sort order " + order);
+        }
+    }
+
+    private static SortOrder decodeOrder(int code) {
+        switch (code) {
+        case 0:
+            return SortOrder.ANY;
+        case 1:
+            return SortOrder.TIMESTAMP;
+        case 2:
+            return SortOrder.USER;
+        case 3:
+            return SortOrder.ITEM;
+        default:
+            return null;
+        }
+    }
+    //CHECKSTYLE:ON
+}
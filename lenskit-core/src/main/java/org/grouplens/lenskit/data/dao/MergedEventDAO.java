@@ -0,0 +1,174 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.dao;
+
+import com.google.common.collect.ImmutableList;
+import org.grouplens.lenskit.cursors.AbstractPollingCursor;
+import org.grouplens.lenskit.cursors.Cursor;
+import org.grouplens.lenskit.data.event.Event;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Event DAO that adds a collection of new events to the events of another DAO.  This is
+ * used to present the data with newly-arrived events to components that are
+ * {@linkplain org.grouplens.lenskit.core.LenskitRecommenderEngine#update(Cursor) updated}.
+ * Sorted streams are produced by merging the sorted streams of the base DAO and of the
+ * added events.
+ *
+ * <p>The added events are held in memory, and are never folded into the base DAO:
+ * each update of an engine adds its events to those of the previous updates, so the
+ * memory used and the cost of {@link #create(EventDAO, Collection)} grow with the
+ * total number of events added since the engine was built.  Applications that update
+ * an engine indefinitely should periodically store the new events in their own data
+ * source and rebuild the engine from it.
+ *
+ * @since 2.1
+ */
+public final class MergedEventDAO implements EventDAO {
+    private final EventDAO baseDAO;
+    private final List<Event> addedEvents;
+    private final EventDAO addedDAO;
+
+    private MergedEventDAO(EventDAO base, List<Event> added) {
+        baseDAO = base;
+        addedEvents = added;
+        addedDAO = EventCollectionDAO.create(added);
+    }
+
+    /**
+     * Create a DAO adding events to another DAO.  If the base DAO is itself a merged DAO,
+     * the events are added to its events, so that repeated updates do not stack DAOs.
+     * This copies all previously added events, along with the new ones.
+     *
+     * @param base  The base DAO.
+     * @param added The events to add.
+     * @return A DAO providing the events of {@code base} followed by {@code added}.
+     */
+    public static MergedEventDAO create(EventDAO base, Collection<? extends Event> added) {
+        if (base instanceof MergedEventDAO) {
+            MergedEventDAO merged = (MergedEventDAO) base;
+            List<Event> events = ImmutableList.<Event>builder()
+                                              .addAll(merged.addedEvents)
+                                              .addAll(added)
+                                              .build();
+            return new MergedEventDAO(merged.baseDAO, events);
+        } else {
+            return new MergedEventDAO(base, ImmutableList.copyOf(added));
+        }
+    }
+
+    /**
+     * Get the base DAO.
+     * @return The DAO to which events are added.
+     */
+    public EventDAO getBaseDAO() {
+        return baseDAO;
+    }
+
+    /**
+     * Get the added events.
+     * @return The events added to the base DAO.
+     */
+    public List<Event> getAddedEvents() {
+        return addedEvents;
+    }
+
+    @Override
+    public Cursor<Event> streamEvents() {
+        return streamEvents(Event.class, SortOrder.ANY);
+    }
+
+    @Override
+    public <E extends Event> Cursor<E> streamEvents(Class<E> type) {
+        return streamEvents(type, SortOrder.ANY);
+    }
+
+    @Override
+    public <E extends Event> Cursor<E> streamEvents(Class<E> type, SortOrder order) {
+        return new MergingCursor<E>(baseDAO.streamEvents(type, order),
+                                    addedDAO.streamEvents(type, order),
+                                    order.getEventComparator());
+    }
+
+    /**
+     * Cursor merging two cursors.  If there is no comparator, the second cursor's
+     * events follow the first's.
+     */
+    private static class MergingCursor<E extends Event> extends AbstractPollingCursor<E> {
+        private final Cursor<E> first;
+        private final Cursor<E> second;
+        @Nullable
+        private final Comparator<Event> comparator;
+        private E firstHead;
+        private E secondHead;
+
+        MergingCursor(Cursor<E> c1, Cursor<E> c2, @Nullable Comparator<Event> comp) {
+            first = c1;
+            second = c2;
+            comparator = comp;
+        }
+
+        @Override
+        protected E poll() {
+            if (comparator == null) {
+                if (first.hasNext()) {
+                    return first.next();
+                } else if (second.hasNext()) {
+                    return second.next();
+                } else {
+                    return null;
+                }
+            }
+
+            if (firstHead == null && first.hasNext()) {
+                firstHead = first.next();
+            }
+            if (secondHead == null && second.hasNext()) {
+                secondHead = second.next();
+            }
+            E result;
+            if (firstHead == null) {
+                result = secondHead;
+                secondHead = null;
+            } else if (secondHead == null || comparator.compare(firstHead, secondHead) <= 0) {
+                result = firstHead;
+                firstHead = null;
+            } else {
+                result = secondHead;
+                secondHead = null;
+            }
+            return result;
+        }
+
+        @Override
+        public void close() {
+            try {
+                first.close();
+            } finally {
+                second.close();
+            }
+        }
+    }
+}
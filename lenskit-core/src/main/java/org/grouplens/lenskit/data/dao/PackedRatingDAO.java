@@ -0,0 +1,367 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.dao;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.grouplens.lenskit.collections.LongKeyDomain;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.cursors.AbstractPollingCursor;
+import org.grouplens.lenskit.cursors.Cursor;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.RatingBuilder;
+import org.grouplens.lenskit.data.history.AbstractUserHistory;
+import org.grouplens.lenskit.data.history.History;
+import org.grouplens.lenskit.data.history.UserHistory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rating DAO that pre-loads all ratings from an event DAO into packed primitive
+ * arrays.  A single load backs the user, item, user-event and item-event DAO
+ * interfaces, so binding all four to this class shares one copy of the data.
+ *
+ * <p>The ratings are stored in columns (item index, value and timestamp) sorted by
+ * user, with an offset table giving each user's range.  The item-major view is a
+ * permutation of those positions with its own offset table, so each rating costs
+ * 28 bytes regardless of how it is accessed.  The histories and item event lists
+ * returned are views of these arrays; rating objects are only created when the
+ * events are accessed.  Events keep the order in which the event DAO produced them.
+ *
+ * <p>Only ratings are stored; other events from the event DAO are ignored.
+ *
+ * @since 2.1
+ * @compat Experimental
+ */
+public final class PackedRatingDAO implements UserEventDAO, ItemEventDAO, UserDAO, ItemDAO {
+    private static final Logger logger = LoggerFactory.getLogger(PackedRatingDAO.class);
+
+    private final EventDAO eventDAO;
+    private volatile Data data;
+
+    @Inject
+    public PackedRatingDAO(EventDAO dao) {
+        eventDAO = dao;
+    }
+
+    private Data getData() {
+        Data d = data;
+        if (d != null) {
+            return d;
+        }
+
+        synchronized (this) {
+            if (data == null) {
+                data = loadData();
+            }
+            return data;
+        }
+    }
+
+    private Data loadData() {
+        LongArrayList users = new LongArrayList();
+        LongArrayList items = new LongArrayList();
+        DoubleArrayList values = new DoubleArrayList();
+        LongArrayList times = new LongArrayList();
+        int skipped = 0;
+        Cursor<Event> events = eventDAO.streamEvents();
+        try {
+            for (Event evt: events.fast()) {
+                if (evt instanceof Rating) {
+                    Rating r = (Rating) evt;
+                    users.add(r.getUserId());
+                    items.add(r.getItemId());
+                    values.add(r.hasValue() ? r.getValue() : Double.NaN);
+                    times.add(r.getTimestamp());
+                } else {
+                    skipped += 1;
+                }
+            }
+        } finally {
+            events.close();
+        }
+        if (skipped > 0) {
+            logger.warn("ignored {} non-rating events", skipped);
+        }
+        return new Data(users, items, values, times);
+    }
+
+    @Override
+    public LongSet getUserIds() {
+        return getData().userDomain.activeSetView();
+    }
+
+    @Override
+    public LongSet getItemIds() {
+        return getData().itemDomain.activeSetView();
+    }
+
+    @Override
+    public Cursor<UserHistory<Event>> streamEventsByUser() {
+        final Data d = getData();
+        return new AbstractPollingCursor<UserHistory<Event>>(d.userDomain.domainSize()) {
+            int user = 0;
+
+            @Override
+            protected UserHistory<Event> poll() {
+                if (user >= d.userDomain.domainSize()) {
+                    return null;
+                }
+                UserHistory<Event> history = new PackedUserHistory(d, user);
+                user += 1;
+                return history;
+            }
+        };
+    }
+
+    @Override
+    public UserHistory<Event> getEventsForUser(long user) {
+        Data d = getData();
+        int idx = d.userDomain.getIndex(user);
+        if (idx < 0) {
+            return null;
+        } else {
+            return new PackedUserHistory(d, idx);
+        }
+    }
+
+    @Override
+    public <E extends Event> UserHistory<E> getEventsForUser(long user, Class<E> type) {
+        UserHistory<Event> events = getEventsForUser(user);
+        if (events == null) {
+            return null;
+        } else {
+            return events.filter(type);
+        }
+    }
+
+    @Override
+    public List<Event> getEventsForItem(long item) {
+        Data d = getData();
+        int idx = d.itemDomain.getIndex(item);
+        if (idx < 0) {
+            return null;
+        } else {
+            return new ItemEventList(d, idx);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <E extends Event> List<E> getEventsForItem(long item, Class<E> type) {
+        List<Event> events = getEventsForItem(item);
+        if (events == null) {
+            return null;
+        } else if (type.isAssignableFrom(Rating.class)) {
+            return (List<E>) events;
+        } else {
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public LongSet getUsersForItem(long item) {
+        Data d = getData();
+        int idx = d.itemDomain.getIndex(item);
+        if (idx < 0) {
+            return null;
+        }
+        int start = d.itemOffsets[idx];
+        int end = d.itemOffsets[idx + 1];
+        long[] ids = new long[end - start];
+        for (int i = start; i < end; i++) {
+            ids[i - start] = d.userDomain.getKey(d.userIndexes[d.itemPositions[i]]);
+        }
+        return LongUtils.packedSet(ids);
+    }
+
+    /**
+     * The packed rating data.
+     */
+    private static final class Data {
+        final LongKeyDomain userDomain;
+        final LongKeyDomain itemDomain;
+        /* columns, sorted by user */
+        final int[] userOffsets;
+        final int[] userIndexes;
+        final int[] itemIndexes;
+        final double[] values;
+        final long[] timestamps;
+        /* positions in the user-sorted columns, sorted by item */
+        final int[] itemOffsets;
+        final int[] itemPositions;
+
+        Data(LongArrayList users, LongArrayList items, DoubleArrayList vals, LongArrayList times) {
+            final int n = users.size();
+            userDomain = LongKeyDomain.fromCollection(users, true);
+            itemDomain = LongKeyDomain.fromCollection(items, true);
+            final int nusers = userDomain.domainSize();
+            final int nitems = itemDomain.domainSize();
+
+            // counting sort the ratings by user, preserving their original order
+            int[] uidx = new int[n];
+            userOffsets = new int[nusers + 1];
+            for (int i = 0; i < n; i++) {
+                uidx[i] = userDomain.getIndex(users.getLong(i));
+                userOffsets[uidx[i] + 1] += 1;
+            }
+            for (int u = 0; u < nusers; u++) {
+                userOffsets[u + 1] += userOffsets[u];
+            }
+            int[] next = new int[nusers];
+            System.arraycopy(userOffsets, 0, next, 0, nusers);
+            userIndexes = new int[n];
+            itemIndexes = new int[n];
+            values = new double[n];
+            timestamps = new long[n];
+            for (int i = 0; i < n; i++) {
+                int pos = next[uidx[i]]++;
+                userIndexes[pos] = uidx[i];
+                itemIndexes[pos] = itemDomain.getIndex(items.getLong(i));
+                values[pos] = vals.getDouble(i);
+                timestamps[pos] = times.getLong(i);
+            }
+
+            // counting sort the positions by item
+            itemOffsets = new int[nitems + 1];
+            for (int i = 0; i < n; i++) {
+                itemOffsets[itemIndexes[i] + 1] += 1;
+            }
+            for (int j = 0; j < nitems; j++) {
+                itemOffsets[j + 1] += itemOffsets[j];
+            }
+            next = new int[nitems];
+            System.arraycopy(itemOffsets, 0, next, 0, nitems);
+            itemPositions = new int[n];
+            for (int i = 0; i < n; i++) {
+                itemPositions[next[itemIndexes[i]]++] = i;
+            }
+            logger.info("packed {} ratings from {} users for {} items", n, nusers, nitems);
+        }
+
+        Rating makeRating(int pos) {
+            RatingBuilder rb = new RatingBuilder();
+            rb.setUserId(userDomain.getKey(userIndexes[pos]))
+              .setItemId(itemDomain.getKey(itemIndexes[pos]))
+              .setTimestamp(timestamps[pos]);
+            double v = values[pos];
+            if (Double.isNaN(v)) {
+                rb.clearRating();
+            } else {
+                rb.setRating(v);
+            }
+            return rb.build();
+        }
+    }
+
+    /**
+     * View of a user's ratings in the packed arrays.
+     */
+    private static class PackedUserHistory extends AbstractUserHistory<Event> {
+        private final Data data;
+        private final int user;
+        private final int start;
+        private final int end;
+
+        PackedUserHistory(Data d, int uidx) {
+            data = d;
+            user = uidx;
+            start = d.userOffsets[uidx];
+            end = d.userOffsets[uidx + 1];
+        }
+
+        @Override
+        public long getUserId() {
+            return data.userDomain.getKey(user);
+        }
+
+        @Override
+        public Event get(int i) {
+            if (i < 0 || i >= end - start) {
+                throw new IndexOutOfBoundsException("index " + i);
+            }
+            return data.makeRating(start + i);
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T extends Event> UserHistory<T> filter(Class<T> type) {
+            if (type.isAssignableFrom(Rating.class)) {
+                return (UserHistory<T>) this;
+            } else {
+                return History.forUser(getUserId());
+            }
+        }
+
+        @Override
+        public UserHistory<Event> filter(Predicate<? super Event> pred) {
+            List<Event> evts = ImmutableList.copyOf(Iterables.filter(this, pred));
+            if (evts.size() == size()) {
+                return this;
+            } else {
+                return History.forUser(getUserId(), evts);
+            }
+        }
+    }
+
+    /**
+     * View of an item's ratings in the packed arrays.
+     */
+    private static class ItemEventList extends AbstractList<Event> {
+        private final Data data;
+        private final int start;
+        private final int end;
+
+        ItemEventList(Data d, int iidx) {
+            data = d;
+            start = d.itemOffsets[iidx];
+            end = d.itemOffsets[iidx + 1];
+        }
+
+        @Override
+        public Event get(int i) {
+            if (i < 0 || i >= end - start) {
+                throw new IndexOutOfBoundsException("index " + i);
+            }
+            return data.makeRating(data.itemPositions[start + i]);
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+}
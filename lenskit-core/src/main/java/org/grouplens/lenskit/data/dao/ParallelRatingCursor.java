@@ -0,0 +1,394 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.dao;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.grouplens.lenskit.cursors.AbstractPollingCursor;
+import org.grouplens.lenskit.data.event.MutableRating;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.Ratings;
+import org.grouplens.lenskit.util.parallel.ExecHelpers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+/**
+ * Cursor that reads ratings from an uncompressed delimited text file using several
+ * threads.  The file is split into chunks at line boundaries, and the chunks are
+ * parsed in parallel by a byte-level parser that does not create strings for the
+ * lines or their fields.  The file must be in an ASCII-compatible encoding and use
+ * a single-byte delimiter; lines have the same format as for
+ * {@link DelimitedTextRatingCursor} (user, item, rating, and optional timestamp), and
+ * errors are handled the same way: lines with too few fields are logged and skipped,
+ * and malformed numbers throw {@link NumberFormatException}.
+ *
+ * <p>A bounded number of chunks are read ahead of the consumer.  If the cursor is
+ * <em>ordered</em>, ratings are returned in file order; otherwise, each chunk's ratings
+ * are returned as soon as the chunk is parsed, which keeps all threads busy when the
+ * consumer is slow.  The worker threads are stopped when the cursor is closed.
+ *
+ * @since 2.1
+ * @compat Experimental
+ */
+public class ParallelRatingCursor extends AbstractPollingCursor<Rating> {
+    private static final Logger logger = LoggerFactory.getLogger(ParallelRatingCursor.class);
+    /**
+     * The nominal size of the chunks the file is split into.
+     */
+    static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private final File file;
+    private final byte delimiter;
+    private final RandomAccessFile input;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final ExecutorService executor;
+    private final CompletionService<Chunk> completion;
+    private final Queue<Future<Chunk>> pending;
+    private final int maxPending;
+    private final boolean ordered;
+
+    private long nextChunkStart = 0;
+    private Chunk chunk;
+    private int chunkPos;
+    private MutableRating rating = new MutableRating();
+
+    /**
+     * Open a file for reading.
+     *
+     * @param file     The file to read.
+     * @param delim    The field delimiter.  It must be a single ASCII character.
+     * @param nthreads The number of threads to use for parsing; 0 to use one thread per
+     *                 available processor.
+     * @param ordered  Whether to return ratings in file order.
+     * @throws IOException if there is an error opening the file.
+     */
+    public ParallelRatingCursor(File file, char delim, int nthreads, boolean ordered) throws IOException {
+        Preconditions.checkArgument(delim < 128, "delimiter must be an ASCII character");
+        nthreads = ExecHelpers.resolveThreadCount(nthreads);
+        this.file = file;
+        delimiter = (byte) delim;
+        this.ordered = ordered;
+        input = new RandomAccessFile(file, "r");
+        channel = input.getChannel();
+        fileSize = channel.size();
+        logger.debug("reading {} with {} threads", file, nthreads);
+        executor = Executors.newFixedThreadPool(nthreads, new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("rating-reader-%d")
+                .build());
+        completion = new ExecutorCompletionService<Chunk>(executor);
+        pending = new ArrayDeque<Future<Chunk>>();
+        maxPending = 2 * nthreads;
+        fillPending();
+    }
+
+    /**
+     * Submit chunks for parsing until the read-ahead limit is reached.
+     */
+    private void fillPending() throws IOException {
+        while (pending.size() < maxPending && nextChunkStart < fileSize) {
+            long start = nextChunkStart;
+            long end = findLineStart(start + CHUNK_SIZE);
+            nextChunkStart = end;
+            ChunkParser task = new ChunkParser(start, (int) (end - start));
+            // only use the completion service when we consume it, so it doesn't retain chunks
+            pending.add(ordered ? executor.submit(task) : completion.submit(task));
+        }
+    }
+
+    /**
+     * Find the start of the first line at or after a position.
+     */
+    private long findLineStart(long pos) throws IOException {
+        if (pos >= fileSize) {
+            return fileSize;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(256);
+        // scan from the byte before the position, so a line starting at pos is kept
+        long p = pos - 1;
+        while (p < fileSize) {
+            buf.clear();
+            int n = channel.read(buf, p);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') {
+                    return p + i + 1;
+                }
+            }
+            p += n;
+        }
+        return fileSize;
+    }
+
+    @Override
+    protected Rating poll() {
+        Preconditions.checkState(rating != null, "cursor is closed");
+        while (chunk == null || chunkPos >= chunk.size) {
+            chunk = nextChunk();
+            chunkPos = 0;
+            if (chunk == null) {
+                return null;
+            }
+        }
+        rating.setUserId(chunk.users[chunkPos]);
+        rating.setItemId(chunk.items[chunkPos]);
+        rating.setRating(chunk.values[chunkPos]);
+        rating.setTimestamp(chunk.timestamps[chunkPos]);
+        chunkPos += 1;
+        return rating;
+    }
+
+    /**
+     * Get the next parsed chunk.
+     * @return The chunk, or {@code null} if the file is finished.
+     */
+    private Chunk nextChunk() {
+        if (pending.isEmpty()) {
+            return null;
+        }
+        try {
+            Future<Chunk> result;
+            if (ordered) {
+                result = pending.remove();
+            } else {
+                result = completion.take();
+                pending.remove(result);
+            }
+            Chunk c = result.get();
+            fillPending();
+            return c;
+        } catch (ExecutionException e) {
+            Throwable cause = ExecHelpers.unwrapExecutionException(e);
+            Throwables.propagateIfPossible(cause);
+            throw new DataAccessException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("interrupted reading " + file, e);
+        } catch (IOException e) {
+            throw new DataAccessException(e);
+        }
+    }
+
+    @Override
+    protected Rating copy(Rating r) {
+        return Ratings.copyBuilder(r).build();
+    }
+
+    @Override
+    public void close() {
+        rating = null;
+        chunk = null;
+        executor.shutdownNow();
+        try {
+            input.close();
+        } catch (IOException e) {
+            throw new DataAccessException(e);
+        }
+    }
+
+    /**
+     * A block of parsed ratings.
+     */
+    private static final class Chunk {
+        final long[] users;
+        final long[] items;
+        final double[] values;
+        final long[] timestamps;
+        int size;
+
+        Chunk(int capacity) {
+            users = new long[capacity];
+            items = new long[capacity];
+            values = new double[capacity];
+            timestamps = new long[capacity];
+        }
+    }
+
+    /**
+     * Task to read and parse a chunk of the file.
+     */
+    private class ChunkParser implements Callable<Chunk> {
+        private final long offset;
+        private final int length;
+        private final int[] bounds = new int[8];
+
+        ChunkParser(long off, int len) {
+            offset = off;
+            length = len;
+        }
+
+        @Override
+        public Chunk call() throws IOException {
+            byte[] bytes = new byte[length];
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            while (buf.hasRemaining()) {
+                int n = channel.read(buf, offset + buf.position());
+                if (n < 0) {
+                    throw new IOException(file + ": unexpected end of file");
+                }
+            }
+
+            int nlines = 0;
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] == '\n') {
+                    nlines += 1;
+                }
+            }
+            if (length > 0 && bytes[length - 1] != '\n') {
+                nlines += 1;
+            }
+
+            Chunk c = new Chunk(nlines);
+            int pos = 0;
+            while (pos < length) {
+                int eol = pos;
+                while (eol < length && bytes[eol] != '\n') {
+                    eol++;
+                }
+                int end = eol;
+                if (end > pos && bytes[end - 1] == '\r') {
+                    end--;
+                }
+                parseLine(bytes, pos, end, c);
+                pos = eol + 1;
+            }
+            return c;
+        }
+
+        //CHECKSTYLE:OFF MagicNumber
+        private void parseLine(byte[] bytes, int start, int end, Chunk c) {
+            int nfields = 0;
+            int fstart = start;
+            for (int i = start; i <= end && nfields < 4; i++) {
+                if (i == end || bytes[i] == delimiter) {
+                    bounds[2 * nfields] = fstart;
+                    bounds[2 * nfields + 1] = i;
+                    nfields++;
+                    fstart = i + 1;
+                }
+            }
+            if (nfields < 3) {
+                logger.error("{}: byte {}: invalid input, skipping line", file, offset + start);
+                return;
+            }
+            int n = c.size;
+            try {
+                c.users[n] = parseLong(bytes, bounds[0], bounds[1]);
+                c.items[n] = parseLong(bytes, bounds[2], bounds[3]);
+                c.values[n] = parseDouble(bytes, bounds[4], bounds[5]);
+                c.timestamps[n] = nfields >= 4 && bounds[6] < bounds[7]
+                        ? parseLong(bytes, bounds[6], bounds[7]) : -1;
+            } catch (NumberFormatException e) {
+                // report the position, but throw the same exception as the sequential cursor
+                NumberFormatException ex = new NumberFormatException(
+                        String.format("%s: byte %d: %s", file, offset + start, e.getMessage()));
+                ex.initCause(e);
+                throw ex;
+            }
+            c.size = n + 1;
+        }
+        //CHECKSTYLE:ON
+    }
+
+    //CHECKSTYLE:OFF MagicNumber
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+            1e21, 1e22
+    };
+
+    /**
+     * Parse a decimal integer from a range of bytes.
+     */
+    static long parseLong(byte[] bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            // empty, or possibly out of range; let the JDK sort it out
+            return Long.parseLong(new String(bytes, start, end - start));
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int d = bytes[i] - '0';
+            if (d < 0 || d > 9) {
+                throw new NumberFormatException("invalid integer " + new String(bytes, start, end - start));
+            }
+            value = value * 10 + d;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse a floating-point number from a range of bytes.  Plain decimals with at most
+     * 15 significant digits are parsed directly; dividing their exact integer mantissa
+     * by an exact power of ten gives the same (correctly-rounded) result as
+     * {@link Double#parseDouble(String)}, which is used for everything else.
+     */
+    static double parseDouble(byte[] bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int ndigits = 0;
+        int scale = 0;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                ndigits++;
+                if (seenPoint) {
+                    scale++;
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (i < end || ndigits == 0 || ndigits > 15 || scale >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(new String(bytes, start, end - start));
+        }
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+    //CHECKSTYLE:ON
+}
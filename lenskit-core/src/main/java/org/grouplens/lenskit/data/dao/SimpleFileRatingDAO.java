@@ -21,6 +21,7 @@
 
 package org.grouplens.lenskit.data.dao;
 
+import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.io.Closeables;
 import org.grouplens.lenskit.cursors.Cursor;
@@ -50,6 +51,7 @@ public class SimpleFileRatingDAO implements EventDAO {
     private final File sourceFile;
     private final String delimiter;
     private final CompressionMode compression;
+    private final int readThreads;
 
     /**
      * Create a DAO reading from the specified file/URL and delimiter.
@@ -61,9 +63,14 @@ public class SimpleFileRatingDAO implements EventDAO {
      */
     @Deprecated
     public SimpleFileRatingDAO(File file, String delim, CompressionMode comp) {
+        this(file, delim, comp, 1);
+    }
+
+    private SimpleFileRatingDAO(File file, String delim, CompressionMode comp, int threads) {
         sourceFile = file;
         delimiter = delim;
         compression = comp;
+        readThreads = threads;
     }
 
 
@@ -81,6 +88,26 @@ public class SimpleFileRatingDAO implements EventDAO {
         return sfrd;
     }
 
+    /**
+     * Create a DAO reading from the specified file/URL and delimiter, parsing the file
+     * with multiple threads.  Parallel parsing is only used for uncompressed files with
+     * a single-character ASCII delimiter; other files are read sequentially.  Ratings
+     * are still returned in file order.
+     *
+     * @param file      The file.
+     * @param delim     The delimiter to look for in the file.
+     * @param comp      Whether the input is compressed.
+     * @param threads   The number of threads to use for parsing (0 to use all available
+     *                  processors, 1 to read the file sequentially).
+     * @return          A SimpleFileRatingDao Object
+     * @see ParallelRatingCursor
+     * @since 2.1
+     */
+    public static SimpleFileRatingDAO create(File file, String delim, CompressionMode comp, int threads) {
+        Preconditions.checkArgument(threads >= 0, "thread count cannot be negative");
+        return new SimpleFileRatingDAO(file, delim, comp, threads);
+    }
+
     /**
      * Create a DAO reading from the specified file and delimiter.
      *
@@ -130,6 +157,20 @@ public class SimpleFileRatingDAO implements EventDAO {
 
         Comparator<Event> comp = order.getEventComparator();
 
+        if (canReadInParallel()) {
+            Cursor<Rating> cursor;
+            try {
+                cursor = new ParallelRatingCursor(sourceFile, delimiter.charAt(0), readThreads, true);
+            } catch (IOException e) {
+                throw new DataAccessException(e);
+            }
+            if (comp == null) {
+                return (Cursor<E>) cursor;
+            } else {
+                return (Cursor<E>) Cursors.sort(cursor, comp);
+            }
+        }
+
         Reader input = null;
         final String name = sourceFile.getPath();
         logger.debug("Opening {}", sourceFile.getPath());
@@ -161,4 +202,21 @@ public class SimpleFileRatingDAO implements EventDAO {
             throw new DataAccessException(th);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Query whether the file can be read with a {@link ParallelRatingCursor}.
+     */
+    private boolean canReadInParallel() {
+        if (readThreads == 1 || delimiter.length() != 1 || delimiter.charAt(0) >= 128) {
+            return false;
+        }
+        switch (compression) {
+        case NONE:
+            return true;
+        case AUTO:
+            return !LKFileUtils.isCompressed(sourceFile);
+        default:
+            return false;
+        }
+    }
+}
@@ -26,32 +26,55 @@ import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import org.grouplens.lenskit.collections.FastCollection;
 import org.grouplens.lenskit.data.pref.IndexedPreference;
 import org.grouplens.lenskit.data.pref.Preferences;
+import org.grouplens.lenskit.util.metrics.Counter;
+import org.grouplens.lenskit.util.metrics.MetricRegistry;
 import org.grouplens.lenskit.vectors.SparseVector;
 
+import javax.annotation.Nullable;
 import javax.annotation.OverridingMethodsMustInvokeSuper;
 
 /**
- * Base class for implementing preference snapshots.
+ * Base class for implementing preference snapshots.  If {@linkplain MetricRegistry#isEnabled()
+ * instrumentation is enabled}, hits and misses of the user vector cache are counted in the
+ * {@code cache.snapshot-user-vectors} counters.
  */
 public abstract class AbstractPreferenceSnapshot implements PreferenceSnapshot {
     /**
      * The user vector cache.
      */
     protected volatile Long2ObjectMap<SparseVector> cache;
+    @Nullable
+    private final Counter cacheHits;
+    @Nullable
+    private final Counter cacheMisses;
 
     /**
      * Initialize the snapshot.
      */
     public AbstractPreferenceSnapshot() {
         cache = Long2ObjectMaps.synchronize(new Long2ObjectOpenHashMap<SparseVector>());
+        if (MetricRegistry.isEnabled()) {
+            MetricRegistry registry = MetricRegistry.getDefault();
+            cacheHits = registry.counter("cache.snapshot-user-vectors.hit");
+            cacheMisses = registry.counter("cache.snapshot-user-vectors.miss");
+        } else {
+            cacheHits = null;
+            cacheMisses = null;
+        }
     }
 
     @Override
     public SparseVector userRatingVector(long userId) {
         SparseVector data = cache.get(userId);
         if (data != null) {
+            if (cacheHits != null) {
+                cacheHits.increment();
+            }
             return data;
         } else {
+            if (cacheMisses != null) {
+                cacheMisses.increment();
+            }
             FastCollection<IndexedPreference> prefs = this.getUserRatings(userId);
             data = Preferences.userPreferenceVector(prefs).freeze();
             cache.put(userId, data);
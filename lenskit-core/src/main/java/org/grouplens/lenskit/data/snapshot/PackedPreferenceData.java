@@ -92,6 +92,16 @@ final class PackedPreferenceData {
         return new IndirectPreference(index);
     }
 
+    /**
+     * Get a bulk primitive view of the data pack.
+     *
+     * @return A rating matrix backed by this data pack's arrays.
+     */
+    public RatingMatrix ratingMatrix() {
+        return new RatingMatrix(users, items, values, nprefs, CHUNK_SHIFT,
+                                userIndex, itemIndex);
+    }
+
     /**
      * Get the user index mapping between user IDs and indexes.
      *
@@ -54,7 +54,7 @@ import java.util.Random;
  */
 @DefaultProvider(PackedPreferenceSnapshot.Provider.class)
 @Shareable
-public class PackedPreferenceSnapshot extends AbstractPreferenceSnapshot {
+public class PackedPreferenceSnapshot extends AbstractPreferenceSnapshot implements RatingMatrixSource {
     private static final Logger logger = LoggerFactory.getLogger(PackedPreferenceSnapshot.class);
 
     /**
@@ -204,6 +204,12 @@ public class PackedPreferenceSnapshot extends AbstractPreferenceSnapshot {
         return new PackedPreferenceCollection(data);
     }
 
+    @Override
+    public RatingMatrix getRatingMatrix() {
+        requireValid();
+        return data.ratingMatrix();
+    }
+
     @Override
     public FastCollection<IndexedPreference> getUserRatings(long userId) {
         int uidx = userIndex().getIndex(userId);
@@ -0,0 +1,231 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.snapshot;
+
+import org.grouplens.lenskit.collections.CollectionUtils;
+import org.grouplens.lenskit.collections.FastCollection;
+import org.grouplens.lenskit.data.pref.IndexedPreference;
+import org.grouplens.lenskit.util.Index;
+
+/**
+ * Bulk primitive view of the ratings in a preference snapshot, for training loops
+ * that need to make many passes over all ratings.  The ratings are stored in
+ * chunks of parallel arrays of user indexes, item indexes, and values; the
+ * rating at position {@code j} of chunk {@code c} has the preference index
+ * {@code getChunkOffset(c) + j} (the same index as
+ * {@link org.grouplens.lenskit.data.pref.IndexedPreference#getIndex()} in
+ * {@link PreferenceSnapshot#getRatings()}).  A typical loop looks like this:
+ *
+ * <pre>{@code
+ * for (int c = 0; c < matrix.getChunkCount(); c++) {
+ *     final int[] users = matrix.getUserIndexes(c);
+ *     final int[] items = matrix.getItemIndexes(c);
+ *     final double[] values = matrix.getValues(c);
+ *     final int n = matrix.getChunkSize(c);
+ *     for (int j = 0; j < n; j++) {
+ *         // process rating (users[j], items[j], values[j])
+ *     }
+ * }
+ * }</pre>
+ *
+ * <p>Use {@link #fromSnapshot(PreferenceSnapshot)} to get the matrix of a snapshot.
+ * The arrays may be the snapshot's own storage and <strong>must not</strong> be
+ * modified.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+public final class RatingMatrix {
+    /**
+     * The chunk size (as a power of 2) of matrices copied from snapshots.
+     */
+    private static final int DEFAULT_CHUNK_SHIFT = 12;
+
+    private final int[][] users;
+    private final int[][] items;
+    private final double[][] values;
+    private final int size;
+    private final int chunkShift;
+    private final Index userIndex;
+    private final Index itemIndex;
+
+    /**
+     * Construct a new rating matrix.
+     *
+     * @param us     The user index chunks.
+     * @param is     The item index chunks.
+     * @param vs     The value chunks.
+     * @param n      The number of ratings.
+     * @param shift  The log (base 2) of the chunk size.
+     * @param uidx   The user index.
+     * @param iidx   The item index.
+     */
+    RatingMatrix(int[][] us, int[][] is, double[][] vs, int n, int shift,
+                 Index uidx, Index iidx) {
+        users = us;
+        items = is;
+        values = vs;
+        size = n;
+        chunkShift = shift;
+        userIndex = uidx;
+        itemIndex = iidx;
+    }
+
+    /**
+     * Get the rating matrix of a snapshot.  If the snapshot is a {@link RatingMatrixSource},
+     * its own matrix is used; otherwise, the snapshot's ratings are copied into a new
+     * matrix.
+     *
+     * @param snapshot The snapshot.
+     * @return The rating matrix of the snapshot.
+     */
+    public static RatingMatrix fromSnapshot(PreferenceSnapshot snapshot) {
+        if (snapshot instanceof RatingMatrixSource) {
+            return ((RatingMatrixSource) snapshot).getRatingMatrix();
+        } else {
+            return create(snapshot.getRatings(), snapshot.userIndex(), snapshot.itemIndex());
+        }
+    }
+
+    /**
+     * Create a rating matrix by copying a collection of ratings.
+     *
+     * @param ratings The ratings.  Their indexes must be distinct and in the range
+     *                [0,n), where n is the number of ratings (as guaranteed by
+     *                {@link PreferenceSnapshot#getRatings()}).
+     * @param uidx    The user index, for the preferences' user indexes.
+     * @param iidx    The item index, for the preferences' item indexes.
+     * @return A new rating matrix.
+     */
+    public static RatingMatrix create(FastCollection<IndexedPreference> ratings,
+                                      Index uidx, Index iidx) {
+        final int n = ratings.size();
+        final int chunkSize = 1 << DEFAULT_CHUNK_SHIFT;
+        final int nchunks = (n + chunkSize - 1) >> DEFAULT_CHUNK_SHIFT;
+        int[][] us = new int[nchunks][];
+        int[][] is = new int[nchunks][];
+        double[][] vs = new double[nchunks][];
+        for (int c = 0; c < nchunks; c++) {
+            int len = Math.min(chunkSize, n - (c << DEFAULT_CHUNK_SHIFT));
+            us[c] = new int[len];
+            is[c] = new int[len];
+            vs[c] = new double[len];
+        }
+        for (IndexedPreference pref: CollectionUtils.fast(ratings)) {
+            final int idx = pref.getIndex();
+            if (idx < 0 || idx >= n) {
+                throw new IllegalArgumentException("preference index " + idx + " out of range");
+            }
+            final int c = idx >> DEFAULT_CHUNK_SHIFT;
+            final int j = idx & (chunkSize - 1);
+            us[c][j] = pref.getUserIndex();
+            is[c][j] = pref.getItemIndex();
+            vs[c][j] = pref.getValue();
+        }
+        return new RatingMatrix(us, is, vs, n, DEFAULT_CHUNK_SHIFT, uidx, iidx);
+    }
+
+    /**
+     * Get the number of ratings.
+     *
+     * @return The number of ratings in the matrix.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the number of chunks.
+     *
+     * @return The number of chunks holding ratings.
+     */
+    public int getChunkCount() {
+        return (size + (1 << chunkShift) - 1) >> chunkShift;
+    }
+
+    /**
+     * Get the preference index of the first rating in a chunk.
+     *
+     * @param chunk The chunk number.
+     * @return The index of the chunk's first rating.
+     */
+    public int getChunkOffset(int chunk) {
+        return chunk << chunkShift;
+    }
+
+    /**
+     * Get the number of ratings in a chunk.  The chunk's arrays may be longer than this.
+     *
+     * @param chunk The chunk number.
+     * @return The number of ratings in the chunk.
+     */
+    public int getChunkSize(int chunk) {
+        return Math.min(size - getChunkOffset(chunk), 1 << chunkShift);
+    }
+
+    /**
+     * Get the user indexes of a chunk's ratings.
+     *
+     * @param chunk The chunk number.
+     * @return The user indexes (with respect to {@link #userIndex()}).
+     */
+    public int[] getUserIndexes(int chunk) {
+        return users[chunk];
+    }
+
+    /**
+     * Get the item indexes of a chunk's ratings.
+     *
+     * @param chunk The chunk number.
+     * @return The item indexes (with respect to {@link #itemIndex()}).
+     */
+    public int[] getItemIndexes(int chunk) {
+        return items[chunk];
+    }
+
+    /**
+     * Get the values of a chunk's ratings.
+     *
+     * @param chunk The chunk number.
+     * @return The rating values.
+     */
+    public double[] getValues(int chunk) {
+        return values[chunk];
+    }
+
+    /**
+     * Get the user index.
+     *
+     * @return The index mapping between user IDs and user indexes.
+     */
+    public Index userIndex() {
+        return userIndex;
+    }
+
+    /**
+     * Get the item index.
+     *
+     * @return The index mapping between item IDs and item indexes.
+     */
+    public Index itemIndex() {
+        return itemIndex;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.snapshot;
+
+/**
+ * A preference snapshot that can provide a {@link RatingMatrix} view of its ratings
+ * directly from its own storage.  This is optional: {@link RatingMatrix#fromSnapshot(PreferenceSnapshot)}
+ * copies the ratings of snapshots that do not implement it.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+public interface RatingMatrixSource extends PreferenceSnapshot {
+    /**
+     * Get a bulk primitive view of the ratings in the snapshot.  This contains the
+     * same ratings as {@link #getRatings()}, with the same indexes, and is intended
+     * for training loops that iterate over all ratings many times.
+     *
+     * @return The rating matrix.
+     */
+    RatingMatrix getRatingMatrix();
+}
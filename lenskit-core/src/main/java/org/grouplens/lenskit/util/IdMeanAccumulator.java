@@ -28,18 +28,38 @@ import org.grouplens.lenskit.vectors.ImmutableSparseVector;
 import org.grouplens.lenskit.vectors.MutableSparseVector;
 import org.grouplens.lenskit.vectors.VectorEntry;
 
+import java.io.Serializable;
+
 /**
  * An accumulator for means associated with IDs.
  *
  * @since 1.1
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
-public final class IdMeanAccumulator {
+public final class IdMeanAccumulator implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private Long2DoubleMap sums = new Long2DoubleOpenHashMap();
     private Long2IntMap counts = new Long2IntOpenHashMap();
     private double globalSum;
     private int globalCount;
 
+    /**
+     * Create a copy of this accumulator.  Values put in the copy do not affect this
+     * accumulator, so a copy can be used to add new values to a finished accumulation.
+     *
+     * @return A copy of this accumulator.
+     * @since 2.1
+     */
+    public IdMeanAccumulator copy() {
+        IdMeanAccumulator acc = new IdMeanAccumulator();
+        acc.sums = new Long2DoubleOpenHashMap(sums);
+        acc.counts = new Long2IntOpenHashMap(counts);
+        acc.globalSum = globalSum;
+        acc.globalCount = globalCount;
+        return acc;
+    }
+
     /**
      * Accumulate a value with an ID.
      * @param id The ID.
@@ -0,0 +1,274 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A histogram of long values.  The count, minimum, maximum, and mean are exact; quantiles
+ * are estimated from a uniform sample of the recorded values (Vitter's algorithm R), so the
+ * histogram uses constant memory no matter how many values are recorded.
+ *
+ * <p>To keep concurrent updates from contending on a single lock, the histogram is split
+ * into stripes, each with its own lock, statistics, and sample; a thread always updates the
+ * same stripe.  Readers combine the stripes, drawing from each stripe's sample in proportion
+ * to the number of values it has recorded.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+public final class Histogram implements Metric, HistogramMXBean {
+    /**
+     * The default sample size.  This gives a 99.9% confidence level with a 5% margin of
+     * error for a normal distribution.
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 1028;
+    /**
+     * The maximum number of stripes.
+     */
+    private static final int MAX_STRIPES = 16;
+
+    private final int sampleSize;
+    private final Stripe[] stripes;
+
+    /**
+     * Create a histogram with the default sample size.
+     */
+    public Histogram() {
+        this(DEFAULT_SAMPLE_SIZE);
+    }
+
+    /**
+     * Create a histogram.
+     *
+     * @param sampleSize The number of values to keep for estimating quantiles.
+     */
+    public Histogram(int sampleSize) {
+        Preconditions.checkArgument(sampleSize > 0, "sample size must be positive");
+        this.sampleSize = sampleSize;
+        int nstripes = Math.min(Runtime.getRuntime().availableProcessors(), MAX_STRIPES);
+        stripes = new Stripe[Math.max(nstripes, 1)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Record a value.
+     *
+     * @param value The value to record.
+     */
+    public void update(long value) {
+        int i = (int) (Thread.currentThread().getId() % stripes.length);
+        stripes[i].update(value);
+    }
+
+    @Override
+    public long getCount() {
+        long count = 0;
+        for (Stripe stripe: stripes) {
+            synchronized (stripe) {
+                count += stripe.count;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long getMin() {
+        long min = 0;
+        boolean found = false;
+        for (Stripe stripe: stripes) {
+            synchronized (stripe) {
+                if (stripe.count > 0 && (!found || stripe.min < min)) {
+                    min = stripe.min;
+                    found = true;
+                }
+            }
+        }
+        return min;
+    }
+
+    @Override
+    public long getMax() {
+        long max = 0;
+        boolean found = false;
+        for (Stripe stripe: stripes) {
+            synchronized (stripe) {
+                if (stripe.count > 0 && (!found || stripe.max > max)) {
+                    max = stripe.max;
+                    found = true;
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Get the sum of the recorded values.
+     * @return The sum of the recorded values.
+     */
+    public double getSum() {
+        double sum = 0;
+        for (Stripe stripe: stripes) {
+            synchronized (stripe) {
+                sum += stripe.sum;
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public double getMean() {
+        long count = 0;
+        double sum = 0;
+        for (Stripe stripe: stripes) {
+            synchronized (stripe) {
+                count += stripe.count;
+                sum += stripe.sum;
+            }
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * Estimate a quantile of the recorded values.  The quantile is interpolated between the
+     * nearest values in the sample.
+     *
+     * @param q The quantile, in the range [0,1].
+     * @return The estimated quantile, or 0 if no values have been recorded.
+     */
+    public double getQuantile(double q) {
+        Preconditions.checkArgument(q >= 0 && q <= 1, "quantile out of range");
+        long[] values = getSample();
+        if (values.length == 0) {
+            return 0;
+        }
+        Arrays.sort(values);
+        double pos = q * (values.length - 1);
+        int lower = (int) Math.floor(pos);
+        int upper = (int) Math.ceil(pos);
+        return values[lower] + (pos - lower) * (values[upper] - values[lower]);
+    }
+
+    /**
+     * Combine the stripes' samples into a single uniform sample of the recorded values.
+     *
+     * @return The sample (unsorted).
+     */
+    private long[] getSample() {
+        long[][] samples = new long[stripes.length][];
+        long[] counts = new long[stripes.length];
+        long total = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe stripe = stripes[i];
+            synchronized (stripe) {
+                counts[i] = stripe.count;
+                samples[i] = stripe.sample == null
+                        ? new long[0]
+                        : Arrays.copyOf(stripe.sample, (int) Math.min(stripe.count, sampleSize));
+            }
+            total += counts[i];
+        }
+
+        long[] values = new long[(int) Math.min(total, sampleSize)];
+        int n = 0;
+        Random random = new Random();
+        for (int i = 0; i < samples.length && n < values.length; i++) {
+            long[] part = samples[i];
+            // take a share of the sample proportional to the stripe's share of the values
+            int k = (int) Math.min(part.length, (double) values.length * counts[i] / total);
+            k = Math.min(k, values.length - n);
+            if (k < part.length) {
+                // partial shuffle to pick k random entries of the stripe's sample
+                for (int j = 0; j < k; j++) {
+                    int pick = j + random.nextInt(part.length - j);
+                    long tmp = part[j];
+                    part[j] = part[pick];
+                    part[pick] = tmp;
+                }
+            }
+            System.arraycopy(part, 0, values, n, k);
+            n += k;
+        }
+        return Arrays.copyOf(values, n);
+    }
+
+    @Override
+    public double getMedian() {
+        return getQuantile(0.5);
+    }
+
+    @Override
+    public double get95thPercentile() {
+        return getQuantile(0.95);
+    }
+
+    @Override
+    public double get99thPercentile() {
+        return getQuantile(0.99);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Histogram(n=%d, mean=%.2f, median=%.2f, p99=%.2f)",
+                             getCount(), getMean(), getMedian(), get99thPercentile());
+    }
+
+    /**
+     * One stripe of the histogram.  All fields are guarded by the stripe's monitor.
+     */
+    private final class Stripe {
+        private long[] sample;
+        private Random random;
+        private long count;
+        private long min;
+        private long max;
+        private double sum;
+
+        synchronized void update(long value) {
+            if (count == 0) {
+                // allocated lazily, so stripes no thread uses take no space
+                sample = new long[sampleSize];
+                random = new Random();
+                min = value;
+                max = value;
+            } else if (value < min) {
+                min = value;
+            } else if (value > max) {
+                max = value;
+            }
+            count += 1;
+            sum += value;
+            if (count <= sampleSize) {
+                sample[(int) (count - 1)] = value;
+            } else {
+                long slot = (long) (random.nextDouble() * count);
+                if (slot < sampleSize) {
+                    sample[(int) slot] = value;
+                }
+            }
+        }
+    }
+}
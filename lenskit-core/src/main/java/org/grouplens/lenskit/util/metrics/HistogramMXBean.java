@@ -0,0 +1,71 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+/**
+ * Management interface for {@link Histogram}.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+public interface HistogramMXBean {
+    /**
+     * Get the number of values recorded.
+     * @return The number of values recorded.
+     */
+    long getCount();
+
+    /**
+     * Get the smallest value recorded.
+     * @return The minimum value, or 0 if no values have been recorded.
+     */
+    long getMin();
+
+    /**
+     * Get the largest value recorded.
+     * @return The maximum value, or 0 if no values have been recorded.
+     */
+    long getMax();
+
+    /**
+     * Get the mean of the recorded values.
+     * @return The mean value, or 0 if no values have been recorded.
+     */
+    double getMean();
+
+    /**
+     * Get the median of the recorded values.
+     * @return The (estimated) median.
+     */
+    double getMedian();
+
+    /**
+     * Get the 95th percentile of the recorded values.
+     * @return The (estimated) 95th percentile.
+     */
+    double get95thPercentile();
+
+    /**
+     * Get the 99th percentile of the recorded values.
+     * @return The (estimated) 99th percentile.
+     */
+    double get99thPercentile();
+}
@@ -0,0 +1,133 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.*;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Publish the metrics of a registry as JMX MXBeans.  Each metric is registered with the
+ * object name {@code <domain>:type=<type>,name=<metric name>} as soon as it is added to the
+ * registry.  For example, to make LensKit's metrics visible in JConsole:
+ *
+ * <pre>{@code
+ * MetricRegistry.setEnabled(true);
+ * new JmxMetricExporter().start(MetricRegistry.getDefault());
+ * }</pre>
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+public class JmxMetricExporter implements MetricListener, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(JmxMetricExporter.class);
+    /**
+     * The default JMX domain for metrics.
+     */
+    public static final String DEFAULT_DOMAIN = "org.grouplens.lenskit";
+
+    private final MBeanServer server;
+    private final String domain;
+    private final List<ObjectName> registered = new ArrayList<ObjectName>();
+    private MetricRegistry registry;
+
+    /**
+     * Create an exporter that publishes to the platform MBean server.
+     */
+    public JmxMetricExporter() {
+        this(ManagementFactory.getPlatformMBeanServer(), DEFAULT_DOMAIN);
+    }
+
+    /**
+     * Create an exporter.
+     *
+     * @param srv The MBean server to publish to.
+     * @param dom The JMX domain for metric names.
+     */
+    public JmxMetricExporter(MBeanServer srv, String dom) {
+        server = srv;
+        domain = dom;
+    }
+
+    /**
+     * Start publishing a registry's metrics.
+     *
+     * @param reg The registry to publish.
+     * @return The exporter (for chaining).
+     * @throws IllegalStateException if the exporter has already been started.
+     */
+    public synchronized JmxMetricExporter start(MetricRegistry reg) {
+        if (registry != null) {
+            throw new IllegalStateException("exporter already started");
+        }
+        registry = reg;
+        reg.addListener(this);
+        return this;
+    }
+
+    /**
+     * Get the JMX name of a metric.
+     *
+     * @param name   The metric name.
+     * @param metric The metric.
+     * @return The object name under which the metric is registered.
+     * @throws MalformedObjectNameException if the name cannot be encoded.
+     */
+    public ObjectName getObjectName(String name, Metric metric) throws MalformedObjectNameException {
+        return new ObjectName(domain + ":type=" + metric.getClass().getSimpleName()
+                              + ",name=" + ObjectName.quote(name));
+    }
+
+    @Override
+    public synchronized void metricAdded(String name, Metric metric) {
+        try {
+            ObjectName oname = getObjectName(name, metric);
+            server.registerMBean(metric, oname);
+            registered.add(oname);
+        } catch (JMException e) {
+            logger.warn("cannot register metric {}: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * Stop publishing metrics and unregister the published MXBeans.
+     */
+    @Override
+    public synchronized void close() {
+        if (registry != null) {
+            registry.removeListener(this);
+            registry = null;
+        }
+        for (ObjectName name: registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                logger.warn("cannot unregister {}: {}", name, e.getMessage());
+            }
+        }
+        registered.clear();
+    }
+}
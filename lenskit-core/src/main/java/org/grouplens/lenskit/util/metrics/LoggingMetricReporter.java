@@ -0,0 +1,77 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+/**
+ * Report metrics to an SLF4J logger at INFO level.  Cache hit and miss counters are also
+ * reported as a hit rate.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+public class LoggingMetricReporter implements MetricReporter {
+    private final Logger logger;
+
+    /**
+     * Create a reporter that logs to the {@code org.grouplens.lenskit.metrics} logger.
+     */
+    public LoggingMetricReporter() {
+        this(LoggerFactory.getLogger("org.grouplens.lenskit.metrics"));
+    }
+
+    /**
+     * Create a reporter.
+     *
+     * @param log The logger to write to.
+     */
+    public LoggingMetricReporter(Logger log) {
+        logger = log;
+    }
+
+    @Override
+    public void report(MetricRegistry registry) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
+        Map<String, Counter> counters = registry.getMetrics(Counter.class);
+        for (Map.Entry<String, Metric> e: registry.getMetrics().entrySet()) {
+            logger.info("{}: {}", e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, Counter> e: counters.entrySet()) {
+            String name = e.getKey();
+            if (name.endsWith(".hit")) {
+                String cache = name.substring(0, name.length() - 4);
+                Counter misses = counters.get(cache + ".miss");
+                long hits = e.getValue().getCount();
+                long total = hits + (misses == null ? 0 : misses.getCount());
+                if (total > 0) {
+                    logger.info("{} hit rate: {}", cache,
+                                String.format("%.1f%%", hits * 100.0 / total));
+                }
+            }
+        }
+    }
+}
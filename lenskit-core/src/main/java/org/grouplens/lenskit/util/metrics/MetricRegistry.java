@@ -0,0 +1,203 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A registry of named metrics.  Metrics are created on first use, and the same metric is
+ * returned for subsequent requests for the same name.  Registries are thread-safe.
+ *
+ * <p>LensKit's own instrumentation records into the {@linkplain #getDefault() default registry},
+ * and only when instrumentation is {@linkplain #setEnabled(boolean) enabled}.  It is disabled
+ * by default; setting the system property {@code lenskit.metrics.enabled} to {@code true}
+ * enables it at startup.  The metrics LensKit records are:</p>
+ * <dl>
+ *     <dt>{@code build.<class>}</dt>
+ *     <dd>Timer for building components of a class, not including their dependencies.</dd>
+ *     <dt>{@code update.<class>}</dt>
+ *     <dd>Timer for incremental updates of components of a class.</dd>
+ *     <dt>{@code score.<class>}, {@code predict.<class>}, {@code recommend.<class>}</dt>
+ *     <dd>Timers for requests to the item scorer, rating predictor, and item recommender
+ *     obtained from a {@link org.grouplens.lenskit.core.LenskitRecommender}.</dd>
+ *     <dt>{@code cache.<name>.hit}, {@code cache.<name>.miss}</dt>
+ *     <dd>Counters of cache hits and misses.</dd>
+ * </dl>
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+public final class MetricRegistry {
+    private static final MetricRegistry DEFAULT = new MetricRegistry();
+    private static volatile boolean enabled = Boolean.getBoolean("lenskit.metrics.enabled");
+
+    private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<String, Metric>();
+    private final CopyOnWriteArrayList<MetricListener> listeners =
+            new CopyOnWriteArrayList<MetricListener>();
+
+    /**
+     * Get the default registry, used by LensKit's built-in instrumentation.
+     *
+     * @return The default registry.
+     */
+    public static MetricRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Query whether LensKit's built-in instrumentation is enabled.
+     *
+     * @return {@code true} if LensKit components record metrics in the default registry.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable or disable LensKit's built-in instrumentation.  This only affects components
+     * and recommenders created after it is changed.
+     *
+     * @param on Whether instrumentation should be enabled.
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Get a counter, creating it if necessary.
+     *
+     * @param name The counter name.
+     * @return The counter.
+     * @throws IllegalArgumentException if the name is used by a metric of another type.
+     */
+    public Counter counter(String name) {
+        Metric m = metrics.get(name);
+        if (m == null) {
+            m = register(name, new Counter());
+        }
+        return checkType(name, m, Counter.class);
+    }
+
+    /**
+     * Get a histogram, creating it if necessary.
+     *
+     * @param name The histogram name.
+     * @return The histogram.
+     * @throws IllegalArgumentException if the name is used by a metric of another type.
+     */
+    public Histogram histogram(String name) {
+        Metric m = metrics.get(name);
+        if (m == null) {
+            m = register(name, new Histogram());
+        }
+        return checkType(name, m, Histogram.class);
+    }
+
+    /**
+     * Get a timer, creating it if necessary.
+     *
+     * @param name The timer name.
+     * @return The timer.
+     * @throws IllegalArgumentException if the name is used by a metric of another type.
+     */
+    public Timer timer(String name) {
+        Metric m = metrics.get(name);
+        if (m == null) {
+            m = register(name, new Timer());
+        }
+        return checkType(name, m, Timer.class);
+    }
+
+    /**
+     * Get the metrics in this registry.
+     *
+     * @return A snapshot of the registry's metrics, sorted by name.
+     */
+    public SortedMap<String, Metric> getMetrics() {
+        return new TreeMap<String, Metric>(metrics);
+    }
+
+    /**
+     * Get the metrics of a particular type.
+     *
+     * @param type The metric type.
+     * @param <M>  The metric type.
+     * @return A snapshot of the registry's metrics of type {@code type}, sorted by name.
+     */
+    public <M extends Metric> SortedMap<String, M> getMetrics(Class<M> type) {
+        SortedMap<String, M> result = new TreeMap<String, M>();
+        for (Map.Entry<String, Metric> e: metrics.entrySet()) {
+            if (type.isInstance(e.getValue())) {
+                result.put(e.getKey(), type.cast(e.getValue()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add a listener to this registry.  The listener is immediately notified of all metrics
+     * currently in the registry, and then of metrics as they are added.
+     *
+     * @param listener The listener.
+     */
+    public void addListener(MetricListener listener) {
+        Preconditions.checkNotNull(listener, "listener");
+        listeners.add(listener);
+        for (Map.Entry<String, Metric> e: getMetrics().entrySet()) {
+            listener.metricAdded(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Remove a listener from this registry.
+     *
+     * @param listener The listener.
+     */
+    public void removeListener(MetricListener listener) {
+        listeners.remove(listener);
+    }
+
+    private Metric register(String name, Metric metric) {
+        Preconditions.checkNotNull(name, "metric name");
+        Metric old = metrics.putIfAbsent(name, metric);
+        if (old != null) {
+            return old;
+        }
+        for (MetricListener l: listeners) {
+            l.metricAdded(name, metric);
+        }
+        return metric;
+    }
+
+    private static <M extends Metric> M checkType(String name, Metric m, Class<M> type) {
+        if (!type.isInstance(m)) {
+            throw new IllegalArgumentException("metric " + name + " is not a " + type.getSimpleName());
+        }
+        return type.cast(m);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run a {@link MetricReporter} periodically on a background (daemon) thread.  Closing the
+ * periodic reporter stops it and runs the reporter one last time.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+public class PeriodicReporter implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(PeriodicReporter.class);
+
+    private final MetricRegistry registry;
+    private final MetricReporter reporter;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Start reporting metrics.
+     *
+     * @param registry The registry to report.
+     * @param reporter The reporter.
+     * @param period   The reporting period.
+     * @param unit     The unit of {@code period}.
+     */
+    public PeriodicReporter(MetricRegistry registry, MetricReporter reporter,
+                            long period, TimeUnit unit) {
+        this.registry = registry;
+        this.reporter = reporter;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "lenskit-metric-reporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                report();
+            }
+        }, period, period, unit);
+    }
+
+    private void report() {
+        try {
+            reporter.report(registry);
+        } catch (RuntimeException e) {
+            logger.error("error reporting metrics", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        report();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A timer, recording the distribution of the durations of some event.  Durations are
+ * recorded in nanoseconds in a {@link Histogram}.
+ *
+ * <p>The typical usage is:</p>
+ * <pre>{@code
+ * Timer.Context ctx = timer.time();
+ * try {
+ *     doWork();
+ * } finally {
+ *     ctx.stop();
+ * }
+ * }</pre>
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+public final class Timer implements Metric, TimerMXBean {
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Histogram histogram = new Histogram();
+
+    /**
+     * Start timing an event.
+     *
+     * @return A context to stop the timing when the event is finished.
+     */
+    public Context time() {
+        return new Context(System.nanoTime());
+    }
+
+    /**
+     * Record the duration of an event.
+     *
+     * @param duration The duration.
+     * @param unit     The duration's unit.
+     */
+    public void update(long duration, TimeUnit unit) {
+        histogram.update(unit.toNanos(duration));
+    }
+
+    /**
+     * Get the histogram of event durations, in nanoseconds.
+     *
+     * @return The histogram of durations.
+     */
+    public Histogram getHistogram() {
+        return histogram;
+    }
+
+    @Override
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    @Override
+    public double getTotalMillis() {
+        return histogram.getSum() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return histogram.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return histogram.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMedianMillis() {
+        return histogram.getMedian() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get95thPercentileMillis() {
+        return histogram.get95thPercentile() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get99thPercentileMillis() {
+        return histogram.get99thPercentile() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Timer(n=%d, mean=%.3fms, median=%.3fms, p99=%.3fms)",
+                             getCount(), getMeanMillis(), getMedianMillis(),
+                             get99thPercentileMillis());
+    }
+
+    /**
+     * A running timing of a single event.
+     */
+    public final class Context {
+        private final long start;
+
+        private Context(long start) {
+            this.start = start;
+        }
+
+        /**
+         * Stop timing the event and record its duration.  This should only be called once.
+         *
+         * @return The duration of the event, in nanoseconds.
+         */
+        public long stop() {
+            long elapsed = System.nanoTime() - start;
+            histogram.update(elapsed);
+            return elapsed;
+        }
+    }
+}
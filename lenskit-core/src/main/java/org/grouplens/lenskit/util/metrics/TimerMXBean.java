@@ -0,0 +1,71 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+/**
+ * Management interface for {@link Timer}.  Times are reported in milliseconds.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+public interface TimerMXBean {
+    /**
+     * Get the number of timed events.
+     * @return The number of timed events.
+     */
+    long getCount();
+
+    /**
+     * Get the total time of all events.
+     * @return The total time (ms).
+     */
+    double getTotalMillis();
+
+    /**
+     * Get the mean event time.
+     * @return The mean time (ms).
+     */
+    double getMeanMillis();
+
+    /**
+     * Get the longest event time.
+     * @return The maximum time (ms).
+     */
+    double getMaxMillis();
+
+    /**
+     * Get the median event time.
+     * @return The (estimated) median time (ms).
+     */
+    double getMedianMillis();
+
+    /**
+     * Get the 95th percentile of event times.
+     * @return The (estimated) 95th percentile time (ms).
+     */
+    double get95thPercentileMillis();
+
+    /**
+     * Get the 99th percentile of event times.
+     * @return The (estimated) 99th percentile time (ms).
+     */
+    double get99thPercentileMillis();
+}
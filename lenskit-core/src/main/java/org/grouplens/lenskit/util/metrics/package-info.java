@@ -0,0 +1,36 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+/**
+ * Lightweight instrumentation for recommender components.
+ *
+ * <p>A {@link org.grouplens.lenskit.util.metrics.MetricRegistry} holds named counters,
+ * histograms, and timers.  When instrumentation is
+ * {@linkplain org.grouplens.lenskit.util.metrics.MetricRegistry#setEnabled(boolean) enabled},
+ * LensKit records the time taken to build each component, the latency of scoring and
+ * recommendation requests, and the hit rates of its internal caches in the
+ * {@linkplain org.grouplens.lenskit.util.metrics.MetricRegistry#getDefault() default registry}.
+ * The metrics can be published through JMX with a
+ * {@link org.grouplens.lenskit.util.metrics.JmxMetricExporter}, or written periodically by a
+ * {@link org.grouplens.lenskit.util.metrics.MetricReporter}.</p>
+ *
+ * @since 2.1
+ */
+package org.grouplens.lenskit.util.metrics;
@@ -40,6 +40,27 @@ import com.google.common.util.concurrent.Uninterruptibles;
 public final class ExecHelpers {
     private ExecHelpers() {}
 
+    /**
+     * Resolve a thread count parameter.  LensKit's thread count parameters (such as
+     * {@link org.grouplens.lenskit.basic.BatchThreadCount}) all follow the same convention:
+     * 1 runs the work sequentially on the calling thread, and 0 uses one thread for each
+     * available processor.
+     *
+     * @param nthreads The configured thread count.
+     * @return The number of threads to use.
+     * @throws IllegalArgumentException if {@code nthreads} is negative.
+     * @since 2.1
+     */
+    public static int resolveThreadCount(int nthreads) {
+        if (nthreads < 0) {
+            throw new IllegalArgumentException("negative thread count");
+        } else if (nthreads == 0) {
+            return Runtime.getRuntime().availableProcessors();
+        } else {
+            return nthreads;
+        }
+    }
+
     /**
      * Extract the cause exception for an execution exception if possible.
      *
@@ -0,0 +1,48 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.vectors.similarity;
+
+import org.grouplens.lenskit.vectors.SparseVector;
+
+/**
+ * A vector similarity that can bound the similarity of two vectors from a bound on their
+ * dot product.  Cosine-family similarities, which divide the dot product by a function of
+ * the vectors' norms, can provide such bounds cheaply; model builders use them to skip
+ * pairs that cannot be among an item's nearest neighbors without computing their exact
+ * similarity.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+public interface BoundedVectorSimilarity extends VectorSimilarity {
+    /**
+     * Compute an upper bound on the similarity of two vectors.
+     *
+     * @param vec1     The left vector.
+     * @param vec2     The right vector.
+     * @param dotBound An upper bound on the absolute value of the dot product of the two
+     *                 vectors.
+     * @return A value no less than {@code similarity(vec1, vec2)} for any vectors with the
+     *         norms of {@code vec1} and {@code vec2} whose dot product is within
+     *         {@code dotBound} of 0.
+     */
+    double similarityBound(SparseVector vec1, SparseVector vec2, double dotBound);
+}
@@ -32,7 +32,7 @@ import java.io.Serializable;
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 @Shareable
-public class CosineVectorSimilarity implements VectorSimilarity, Serializable {
+public class CosineVectorSimilarity implements BoundedVectorSimilarity, Serializable {
     private static final long serialVersionUID = 1L;
 
     private final double dampingFactor;
@@ -55,6 +55,16 @@ public class CosineVectorSimilarity implements VectorSimilarity, Serializable {
         dampingFactor = damping;
     }
 
+    /**
+     * Get the damping term added to the denominator.
+     *
+     * @return The damping factor.
+     * @since 2.1
+     */
+    public double getDampingFactor() {
+        return dampingFactor;
+    }
+
     @Override
     public double similarity(SparseVector vec1, SparseVector vec2) {
         final double dot = vec1.dot(vec2);
@@ -66,6 +76,16 @@ public class CosineVectorSimilarity implements VectorSimilarity, Serializable {
         return dot / denom;
     }
 
+    @Override
+    public double similarityBound(SparseVector vec1, SparseVector vec2, double dotBound) {
+        final double denom = vec1.norm() * vec2.norm() + dampingFactor;
+        if (denom == 0) {
+            return 0;
+        }
+        // the dot product may be negative, so bound the magnitude of the similarity
+        return dotBound / Math.abs(denom);
+    }
+
     @Override
     public boolean isSparse() {
         return true;
@@ -20,11 +20,9 @@
  */
 package org.grouplens.lenskit.vectors.similarity;
 
-import org.apache.commons.lang3.tuple.Pair;
 import org.grouplens.lenskit.core.Shareable;
+import org.grouplens.lenskit.vectors.IntersectionStatistics;
 import org.grouplens.lenskit.vectors.SparseVector;
-import org.grouplens.lenskit.vectors.VectorEntry;
-import org.grouplens.lenskit.vectors.Vectors;
 
 import javax.inject.Inject;
 import java.io.Serializable;
@@ -68,48 +66,17 @@ public class PearsonCorrelation implements VectorSimilarity, Serializable {
         }
 
         /*
-         * Basic similarity: walk in parallel across the two vectors, computing
-         * the dot product and simultaneously computing the variance within each
-         * vector of the items also contained in the other vector.  Pearson
-         * correlation only considers items shared by both vectors; other items
-         * are discarded for the purpose of similarity computation.
+         * Pearson correlation only considers items shared by both vectors; other items
+         * are discarded for the purpose of similarity computation.  The variances and
+         * the dot product are computed around the means of the common items.
          */
-
-        // first compute means of common items
-        double sum1 = 0;
-        double sum2 = 0;
-        int n = 0;
-        for (Pair<VectorEntry,VectorEntry> pair: Vectors.fastIntersect(vec1, vec2)) {
-            sum1 += pair.getLeft().getValue();
-            sum2 += pair.getRight().getValue();
-            n += 1;
-        }
-
-        if (n == 0) {
-            return 0;
-        }
-
-        final double mu1 = sum1 / n;
-        final double mu2 = sum2 / n;
-
-        double var1 = 0;
-        double var2 = 0;
-        double dot = 0;
-        int nCoratings = 0;
-
-        for (Pair<VectorEntry,VectorEntry> pair: Vectors.fastIntersect(vec1, vec2)) {
-            final double v1 = pair.getLeft().getValue() - mu1;
-            final double v2 = pair.getRight().getValue() - mu2;
-            var1 += v1 * v1;
-            var2 += v2 * v2;
-            dot += v1 * v2;
-            nCoratings += 1;
-        }
-
-        if (nCoratings == 0) {
+        IntersectionStatistics stats = vec1.intersectionStatistics(vec2);
+        if (stats.getCount() == 0) {
             return 0;
         } else {
-            return dot / (sqrt(var1 * var2) + shrinkage);
+            final double var1 = stats.getCenteredSumSquares1();
+            final double var2 = stats.getCenteredSumSquares2();
+            return stats.getCenteredDot() / (sqrt(var1 * var2) + shrinkage);
         }
     }
 
@@ -0,0 +1,100 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.basic;
+
+import com.google.common.collect.ImmutableMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongLists;
+import org.grouplens.lenskit.BatchItemScorer;
+import org.grouplens.lenskit.ItemScorer;
+import org.grouplens.lenskit.baseline.ConstantItemScorer;
+import org.grouplens.lenskit.baseline.LeastSquaresItemScorer;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.vectors.ImmutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SimpleBatchItemScorerTest {
+    private static final LongList USERS = LongArrayList.wrap(new long[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+    private static final LongList ITEMS = LongArrayList.wrap(new long[]{42, 39, 7, 12});
+
+    private Map<Long, SparseVector> scoreBatch(ItemScorer scorer, int nthreads) {
+        final Map<Long, SparseVector> results = new ConcurrentHashMap<Long, SparseVector>();
+        BatchItemScorer batch = new SimpleBatchItemScorer(scorer, nthreads);
+        batch.score(USERS, ITEMS, new BatchItemScorer.Handler() {
+            @Override
+            public void handle(long user, @Nonnull SparseVector scores) {
+                results.put(user, scores);
+            }
+        });
+        return results;
+    }
+
+    private void checkBatch(ItemScorer scorer, int nthreads) {
+        Map<Long, SparseVector> results = scoreBatch(scorer, nthreads);
+        assertThat(results.size(), equalTo(USERS.size()));
+        for (long user: USERS) {
+            SparseVector expected = scorer.score(user, ITEMS);
+            SparseVector actual = results.get(user);
+            assertThat(actual, notNullValue());
+            assertThat(actual.keySet(), equalTo(expected.keySet()));
+            for (long item: expected.keySet()) {
+                assertThat(actual.get(item), closeTo(expected.get(item), 1.0e-6));
+            }
+        }
+    }
+
+    @Test
+    public void testFallbackScorer() {
+        checkBatch(new ConstantItemScorer(3.5), 1);
+    }
+
+    @Test
+    public void testFallbackScorerParallel() {
+        checkBatch(new ConstantItemScorer(3.5), 3);
+    }
+
+    @Test
+    public void testBatchableScorerParallel() {
+        ImmutableSparseVector uoff = ImmutableSparseVector.create(ImmutableMap.of(1L, 0.5, 3L, -0.25));
+        ImmutableSparseVector ioff = ImmutableSparseVector.create(ImmutableMap.of(7L, 0.2, 42L, -0.1));
+        checkBatch(new LeastSquaresItemScorer(uoff, ioff, 3.0), 3);
+    }
+
+    @Test
+    public void testEmptyBatch() {
+        BatchItemScorer batch = new SimpleBatchItemScorer(new ConstantItemScorer(3.5), 2);
+        batch.score(LongLists.EMPTY_LIST, LongUtils.packedSet(1, 2), new BatchItemScorer.Handler() {
+            @Override
+            public void handle(long user, @Nonnull SparseVector scores) {
+                throw new AssertionError("unexpected user " + user);
+            }
+        });
+    }
+}
@@ -20,6 +20,7 @@
  */
 package org.grouplens.lenskit.core;
 
+import com.google.common.collect.Lists;
 import org.grouplens.grapht.graph.Edge;
 import org.grouplens.grapht.graph.Graph;
 import org.grouplens.grapht.graph.Node;
@@ -30,15 +31,22 @@ import org.grouplens.lenskit.ItemRecommender;
 import org.grouplens.lenskit.ItemScorer;
 import org.grouplens.lenskit.RecommenderBuildException;
 import org.grouplens.lenskit.baseline.*;
+import org.grouplens.lenskit.basic.BatchableItemScorer;
 import org.grouplens.lenskit.basic.SimpleRatingPredictor;
+import org.grouplens.lenskit.basic.StreamingItemScorer;
 import org.grouplens.lenskit.basic.TopNItemRecommender;
+import org.grouplens.lenskit.cursors.Cursors;
 import org.grouplens.lenskit.data.dao.EventCollectionDAO;
 import org.grouplens.lenskit.data.dao.EventDAO;
 import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.Ratings;
 import org.grouplens.lenskit.iterative.StoppingThreshold;
 import org.grouplens.lenskit.iterative.ThresholdStoppingCondition;
 import org.grouplens.lenskit.transform.normalize.MeanVarianceNormalizer;
 import org.grouplens.lenskit.transform.normalize.VectorNormalizer;
+import org.grouplens.lenskit.util.metrics.MetricRegistry;
+import org.grouplens.lenskit.util.metrics.Timer;
 import org.grouplens.lenskit.util.test.MockItemScorer;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -52,6 +60,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.Collections;
+import java.util.List;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
@@ -221,6 +230,96 @@ public class LenskitRecommenderEngineTest {
         }
     }
 
+    @Test
+    public void testUpdate() throws RecommenderBuildException {
+        List<Rating> ratings = Lists.newArrayList(Ratings.make(1, 5, 3),
+                                                  Ratings.make(2, 5, 4),
+                                                  Ratings.make(1, 7, 2));
+        List<Rating> delta = Lists.newArrayList(Ratings.make(3, 5, 5),
+                                                Ratings.make(3, 8, 4));
+        LenskitConfiguration config = new LenskitConfiguration();
+        config.bind(EventDAO.class).to(new EventCollectionDAO(ratings));
+        config.bind(ItemScorer.class).to(ItemMeanRatingItemScorer.class);
+
+        LenskitRecommenderEngine engine = LenskitRecommenderEngine.build(config);
+        assertThat(engine.isUpdatable(), equalTo(true));
+        LenskitRecommenderEngine updated = engine.update(Cursors.wrap(delta));
+
+        List<Rating> all = Lists.newArrayList(ratings);
+        all.addAll(delta);
+        LenskitConfiguration fullConfig = new LenskitConfiguration();
+        fullConfig.bind(EventDAO.class).to(new EventCollectionDAO(all));
+        fullConfig.bind(ItemScorer.class).to(ItemMeanRatingItemScorer.class);
+        LenskitRecommenderEngine full = LenskitRecommenderEngine.build(fullConfig);
+
+        ItemScorer scorer = updated.createRecommender().getItemScorer();
+        ItemScorer expected = full.createRecommender().getItemScorer();
+        for (long item: new long[]{5, 7, 8}) {
+            assertThat(scorer.score(3, item),
+                       closeTo(expected.score(3, item), 1.0e-6));
+        }
+        // the original engine is unchanged
+        assertThat(engine.createRecommender().getItemScorer().score(3, 5),
+                   closeTo(3.5, 1.0e-6));
+    }
+
+    @Test
+    public void testMetrics() throws RecommenderBuildException {
+        List<Rating> ratings = Lists.newArrayList(Ratings.make(1, 5, 3),
+                                                  Ratings.make(2, 5, 4),
+                                                  Ratings.make(1, 7, 2));
+        LenskitConfiguration config = new LenskitConfiguration();
+        config.bind(EventDAO.class).to(new EventCollectionDAO(ratings));
+        config.bind(ItemScorer.class).to(ItemMeanRatingItemScorer.class);
+
+        MetricRegistry registry = MetricRegistry.getDefault();
+        String buildName = "build." + ItemMeanRatingItemScorer.class.getName();
+        String scoreName = "score." + ItemMeanRatingItemScorer.class.getName();
+        long builds = registry.timer(buildName).getCount();
+        long scores = registry.timer(scoreName).getCount();
+        MetricRegistry.setEnabled(true);
+        try {
+            LenskitRecommender rec = LenskitRecommender.build(config);
+            ItemScorer scorer = rec.getItemScorer();
+            assertThat(scorer.score(2, 5), closeTo(3.5, 1.0e-6));
+            assertThat(scorer.score(2, 7), closeTo(2, 1.0e-6));
+            // the components themselves are still available
+            assertThat(rec.get(ItemScorer.class),
+                       instanceOf(ItemMeanRatingItemScorer.class));
+        } finally {
+            MetricRegistry.setEnabled(false);
+        }
+        assertThat(registry.timer(buildName).getCount(), equalTo(builds + 1));
+        Timer timer = registry.timer(scoreName);
+        assertThat(timer.getCount(), equalTo(scores + 2));
+        assertThat(timer.getMaxMillis(), greaterThanOrEqualTo(0.0));
+
+        // with metrics disabled, the scorer is not wrapped
+        LenskitRecommender rec = LenskitRecommender.build(config);
+        assertThat(rec.getItemScorer(), instanceOf(ItemMeanRatingItemScorer.class));
+    }
+
+    @Test
+    public void testMetricsKeepScorerCapabilities() throws RecommenderBuildException {
+        List<Rating> ratings = Lists.newArrayList(Ratings.make(1, 5, 3),
+                                                  Ratings.make(2, 5, 4),
+                                                  Ratings.make(1, 7, 2));
+        LenskitConfiguration config = new LenskitConfiguration();
+        config.bind(EventDAO.class).to(new EventCollectionDAO(ratings));
+        config.bind(ItemScorer.class).to(LeastSquaresItemScorer.class);
+
+        MetricRegistry.setEnabled(true);
+        try {
+            LenskitRecommender rec = LenskitRecommender.build(config);
+            ItemScorer scorer = rec.getItemScorer();
+            assertThat(scorer, not(instanceOf(LeastSquaresItemScorer.class)));
+            assertThat(scorer, instanceOf(BatchableItemScorer.class));
+            assertThat(scorer, not(instanceOf(StreamingItemScorer.class)));
+        } finally {
+            MetricRegistry.setEnabled(false);
+        }
+    }
+
     @Test
     public void testContextDep() throws RecommenderBuildException {
         LenskitConfiguration config = new LenskitConfiguration();
@@ -0,0 +1,125 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.dao;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.grouplens.lenskit.cursors.Cursors;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.Ratings;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class BinaryRatingDAOTest {
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    List<Rating> ratings;
+    EventDAO source;
+
+    @Before
+    public void createRatings() {
+        ratings = Lists.newArrayList(
+                Ratings.make(2, 4, 3, 10),
+                Ratings.make(1, 2, 3.5, 5),
+                Ratings.make(1, 3, 4, 7),
+                Ratings.make(3, 2, 2.5, 12)
+        );
+        source = new EventCollectionDAO(ratings);
+    }
+
+    @Test
+    public void testWriteAndOpen() throws IOException {
+        File file = tmpDir.newFile("ratings.lkr");
+        BinaryRatingDAO.write(source, file, SortOrder.ANY);
+        BinaryRatingDAO dao = BinaryRatingDAO.open(file);
+
+        assertThat(dao.getRatingCount(), equalTo(4L));
+        assertThat(dao.getSortOrder(), equalTo(SortOrder.ANY));
+        List<Rating> read = Cursors.makeList(dao.streamEvents(Rating.class));
+        assertThat(read, equalTo(ratings));
+    }
+
+    @Test
+    public void testSortedFile() throws IOException {
+        File file = tmpDir.newFile("ratings.lkr");
+        BinaryRatingDAO.write(source, file, SortOrder.USER);
+        BinaryRatingDAO dao = BinaryRatingDAO.open(file);
+
+        assertThat(dao.getSortOrder(), equalTo(SortOrder.USER));
+        List<Rating> read = Cursors.makeList(dao.streamEvents(Rating.class, SortOrder.USER));
+        assertThat(read, contains(ratings.get(1), ratings.get(2),
+                                  ratings.get(0), ratings.get(3)));
+        // other orders are sorted on read
+        read = Cursors.makeList(dao.streamEvents(Rating.class, SortOrder.ITEM));
+        assertThat(read, contains(ratings.get(1), ratings.get(3),
+                                  ratings.get(2), ratings.get(0)));
+    }
+
+    @Test
+    public void testColumnLayout() throws IOException {
+        File file = tmpDir.newFile("ratings.lkr");
+        BinaryRatingDAO.write(source, file, SortOrder.ANY);
+        assertThat(file.length(), equalTo(BinaryRatingDAO.HEADER_SIZE + 4 * 4 * 8L));
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // user IDs come first, then item IDs
+            raf.seek(BinaryRatingDAO.HEADER_SIZE);
+            for (Rating r: ratings) {
+                assertThat(raf.readLong(), equalTo(r.getUserId()));
+            }
+            for (Rating r: ratings) {
+                assertThat(raf.readLong(), equalTo(r.getItemId()));
+            }
+        } finally {
+            raf.close();
+        }
+        // no temporary column files are left behind
+        assertThat(tmpDir.getRoot().list(), arrayWithSize(1));
+    }
+
+    @Test
+    public void testFilterOutAllRatings() throws IOException {
+        File file = tmpDir.newFile("ratings.lkr");
+        BinaryRatingDAO.write(source, file, SortOrder.ANY);
+        BinaryRatingDAO dao = BinaryRatingDAO.open(file);
+        assertThat(Cursors.makeList(dao.streamEvents(EventCollectionDAOTest.Purchase.class)),
+                   emptyIterable());
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectInvalidFile() throws IOException {
+        File file = tmpDir.newFile("ratings.lkr");
+        Files.write(new byte[32], file);
+        BinaryRatingDAO.open(file);
+    }
+}
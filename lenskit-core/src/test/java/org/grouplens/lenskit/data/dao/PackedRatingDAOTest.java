@@ -0,0 +1,93 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.dao;
+
+import com.google.common.collect.Lists;
+import org.grouplens.lenskit.cursors.Cursors;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.Ratings;
+import org.grouplens.lenskit.data.history.UserHistory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class PackedRatingDAOTest {
+    List<Rating> ratings;
+    PackedRatingDAO dao;
+
+    @Before
+    public void createDAO() {
+        ratings = Lists.newArrayList(
+                Ratings.make(1, 2, 3.5, 5),
+                Ratings.make(3, 2, 2, 7),
+                Ratings.make(1, 3, 4, 8),
+                Ratings.make(2, 2, 3, 9)
+        );
+        dao = new PackedRatingDAO(new EventCollectionDAO(ratings));
+    }
+
+    @Test
+    public void testIds() {
+        assertThat(dao.getUserIds(), containsInAnyOrder(1L, 2L, 3L));
+        assertThat(dao.getItemIds(), containsInAnyOrder(2L, 3L));
+    }
+
+    @Test
+    public void testGetUserEvents() {
+        UserHistory<Event> history = dao.getEventsForUser(1);
+        assertThat(history.getUserId(), equalTo(1L));
+        assertThat(history, contains((Event) ratings.get(0), ratings.get(2)));
+        assertThat(history.itemSet(), containsInAnyOrder(2L, 3L));
+        assertThat(dao.getEventsForUser(2), contains((Event) ratings.get(3)));
+        assertThat(dao.getEventsForUser(1, Rating.class), hasSize(2));
+        assertThat(dao.getEventsForUser(1, EventCollectionDAOTest.Purchase.class),
+                   hasSize(0));
+        assertThat(dao.getEventsForUser(4), nullValue());
+    }
+
+    @Test
+    public void testStreamUsers() {
+        List<UserHistory<Event>> histories = Cursors.makeList(dao.streamEventsByUser());
+        assertThat(histories, hasSize(3));
+        int total = 0;
+        for (UserHistory<Event> h: histories) {
+            assertThat(h, equalTo((List<Event>) dao.getEventsForUser(h.getUserId())));
+            total += h.size();
+        }
+        assertThat(total, equalTo(4));
+    }
+
+    @Test
+    public void testGetItemEvents() {
+        assertThat(dao.getEventsForItem(2),
+                   contains((Event) ratings.get(0), ratings.get(3), ratings.get(1)));
+        assertThat(dao.getEventsForItem(3), contains((Event) ratings.get(2)));
+        assertThat(dao.getEventsForItem(5), nullValue());
+        assertThat(dao.getUsersForItem(2), containsInAnyOrder(1L, 2L, 3L));
+        assertThat(dao.getUsersForItem(3), contains(1L));
+        assertThat(dao.getUsersForItem(5), nullValue());
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.dao;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.grouplens.lenskit.cursors.Cursor;
+import org.grouplens.lenskit.cursors.Cursors;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.util.io.CompressionMode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ParallelRatingCursorTest {
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private static double parseDouble(String s) {
+        byte[] bytes = s.getBytes(Charsets.US_ASCII);
+        return ParallelRatingCursor.parseDouble(bytes, 0, bytes.length);
+    }
+
+    private static long parseLong(String s) {
+        byte[] bytes = s.getBytes(Charsets.US_ASCII);
+        return ParallelRatingCursor.parseLong(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void testParseNumbers() {
+        assertThat(parseLong("0"), equalTo(0L));
+        assertThat(parseLong("42"), equalTo(42L));
+        assertThat(parseLong("-17"), equalTo(-17L));
+        assertThat(parseLong("9223372036854775807"), equalTo(Long.MAX_VALUE));
+        for (String s: new String[]{"3", "3.5", "-2.25", "0.1", ".7", "4.", "1e3",
+                                    "0.30000000000000004", "NaN", "2.5E-3"}) {
+            assertThat(s, parseDouble(s), equalTo(Double.parseDouble(s)));
+        }
+        Random rng = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            String s = Double.toString(rng.nextDouble() * 10);
+            assertThat(s, parseDouble(s), equalTo(Double.parseDouble(s)));
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParseBadNumber() {
+        parseLong("4x2");
+    }
+
+    private File writeRatings(int n) throws IOException {
+        File file = tmpDir.newFile("ratings.csv");
+        Random rng = new Random(7);
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+        try {
+            for (int i = 0; i < n; i++) {
+                out.print(rng.nextInt(1000));
+                out.print(',');
+                out.print(rng.nextInt(5000));
+                out.print(',');
+                out.print(rng.nextInt(10) * 0.5);
+                if (i % 3 != 0) {
+                    out.print(',');
+                    out.print(1000000 + i);
+                }
+                out.print(i % 2 == 0 ? "\n" : "\r\n");
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void testOrderedMatchesSequential() throws IOException {
+        // enough lines to span several chunks
+        File file = writeRatings(500000);
+        assertThat(file.length(), greaterThan(2L * ParallelRatingCursor.CHUNK_SIZE));
+        List<Rating> expected = Cursors.makeList(
+                SimpleFileRatingDAO.create(file, ",", CompressionMode.NONE)
+                                   .streamEvents(Rating.class));
+        List<Rating> actual = Cursors.makeList(new ParallelRatingCursor(file, ',', 4, true));
+        assertThat(actual, hasSize(500000));
+        assertThat(actual, equalTo(expected));
+        actual = Cursors.makeList(SimpleFileRatingDAO.create(file, ",", CompressionMode.AUTO, 3)
+                                                     .streamEvents(Rating.class));
+        assertThat(actual, equalTo(expected));
+    }
+
+    @Test
+    public void testUnordered() throws IOException {
+        File file = writeRatings(500000);
+        double expected = 0;
+        for (Rating r: Cursors.makeList(new ParallelRatingCursor(file, ',', 1, true))) {
+            expected += r.getValue() * r.getUserId();
+        }
+        Cursor<Rating> cursor = new ParallelRatingCursor(file, ',', 4, false);
+        double total = 0;
+        int n = 0;
+        try {
+            for (Rating r: cursor.fast()) {
+                total += r.getValue() * r.getUserId();
+                n++;
+            }
+        } finally {
+            cursor.close();
+        }
+        assertThat(n, equalTo(500000));
+        assertThat(total, closeTo(expected, 1.0e-6));
+    }
+
+    @Test
+    public void testSkipsShortLines() throws IOException {
+        File file = tmpDir.newFile("short.csv");
+        Files.write("1,2,3.5,10\n\n1,3\n2,4,1\n", file, Charsets.US_ASCII);
+        List<Rating> ratings = Cursors.makeList(new ParallelRatingCursor(file, ',', 2, true));
+        assertThat(ratings, hasSize(2));
+        assertThat(ratings.get(0).getTimestamp(), equalTo(10L));
+        assertThat(ratings.get(1).getItemId(), equalTo(4L));
+        assertThat(ratings.get(1).getTimestamp(), equalTo(-1L));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testBadNumberInFile() throws IOException {
+        File file = tmpDir.newFile("bad.csv");
+        Files.write("1,2,3.5\n1,3x,4\n", file, Charsets.US_ASCII);
+        Cursors.makeList(new ParallelRatingCursor(file, ',', 2, true));
+    }
+}
@@ -182,6 +182,44 @@ public class TestPackedPreferenceSnapshot {
         assertTrue(ratings.contains(preference(4, 11, 5)));
     }
 
+    @Test
+    public void testRatingMatrix() {
+        RatingMatrix matrix = snap.getRatingMatrix();
+        assertEquals(20, matrix.size());
+        assertEquals(1, matrix.getChunkCount());
+        assertEquals(0, matrix.getChunkOffset(0));
+        assertEquals(20, matrix.getChunkSize(0));
+
+        int[] users = matrix.getUserIndexes(0);
+        int[] items = matrix.getItemIndexes(0);
+        double[] values = matrix.getValues(0);
+        for (IndexedPreference pref: snap.getRatings()) {
+            int idx = pref.getIndex();
+            assertEquals(pref.getUserIndex(), users[idx]);
+            assertEquals(pref.getItemIndex(), items[idx]);
+            assertEquals(pref.getValue(), values[idx], EPSILON);
+            assertEquals(pref.getUserId(), matrix.userIndex().getId(users[idx]));
+            assertEquals(pref.getItemId(), matrix.itemIndex().getId(items[idx]));
+        }
+    }
+
+    @Test
+    public void testCopiedRatingMatrix() {
+        RatingMatrix matrix = RatingMatrix.create(snap.getRatings(), snap.userIndex(), snap.itemIndex());
+        assertEquals(20, matrix.size());
+        assertEquals(1, matrix.getChunkCount());
+
+        int[] users = matrix.getUserIndexes(0);
+        int[] items = matrix.getItemIndexes(0);
+        double[] values = matrix.getValues(0);
+        for (IndexedPreference pref: snap.getRatings()) {
+            int idx = pref.getIndex();
+            assertEquals(pref.getUserIndex(), users[idx]);
+            assertEquals(pref.getItemIndex(), items[idx]);
+            assertEquals(pref.getValue(), values[idx], EPSILON);
+        }
+    }
+
     @Test
     public void testGetUserRatings() {
         FastCollection<IndexedPreference> ratings = snap.getUserRatings(1);
@@ -0,0 +1,153 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class TestMetricRegistry {
+    private MetricRegistry registry;
+
+    @Before
+    public void createRegistry() {
+        registry = new MetricRegistry();
+    }
+
+    @Test
+    public void testCounter() {
+        Counter c = registry.counter("foo");
+        assertThat(c.getCount(), equalTo(0L));
+        c.increment();
+        c.add(5);
+        assertThat(registry.counter("foo"), sameInstance(c));
+        assertThat(registry.counter("foo").getCount(), equalTo(6L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongType() {
+        registry.counter("foo");
+        registry.timer("foo");
+    }
+
+    @Test
+    public void testEmptyHistogram() {
+        Histogram h = registry.histogram("empty");
+        assertThat(h.getCount(), equalTo(0L));
+        assertThat(h.getMean(), equalTo(0.0));
+        assertThat(h.getMedian(), equalTo(0.0));
+    }
+
+    @Test
+    public void testHistogram() {
+        Histogram h = registry.histogram("hist");
+        for (int i = 100; i >= 0; i--) {
+            h.update(i);
+        }
+        assertThat(h.getCount(), equalTo(101L));
+        assertThat(h.getMin(), equalTo(0L));
+        assertThat(h.getMax(), equalTo(100L));
+        assertThat(h.getMean(), closeTo(50, 1.0e-6));
+        assertThat(h.getMedian(), closeTo(50, 1.0e-6));
+        assertThat(h.get95thPercentile(), closeTo(95, 1.0e-6));
+        assertThat(h.getQuantile(0.125), closeTo(12.5, 1.0e-6));
+    }
+
+    @Test
+    public void testSampledHistogram() {
+        Histogram h = new Histogram(100);
+        for (int i = 0; i < 10000; i++) {
+            h.update(i);
+        }
+        assertThat(h.getCount(), equalTo(10000L));
+        assertThat(h.getMax(), equalTo(9999L));
+        assertThat(h.getMean(), closeTo(4999.5, 1.0e-6));
+        // the median is estimated from the sample
+        assertThat(h.getMedian(), closeTo(5000, 2000));
+    }
+
+    @Test
+    public void testConcurrentHistogram() throws InterruptedException {
+        final Histogram h = new Histogram(100);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final int base = t * 10000;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        h.update(base + i);
+                    }
+                }
+            });
+        }
+        for (Thread th: threads) {
+            th.start();
+        }
+        for (Thread th: threads) {
+            th.join();
+        }
+        assertThat(h.getCount(), equalTo(40000L));
+        assertThat(h.getMin(), equalTo(0L));
+        assertThat(h.getMax(), equalTo(39999L));
+        assertThat(h.getMean(), closeTo(19999.5, 1.0e-6));
+        assertThat(h.getMedian(), closeTo(20000, 8000));
+    }
+
+    @Test
+    public void testTimer() {
+        Timer t = registry.timer("timer");
+        t.update(2, TimeUnit.MILLISECONDS);
+        t.update(4, TimeUnit.MILLISECONDS);
+        Timer.Context ctx = t.time();
+        assertThat(ctx.stop(), greaterThanOrEqualTo(0L));
+        assertThat(t.getCount(), equalTo(3L));
+        assertThat(t.getMaxMillis(), closeTo(4, 1.0e-6));
+        assertThat(t.getTotalMillis(), greaterThanOrEqualTo(6.0));
+    }
+
+    @Test
+    public void testListener() {
+        registry.counter("a");
+        final List<String> names = new ArrayList<String>();
+        registry.addListener(new MetricListener() {
+            @Override
+            public void metricAdded(String name, Metric metric) {
+                names.add(name);
+            }
+        });
+        assertThat(names, contains("a"));
+        registry.timer("b");
+        registry.counter("a");
+        assertThat(names, contains("a", "b"));
+        assertThat(registry.getMetrics().keySet(), contains("a", "b"));
+        assertThat(registry.getMetrics(Timer.class).keySet(), contains("b"));
+    }
+}
@@ -76,4 +76,31 @@ public final class MoreArrays {
         }
         return pos;
     }
+
+    /**
+     * Remove duplicate elements in the backing store. The array should be
+     * sorted.
+     *
+     * @param data  The data to deduplicate.
+     * @param start The beginning of the range to deduplicate (inclusive).
+     * @param end   The end of the range to deduplicate (exclusive).
+     * @return the new end index of the array
+     * @see #deduplicate(long[], int, int)
+     */
+    public static int deduplicate(final int[] data, final int start, final int end) {
+        if (start == end) {
+            return end;   // special-case empty arrays
+        }
+
+        int pos = start + 1;
+        for (int i = pos; i < end; i++) {
+            if (data[i] != data[i - 1]) {
+                if (i != pos) {
+                    data[pos] = data[i];
+                }
+                pos++;
+            }
+        }
+        return pos;
+    }
 }
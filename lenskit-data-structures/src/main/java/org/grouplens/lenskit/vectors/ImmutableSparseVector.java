@@ -31,6 +31,7 @@ import org.grouplens.lenskit.symbols.TypedSymbol;
 import javax.annotation.concurrent.Immutable;
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -54,9 +55,11 @@ public final class ImmutableSparseVector extends SparseVector implements Seriali
     private final Map<Symbol, ImmutableSparseVector> channelVectors;
     private final Map<TypedSymbol<?>, Long2ObjectMap<?>> channels;
 
-    private transient volatile Double norm = null;
-    private transient volatile Double sum = null;
-    private transient volatile Double mean = null;
+    /**
+     * Cached summary statistics, computed on first use.  Transient so that deserialized vectors
+     * recompute them rather than trusting stale or default values.
+     */
+    private transient volatile Statistics statistics;
 
     /**
      * Construct a new immutable sparse vector from a map.
@@ -171,29 +174,70 @@ public final class ImmutableSparseVector extends SparseVector implements Seriali
         return channels.keySet();
     }
 
-    // We override these three functions in the case that this vector is Immutable,
+    /**
+     * Get the summary statistics for this vector, computing them if necessary.  Since the vector
+     * is immutable, they are computed at most once (modulo benign races between threads).
+     *
+     * @return The vector's summary statistics.
+     */
+    private Statistics getStatistics() {
+        Statistics stats = statistics;
+        if (stats == null) {
+            stats = new Statistics(this);
+            statistics = stats;
+        }
+        return stats;
+    }
+
+    // We override these functions in the case that this vector is Immutable,
     // so we can avoid computing them more than once.
+    @Override
+    public int size() {
+        return getStatistics().size;
+    }
+
     @Override
     public double norm() {
-        if (norm == null) {
-            norm = super.norm();
-        }
-        return norm;
+        return getStatistics().norm;
     }
 
     @Override
     public double sum() {
-        if (sum == null) {
-            sum = super.sum();
-        }
-        return sum;
+        return getStatistics().sum;
     }
 
     @Override
     public double mean() {
-        if (mean == null) {
-            mean = super.mean();
+        return getStatistics().mean;
+    }
+
+    /**
+     * Size, sum, norm, and mean of an immutable vector, computed in a single pass over its
+     * values.
+     */
+    private static final class Statistics {
+        final int size;
+        final double sum;
+        final double norm;
+        final double mean;
+
+        Statistics(SparseVector vec) {
+            final BitSet mask = vec.keys.getActiveMask();
+            final int end = vec.keys.domainSize();
+            final double[] values = vec.values;
+            int n = 0;
+            double total = 0;
+            double ssq = 0;
+            for (int i = mask.nextSetBit(0); i >= 0 && i < end; i = mask.nextSetBit(i + 1)) {
+                final double v = values[i];
+                n += 1;
+                total += v;
+                ssq += v * v;
+            }
+            size = n;
+            sum = total;
+            norm = Math.sqrt(ssq);
+            mean = n > 0 ? total / n : 0;
         }
-        return mean;
     }
 }
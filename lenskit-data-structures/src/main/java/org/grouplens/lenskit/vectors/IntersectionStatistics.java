@@ -0,0 +1,196 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.vectors;
+
+/**
+ * Statistics of two vectors over their common keys, as needed by correlation-style
+ * similarity functions.  Compute them with
+ * {@link SparseVector#intersectionStatistics(SparseVector)}.
+ *
+ * <p>The count, sums, sums of squares, and dot product are computed together in a single pass
+ * over the intersection.  The centered statistics ({@link #getCenteredSumSquares1()} and
+ * friends) are computed around the means of the values on the common keys, in a second pass
+ * over the intersection when they are first requested.  This avoids the cancellation of
+ * single-pass formulas, so constant values have zero variance up to rounding.  The statistics
+ * object refers to the vectors until then, and is not thread-safe.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+public final class IntersectionStatistics {
+    private final KeyIntersection cursor;
+    private final int count;
+    private final double sum1;
+    private final double sum2;
+    private final double sumSquares1;
+    private final double sumSquares2;
+    private final double dot;
+    private boolean centered = false;
+    private double centeredSumSquares1;
+    private double centeredSumSquares2;
+    private double centeredDot;
+
+    /**
+     * Compute the statistics of two vectors.
+     */
+    IntersectionStatistics(SparseVector v1, SparseVector v2) {
+        cursor = new KeyIntersection(v1, v2);
+        int n = 0;
+        double s1 = 0;
+        double s2 = 0;
+        double sq1 = 0;
+        double sq2 = 0;
+        double d = 0;
+        while (cursor.next()) {
+            final double x = cursor.getValue1();
+            final double y = cursor.getValue2();
+            n += 1;
+            s1 += x;
+            s2 += y;
+            sq1 += x * x;
+            sq2 += y * y;
+            d += x * y;
+        }
+        count = n;
+        sum1 = s1;
+        sum2 = s2;
+        sumSquares1 = sq1;
+        sumSquares2 = sq2;
+        dot = d;
+    }
+
+    /**
+     * Compute the centered statistics, if they have not yet been computed.
+     */
+    private void computeCentered() {
+        if (centered || count == 0) {
+            return;
+        }
+        final double mu1 = getMean1();
+        final double mu2 = getMean2();
+        double ss1 = 0;
+        double ss2 = 0;
+        double cd = 0;
+        cursor.reset();
+        while (cursor.next()) {
+            final double x = cursor.getValue1() - mu1;
+            final double y = cursor.getValue2() - mu2;
+            ss1 += x * x;
+            ss2 += y * y;
+            cd += x * y;
+        }
+        centeredSumSquares1 = ss1;
+        centeredSumSquares2 = ss2;
+        centeredDot = cd;
+        centered = true;
+    }
+
+    /**
+     * Get the number of common keys.
+     * @return The number of keys in both vectors.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Get the sum of the first vector's values on the common keys.
+     * @return The sum of the first vector's common values.
+     */
+    public double getSum1() {
+        return sum1;
+    }
+
+    /**
+     * Get the sum of the second vector's values on the common keys.
+     * @return The sum of the second vector's common values.
+     */
+    public double getSum2() {
+        return sum2;
+    }
+
+    /**
+     * Get the mean of the first vector's values on the common keys.
+     * @return The mean of the first vector's common values, or 0 if there are none.
+     */
+    public double getMean1() {
+        return count == 0 ? 0 : sum1 / count;
+    }
+
+    /**
+     * Get the mean of the second vector's values on the common keys.
+     * @return The mean of the second vector's common values, or 0 if there are none.
+     */
+    public double getMean2() {
+        return count == 0 ? 0 : sum2 / count;
+    }
+
+    /**
+     * Get the sum of squares of the first vector's values on the common keys.
+     * @return The squared L2 norm of the first vector restricted to the common keys.
+     */
+    public double getSumSquares1() {
+        return sumSquares1;
+    }
+
+    /**
+     * Get the sum of squares of the second vector's values on the common keys.
+     * @return The squared L2 norm of the second vector restricted to the common keys.
+     */
+    public double getSumSquares2() {
+        return sumSquares2;
+    }
+
+    /**
+     * Get the dot product of the two vectors.
+     * @return The dot product.
+     */
+    public double getDot() {
+        return dot;
+    }
+
+    /**
+     * Get the sum of squared deviations of the first vector's common values from their mean.
+     * @return \(\sum_i (x_i - \bar{x})^2\) over the common keys.
+     */
+    public double getCenteredSumSquares1() {
+        computeCentered();
+        return centeredSumSquares1;
+    }
+
+    /**
+     * Get the sum of squared deviations of the second vector's common values from their mean.
+     * @return \(\sum_i (y_i - \bar{y})^2\) over the common keys.
+     */
+    public double getCenteredSumSquares2() {
+        computeCentered();
+        return centeredSumSquares2;
+    }
+
+    /**
+     * Get the dot product of the two vectors' common values, centered on their means.
+     * @return \(\sum_i (x_i - \bar{x})(y_i - \bar{y})\) over the common keys.
+     */
+    public double getCenteredDot() {
+        computeCentered();
+        return centeredDot;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.vectors;
+
+import org.grouplens.lenskit.collections.LongKeyDomain;
+
+import java.util.BitSet;
+
+/**
+ * Cursor over the common keys of two sparse vectors.  It works directly on the vectors' key
+ * domains, active masks, and value arrays, and is the kernel of the vector operations that
+ * combine two vectors ({@link SparseVector#dot(SparseVector)} and friends).
+ *
+ * <p>If the vectors have similar sizes, the cursor merges their keys linearly.  If one is
+ * much shorter than the other, it walks the shorter vector and gallops (exponential search
+ * followed by binary search) through the longer one, taking time logarithmic rather than
+ * linear in the size of the longer vector.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+final class KeyIntersection {
+    /**
+     * The size ratio at which the cursor gallops through the longer vector.
+     */
+    static final int GALLOP_RATIO = 8;
+
+    private final SparseVector vecA;
+    private final SparseVector vecB;
+    private final LongKeyDomain keysA;
+    private final LongKeyDomain keysB;
+    /**
+     * The active masks, or {@code null} if all keys in the domain are active.
+     */
+    private final BitSet maskA;
+    private final BitSet maskB;
+    private final int endA;
+    private final int endB;
+    private final boolean gallop;
+    /**
+     * Whether vector A is the second vector (so the positions must be swapped on output).
+     */
+    private final boolean swapped;
+    private int posA = -1;
+    private int posB = -1;
+
+    KeyIntersection(SparseVector v1, SparseVector v2) {
+        int n1 = v1.size();
+        int n2 = v2.size();
+        swapped = n2 < n1;
+        vecA = swapped ? v2 : v1;
+        vecB = swapped ? v1 : v2;
+        keysA = vecA.keys;
+        keysB = vecB.keys;
+        endA = keysA.domainSize();
+        endB = keysB.domainSize();
+        maskA = activeMask(keysA);
+        maskB = activeMask(keysB);
+        gallop = (long) Math.min(n1, n2) * GALLOP_RATIO < Math.max(n1, n2);
+    }
+
+    private static BitSet activeMask(LongKeyDomain keys) {
+        BitSet mask = keys.getActiveMask();
+        return mask.nextClearBit(0) >= keys.domainSize() ? null : mask;
+    }
+
+    /**
+     * Advance to the next common key.
+     *
+     * @return {@code true} if there is another common key, {@code false} if the intersection
+     *         is exhausted.
+     */
+    boolean next() {
+        int i = nextActive(maskA, posA + 1, endA);
+        int j = posB + 1;
+        if (gallop) {
+            while (i < endA) {
+                final long key = keysA.getKey(i);
+                j = gallop(key, j);
+                if (j >= endB) {
+                    break;
+                }
+                if (keysB.getKey(j) == key && (maskB == null || maskB.get(j))) {
+                    posA = i;
+                    posB = j;
+                    return true;
+                }
+                i = nextActive(maskA, i + 1, endA);
+            }
+        } else {
+            j = nextActive(maskB, j, endB);
+            while (i < endA && j < endB) {
+                final long ka = keysA.getKey(i);
+                final long kb = keysB.getKey(j);
+                if (ka < kb) {
+                    i = nextActive(maskA, i + 1, endA);
+                } else if (kb < ka) {
+                    j = nextActive(maskB, j + 1, endB);
+                } else {
+                    posA = i;
+                    posB = j;
+                    return true;
+                }
+            }
+        }
+        posA = endA;
+        posB = endB;
+        return false;
+    }
+
+    private static int nextActive(BitSet mask, int pos, int end) {
+        if (mask == null || pos >= end) {
+            return pos;
+        }
+        int next = mask.nextSetBit(pos);
+        return next < 0 ? end : Math.min(next, end);
+    }
+
+    /**
+     * Find the first position in B at or after {@code lo} whose key is at least {@code key}.
+     */
+    private int gallop(long key, int lo) {
+        int hi = lo;
+        int step = 1;
+        while (hi < endB && keysB.getKey(hi) < key) {
+            lo = hi + 1;
+            hi += step;
+            step <<= 1;
+        }
+        if (hi > endB) {
+            hi = endB;
+        }
+        // the key, if present, is in [lo, hi]
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (keysB.getKey(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Get the current key.
+     * @return The current common key.
+     */
+    long getKey() {
+        return keysA.getKey(posA);
+    }
+
+    /**
+     * Get the index of the current key in the first vector.
+     * @return The index in the first vector's key domain.
+     */
+    int getIndex1() {
+        return swapped ? posB : posA;
+    }
+
+    /**
+     * Get the index of the current key in the second vector.
+     * @return The index in the second vector's key domain.
+     */
+    int getIndex2() {
+        return swapped ? posA : posB;
+    }
+
+    /**
+     * Get the first vector's value for the current key.
+     * @return The value.
+     */
+    double getValue1() {
+        return swapped ? vecB.values[posB] : vecA.values[posA];
+    }
+
+    /**
+     * Get the second vector's value for the current key.
+     * @return The value.
+     */
+    double getValue2() {
+        return swapped ? vecA.values[posA] : vecB.values[posB];
+    }
+
+    /**
+     * Rewind the cursor to the beginning of the intersection.
+     */
+    void reset() {
+        posA = -1;
+        posB = -1;
+    }
+}
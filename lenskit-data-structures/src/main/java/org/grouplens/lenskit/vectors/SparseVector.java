@@ -25,7 +25,6 @@ import com.google.common.collect.Iterators;
 import com.google.common.primitives.Longs;
 import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import it.unimi.dsi.fastutil.doubles.DoubleCollection;
-import it.unimi.dsi.fastutil.doubles.DoubleIterator;
 import it.unimi.dsi.fastutil.ints.IntIterator;
 import it.unimi.dsi.fastutil.ints.IntIterators;
 import it.unimi.dsi.fastutil.longs.*;
@@ -36,6 +35,7 @@ import org.grouplens.lenskit.symbols.TypedSymbol;
 
 import javax.annotation.Nonnull;
 import java.io.Serializable;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.Set;
 
@@ -475,9 +475,10 @@ public abstract class SparseVector implements Iterable<VectorEntry>, Serializabl
      */
     public double norm() {
         double ssq = 0;
-        DoubleIterator iter = values().iterator();
-        while (iter.hasNext()) {
-            double v = iter.nextDouble();
+        final BitSet mask = keys.getActiveMask();
+        final int end = keys.domainSize();
+        for (int i = mask.nextSetBit(0); i >= 0 && i < end; i = mask.nextSetBit(i + 1)) {
+            final double v = values[i];
             ssq += v * v;
         }
         return Math.sqrt(ssq);
@@ -490,9 +491,10 @@ public abstract class SparseVector implements Iterable<VectorEntry>, Serializabl
      */
     public double sum() {
         double result = 0;
-        DoubleIterator iter = values().iterator();
-        while (iter.hasNext()) {
-            result += iter.nextDouble();
+        final BitSet mask = keys.getActiveMask();
+        final int end = keys.domainSize();
+        for (int i = mask.nextSetBit(0); i >= 0 && i < end; i = mask.nextSetBit(i + 1)) {
+            result += values[i];
         }
         return result;
     }
@@ -508,32 +510,18 @@ public abstract class SparseVector implements Iterable<VectorEntry>, Serializabl
     }
 
     /**
-     * Compute the dot product between two vectors.
+     * Compute the dot product between two vectors.  If one vector is much shorter than the
+     * other, this takes time proportional to the shorter vector's size times the logarithm of
+     * the longer vector's size.
      *
      * @param o The other vector.
      * @return The dot (inner) product between this vector and {@var o}.
      */
     public double dot(SparseVector o) {
         double dot = 0;
-
-        Iterator<VectorEntry> i1 = fastIterator();
-        Iterator<VectorEntry> i2 = o.fastIterator();
-
-        VectorEntry e1 = i1.hasNext() ? i1.next() : null;
-        VectorEntry e2 = i2.hasNext() ? i2.next() : null;
-
-        while (e1 != null && e2 != null) {
-            final long k1 = e1.getKey();
-            final long k2 = e2.getKey();
-            if (k1 < k2) {
-                e1 = i1.hasNext() ? i1.next() : null;
-            } else if (k2 < k1) {
-                e2 = i2.hasNext() ? i2.next() : null;
-            } else {
-                dot += e1.getValue() * e2.getValue();
-                e1 = i1.hasNext() ? i1.next() : null;
-                e2 = i2.hasNext() ? i2.next() : null;
-            }
+        KeyIntersection cursor = new KeyIntersection(this, o);
+        while (cursor.next()) {
+            dot += cursor.getValue1() * cursor.getValue2();
         }
         return dot;
     }
@@ -546,27 +534,24 @@ public abstract class SparseVector implements Iterable<VectorEntry>, Serializabl
      */
     public int countCommonKeys(SparseVector o) {
         int count = 0;
-        Iterator<VectorEntry> i1 = fastIterator();
-        Iterator<VectorEntry> i2 = o.fastIterator();
-
-        VectorEntry e1 = i1.hasNext() ? i1.next() : null;
-        VectorEntry e2 = i2.hasNext() ? i2.next() : null;
-
-        while (e1 != null && e2 != null) {
-            final long k1 = e1.getKey();
-            final long k2 = e2.getKey();
-            if (k1 < k2) {
-                e1 = i1.hasNext() ? i1.next() : null;
-            } else if (k2 < k1) {
-                e2 = i2.hasNext() ? i2.next() : null;
-            } else {
-                count += 1;
-                e1 = i1.hasNext() ? i1.next() : null;
-                e2 = i2.hasNext() ? i2.next() : null;
-            }
+        KeyIntersection cursor = new KeyIntersection(this, o);
+        while (cursor.next()) {
+            count += 1;
         }
         return count;
     }
+
+    /**
+     * Compute statistics of this vector and another over their common keys.
+     *
+     * @param o The other vector.
+     * @return The statistics of the two vectors over their common keys; this vector is the
+     *         first vector.
+     * @since 2.1
+     */
+    public IntersectionStatistics intersectionStatistics(SparseVector o) {
+        return new IntersectionStatistics(this, o);
+    }
     //endregion
 
     //region Object support
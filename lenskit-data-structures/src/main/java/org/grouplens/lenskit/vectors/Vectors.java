@@ -22,7 +22,6 @@ package org.grouplens.lenskit.vectors;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Iterators;
-import it.unimi.dsi.fastutil.ints.IntIterator;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import org.apache.commons.lang3.tuple.ImmutablePair;
@@ -132,10 +131,9 @@ public final class Vectors {
 
     private static class FastIntersectIterImpl implements Iterator<Pair<VectorEntry,VectorEntry>> {
         private boolean atNext = false;
+        private boolean exhausted = false;
         private final SparseVector vec1, vec2;
-        private IntIterator iterA, iterB;
-        // indexes, or -1 for exhausted iterators
-        private int idxA, idxB;
+        private final KeyIntersection cursor;
         private VectorEntry leftEnt;
         private VectorEntry rightEnt;
         private MutablePair<VectorEntry,VectorEntry> pair;
@@ -143,11 +141,7 @@ public final class Vectors {
         public FastIntersectIterImpl(SparseVector v1, SparseVector v2) {
             vec1 = v1;
             vec2 = v2;
-            // FIXME The true here slows things down
-            iterA = v1.keys.activeIndexIterator(true);
-            iterB = v2.keys.activeIndexIterator(true);
-            idxA = iterA.hasNext() ? iterA.nextInt() : -1;
-            idxB = iterB.hasNext() ? iterB.nextInt() : -1;
+            cursor = new KeyIntersection(v1, v2);
             leftEnt = new VectorEntry(v1, -1, 0, 0, false);
             rightEnt = new VectorEntry(v2, -1, 0, 0, false);
             pair = MutablePair.of(leftEnt, rightEnt);
@@ -155,18 +149,11 @@ public final class Vectors {
 
         @Override
         public boolean hasNext() {
-            if (!atNext) {
-                while (idxA >= 0 && idxB >= 0) {
-                    long ka = vec1.keys.getKey(idxA);
-                    long kb = vec2.keys.getKey(idxB);
-                    if (ka == kb) {
-                        atNext = true;
-                        break;
-                    } else if (ka < kb) {
-                        idxA = iterA.hasNext() ? iterA.nextInt() : -1;
-                    } else {
-                        idxB = iterB.hasNext() ? iterB.nextInt() : -1;
-                    }
+            if (!atNext && !exhausted) {
+                if (cursor.next()) {
+                    atNext = true;
+                } else {
+                    exhausted = true;
                 }
             }
             return atNext;
@@ -178,13 +165,11 @@ public final class Vectors {
                 throw new NoSuchElementException();
             }
 
-            assert vec1.keys.getKey(idxA) == vec2.keys.getKey(idxB);
-
-            leftEnt.set(idxA, vec1.keys.getKey(idxA), vec1.values[idxA], true);
-            idxA = iterA.hasNext() ? iterA.nextInt() : -1;
-
-            rightEnt.set(idxB, vec2.keys.getKey(idxB), vec2.values[idxB], true);
-            idxB = iterB.hasNext() ? iterB.nextInt() : -1;
+            final long key = cursor.getKey();
+            leftEnt.set(cursor.getIndex1(), key, cursor.getValue1(), true);
+            rightEnt.set(cursor.getIndex2(), key, cursor.getValue2(), true);
+            assert vec1.keys.getKey(cursor.getIndex1()) == key;
+            assert vec2.keys.getKey(cursor.getIndex2()) == key;
 
             atNext = false;
 
@@ -99,4 +99,14 @@ public class MoreArraysTest {
         assertEquals(3, data[3]);
     }
 
+    @Test
+    public void testDeduplicateIntDups() {
+        int[] data = {1, 2, 2, 3, 3, 3, 5};
+        int end = MoreArrays.deduplicate(data, 0, 7);
+        assertEquals(4, end);
+        assertEquals(1, data[0]);
+        assertEquals(2, data[1]);
+        assertEquals(3, data[2]);
+        assertEquals(5, data[3]);
+    }
 }
@@ -21,6 +21,7 @@
 package org.grouplens.lenskit.vectors;
 
 import it.unimi.dsi.fastutil.longs.Long2DoubleMaps;
+import org.apache.commons.lang3.SerializationUtils;
 import org.junit.Test;
 
 import static org.grouplens.lenskit.util.test.ExtraMatchers.notANumber;
@@ -80,4 +81,28 @@ public class TestImmutableSparseVector extends SparseVectorTestCommon {
         assertThat(v.get(3), closeTo(Math.PI));
         assertThat(v.containsKey(9), equalTo(false));
     }
+
+    @Test
+    public void testCachedStatistics() {
+        long[] keys = {3, 7, 9};
+        double[] values = {3, 4, 12};
+        ImmutableSparseVector v = MutableSparseVector.wrap(keys, values, 2).freeze();
+        for (int i = 0; i < 2; i++) {
+            assertThat(v.size(), equalTo(2));
+            assertThat(v.sum(), closeTo(7));
+            assertThat(v.norm(), closeTo(5));
+            assertThat(v.mean(), closeTo(3.5));
+        }
+    }
+
+    @Test
+    public void testSerializedStatistics() {
+        ImmutableSparseVector v = simpleVector();
+        double norm = v.norm();
+        ImmutableSparseVector v2 = SerializationUtils.clone(v);
+        assertThat(v2.size(), equalTo(3));
+        assertThat(v2.sum(), closeTo(7));
+        assertThat(v2.norm(), closeTo(norm));
+        assertThat(v2.mean(), closeTo(7.0 / 3));
+    }
 }
@@ -0,0 +1,171 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.vectors;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the primitive kernels combining two sparse vectors.
+ */
+public class TestVectorKernels {
+    private static final double EPSILON = 1.0e-6;
+
+    /**
+     * Compute the dot product the slow way, by looking up each key.
+     */
+    private static double naiveDot(SparseVector v1, SparseVector v2) {
+        double dot = 0;
+        for (VectorEntry e: v1.fast()) {
+            if (v2.containsKey(e.getKey())) {
+                dot += e.getValue() * v2.get(e.getKey());
+            }
+        }
+        return dot;
+    }
+
+    private static MutableSparseVector randomVector(Random rng, int n, int range) {
+        LongArrayList keys = new LongArrayList();
+        for (int i = 0; i < n; i++) {
+            keys.add(rng.nextInt(range));
+        }
+        MutableSparseVector v = MutableSparseVector.create(keys);
+        for (VectorEntry e: v.fast(VectorEntry.State.EITHER)) {
+            v.set(e, rng.nextDouble());
+        }
+        return v;
+    }
+
+    @Test
+    public void testMergeDot() {
+        SparseVector v1 = MutableSparseVector.wrap(new long[]{1, 3, 5, 7}, new double[]{1, 2, 3, 4});
+        SparseVector v2 = MutableSparseVector.wrap(new long[]{2, 3, 4, 7}, new double[]{5, 6, 7, 8});
+        assertThat(v1.dot(v2), closeTo(2 * 6 + 4 * 8, EPSILON));
+        assertThat(v2.dot(v1), closeTo(2 * 6 + 4 * 8, EPSILON));
+        assertThat(v1.countCommonKeys(v2), equalTo(2));
+    }
+
+    @Test
+    public void testGallopDot() {
+        long[] keys = new long[1000];
+        double[] values = new double[1000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i * 2;
+            values[i] = i;
+        }
+        SparseVector big = MutableSparseVector.wrap(keys, values);
+        SparseVector small = MutableSparseVector.wrap(new long[]{-1, 4, 5, 998, 1998, 2500},
+                                                      new double[]{1, 2, 3, 4, 5, 6});
+        double expected = 2 * 2 + 4 * 499 + 5 * 999;
+        assertThat(small.dot(big), closeTo(expected, EPSILON));
+        assertThat(big.dot(small), closeTo(expected, EPSILON));
+        assertThat(big.countCommonKeys(small), equalTo(3));
+        assertThat(small.countCommonKeys(big), equalTo(3));
+    }
+
+    @Test
+    public void testInactiveKeys() {
+        MutableSparseVector v1 = MutableSparseVector.wrap(new long[]{1, 2, 3, 4},
+                                                          new double[]{1, 2, 3, 4});
+        v1.unset(2);
+        MutableSparseVector v2 = MutableSparseVector.wrap(new long[]{2, 3, 4, 5},
+                                                          new double[]{1, 1, 1, 1});
+        v2.unset(4);
+        assertThat(v1.dot(v2), closeTo(3, EPSILON));
+        assertThat(v1.countCommonKeys(v2), equalTo(1));
+        assertThat(v1.norm(), closeTo(Math.sqrt(1 + 9 + 16), EPSILON));
+        assertThat(v1.sum(), closeTo(8, EPSILON));
+    }
+
+    @Test
+    public void testRandomVectors() {
+        Random rng = new Random(42);
+        for (int trial = 0; trial < 50; trial++) {
+            MutableSparseVector v1 = randomVector(rng, rng.nextInt(20), 500);
+            MutableSparseVector v2 = randomVector(rng, rng.nextInt(400), 500);
+            if (trial % 2 == 0) {
+                // knock out some keys to exercise the active masks
+                for (VectorEntry e: v2.fast()) {
+                    if (rng.nextDouble() < 0.2) {
+                        v2.unset(e);
+                    }
+                }
+            }
+            assertThat(v1.dot(v2), closeTo(naiveDot(v1, v2), EPSILON));
+            assertThat(v2.dot(v1), closeTo(naiveDot(v1, v2), EPSILON));
+            assertThat(v1.countCommonKeys(v2),
+                       equalTo(v1.size() - countMissing(v1, v2)));
+        }
+    }
+
+    private static int countMissing(SparseVector v1, SparseVector v2) {
+        int n = 0;
+        for (VectorEntry e: v1.fast()) {
+            if (!v2.containsKey(e.getKey())) {
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    @Test
+    public void testIntersectionStatistics() {
+        SparseVector v1 = MutableSparseVector.wrap(new long[]{1, 2, 3, 4}, new double[]{1, 2, 3, 10});
+        SparseVector v2 = MutableSparseVector.wrap(new long[]{1, 2, 3, 5}, new double[]{2, 4, 9, 10});
+        IntersectionStatistics stats = v1.intersectionStatistics(v2);
+        assertThat(stats.getCount(), equalTo(3));
+        assertThat(stats.getSum1(), closeTo(6, EPSILON));
+        assertThat(stats.getSum2(), closeTo(15, EPSILON));
+        assertThat(stats.getMean1(), closeTo(2, EPSILON));
+        assertThat(stats.getMean2(), closeTo(5, EPSILON));
+        assertThat(stats.getSumSquares1(), closeTo(14, EPSILON));
+        assertThat(stats.getSumSquares2(), closeTo(101, EPSILON));
+        assertThat(stats.getDot(), closeTo(2 + 8 + 27, EPSILON));
+        // deviations are (-1, 0, 1) and (-3, -1, 4)
+        assertThat(stats.getCenteredSumSquares1(), closeTo(2, EPSILON));
+        assertThat(stats.getCenteredSumSquares2(), closeTo(26, EPSILON));
+        assertThat(stats.getCenteredDot(), closeTo(7, EPSILON));
+    }
+
+    @Test
+    public void testConstantStatistics() {
+        SparseVector v1 = MutableSparseVector.wrap(new long[]{1, 2, 3}, new double[]{0.1, 0.1, 0.1});
+        SparseVector v2 = MutableSparseVector.wrap(new long[]{1, 2, 3}, new double[]{1, 2, 3});
+        IntersectionStatistics stats = v1.intersectionStatistics(v2);
+        // the single-pass formula leaves a rounding error of the order of the values
+        assertThat(stats.getCenteredSumSquares1(), closeTo(0, 1.0e-20));
+    }
+
+    @Test
+    public void testEmptyStatistics() {
+        SparseVector v1 = MutableSparseVector.wrap(new long[]{1, 2}, new double[]{1, 2});
+        SparseVector v2 = MutableSparseVector.wrap(new long[]{3}, new double[]{1});
+        IntersectionStatistics stats = v1.intersectionStatistics(v2);
+        assertThat(stats.getCount(), equalTo(0));
+        assertThat(stats.getMean1(), equalTo(0.0));
+        assertThat(stats.getCenteredDot(), equalTo(0.0));
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.eval.data;
+
+import org.grouplens.lenskit.data.dao.BinaryRatingDAO;
+import org.grouplens.lenskit.data.dao.SortOrder;
+import org.grouplens.lenskit.eval.AbstractTask;
+import org.grouplens.lenskit.eval.TaskExecutionException;
+import org.grouplens.lenskit.util.io.UpToDateChecker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Convert a data source (typically a CSV file) into a {@linkplain BinaryRatingDAO binary
+ * rating file}, and produce a data source reading from the converted file.
+ *
+ * @since 2.1
+ */
+public class BinaryRatingTask extends AbstractTask<DataSource> {
+    private static final Logger logger = LoggerFactory.getLogger(BinaryRatingTask.class);
+
+    private DataSource source;
+    private SortOrder order = SortOrder.USER;
+
+    @Nullable
+    private File output;
+
+    public BinaryRatingTask() {
+        super("binaryRatings");
+    }
+
+    public BinaryRatingTask(String name) {
+        super(name);
+    }
+
+    /**
+     * Set the input data source.
+     *
+     * @param source The data source to convert.
+     * @return The task (for chaining).
+     */
+    public BinaryRatingTask setSource(DataSource source) {
+        this.source = source;
+        return this;
+    }
+
+    /**
+     * Set the output file name.
+     *
+     * @param name The name of the output file.
+     * @return The task (for chaining).
+     * @see #setOutput(File)
+     */
+    public BinaryRatingTask setOutput(String name) {
+        return setOutput(new File(name));
+    }
+
+    /**
+     * Set the output file for the converted ratings.
+     *
+     * @param out The output file.
+     * @return The task (for chaining).
+     */
+    public BinaryRatingTask setOutput(File out) {
+        output = out;
+        return this;
+    }
+
+    /**
+     * Set the order in which to store the ratings.  The default is {@link SortOrder#USER}.
+     *
+     * @param order The sort order of the output file.
+     * @return The task (for chaining).
+     */
+    public BinaryRatingTask setSortOrder(SortOrder order) {
+        this.order = order;
+        return this;
+    }
+
+    /**
+     * Get the input data source.
+     *
+     * @return The data source to convert.
+     */
+    public DataSource getSource() {
+        return source;
+    }
+
+    /**
+     * Get the output file.
+     *
+     * @return The binary rating file to write.
+     */
+    public File getOutput() {
+        if (output == null) {
+            return new File(getName() + ".lkr");
+        }
+        return output;
+    }
+
+    /**
+     * Get the order in which ratings are stored.
+     *
+     * @return The sort order of the output file.
+     */
+    public SortOrder getSortOrder() {
+        return order;
+    }
+
+    /**
+     * Convert the ratings, unless the output file is up to date.
+     *
+     * @return A data source reading the binary rating file.
+     * @throws TaskExecutionException if the ratings cannot be converted.
+     */
+    @Override
+    public DataSource perform() throws TaskExecutionException {
+        if (source == null) {
+            throw new IllegalStateException("no source specified for binary ratings");
+        }
+        File file = getOutput();
+        UpToDateChecker check = new UpToDateChecker();
+        check.addInput(source.lastModified());
+        check.addOutput(file);
+        try {
+            BinaryRatingDAO dao = null;
+            if (check.isUpToDate()) {
+                dao = openExisting(file);
+            }
+            if (dao == null) {
+                logger.info("converting {} to {}", source.getName(), file);
+                BinaryRatingDAO.write(source.getEventDAO(), file, order);
+                dao = BinaryRatingDAO.open(file);
+            }
+            return new GenericDataSource(getName(), dao, source.getPreferenceDomain());
+        } catch (IOException e) {
+            throw new TaskExecutionException("error converting ratings", e);
+        }
+    }
+
+    /**
+     * Open an up-to-date output file, if it can be reused.
+     *
+     * @param file The output file.
+     * @return The DAO for the file, or {@code null} if it is not in the requested sort order
+     *         or cannot be read and must be rewritten.
+     */
+    @Nullable
+    private BinaryRatingDAO openExisting(File file) {
+        BinaryRatingDAO dao;
+        try {
+            dao = BinaryRatingDAO.open(file);
+        } catch (IOException e) {
+            logger.info("cannot read existing binary ratings {}: {}", file, e.getMessage());
+            return null;
+        }
+        if (dao.getSortOrder() != order) {
+            logger.info("binary ratings {} in {} order, but {} order requested",
+                        getName(), dao.getSortOrder(), order);
+            return null;
+        }
+        logger.info("binary ratings {} up to date", getName());
+        return dao;
+    }
+}
@@ -28,6 +28,8 @@ import org.grouplens.lenskit.data.dao.EventDAO;
 import org.grouplens.lenskit.data.pref.IndexedPreference;
 import org.grouplens.lenskit.data.snapshot.PackedPreferenceSnapshot;
 import org.grouplens.lenskit.data.snapshot.PreferenceSnapshot;
+import org.grouplens.lenskit.data.snapshot.RatingMatrix;
+import org.grouplens.lenskit.data.snapshot.RatingMatrixSource;
 import org.grouplens.lenskit.eval.data.traintest.TTDataSet;
 import org.grouplens.lenskit.util.Index;
 import org.grouplens.lenskit.util.SoftMemoizingProvider;
@@ -40,7 +42,7 @@ import javax.inject.Provider;
 import java.io.Serializable;
 
 @Shareable
-public class SharedPreferenceSnapshot implements PreferenceSnapshot, Serializable {
+public class SharedPreferenceSnapshot implements RatingMatrixSource, Serializable {
     private static final long serialVersionUID = 1L;
     private static final Logger logger = LoggerFactory.getLogger(SharedPreferenceSnapshot.class);
     private final PreferenceSnapshot snapshot;
@@ -75,6 +77,11 @@ public class SharedPreferenceSnapshot implements PreferenceSnapshot, Serializabl
         return snapshot.getRatings();
     }
 
+    @Override
+    public RatingMatrix getRatingMatrix() {
+        return RatingMatrix.fromSnapshot(snapshot);
+    }
+
     @Override
     public FastCollection<IndexedPreference> getUserRatings(long userId) {
         return snapshot.getUserRatings(userId);
@@ -0,0 +1,46 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item;
+
+/**
+ * Neighborhood scorer that can compute its score from running sums over the
+ * neighborhood.  Item scoring algorithms can accumulate these sums as they scan
+ * the neighbors, without collecting the neighborhood into a list first.
+ *
+ * @see IndexedItemScoreAlgorithm
+ * @since 2.1
+ */
+public interface AccumulatingNeighborhoodScorer extends NeighborhoodScorer {
+    /**
+     * Compute a score from accumulated neighborhood statistics.  The result must
+     * be the same as {@link #score(Iterable, org.grouplens.lenskit.vectors.SparseVector)}
+     * for the neighborhood the statistics were computed from.
+     *
+     * @param count       The number of neighbors.
+     * @param simSum      The sum of the neighbor similarities.
+     * @param absSimSum   The sum of the absolute values of the neighbor similarities.
+     * @param weightedSum The sum of the neighbor scores, each multiplied by the
+     *                    neighbor's similarity.
+     * @return An accumulated score from the neighbors, or {@link Double#NaN} if
+     *         no score could be computed.
+     */
+    double score(int count, double simSum, double absSimSum, double weightedSum);
+}
@@ -0,0 +1,113 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item;
+
+import org.grouplens.lenskit.collections.CollectionUtils;
+import org.grouplens.lenskit.core.Shareable;
+import org.grouplens.lenskit.knn.NeighborhoodSize;
+import org.grouplens.lenskit.knn.item.model.ItemItemModel;
+import org.grouplens.lenskit.scored.ScoredId;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.VectorEntry;
+
+import javax.inject.Inject;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Item scoring algorithm that scores each item in a single pass over its neighbors.
+ * It produces the same scores as {@link DefaultItemScoreAlgorithm}, using up to
+ * {@link NeighborhoodSize} neighbors, but it does not build a neighbor list for each
+ * item.  The user's ratings are copied into sorted parallel arrays once per call;
+ * each neighbor is then looked up by binary search in those arrays, and its
+ * contribution is added to running sums that an {@link AccumulatingNeighborhoodScorer}
+ * turns into the final score.
+ *
+ * <p>If the neighborhood scorer is not an {@link AccumulatingNeighborhoodScorer}, this
+ * algorithm falls back to {@link DefaultItemScoreAlgorithm}.
+ *
+ * @since 2.1
+ */
+@Shareable
+public class IndexedItemScoreAlgorithm implements ItemScoreAlgorithm, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int neighborhoodSize;
+
+    @Inject
+    public IndexedItemScoreAlgorithm(@NeighborhoodSize int n) {
+        neighborhoodSize = n;
+    }
+
+    @Override
+    public void scoreItems(ItemItemModel model, SparseVector userData,
+                           MutableSparseVector scores,
+                           NeighborhoodScorer scorer) {
+        if (!(scorer instanceof AccumulatingNeighborhoodScorer)) {
+            new DefaultItemScoreAlgorithm(neighborhoodSize).scoreItems(model, userData, scores, scorer);
+            return;
+        }
+        AccumulatingNeighborhoodScorer accScorer = (AccumulatingNeighborhoodScorer) scorer;
+
+        // unpack the user's data into parallel arrays, sorted by item
+        final int nrated = userData.size();
+        final long[] ratedItems = new long[nrated];
+        final double[] ratings = new double[nrated];
+        int i = 0;
+        for (VectorEntry e: userData.fast()) {
+            ratedItems[i] = e.getKey();
+            ratings[i] = e.getValue();
+            i++;
+        }
+
+        // Create a channel for recording the neighborhood size
+        MutableSparseVector sizes = scores.getOrAddChannelVector(ItemItemScorer.NEIGHBORHOOD_SIZE_SYMBOL);
+        for (VectorEntry e : scores.fast(VectorEntry.State.EITHER)) {
+            int count = 0;
+            double simSum = 0;
+            double absSimSum = 0;
+            double weightedSum = 0;
+
+            if (nrated > 0) {
+                for (ScoredId nbr: CollectionUtils.fast(model.getNeighbors(e.getKey()))) {
+                    int idx = Arrays.binarySearch(ratedItems, nbr.getId());
+                    if (idx >= 0) {
+                        final double sim = nbr.getScore();
+                        simSum += sim;
+                        absSimSum += Math.abs(sim);
+                        weightedSum += sim * ratings[idx];
+                        count += 1;
+                        if (count == neighborhoodSize) {
+                            break;
+                        }
+                    }
+                }
+            }
+
+            sizes.set(e, count); // set size even if no score
+            final double score = accScorer.score(count, simSum, absSimSum, weightedSum);
+            if (!Double.isNaN(score)) {
+                scores.set(e, score);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item;
+
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import org.grouplens.lenskit.ItemScorer;
+import org.grouplens.lenskit.basic.TopNItemRecommender;
+import org.grouplens.lenskit.data.dao.ItemDAO;
+import org.grouplens.lenskit.data.dao.UserEventDAO;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.history.UserHistory;
+import org.grouplens.lenskit.data.history.UserHistorySummarizer;
+import org.grouplens.lenskit.knn.item.model.ReverseNeighborhoodIndex;
+import org.grouplens.lenskit.vectors.SparseVector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+
+/**
+ * Top-N recommender for item-item CF.  Rather than scoring every item in the
+ * system, it uses a {@link ReverseNeighborhoodIndex} to find the items whose
+ * neighborhoods contain at least one of the user's items; no other item can
+ * receive a score from the item-item scorer.
+ *
+ * <p>The restriction is only valid when the item scorer is an {@link ItemItemScorer}.  If
+ * the scorer is bound to anything else (for example, a fallback scorer that uses a baseline
+ * for items item-item cannot score), the index would drop items the scorer can score, so
+ * the recommender considers all items, like {@link TopNItemRecommender}.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+public class ItemItemRecommender extends TopNItemRecommender {
+    private static final Logger logger = LoggerFactory.getLogger(ItemItemRecommender.class);
+
+    /**
+     * The reverse index, or {@code null} if the scorer is not an item-item scorer.
+     */
+    private final ReverseNeighborhoodIndex index;
+    private final UserHistorySummarizer summarizer;
+
+    /**
+     * Construct a new item-item recommender.
+     *
+     * @param uedao  The user event DAO.
+     * @param idao   The item DAO.
+     * @param scorer The item scorer.
+     * @param idx    The reverse neighborhood index of the item-item model.
+     * @param sum    The history summarizer (should match the scorer's summarizer).
+     */
+    @Inject
+    public ItemItemRecommender(UserEventDAO uedao, ItemDAO idao, ItemScorer scorer,
+                               ReverseNeighborhoodIndex idx,
+                               UserHistorySummarizer sum) {
+        super(uedao, idao, scorer);
+        if (scorer instanceof ItemItemScorer) {
+            index = idx;
+        } else {
+            logger.debug("item scorer {} is not an item-item scorer, not restricting candidates",
+                        scorer);
+            index = null;
+        }
+        summarizer = sum;
+    }
+
+    /**
+     * Get the items that can be scored for the user.  These are the items having
+     * at least one of the user's items in their neighborhoods, or all items if the
+     * scorer is not an item-item scorer.
+     *
+     * @param user The user's ID.
+     * @return The candidate items for the user.
+     */
+    @Override
+    protected LongSet getPredictableItems(long user) {
+        if (index == null) {
+            return super.getPredictableItems(user);
+        }
+        UserHistory<? extends Event> history =
+                userEventDAO.getEventsForUser(user, summarizer.eventTypeWanted());
+        if (history == null) {
+            return LongSets.EMPTY_SET;
+        }
+        SparseVector summary = summarizer.summarize(history);
+        return index.getCandidates(summary.keySet());
+    }
+}
@@ -20,19 +20,27 @@
  */
 package org.grouplens.lenskit.knn.item;
 
-import org.grouplens.lenskit.ItemScorer;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
 import org.grouplens.lenskit.basic.AbstractItemScorer;
+import org.grouplens.lenskit.basic.BatchableItemScorer;
+import org.grouplens.lenskit.basic.StreamingItemScorer;
 import org.grouplens.lenskit.data.event.Event;
 import org.grouplens.lenskit.data.history.History;
 import org.grouplens.lenskit.data.history.UserHistory;
 import org.grouplens.lenskit.data.dao.UserEventDAO;
 import org.grouplens.lenskit.data.history.UserHistorySummarizer;
 import org.grouplens.lenskit.knn.item.model.ItemItemModel;
+import org.grouplens.lenskit.knn.item.model.ReverseNeighborhoodIndex;
 import org.grouplens.lenskit.symbols.Symbol;
 import org.grouplens.lenskit.transform.normalize.UserVectorNormalizer;
 import org.grouplens.lenskit.transform.normalize.VectorTransformation;
+import org.grouplens.lenskit.util.ScoredItemAccumulator;
 import org.grouplens.lenskit.vectors.MutableSparseVector;
 import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.VectorEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,7 +53,8 @@ import javax.inject.Inject;
  *
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
-public class ItemItemScorer extends AbstractItemScorer implements ItemScorer {
+public class ItemItemScorer extends AbstractItemScorer
+        implements StreamingItemScorer, BatchableItemScorer {
     private static final Logger logger = LoggerFactory.getLogger(ItemItemScorer.class);
     public static final Symbol NEIGHBORHOOD_SIZE_SYMBOL =
             Symbol.of("org.grouplens.lenskit.knn.item.neighborhoodSize");
@@ -59,6 +68,11 @@ public class ItemItemScorer extends AbstractItemScorer implements ItemScorer {
     protected final NeighborhoodScorer scorer;
     @Nonnull
     protected final ItemScoreAlgorithm algorithm;
+    /**
+     * The reverse index of the model, for batch scoring.  If it was not supplied, it is
+     * built on first use.
+     */
+    private ReverseNeighborhoodIndex reverseIndex;
 
     /**
      * Construct a new item-item scorer.
@@ -68,39 +82,84 @@ public class ItemItemScorer extends AbstractItemScorer implements ItemScorer {
      * @param sum    The history summarizer.
      * @param scorer The neighborhood scorer.
      * @param algo   The item scoring algorithm.  It converts neighborhoods to scores.
+     * @param norm   The user vector normalizer.
+     * @param idx    The reverse neighborhood index of the model, used for batch scoring.
      */
     @Inject
     public ItemItemScorer(UserEventDAO dao, ItemItemModel m,
                           UserHistorySummarizer sum,
                           NeighborhoodScorer scorer,
                           ItemScoreAlgorithm algo,
-                          UserVectorNormalizer norm) {
+                          UserVectorNormalizer norm,
+                          ReverseNeighborhoodIndex idx) {
         this.dao = dao;
         model = m;
         summarizer = sum;
         this.scorer = scorer;
         algorithm = algo;
         normalizer = norm;
+        reverseIndex = idx;
         logger.info("building item-item scorer with scorer {}", scorer);
     }
 
+    /**
+     * Construct a new item-item scorer without a reverse neighborhood index.  The index is
+     * built from the model the first time the scorer is used for batch scoring.
+     *
+     * @param dao    The DAO.
+     * @param m      The model
+     * @param sum    The history summarizer.
+     * @param scorer The neighborhood scorer.
+     * @param algo   The item scoring algorithm.  It converts neighborhoods to scores.
+     * @param norm   The user vector normalizer.
+     */
+    public ItemItemScorer(UserEventDAO dao, ItemItemModel m,
+                          UserHistorySummarizer sum,
+                          NeighborhoodScorer scorer,
+                          ItemScoreAlgorithm algo,
+                          UserVectorNormalizer norm) {
+        this(dao, m, sum, scorer, algo, norm, null);
+    }
+
     @Nonnull
     public UserVectorNormalizer getNormalizer() {
         return normalizer;
     }
 
     /**
-     * Score items by computing predicted ratings.
+     * Get the summary of a user's history.
      *
-     * @see ItemScoreAlgorithm#scoreItems(ItemItemModel, SparseVector, MutableSparseVector, NeighborhoodScorer)
+     * @param user The user ID.
+     * @return The user's history summary vector.
      */
-    @Override
-    public void score(long user, @Nonnull MutableSparseVector scores) {
+    private SparseVector userSummary(long user) {
         UserHistory<? extends Event> history = dao.getEventsForUser(user, summarizer.eventTypeWanted());
         if (history == null) {
             history = History.forUser(user);
         }
-        SparseVector summary = summarizer.summarize(history);
+        return summarizer.summarize(history);
+    }
+
+    /**
+     * Get the reverse neighborhood index, building it if it was not supplied.
+     *
+     * @return The reverse neighborhood index of the model.
+     */
+    private synchronized ReverseNeighborhoodIndex getReverseIndex() {
+        if (reverseIndex == null) {
+            reverseIndex = ReverseNeighborhoodIndex.create(model);
+        }
+        return reverseIndex;
+    }
+
+    /**
+     * Score items by computing predicted ratings.
+     *
+     * @see ItemScoreAlgorithm#scoreItems(ItemItemModel, SparseVector, MutableSparseVector, NeighborhoodScorer)
+     */
+    @Override
+    public void score(long user, @Nonnull MutableSparseVector scores) {
+        SparseVector summary = userSummary(user);
         VectorTransformation transform = normalizer.makeTransformation(user, summary);
         MutableSparseVector normed = summary.mutableCopy();
         transform.apply(normed);
@@ -111,4 +170,69 @@ public class ItemItemScorer extends AbstractItemScorer implements ItemScorer {
         // untransform the scores
         transform.unapply(scores);
     }
-}
\ No newline at end of file
+
+    /**
+     * Score items into an accumulator.  The user's vector is normalized once, and the items
+     * are then scored in blocks of {@link StreamingItemScorer#BLOCK_SIZE}.
+     */
+    @Override
+    public void score(long user, @Nonnull LongCollection items,
+                      @Nonnull ScoredItemAccumulator output) {
+        SparseVector summary = userSummary(user);
+        VectorTransformation transform = normalizer.makeTransformation(user, summary);
+        MutableSparseVector normed = summary.mutableCopy();
+        transform.apply(normed);
+
+        LongArrayList block = new LongArrayList(Math.min(items.size(), BLOCK_SIZE));
+        LongIterator iter = items.iterator();
+        while (iter.hasNext()) {
+            block.add(iter.nextLong());
+            if (block.size() == BLOCK_SIZE || !iter.hasNext()) {
+                MutableSparseVector scores = MutableSparseVector.create(block);
+                algorithm.scoreItems(model, normed, scores, scorer);
+                transform.unapply(scores);
+                for (VectorEntry e: scores.fast()) {
+                    output.put(e.getKey(), e.getValue());
+                }
+                block.clear();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>This uses the {@link ReverseNeighborhoodIndex} of the model to only score each
+     * user's candidate items (the items whose neighborhoods contain at least one of the
+     * user's items).
+     */
+    @Nonnull
+    @Override
+    public UserScorer prepareBatch(@Nonnull final LongSortedSet items) {
+        final ReverseNeighborhoodIndex index = getReverseIndex();
+        return new UserScorer() {
+            @Nonnull
+            @Override
+            public SparseVector score(long user) {
+                SparseVector summary = userSummary(user);
+                VectorTransformation transform = normalizer.makeTransformation(user, summary);
+                MutableSparseVector normed = summary.mutableCopy();
+                transform.apply(normed);
+
+                LongSortedSet candidates = index.getCandidates(summary.keySet());
+                LongArrayList toScore = new LongArrayList(candidates.size());
+                LongIterator iter = candidates.iterator();
+                while (iter.hasNext()) {
+                    final long item = iter.nextLong();
+                    if (items.contains(item)) {
+                        toScore.add(item);
+                    }
+                }
+
+                MutableSparseVector scores = MutableSparseVector.create(toScore);
+                algorithm.scoreItems(model, normed, scores, scorer);
+                transform.unapply(scores);
+                return scores.freeze();
+            }
+        };
+    }
+}
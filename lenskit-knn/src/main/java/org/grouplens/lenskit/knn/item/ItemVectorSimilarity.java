@@ -43,6 +43,16 @@ public class ItemVectorSimilarity implements ItemSimilarity, Serializable {
         delegate = sim;
     }
 
+    /**
+     * Get the vector similarity to which this item similarity delegates.
+     *
+     * @return The vector similarity.
+     * @since 2.1
+     */
+    public VectorSimilarity getDelegate() {
+        return delegate;
+    }
+
     @Override
     public double similarity(long i1, SparseVector v1, long i2, SparseVector v2) {
         return delegate.similarity(v1, v2);
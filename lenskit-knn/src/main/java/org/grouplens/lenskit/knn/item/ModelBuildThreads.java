@@ -0,0 +1,50 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item;
+
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.grouplens.lenskit.core.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * Number of threads to use when building the item-item similarity matrix and its
+ * {@linkplain org.grouplens.lenskit.knn.item.model.ItemItemBuildContext build context}.
+ * The value follows the usual thread count convention (see
+ * {@link org.grouplens.lenskit.util.parallel.ExecHelpers#resolveThreadCount(int)}).
+ * The slope-one model builder uses the same parameter for its parallel build.
+ *
+ * <p>Each thread accumulates its rows separately until they are merged at the end of the
+ * build, and with a symmetric similarity a thread's rows can cover every item, so the peak
+ * memory of a parallel build is up to roughly the thread count times the size of the
+ * model.
+ *
+ * @since 2.1
+ */
+@Documented
+@DefaultInteger(1)
+@Parameter(Integer.class)
+@Qualifier
+@Target({ElementType.METHOD, ElementType.PARAMETER})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ModelBuildThreads {
+}
@@ -0,0 +1,48 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item;
+
+import org.grouplens.grapht.annotation.DefaultBoolean;
+import org.grouplens.lenskit.core.Parameter;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * Whether to build the rows of a truncated item-item model with a pruned top-<i>K</i>
+ * similarity search.  If enabled, and the {@linkplain ModelSize model size} is limited and
+ * the similarity function is a sparse
+ * {@linkplain org.grouplens.lenskit.vectors.similarity.BoundedVectorSimilarity bounded vector
+ * similarity} (such as cosine), each row is built by computing the similarities of its
+ * candidate neighbors in decreasing order of an upper bound on their similarity, stopping
+ * once no remaining candidate can enter the row.  The model is the same as without pruning,
+ * up to the order of neighbors with tied similarities.
+ *
+ * @since 2.1
+ */
+@Documented
+@DefaultBoolean(false)
+@Parameter(boolean.class)
+@Qualifier
+@Target({ElementType.METHOD, ElementType.PARAMETER})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface PrunedSimilaritySearch {
+}
@@ -35,7 +35,7 @@ import java.io.Serializable;
  */
 @Shareable
 @Singleton
-public class SimilaritySumNeighborhoodScorer implements NeighborhoodScorer, Serializable {
+public class SimilaritySumNeighborhoodScorer implements AccumulatingNeighborhoodScorer, Serializable {
     private static final long serialVersionUID = 1L;
 
     @Override
@@ -48,4 +48,9 @@ public class SimilaritySumNeighborhoodScorer implements NeighborhoodScorer, Seri
         }
         return (n > 0) ? sum : Double.NaN;
     }
+
+    @Override
+    public double score(int count, double simSum, double absSimSum, double weightedSum) {
+        return (count > 0) ? simSum : Double.NaN;
+    }
 }
@@ -37,7 +37,7 @@ import static java.lang.Math.abs;
  */
 @Shareable
 @Singleton
-public class WeightedAverageNeighborhoodScorer implements NeighborhoodScorer, Serializable {
+public class WeightedAverageNeighborhoodScorer implements AccumulatingNeighborhoodScorer, Serializable {
     private static final long serialVersionUID = 1L;
 
     @Override
@@ -56,4 +56,13 @@ public class WeightedAverageNeighborhoodScorer implements NeighborhoodScorer, Se
             return Double.NaN;
         }
     }
+
+    @Override
+    public double score(int count, double simSum, double absSimSum, double weightedSum) {
+        if (absSimSum > 0) {
+            return weightedSum / absSimSum;
+        } else {
+            return Double.NaN;
+        }
+    }
 }
@@ -20,13 +20,15 @@
  */
 package org.grouplens.lenskit.knn.item.model;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import it.unimi.dsi.fastutil.longs.*;
+import org.grouplens.lenskit.collections.LongKeyDomain;
 import org.grouplens.lenskit.transform.normalize.VectorNormalizer;
 import org.grouplens.lenskit.vectors.SparseVector;
-import org.grouplens.lenskit.vectors.VectorEntry;
 
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
+import java.util.Arrays;
 import java.util.Iterator;
 
 /**
@@ -34,19 +36,33 @@ import java.util.Iterator;
  * provides access to item vectors and the item universe for use in  building
  * up the model in the accumulator.
  *
+ * <p>The items rated by each user are stored in compressed sparse row form, as dense
+ * item indexes, for enumerating the candidate neighbors of items with a sparse
+ * similarity function (see {@link CandidateSet}).
+ *
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  * @see ItemItemModelBuilder
  */
 public class ItemItemBuildContext {
     @Nonnull
-    private
-    LongSortedSet items;
+    private final LongKeyDomain items;
+    @Nonnull
+    private final LongSortedSet itemSet;
     @Nonnull
-    private
-    Long2ObjectMap<SparseVector> itemVectors;
+    private final Long2ObjectMap<SparseVector> itemVectors;
 
     @Nonnull
-    private Long2ObjectMap<LongSortedSet> userItems;
+    private final LongKeyDomain users;
+    /**
+     * The start of each user's items in {@link #userItems}, with an extra entry for the end.
+     */
+    @Nonnull
+    private final int[] userOffsets;
+    /**
+     * The indexes of the items rated by each user, sorted within each user.
+     */
+    @Nonnull
+    private final int[] userItems;
 
     /**
      * Set up a new item build context.
@@ -58,9 +74,50 @@ public class ItemItemBuildContext {
     ItemItemBuildContext(@Nonnull LongSortedSet universe,
                          @Nonnull Long2ObjectMap<SparseVector> vectors,
                          @Nonnull Long2ObjectMap<LongSortedSet> userItems) {
-        this.userItems = userItems;
-        items = universe;
+        items = LongKeyDomain.fromCollection(universe);
+        itemSet = items.domain();
+        itemVectors = vectors;
+        users = LongKeyDomain.fromCollection(userItems.keySet());
+        userOffsets = new int[users.domainSize() + 1];
+        IntArrayList indexes = new IntArrayList();
+        for (int u = 0; u < users.domainSize(); u++) {
+            userOffsets[u] = indexes.size();
+            LongIterator iter = userItems.get(users.getKey(u)).iterator();
+            while (iter.hasNext()) {
+                int idx = items.getIndex(iter.nextLong());
+                if (idx >= 0) {
+                    indexes.add(idx);
+                }
+            }
+            IntArrays.quickSort(indexes.elements(), userOffsets[u], indexes.size());
+        }
+        userOffsets[users.domainSize()] = indexes.size();
+        this.userItems = indexes.toIntArray();
+    }
+
+    /**
+     * Set up a new item build context with the user items in compressed sparse row form.
+     *
+     * @param items   The item domain.
+     * @param vectors Map of item IDs to item rating vectors.
+     * @param users   The user domain.
+     * @param offsets The start of each user's items in {@code uitems}, with an extra entry
+     *                for the end.
+     * @param uitems  The indexes (in {@code items}) of the items rated by each user, sorted
+     *                within each user.
+     */
+    ItemItemBuildContext(@Nonnull LongKeyDomain items,
+                         @Nonnull Long2ObjectMap<SparseVector> vectors,
+                         @Nonnull LongKeyDomain users,
+                         @Nonnull int[] offsets, @Nonnull int[] uitems) {
+        assert offsets.length == users.domainSize() + 1;
+        assert offsets[users.domainSize()] == uitems.length;
+        this.items = items;
+        itemSet = items.domain();
         itemVectors = vectors;
+        this.users = users;
+        userOffsets = offsets;
+        userItems = uitems;
     }
 
     /**
@@ -70,7 +127,7 @@ public class ItemItemBuildContext {
      */
     @Nonnull
     public LongSortedSet getItems() {
-        return items;
+        return itemSet;
     }
 
     /**
@@ -92,19 +149,155 @@ public class ItemItemBuildContext {
     }
 
     /**
-     * Get the union of all items rated by the provided set of users.
+     * Get the union of all items rated by the provided set of users.  Model builders should
+     * prefer a reusable {@link CandidateSet}.
      *
      * @param users The users to accumulate
      * @return The item candidates for {@code item}.
      */
     @Nonnull
     public LongSortedSet getUserItems(LongSet users) {
-        LongSortedSet union = new LongRBTreeSet();
-        LongIterator it = users.iterator();
-        while (it.hasNext()) {
-            union.addAll(userItems.get(it.nextLong()));
+        CandidateSet cands = newCandidateSet();
+        cands.collect(users);
+        long[] ids = new long[cands.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = cands.getItemId(i);
+        }
+        return LongKeyDomain.wrap(ids, ids.length, true).activeSetView();
+    }
+
+    /**
+     * Create a candidate set for enumerating the items rated by sets of users.  The candidate
+     * set can be reused for many rows, but is not thread-safe.
+     *
+     * @return A new candidate set.
+     * @since 2.1
+     */
+    public CandidateSet newCandidateSet() {
+        return new CandidateSet();
+    }
+
+    /**
+     * A reusable set of candidate items: the union of the items rated by a set of users
+     * (typically, the users who rated an item).  The set marks the items it has seen in an
+     * array over the dense item index, stamped with a generation number that changes on each
+     * {@link #collect(LongCollection)}, so it needs neither allocation nor clearing between
+     * rows.  It also counts how many of the users rated each candidate.
+     *
+     * @since 2.1
+     */
+    public final class CandidateSet {
+        private final int[] marks = new int[items.domainSize()];
+        private final int[] counts = new int[items.domainSize()];
+        private int generation = 0;
+        private int[] buffer = new int[Math.min(items.domainSize(), 16)];
+        private int size = 0;
+
+        private CandidateSet() {}
+
+        /**
+         * Replace the contents of this set with the items rated by some users.  Users not in
+         * the build context are ignored.
+         *
+         * @param userIds The users.
+         * @return The number of candidate items.
+         */
+        public int collect(LongCollection userIds) {
+            generation += 1;
+            if (generation == 0) {
+                // the stamps have wrapped around, so reset them
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+            size = 0;
+            LongIterator iter = userIds.iterator();
+            while (iter.hasNext()) {
+                int u = users.getIndex(iter.nextLong());
+                if (u < 0) {
+                    continue;
+                }
+                final int end = userOffsets[u + 1];
+                for (int j = userOffsets[u]; j < end; j++) {
+                    final int item = userItems[j];
+                    if (marks[item] != generation) {
+                        marks[item] = generation;
+                        counts[item] = 1;
+                        if (size == buffer.length) {
+                            buffer = IntArrays.grow(buffer, size + 1);
+                        }
+                        buffer[size++] = item;
+                    } else {
+                        counts[item] += 1;
+                    }
+                }
+            }
+            IntArrays.quickSort(buffer, 0, size);
+            return size;
+        }
+
+        /**
+         * Get the number of candidate items.
+         * @return The number of items in the set.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Get a candidate item.  Items are in increasing order of ID.
+         *
+         * @param i The position, in the range [0,{@link #size()}).
+         * @return The ID of the {@code i}th item.
+         */
+        public long getItemId(int i) {
+            assert i < size;
+            return items.getKey(buffer[i]);
+        }
+
+        /**
+         * Get the index of a candidate item in the item universe.
+         *
+         * @param i The position, in the range [0,{@link #size()}).
+         * @return The position of the {@code i}th item in {@link #getItems()}.
+         */
+        public int getItemIndex(int i) {
+            assert i < size;
+            return buffer[i];
+        }
+
+        /**
+         * Get the number of users in the last collected set who rated a candidate item.  When
+         * the set was collected from the users who rated an item, this is the number of users
+         * that item has in common with the candidate.
+         *
+         * @param i The position, in the range [0,{@link #size()}).
+         * @return The number of users who rated the {@code i}th item.
+         */
+        public int getUserCount(int i) {
+            assert i < size;
+            return counts[buffer[i]];
+        }
+
+        /**
+         * Find the position of the first candidate item greater than an item.
+         *
+         * @param item The item ID.
+         * @return The position of the first candidate with an ID greater than {@code item},
+         *         or {@link #size()} if there is no such candidate.
+         */
+        public int upperBound(long item) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (items.getKey(buffer[mid]) <= item) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
         }
-        return union;
     }
 
     /**
@@ -130,7 +323,7 @@ public class ItemItemBuildContext {
      *         corresponding vectors.
      */
     public Iterator<ItemVecPair> getItemPairIterator() {
-        return new FastIteratorImpl(items, items);
+        return new FastIteratorImpl(itemSet, itemSet);
     }
 
     /**
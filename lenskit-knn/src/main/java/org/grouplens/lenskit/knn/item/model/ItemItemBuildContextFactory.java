@@ -1,132 +1,487 @@
-/*
- * LensKit, an open source recommender systems toolkit.
- * Copyright 2010-2013 Regents of the University of Minnesota and contributors
- * Work on LensKit has been funded by the National Science Foundation under
- * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
- *
- * This program is free software; you can redistribute it and/or modify
- * it under the terms of the GNU Lesser General Public License as
- * published by the Free Software Foundation; either version 2.1 of the
- * License, or (at your option) any later version.
- *
- * This program is distributed in the hope that it will be useful, but WITHOUT
- * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
- * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
- * details.
- *
- * You should have received a copy of the GNU General Public License along with
- * this program; if not, write to the Free Software Foundation, Inc., 51
- * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
- */
-package org.grouplens.lenskit.knn.item.model;
-
-import it.unimi.dsi.fastutil.longs.*;
-import org.grouplens.lenskit.collections.LongUtils;
-import org.grouplens.lenskit.cursors.Cursor;
-import org.grouplens.lenskit.data.dao.UserEventDAO;
-import org.grouplens.lenskit.data.event.Event;
-import org.grouplens.lenskit.data.history.UserHistory;
-import org.grouplens.lenskit.data.history.UserHistorySummarizer;
-import org.grouplens.lenskit.transform.normalize.UserVectorNormalizer;
-import org.grouplens.lenskit.vectors.ImmutableSparseVector;
-import org.grouplens.lenskit.vectors.MutableSparseVector;
-import org.grouplens.lenskit.vectors.SparseVector;
-import org.grouplens.lenskit.vectors.VectorEntry;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import javax.inject.Inject;
-
-/**
- * Factory wrapping initialization logic necessary for instantiating an {@link ItemItemBuildContext}.
- */
-public class ItemItemBuildContextFactory {
-
-    private static final Logger logger = LoggerFactory.getLogger(ItemItemBuildContextFactory.class);
-
-    private final UserEventDAO userEventDAO;
-    private final UserVectorNormalizer normalizer;
-    private final UserHistorySummarizer userSummarizer;
-
-    @Inject
-    public ItemItemBuildContextFactory(UserEventDAO edao, UserVectorNormalizer normalizer,
-                                       UserHistorySummarizer userSummarizer) {
-        userEventDAO = edao;
-        this.normalizer = normalizer;
-        this.userSummarizer = userSummarizer;
-    }
-
-    /**
-     * Constructs and returns a new ItemItemBuildContext.
-     *
-     * @return a new ItemItemBuildContext.
-     */
-    public ItemItemBuildContext buildContext() {
-        logger.info("constructing build context");
-        logger.debug("using normalizer {}", normalizer);
-        logger.debug("using summarizer {}", userSummarizer);
-
-        logger.debug("Building item data");
-        Long2ObjectMap<Long2DoubleMap> itemData = new Long2ObjectOpenHashMap<Long2DoubleMap>(1000);
-        Long2ObjectMap<LongSortedSet> candidateData = new Long2ObjectOpenHashMap<LongSortedSet>(1000);
-        buildItemRatings(itemData, candidateData);
-
-        LongSortedSet items = LongUtils.packedSet(itemData.keySet());
-        // finalize the item data into vectors
-        Long2ObjectMap<SparseVector> itemRatings = new Long2ObjectOpenHashMap<SparseVector>(itemData.size());
-        LongIterator iter = items.iterator();
-        while (iter.hasNext()) {
-            final long item = iter.nextLong();
-            Long2DoubleMap ratings = itemData.get(item);
-            SparseVector v = ImmutableSparseVector.create(ratings);
-            assert v.size() == ratings.size();
-            itemRatings.put(item, v);
-            // clear the array so GC can free
-            itemData.put(item, null);
-        }
-        assert itemRatings.size() == itemData.size();
-
-        logger.debug("item data completed");
-        return new ItemItemBuildContext(items, itemRatings, candidateData);
-    }
-
-    /**
-     * Transpose the user matrix so we have a matrix of item ids to ratings. Accumulate user item vectors into
-     * the candidate sets for each item
-     *
-     * @param ratings    a Long2ObjectMap<Long2DoubleMap> encoding a matrix of item ids to (userId: rating)
-     *                   pairs (to be filled)
-     * @param candidates a Long2ObjectMap<LongSortedSet> holding item candidate sets (to be filled)
-     */
-    private void buildItemRatings(Long2ObjectMap<Long2DoubleMap> ratings,
-                                  Long2ObjectMap<LongSortedSet> candidates) {
-        // initialize the transposed array to collect item vector data
-        Cursor<UserHistory<Event>> users = userEventDAO.streamEventsByUser();
-        try {
-            for (UserHistory<Event> user : users) {
-                long uid = user.getUserId();
-                SparseVector summary = userSummarizer.summarize(user);
-                MutableSparseVector normed = summary.mutableCopy();
-                normalizer.normalize(uid, summary, normed);
-
-                for (VectorEntry rating : normed.fast()) {
-                    final long item = rating.getKey();
-                    // get the item's rating vector
-                    Long2DoubleMap ivect = ratings.get(item);
-                    if (ivect == null) {
-                        ivect = new Long2DoubleOpenHashMap();
-                        ratings.put(item, ivect);
-                    }
-                    ivect.put(uid, rating.getValue());
-                }
-
-                // get the item's candidate set
-                if (candidates != null) {
-                    candidates.put(uid, normed.keySet());
-                }
-            }
-        } finally {
-            users.close();
-        }
-    }
-}
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item.model;
+
+import com.google.common.base.Throwables;
+import it.unimi.dsi.fastutil.Swapper;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.longs.*;
+import org.grouplens.lenskit.collections.LongKeyDomain;
+import org.grouplens.lenskit.cursors.Cursor;
+import org.grouplens.lenskit.data.dao.UserEventDAO;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.history.History;
+import org.grouplens.lenskit.data.history.UserHistory;
+import org.grouplens.lenskit.data.history.UserHistorySummarizer;
+import org.grouplens.lenskit.knn.item.ModelBuildThreads;
+import org.grouplens.lenskit.transform.normalize.DefaultUserVectorNormalizer;
+import org.grouplens.lenskit.transform.normalize.UserVectorNormalizer;
+import org.grouplens.lenskit.util.parallel.ExecHelpers;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.VectorEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Factory wrapping initialization logic necessary for instantiating an {@link ItemItemBuildContext}.
+ *
+ * <p>The context is built in two stages.  First, each user's history is summarized and
+ * normalized; with more than one build thread (see {@link ModelBuildThreads}), users are
+ * normalized concurrently in batches.  Second, the user-item matrix is transposed with a
+ * two-pass count-and-fill: each thread counts the ratings of each item in a range of users,
+ * the counts are turned into write positions, and each thread then copies its users' ratings
+ * directly into exactly-sized item arrays.  The item vectors wrap these arrays without
+ * further copying.  The first pass also records the items of each user as item indexes in
+ * compressed sparse row form, for enumerating candidate neighbors.</p>
+ */
+public class ItemItemBuildContextFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(ItemItemBuildContextFactory.class);
+    private static final int BATCH_SIZE = 1000;
+
+    private final UserEventDAO userEventDAO;
+    private final UserVectorNormalizer normalizer;
+    private final UserHistorySummarizer userSummarizer;
+    private final int threadCount;
+
+    public ItemItemBuildContextFactory(UserEventDAO edao, UserVectorNormalizer normalizer,
+                                       UserHistorySummarizer userSummarizer) {
+        this(edao, normalizer, userSummarizer, 1);
+    }
+
+    /**
+     * Construct a build context factory.
+     *
+     * @param edao           The user event DAO.
+     * @param normalizer     The user vector normalizer.
+     * @param userSummarizer The user history summarizer.
+     * @param nthreads       The number of threads to use (0 for one per processor).
+     * @since 2.1
+     */
+    @Inject
+    public ItemItemBuildContextFactory(UserEventDAO edao, UserVectorNormalizer normalizer,
+                                       UserHistorySummarizer userSummarizer,
+                                       @ModelBuildThreads int nthreads) {
+        userEventDAO = edao;
+        this.normalizer = normalizer;
+        this.userSummarizer = userSummarizer;
+        threadCount = ExecHelpers.resolveThreadCount(nthreads);
+    }
+
+    /**
+     * Constructs and returns a new ItemItemBuildContext.
+     *
+     * @return a new ItemItemBuildContext.
+     */
+    public ItemItemBuildContext buildContext() {
+        logger.info("constructing build context");
+        logger.debug("using normalizer {}", normalizer);
+        logger.debug("using summarizer {}", userSummarizer);
+
+        UserMatrix users = normalizeUsers();
+
+        logger.debug("Building item data");
+        LongOpenHashSet itemSet = new LongOpenHashSet();
+        int[] userOffsets = new int[users.size() + 1];
+        for (int i = 0; i < users.size(); i++) {
+            SparseVector v = users.vectors[i];
+            itemSet.addAll(v.keySet());
+            userOffsets[i + 1] = userOffsets[i] + v.size();
+        }
+        LongKeyDomain items = LongKeyDomain.fromCollection(itemSet);
+        itemSet = null;
+
+        int[] userItems = new int[userOffsets[users.size()]];
+        Long2ObjectMap<SparseVector> itemRatings = transpose(users, items, userOffsets, userItems);
+        assert itemRatings.size() == items.domainSize();
+
+        logger.debug("item data completed");
+        return new ItemItemBuildContext(items, itemRatings,
+                                        LongKeyDomain.wrap(users.ids, users.size(), true),
+                                        userOffsets, userItems);
+    }
+
+    /**
+     * Build the normalized rating vectors of all users.
+     *
+     * @return A map of user IDs to their normalized rating vectors.
+     * @since 2.1
+     */
+    public Long2ObjectMap<SparseVector> buildUserVectors() {
+        logger.debug("building user vectors");
+        UserMatrix users = normalizeUsers();
+        Long2ObjectMap<SparseVector> vectors = new Long2ObjectOpenHashMap<SparseVector>(users.size());
+        for (int i = 0; i < users.size(); i++) {
+            vectors.put(users.ids[i], users.vectors[i]);
+        }
+        logger.debug("built vectors for {} users", vectors.size());
+        return vectors;
+    }
+
+    /**
+     * Compute how new events change the normalized vectors of the users they belong to.
+     * The factory's DAO must already include the new events; each affected user's
+     * previous history is reconstructed by removing them.
+     *
+     * <p>This is only possible if each user's normalized vector depends only on that
+     * user's history, so the vectors of other users are unchanged.  That is the case
+     * for the {@link DefaultUserVectorNormalizer}, which applies a vector normalizer
+     * to each user's vector, but not in general (e.g. for normalizers subtracting a
+     * baseline built from all the data).
+     *
+     * @param delta The new events.
+     * @return The changes to the user vectors, or {@code null} if the changes cannot
+     *         be computed because the normalizer may depend on other users' data.
+     * @since 2.1
+     */
+    @Nullable
+    public List<UserVectorChange> computeUserChanges(Collection<? extends Event> delta) {
+        if (!(normalizer instanceof DefaultUserVectorNormalizer)) {
+            logger.debug("cannot compute user changes with normalizer {}", normalizer);
+            return null;
+        }
+
+        Long2ObjectMap<List<Event>> userEvents = new Long2ObjectOpenHashMap<List<Event>>();
+        for (Event e: delta) {
+            List<Event> list = userEvents.get(e.getUserId());
+            if (list == null) {
+                list = new ArrayList<Event>();
+                userEvents.put(e.getUserId(), list);
+            }
+            list.add(e);
+        }
+
+        List<UserVectorChange> changes = new ArrayList<UserVectorChange>(userEvents.size());
+        for (Long2ObjectMap.Entry<List<Event>> entry: userEvents.long2ObjectEntrySet()) {
+            final long uid = entry.getLongKey();
+            UserHistory<Event> history = userEventDAO.getEventsForUser(uid);
+            if (history == null) {
+                history = History.forUser(uid);
+            }
+            // remove one copy of each new event to get the old history
+            List<Event> oldEvents = new ArrayList<Event>(history);
+            for (Event e: entry.getValue()) {
+                oldEvents.remove(e);
+            }
+            SparseVector oldv = normalize(uid, History.forUser(uid, oldEvents));
+            SparseVector newv = normalize(uid, history);
+            changes.add(new UserVectorChange(uid, oldv, newv));
+        }
+        return changes;
+    }
+
+    /**
+     * Summarize and normalize a user's history.
+     */
+    private SparseVector normalize(long uid, UserHistory<Event> history) {
+        SparseVector summary = userSummarizer.summarize(history);
+        MutableSparseVector normed = summary.mutableCopy();
+        normalizer.normalize(uid, summary, normed);
+        return normed.freeze();
+    }
+
+    /**
+     * Summarize and normalize the histories of all users.
+     *
+     * @return The normalized user vectors, sorted by user ID.
+     */
+    private UserMatrix normalizeUsers() {
+        List<NormalizeBatch> batches = new ArrayList<NormalizeBatch>();
+        Cursor<UserHistory<Event>> users = userEventDAO.streamEventsByUser();
+        ExecutorService exec = null;
+        try {
+            if (threadCount > 1) {
+                logger.debug("normalizing users with {} threads", threadCount);
+                exec = Executors.newFixedThreadPool(threadCount);
+            }
+            // limit the batches in flight, so we do not read all histories into memory
+            Semaphore slots = new Semaphore(threadCount * 2);
+            List<Future<?>> results = new ArrayList<Future<?>>();
+            NormalizeBatch batch = new NormalizeBatch(slots);
+            for (UserHistory<Event> user: users) {
+                batch.histories.add(user);
+                if (batch.histories.size() >= BATCH_SIZE) {
+                    results.add(submit(exec, batch));
+                    batches.add(batch);
+                    batch = new NormalizeBatch(slots);
+                }
+            }
+            if (!batch.histories.isEmpty()) {
+                results.add(submit(exec, batch));
+                batches.add(batch);
+            }
+            ExecHelpers.waitAll(results);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(ExecHelpers.unwrapExecutionException(e));
+        } finally {
+            users.close();
+            if (exec != null) {
+                exec.shutdown();
+            }
+        }
+
+        int n = 0;
+        for (NormalizeBatch b: batches) {
+            n += b.ids.length;
+        }
+        UserMatrix matrix = new UserMatrix(n);
+        int pos = 0;
+        for (NormalizeBatch b: batches) {
+            System.arraycopy(b.ids, 0, matrix.ids, pos, b.ids.length);
+            System.arraycopy(b.vectors, 0, matrix.vectors, pos, b.vectors.length);
+            pos += b.ids.length;
+        }
+        matrix.sort();
+        logger.debug("normalized {} users", n);
+        return matrix;
+    }
+
+    /**
+     * Submit a batch for normalization. With no executor, the batch is run immediately.
+     */
+    private Future<?> submit(@Nullable ExecutorService exec, NormalizeBatch batch) {
+        batch.slots.acquireUninterruptibly();
+        if (exec == null) {
+            FutureTask<Void> task = new FutureTask<Void>(batch);
+            task.run();
+            return task;
+        } else {
+            return exec.submit(batch);
+        }
+    }
+
+    /**
+     * Transpose the user matrix into item vectors. Users are divided into one contiguous
+     * range per thread; each thread counts its users' ratings of each item, and then fills
+     * them into the item arrays starting at the position after the ratings of the preceding
+     * ranges.  Since users are sorted, each item's array is sorted by user ID.  The first pass
+     * also records the indexes of each user's items, in compressed sparse row form.
+     *
+     * @param users     The normalized user vectors.
+     * @param items     The item domain.
+     * @param offsets   The start of each user's items in {@code userItems}.
+     * @param userItems The array to receive the indexes of each user's items.
+     * @return The item vectors.
+     */
+    private Long2ObjectMap<SparseVector> transpose(UserMatrix users, LongKeyDomain items,
+                                                   int[] offsets, int[] userItems) {
+        final int nitems = items.domainSize();
+        int nunits = Math.max(1, Math.min(threadCount, users.size()));
+        List<TransposeUnit> units = new ArrayList<TransposeUnit>(nunits);
+        for (int i = 0; i < nunits; i++) {
+            long start = (long) users.size() * i / nunits;
+            long end = (long) users.size() * (i + 1) / nunits;
+            units.add(new TransposeUnit(users, items, offsets, userItems, (int) start, (int) end));
+        }
+
+        // pass 1: count each item's ratings in each range
+        runUnits(units);
+
+        // compute the write positions, and allocate the item arrays
+        long[][] userIds = new long[nitems][];
+        double[][] values = new double[nitems][];
+        for (int i = 0; i < nitems; i++) {
+            int total = 0;
+            for (TransposeUnit unit: units) {
+                int count = unit.positions[i];
+                unit.positions[i] = total;
+                total += count;
+            }
+            userIds[i] = new long[total];
+            values[i] = new double[total];
+        }
+
+        // pass 2: fill the item arrays
+        for (TransposeUnit unit: units) {
+            unit.fill(userIds, values);
+        }
+        runUnits(units);
+
+        Long2ObjectMap<SparseVector> vectors = new Long2ObjectOpenHashMap<SparseVector>(nitems);
+        for (int i = 0; i < nitems; i++) {
+            vectors.put(items.getKey(i), MutableSparseVector.wrap(userIds[i], values[i]).freeze());
+            userIds[i] = null;
+            values[i] = null;
+        }
+        return vectors;
+    }
+
+    private void runUnits(List<TransposeUnit> units) {
+        if (units.size() == 1) {
+            units.get(0).call();
+            return;
+        }
+        ExecutorService exec = Executors.newFixedThreadPool(units.size());
+        try {
+            ExecHelpers.parallelRun(exec, units);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(ExecHelpers.unwrapExecutionException(e));
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    /**
+     * The normalized vectors of all users, in parallel arrays.
+     */
+    private static final class UserMatrix {
+        final long[] ids;
+        final SparseVector[] vectors;
+
+        UserMatrix(int n) {
+            ids = new long[n];
+            vectors = new SparseVector[n];
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        /**
+         * Sort the users by ID, if they are not already sorted.
+         */
+        void sort() {
+            boolean sorted = true;
+            for (int i = 1; sorted && i < ids.length; i++) {
+                sorted = ids[i - 1] < ids[i];
+            }
+            if (sorted) {
+                return;
+            }
+            it.unimi.dsi.fastutil.Arrays.quickSort(0, ids.length, new AbstractIntComparator() {
+                @Override
+                public int compare(int i, int j) {
+                    return LongComparators.NATURAL_COMPARATOR.compare(ids[i], ids[j]);
+                }
+            }, new Swapper() {
+                @Override
+                public void swap(int i, int j) {
+                    long id = ids[i];
+                    ids[i] = ids[j];
+                    ids[j] = id;
+                    SparseVector v = vectors[i];
+                    vectors[i] = vectors[j];
+                    vectors[j] = v;
+                }
+            });
+        }
+    }
+
+    /**
+     * A batch of user histories to normalize.
+     */
+    private final class NormalizeBatch implements Callable<Void> {
+        private final Semaphore slots;
+        private List<UserHistory<Event>> histories = new ArrayList<UserHistory<Event>>(BATCH_SIZE);
+        private long[] ids;
+        private SparseVector[] vectors;
+
+        NormalizeBatch(Semaphore slots) {
+            this.slots = slots;
+        }
+
+        @Override
+        public Void call() {
+            try {
+                int n = histories.size();
+                long[] uids = new long[n];
+                SparseVector[] vecs = new SparseVector[n];
+                for (int i = 0; i < n; i++) {
+                    UserHistory<Event> user = histories.get(i);
+                    uids[i] = user.getUserId();
+                    vecs[i] = normalize(user.getUserId(), user);
+                }
+                ids = uids;
+                vectors = vecs;
+                // release the histories so they can be collected
+                histories = null;
+            } finally {
+                slots.release();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Work unit transposing a contiguous range of users.  It first counts the ratings of each
+     * item in its range, recording the indexes of its users' items; once {@link #fill(long[][], double[][])} has been called, it copies
+     * the ratings into the item arrays.
+     */
+    private static final class TransposeUnit implements Callable<Void> {
+        private final UserMatrix users;
+        private final LongKeyDomain items;
+        private final int[] userOffsets;
+        private final int[] userItems;
+        private final int start;
+        private final int end;
+        /**
+         * The counts of each item in pass 1, and the next write position in pass 2.
+         */
+        private final int[] positions;
+        private long[][] userIds;
+        private double[][] values;
+
+        TransposeUnit(UserMatrix users, LongKeyDomain items,
+                      int[] offsets, int[] uitems, int start, int end) {
+            this.users = users;
+            this.items = items;
+            userOffsets = offsets;
+            userItems = uitems;
+            this.start = start;
+            this.end = end;
+            positions = new int[items.domainSize()];
+        }
+
+        void fill(long[][] uids, double[][] vals) {
+            userIds = uids;
+            values = vals;
+        }
+
+        @Override
+        public Void call() {
+            for (int u = start; u < end; u++) {
+                final long uid = users.ids[u];
+                int upos = userOffsets[u];
+                for (VectorEntry e: users.vectors[u].fast()) {
+                    int idx = items.getIndex(e.getKey());
+                    assert idx >= 0;
+                    if (userIds == null) {
+                        positions[idx] += 1;
+                        userItems[upos++] = idx;
+                    } else {
+                        int pos = positions[idx]++;
+                        userIds[idx][pos] = uid;
+                        values[idx][pos] = e.getValue();
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -21,114 +21,616 @@
 package org.grouplens.lenskit.knn.item.model;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import it.unimi.dsi.fastutil.doubles.DoubleHeapPriorityQueue;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.grouplens.lenskit.collections.CollectionUtils;
+import org.grouplens.lenskit.collections.LongKeyDomain;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.core.IncrementalProvider;
 import org.grouplens.lenskit.core.Transient;
+import org.grouplens.lenskit.data.event.Event;
 import org.grouplens.lenskit.knn.item.ItemSimilarity;
+import org.grouplens.lenskit.knn.item.ItemVectorSimilarity;
+import org.grouplens.lenskit.knn.item.ModelBuildThreads;
 import org.grouplens.lenskit.knn.item.ModelSize;
+import org.grouplens.lenskit.knn.item.PrunedSimilaritySearch;
 import org.grouplens.lenskit.scored.ScoredId;
+import org.grouplens.lenskit.transform.threshold.RealThreshold;
 import org.grouplens.lenskit.transform.threshold.Threshold;
 import org.grouplens.lenskit.util.ScoredItemAccumulator;
 import org.grouplens.lenskit.util.TopNScoredItemAccumulator;
 import org.grouplens.lenskit.util.UnlimitedScoredItemAccumulator;
+import org.grouplens.lenskit.util.parallel.ExecHelpers;
 import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.VectorEntry;
+import org.grouplens.lenskit.vectors.similarity.BoundedVectorSimilarity;
+import org.grouplens.lenskit.vectors.similarity.VectorSimilarity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.inject.Inject;
-import javax.inject.Provider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Build an item-item CF model from rating data.
  * This builder takes a very simple approach. It does not allow for vector
  * normalization and truncates on the fly.
  *
+ * <p>If more than one build thread is configured (see {@link ModelBuildThreads}),
+ * the rows of the matrix are split into interleaved work units that are computed
+ * concurrently, each into its own accumulator; the partial rows are merged once
+ * all units have finished.
+ *
+ * <p>If {@linkplain PrunedSimilaritySearch pruned similarity search} is enabled and
+ * the similarity can be bounded, each row is built with a top-<i>K</i> search in the
+ * style of all-pairs similarity search: the similarity of each candidate neighbor is
+ * bounded using the number of users it shares with the row's item and the prefix norms
+ * of the two item vectors (the norms of their largest values), and candidates are
+ * visited in decreasing order of their bounds until no remaining candidate can beat the
+ * row's current <i>K</i>th neighbor.
+ *
+ * <p>Models can be {@linkplain #update(ItemItemModel, List) updated} with new events
+ * by recomputing only the similarities involving items whose vectors changed.  The
+ * item vectors themselves are still rebuilt from all the data, so an update saves the
+ * similarity computation but not the cost of loading and normalizing the ratings.
+ *
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 @NotThreadSafe
-public class ItemItemModelBuilder implements Provider<ItemItemModel> {
+public class ItemItemModelBuilder implements IncrementalProvider<ItemItemModel> {
     private static final Logger logger = LoggerFactory.getLogger(ItemItemModelBuilder.class);
 
     private final ItemSimilarity itemSimilarity;
     private final ItemItemBuildContextFactory contextFactory;
     private final Threshold threshold;
     private final int modelSize;
+    private final int threadCount;
+    private final boolean pruned;
+
+    public ItemItemModelBuilder(@Transient ItemSimilarity similarity,
+                                @Transient ItemItemBuildContextFactory ctxFactory,
+                                @Transient Threshold thresh,
+                                @ModelSize int size,
+                                @ModelBuildThreads int nthreads) {
+        this(similarity, ctxFactory, thresh, size, nthreads, false);
+    }
 
     @Inject
     public ItemItemModelBuilder(@Transient ItemSimilarity similarity,
                                 @Transient ItemItemBuildContextFactory ctxFactory,
                                 @Transient Threshold thresh,
-                                @ModelSize int size) {
+                                @ModelSize int size,
+                                @ModelBuildThreads int nthreads,
+                                @PrunedSimilaritySearch boolean prune) {
         itemSimilarity = similarity;
         contextFactory = ctxFactory;
         threshold = thresh;
         modelSize = size;
+        threadCount = ExecHelpers.resolveThreadCount(nthreads);
+        pruned = prune;
     }
 
     @Override
     public SimilarityMatrixModel get() {
+        return accumulate().build();
+    }
+
+    /**
+     * Compute the item similarities into an accumulator.  This does the work of
+     * building the model, leaving the choice of output format to the caller.
+     *
+     * @return An accumulator containing the model's similarities.
+     */
+    Accumulator accumulate() {
         logger.debug("building item-item model");
 
         ItemItemBuildContext buildContext = contextFactory.buildContext();
+        double[][] prefixNorms = null;
+        if (pruned) {
+            if (getBoundedSimilarity() == null) {
+                logger.warn("similarity {} cannot be bounded, not pruning", itemSimilarity);
+            } else if (modelSize <= 0) {
+                logger.warn("model size is not limited, not pruning");
+            } else {
+                prefixNorms = computePrefixNorms(buildContext);
+            }
+        }
+        if (threadCount > 1 && buildContext.getItems().size() > 1) {
+            return accumulateParallel(buildContext, prefixNorms);
+        }
+
         Accumulator accumulator = new Accumulator(buildContext.getItems(), threshold, modelSize);
+        if (prefixNorms != null) {
+            PrunedRowSearch search = new PrunedRowSearch(buildContext, prefixNorms);
+            LongIterator iter = buildContext.getItems().iterator();
+            while (iter.hasNext()) {
+                search.buildRow(iter.nextLong(), accumulator);
+            }
+            logPruning(search.computed, search.skipped);
+        } else {
+            ItemItemBuildContext.CandidateSet candidates = buildContext.newCandidateSet();
+            for (long itemId1 : buildContext.getItems()) {
+                buildRow(buildContext, itemId1, candidates, accumulator);
+            }
+        }
+
+        return accumulator;
+    }
+
+    /**
+     * Get the bounded vector similarity underlying the item similarity, if there is one.
+     *
+     * @return The bounded similarity, or {@code null} if the item similarity is not a
+     *         sparse similarity delegating to a bounded vector similarity.
+     */
+    private BoundedVectorSimilarity getBoundedSimilarity() {
+        if (itemSimilarity instanceof ItemVectorSimilarity && itemSimilarity.isSparse()) {
+            VectorSimilarity vsim = ((ItemVectorSimilarity) itemSimilarity).getDelegate();
+            if (vsim instanceof BoundedVectorSimilarity) {
+                return (BoundedVectorSimilarity) vsim;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compute the prefix norms of the item vectors.  The {@code c}th entry of an item's
+     * array is the sum of the squares of the item vector's {@code c} largest-magnitude
+     * values; the root of its product with another item's entry bounds the dot product
+     * of two vectors with {@code c} keys in common.
+     *
+     * @param buildContext The build context.
+     * @return The prefix norm arrays, indexed by position in the item universe.
+     */
+    private static double[][] computePrefixNorms(ItemItemBuildContext buildContext) {
+        LongSortedSet items = buildContext.getItems();
+        double[][] prefixes = new double[items.size()][];
+        double[] squares = new double[16];
+        LongIterator iter = items.iterator();
+        for (int i = 0; iter.hasNext(); i++) {
+            SparseVector vec = buildContext.itemVector(iter.nextLong());
+            final int n = vec.size();
+            if (squares.length < n) {
+                squares = new double[Math.max(n, squares.length * 2)];
+            }
+            int j = 0;
+            for (VectorEntry e: vec.fast()) {
+                squares[j++] = e.getValue() * e.getValue();
+            }
+            Arrays.sort(squares, 0, n);
+            double[] prefix = new double[n + 1];
+            for (int c = 1; c <= n; c++) {
+                prefix[c] = prefix[c - 1] + squares[n - c];
+            }
+            prefixes[i] = prefix;
+        }
+        return prefixes;
+    }
+
+    private static void logPruning(long computed, long skipped) {
+        long total = computed + skipped;
+        logger.info("pruned search computed {} of {} candidate similarities ({}%)",
+                    computed, total,
+                    total > 0 ? String.format("%.1f", computed * 100.0 / total) : "100");
+    }
+
+    /**
+     * Update a model with new events.  Only the similarities involving items whose
+     * vectors were changed by the new events are recomputed: the rows of those items
+     * are rebuilt, and their new similarities are merged into the other rows.  A row
+     * that was truncated to the model size and contained a changed item may have lost
+     * a neighbor, so it is rebuilt as well.  The result is the same as rebuilding the
+     * model, up to the order of neighbors with tied scores.
+     *
+     * <p>Only the similarity computation is incremental: the
+     * {@linkplain ItemItemBuildContextFactory#buildContext() build context} is rebuilt
+     * from the DAO, so each update still reads, normalizes, and transposes the ratings
+     * of every user.  The update is therefore worthwhile when computing the similarity
+     * matrix dominates the build, which is the usual case for item-item models.
+     *
+     * <p>If the changes to the item vectors cannot be computed (see
+     * {@link ItemItemBuildContextFactory#computeUserChanges(java.util.Collection)}),
+     * the model is not a {@link SimilarityMatrixModel}, or the new events change more
+     * than half of the items, this returns {@code null} to rebuild the model.
+     *
+     * @param model The model to update.
+     * @param delta The new events.
+     * @return The updated model, or {@code null} if the model should be rebuilt.
+     */
+    @Override
+    public ItemItemModel update(ItemItemModel model, List<Event> delta) {
+        if (!(model instanceof SimilarityMatrixModel)) {
+            return null;
+        }
+        List<UserVectorChange> changes = contextFactory.computeUserChanges(delta);
+        if (changes == null) {
+            return null;
+        }
+        LongSet changed = new LongOpenHashSet();
+        for (UserVectorChange change: changes) {
+            change.addChangedItems(changed);
+        }
+        if (changed.isEmpty()) {
+            logger.debug("new events do not change the item vectors");
+            return model;
+        }
+
+        ItemItemBuildContext buildContext = contextFactory.buildContext();
+        LongSortedSet items = buildContext.getItems();
+        if (changed.size() * 2 > items.size()) {
+            logger.info("{} of {} items changed, rebuilding model", changed.size(), items.size());
+            return null;
+        }
+        logger.info("updating item-item model for {} changed items", changed.size());
+
+        // find the rows to rebuild
+        LongSet rebuild = new LongOpenHashSet();
+        LongSortedSet oldItems = model.getItemUniverse();
+        for (long item: items) {
+            if (changed.contains(item) || !oldItems.contains(item)) {
+                rebuild.add(item);
+            } else if (modelSize > 0) {
+                List<ScoredId> nbrs = model.getNeighbors(item);
+                if (nbrs.size() >= modelSize) {
+                    for (ScoredId id: CollectionUtils.fast(nbrs)) {
+                        if (changed.contains(id.getId())) {
+                            rebuild.add(item);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        Accumulator accumulator = new Accumulator(items, threshold, modelSize);
+        // keep the unchanged similarities of the other rows
+        for (long item: items) {
+            if (!rebuild.contains(item)) {
+                for (ScoredId id: CollectionUtils.fast(model.getNeighbors(item))) {
+                    if (!changed.contains(id.getId())) {
+                        accumulator.put(item, id.getId(), id.getScore());
+                    }
+                }
+            }
+        }
+        // rebuild rows, and compute the similarities of the other rows to changed items
+        ItemItemBuildContext.CandidateSet candidates = buildContext.newCandidateSet();
+        for (long item: rebuild) {
+            SparseVector vec1 = buildContext.itemVector(item);
+            LongIterator iter = candidateItems(buildContext, vec1, candidates).iterator();
+            while (iter.hasNext()) {
+                long item2 = iter.nextLong();
+                if (item2 == item) {
+                    continue;
+                }
+                SparseVector vec2 = buildContext.itemVector(item2);
+                double sim = itemSimilarity.similarity(item, vec1, item2, vec2);
+                accumulator.put(item, item2, sim);
+                if (changed.contains(item) && !rebuild.contains(item2)) {
+                    if (!itemSimilarity.isSymmetric()) {
+                        sim = itemSimilarity.similarity(item2, vec2, item, vec1);
+                    }
+                    accumulator.put(item2, item, sim);
+                }
+            }
+        }
+        return accumulator.build();
+    }
 
-        for (long itemId1 : buildContext.getItems()) {
-            SparseVector vec1 = buildContext.itemVector(itemId1);
+    /**
+     * Get the items whose similarity to an item should be computed.
+     */
+    private LongSortedSet candidateItems(ItemItemBuildContext buildContext, SparseVector vec,
+                                         ItemItemBuildContext.CandidateSet candidates) {
+        if (itemSimilarity.isSparse()) {
+            candidates.collect(vec.keySet());
+            long[] ids = new long[candidates.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = candidates.getItemId(i);
+            }
+            return LongUtils.packedSet(ids);
+        } else {
+            return buildContext.getItems();
+        }
+    }
+
+    /**
+     * Build the model with multiple threads. Each work unit computes the rows for
+     * every {@code n}th item into its own accumulator, and the partial rows are
+     * merged when all units are done.
+     *
+     * @param buildContext The build context.
+     * @param prefixNorms  The prefix norms for a pruned search, or {@code null} to compute
+     *                     every candidate similarity.
+     * @return The accumulator with the merged rows.
+     */
+    private Accumulator accumulateParallel(ItemItemBuildContext buildContext, double[][] prefixNorms) {
+        LongSortedSet items = buildContext.getItems();
+        long[] itemIds = items.toLongArray();
+        int nunits = Math.min(threadCount, itemIds.length);
+        logger.info("building model for {} items with {} threads", itemIds.length, nunits);
+
+        List<WorkUnit> units = new ArrayList<WorkUnit>(nunits);
+        for (int i = 0; i < nunits; i++) {
+            units.add(new WorkUnit(buildContext, prefixNorms, itemIds, i, nunits));
+        }
+
+        ExecutorService exec = Executors.newFixedThreadPool(nunits);
+        try {
+            ExecHelpers.parallelRun(exec, units);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(ExecHelpers.unwrapExecutionException(e));
+        } finally {
+            exec.shutdown();
+        }
 
+        logger.debug("merging rows from {} work units", nunits);
+        Accumulator accumulator = new Accumulator(items, threshold, modelSize);
+        long computed = 0;
+        long skipped = 0;
+        for (WorkUnit unit: units) {
+            accumulator.merge(unit.accumulator);
+            if (unit.search != null) {
+                computed += unit.search.computed;
+                skipped += unit.search.skipped;
+            }
+        }
+        if (prefixNorms != null) {
+            logPruning(computed, skipped);
+        }
+        return accumulator;
+    }
+
+    /**
+     * Compute the similarities for one item and put them in an accumulator. For
+     * symmetric similarities, only the pairs with items after {@code itemId1} are
+     * computed, and each similarity is also put in the other item's row.
+     *
+     * @param buildContext The build context.
+     * @param itemId1      The item whose row should be computed.
+     * @param candidates   A candidate set to use for enumerating the candidate neighbors of
+     *                     {@code itemId1} with a sparse similarity.
+     * @param accumulator  The accumulator to receive the similarities.
+     */
+    private void buildRow(ItemItemBuildContext buildContext, long itemId1,
+                          ItemItemBuildContext.CandidateSet candidates, Accumulator accumulator) {
+        SparseVector vec1 = buildContext.itemVector(itemId1);
+
+        if (itemSimilarity.isSparse()) {
+            candidates.collect(vec1.keySet());
+            int i = itemSimilarity.isSymmetric() ? candidates.upperBound(itemId1) : 0;
+            final int n = candidates.size();
+            for (; i < n; i++) {
+                computeSimilarity(buildContext, itemId1, vec1, candidates.getItemId(i), accumulator);
+            }
+        } else {
             LongIterator itemIter;
-            if (itemSimilarity.isSparse()) {
-                if (itemSimilarity.isSymmetric()) {
-                    itemIter = buildContext.getUserItems(vec1.keySet()).iterator(itemId1);
+            if (itemSimilarity.isSymmetric()) {
+                itemIter = buildContext.getItems().iterator(itemId1);
+            } else {
+                itemIter = buildContext.getItems().iterator();
+            }
+            while (itemIter.hasNext()) {
+                computeSimilarity(buildContext, itemId1, vec1, itemIter.nextLong(), accumulator);
+            }
+        }
+    }
+
+    private void computeSimilarity(ItemItemBuildContext buildContext, long itemId1, SparseVector vec1,
+                                   long itemId2, Accumulator accumulator) {
+        if (itemId1 != itemId2) {
+            SparseVector vec2 = buildContext.itemVector(itemId2);
+            double sim = itemSimilarity.similarity(itemId1, vec1, itemId2, vec2);
+            accumulator.put(itemId1, itemId2, sim);
+            if (itemSimilarity.isSymmetric()) {
+                accumulator.put(itemId2, itemId1, sim);
+            }
+        }
+    }
+
+    /**
+     * A unit of parallel model-building work. It computes the rows of the items at
+     * positions {@code offset}, {@code offset + stride}, ... in the item array.
+     * Interleaving the items balances the work between units when the similarity
+     * is symmetric and earlier items have longer rows to compute.
+     */
+    private class WorkUnit implements Callable<Void> {
+        private final ItemItemBuildContext context;
+        private final long[] itemIds;
+        private final int offset;
+        private final int stride;
+        private final Accumulator accumulator;
+        private final ItemItemBuildContext.CandidateSet candidates;
+        private final PrunedRowSearch search;
+
+        public WorkUnit(ItemItemBuildContext ctx, double[][] prefixNorms, long[] items, int off, int n) {
+            context = ctx;
+            if (prefixNorms == null) {
+                candidates = ctx.newCandidateSet();
+                search = null;
+            } else {
+                candidates = null;
+                search = new PrunedRowSearch(ctx, prefixNorms);
+            }
+            itemIds = items;
+            offset = off;
+            stride = n;
+            accumulator = new Accumulator(ctx.getItems(), threshold, modelSize);
+        }
+
+        @Override
+        public Void call() {
+            for (int i = offset; i < itemIds.length; i += stride) {
+                if (search == null) {
+                    buildRow(context, itemIds[i], candidates, accumulator);
                 } else {
-                    itemIter = buildContext.getUserItems(vec1.keySet()).iterator();
+                    search.buildRow(itemIds[i], accumulator);
                 }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Pruned top-<i>K</i> search for the neighbors of items.  Each row is searched
+     * independently (rather than filling both rows of a symmetric pair at once), so that
+     * a pair pruned from one row is still considered for the other.  The search keeps
+     * scratch space between rows, and is not thread-safe.
+     */
+    private class PrunedRowSearch {
+        /**
+         * Relative slack added to the bounds, so that rounding error in computing them
+         * cannot prune a neighbor.
+         */
+        private static final double BOUND_SLACK = 1.0e-9;
+
+        private final ItemItemBuildContext context;
+        private final BoundedVectorSimilarity similarity;
+        private final double[][] prefixNorms;
+        private final double minSimilarity;
+        private final ItemItemBuildContext.CandidateSet candidates;
+        private final DoubleHeapPriorityQueue topScores = new DoubleHeapPriorityQueue();
+        private double[] bounds = new double[16];
+        private int[] order = new int[16];
+        private final BoundComparator comparator = new BoundComparator();
+        long computed = 0;
+        long skipped = 0;
+
+        public PrunedRowSearch(ItemItemBuildContext ctx, double[][] prefixes) {
+            context = ctx;
+            similarity = getBoundedSimilarity();
+            assert similarity != null;
+            prefixNorms = prefixes;
+            if (threshold instanceof RealThreshold) {
+                minSimilarity = ((RealThreshold) threshold).getValue();
             } else {
-                if (itemSimilarity.isSymmetric()) {
-                    itemIter = buildContext.getItems().iterator(itemId1);
+                minSimilarity = Double.NEGATIVE_INFINITY;
+            }
+            candidates = ctx.newCandidateSet();
+        }
+
+        /**
+         * Compute the row of an item and put it in an accumulator.
+         *
+         * @param itemId1     The item whose row should be computed.
+         * @param accumulator The accumulator to receive the similarities.
+         */
+        public void buildRow(long itemId1, Accumulator accumulator) {
+            SparseVector vec1 = context.itemVector(itemId1);
+            final int n = candidates.collect(vec1.keySet());
+            if (bounds.length < n) {
+                bounds = new double[Math.max(n, bounds.length * 2)];
+                order = new int[bounds.length];
+            }
+
+            double[] prefix1 = null;
+            int nc = 0;
+            for (int i = 0; i < n; i++) {
+                long itemId2 = candidates.getItemId(i);
+                if (itemId2 == itemId1) {
+                    prefix1 = prefixNorms[candidates.getItemIndex(i)];
                 } else {
-                    itemIter = buildContext.getItems().iterator();
+                    order[nc++] = i;
                 }
             }
+            if (prefix1 == null) {
+                // the item has no ratings, so it has no candidates
+                assert nc == 0;
+                return;
+            }
+            for (int k = 0; k < nc; k++) {
+                final int i = order[k];
+                final double[] prefix2 = prefixNorms[candidates.getItemIndex(i)];
+                final int common = candidates.getUserCount(i);
+                final double dotBound =
+                        Math.sqrt(prefix1[Math.min(common, prefix1.length - 1)]
+                                  * prefix2[Math.min(common, prefix2.length - 1)]);
+                SparseVector vec2 = context.itemVector(candidates.getItemId(i));
+                bounds[i] = similarity.similarityBound(vec1, vec2, dotBound) * (1 + BOUND_SLACK);
+            }
+            IntArrays.quickSort(order, 0, nc, comparator);
 
-            while (itemIter.hasNext()) {
-                long itemId2 = itemIter.nextLong();
-                if (itemId1 != itemId2) {
-                    SparseVector vec2 = buildContext.itemVector(itemId2);
-                    double sim = itemSimilarity.similarity(itemId1, vec1, itemId2, vec2);
+            topScores.clear();
+            int k;
+            for (k = 0; k < nc; k++) {
+                final int i = order[k];
+                final double bound = bounds[i];
+                if (bound <= minSimilarity
+                        || (topScores.size() >= modelSize && bound < topScores.firstDouble())) {
+                    // no remaining candidate can be retained in the row
+                    break;
+                }
+                long itemId2 = candidates.getItemId(i);
+                double sim = itemSimilarity.similarity(itemId1, vec1, itemId2, context.itemVector(itemId2));
+                if (threshold.retain(sim)) {
                     accumulator.put(itemId1, itemId2, sim);
-                    if (itemSimilarity.isSymmetric()) {
-                        accumulator.put(itemId2, itemId1, sim);
+                    topScores.enqueue(sim);
+                    if (topScores.size() > modelSize) {
+                        topScores.dequeueDouble();
                     }
                 }
             }
+            computed += k;
+            skipped += nc - k;
         }
 
-        return accumulator.build();
+        /**
+         * Order candidate positions by decreasing bound.
+         */
+        private class BoundComparator extends AbstractIntComparator {
+            @Override
+            public int compare(int i, int j) {
+                return Double.compare(bounds[j], bounds[i]);
+            }
+        }
     }
 
     static class Accumulator {
 
         private final Threshold threshold;
+        private final int modelSize;
         private Long2ObjectMap<ScoredItemAccumulator> rows;
         private final LongSortedSet itemUniverse;
 
         public Accumulator(LongSortedSet entities, Threshold threshold, int modelSize) {
             logger.debug("Using simple accumulator with modelSize {} for {} items", modelSize, entities.size());
             this.threshold = threshold;
+            this.modelSize = modelSize;
             itemUniverse = entities;
             rows = new Long2ObjectOpenHashMap<ScoredItemAccumulator>(entities.size());
+        }
 
-            for (long itemId : itemUniverse) {
-               if (modelSize == 0) {
-                   rows.put(itemId, new UnlimitedScoredItemAccumulator());
-               } else {
-                   rows.put(itemId, new TopNScoredItemAccumulator(modelSize));
-               }
+        /**
+         * Get the accumulator for a row, creating it if it does not yet exist. Rows are
+         * created lazily so that partial accumulators only hold the rows they touch.
+         */
+        private ScoredItemAccumulator getRow(long i) {
+            ScoredItemAccumulator q = rows.get(i);
+            if (q == null) {
+                if (modelSize == 0) {
+                    q = new UnlimitedScoredItemAccumulator();
+                } else {
+                    q = new TopNScoredItemAccumulator(modelSize);
+                }
+                rows.put(i, q);
             }
+            return q;
         }
 
         public void put(long i, long j, double sim) {
@@ -138,19 +640,84 @@ public class ItemItemModelBuilder implements Provider<ItemItemModel> {
                 return;
             }
 
-            ScoredItemAccumulator q = rows.get(i);
-            q.put(j, sim);
+            getRow(i).put(j, sim);
+        }
+
+        /**
+         * Merge the rows accumulated by another accumulator into this one. The other
+         * accumulator is finished by this operation, and cannot be used afterwards.
+         *
+         * @param other The accumulator whose rows should be merged.
+         */
+        public void merge(Accumulator other) {
+            Preconditions.checkState(rows != null, "model already built");
+            Preconditions.checkArgument(other.rows != null, "merged accumulator already built");
+
+            for (Long2ObjectMap.Entry<ScoredItemAccumulator> row : other.rows.long2ObjectEntrySet()) {
+                ScoredItemAccumulator q = getRow(row.getLongKey());
+                // entries have already passed the threshold
+                for (ScoredId id: row.getValue().finish()) {
+                    q.put(id.getId(), id.getScore());
+                }
+            }
+            other.rows = null;
         }
 
         public SimilarityMatrixModel build() {
-            Long2ObjectMap<List<ScoredId>> data = new Long2ObjectOpenHashMap<List<ScoredId>>(rows.size());
-            for (Long2ObjectMap.Entry<ScoredItemAccumulator> row : rows.long2ObjectEntrySet()) {
-                List<ScoredId> similarities = row.getValue().finish();
-                data.put(row.getLongKey(), similarities);
+            Long2ObjectMap<List<ScoredId>> data = new Long2ObjectOpenHashMap<List<ScoredId>>(itemUniverse.size());
+            for (long itemId : itemUniverse) {
+                ScoredItemAccumulator row = rows.get(itemId);
+                if (row == null) {
+                    data.put(itemId, Collections.<ScoredId>emptyList());
+                } else {
+                    data.put(itemId, row.finish());
+                }
             }
             SimilarityMatrixModel model = new SimilarityMatrixModel(itemUniverse, data);
             rows = null;  // Mark that this model has already been built.
             return model;
         }
+
+        /**
+         * Build a packed model from the accumulated similarities.  This is an
+         * alternative to {@link #build()} that stores the matrix in compressed
+         * sparse row form.
+         *
+         * @return The packed similarity model.
+         */
+        public PackedSimilarityMatrixModel buildPacked() {
+            Preconditions.checkState(rows != null, "model already built");
+            LongKeyDomain domain = LongKeyDomain.fromCollection(itemUniverse);
+            int nitems = domain.domainSize();
+
+            int total = 0;
+            for (ScoredItemAccumulator row: rows.values()) {
+                total += row.size();
+            }
+
+            int[] offsets = new int[nitems + 1];
+            int[] neighbors = new int[total];
+            float[] scores = new float[total];
+            int pos = 0;
+            for (int i = 0; i < nitems; i++) {
+                offsets[i] = pos;
+                // remove the row so it can be freed as soon as it is packed
+                ScoredItemAccumulator row = rows.remove(domain.getKey(i));
+                if (row != null) {
+                    for (ScoredId id: CollectionUtils.fast(row.finish())) {
+                        int j = domain.getIndex(id.getId());
+                        assert j >= 0;
+                        neighbors[pos] = j;
+                        scores[pos] = (float) id.getScore();
+                        pos++;
+                    }
+                }
+            }
+            assert pos == total;
+            offsets[nitems] = pos;
+
+            rows = null;  // Mark that this model has already been built.
+            return new PackedSimilarityMatrixModel(domain, offsets, neighbors, scores);
+        }
     }
 }
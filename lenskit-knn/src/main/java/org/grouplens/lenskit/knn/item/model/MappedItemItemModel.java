@@ -0,0 +1,353 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item.model;
+
+import com.google.common.io.Closer;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.grouplens.grapht.annotation.DefaultProvider;
+import org.grouplens.lenskit.collections.CollectionUtils;
+import org.grouplens.lenskit.collections.LongKeyDomain;
+import org.grouplens.lenskit.collections.MoreArrays;
+import org.grouplens.lenskit.core.Shareable;
+import org.grouplens.lenskit.scored.ScoredId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.*;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Item-item similarity model read from a memory-mapped file.  The neighbor lists
+ * are read directly from the mapped file, so opening a model is fast and does not
+ * copy the matrix onto the heap; processes mapping the same file share its pages
+ * through the operating system's page cache.  Only the item IDs are loaded into
+ * memory.
+ *
+ * <p>Model files are written with {@link #write(ItemItemModel, File)}.  The file
+ * stores the matrix in compressed sparse row form, in big-endian byte order:
+ *
+ * <ol>
+ * <li>A header of four 32-bit integers: the magic number {@code LKII}, the format
+ * version, the number of items <i>n</i>, and the number of neighbors <i>m</i>.</li>
+ * <li><i>n</i> 64-bit item IDs, in increasing order.</li>
+ * <li><i>n+1</i> 32-bit row offsets; row <i>i</i> occupies neighbor positions
+ * <i>offset[i]</i> up to (but not including) <i>offset[i+1]</i>.</li>
+ * <li><i>m</i> 32-bit neighbor indices into the item ID array.</li>
+ * <li><i>m</i> 32-bit float similarity scores.</li>
+ * </ol>
+ *
+ * <p>Each section is mapped as a single buffer, so no section may exceed 2 GB; in
+ * particular, a model can hold at most 2<sup>29</sup>-1 neighbors in total.
+ *
+ * <p>Opening a model only checks the header, the file size, and the first and last row
+ * offsets, so that opening a large model does not read the whole file.  Each row's
+ * offsets and neighbor indexes are checked when it is accessed; a corrupt row throws
+ * {@link IllegalStateException}.  {@link #open(File, boolean)} can check the entire
+ * file when it is opened.
+ *
+ * <p>Serializing this model only records the file name; deserializing it maps the
+ * file again.  The file must therefore not be modified or removed while it is in use.
+ *
+ * @since 2.1
+ */
+@DefaultProvider(MappedItemItemModelProvider.class)
+@Shareable
+public class MappedItemItemModel implements Serializable, ItemItemModel {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(MappedItemItemModel.class);
+
+    /**
+     * The magic number at the start of model files ({@code LKII}).
+     */
+    static final int MAGIC = 0x4C4B4949;
+    /**
+     * The current file format version.
+     */
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    private final File modelFile;
+    private transient LongKeyDomain itemDomain;
+    private transient IntBuffer rowOffsets;
+    private transient IntBuffer neighbors;
+    private transient FloatBuffer scores;
+
+    private MappedItemItemModel(File file, boolean verify) throws IOException {
+        modelFile = file;
+        map();
+        if (verify) {
+            verify();
+        }
+    }
+
+    /**
+     * Open a model file.  Only the file's header and the bounds of its offsets are
+     * checked; rows are checked when they are accessed.
+     *
+     * @param file The model file.
+     * @return The item-item model backed by the file.
+     * @throws IOException if the file cannot be opened or is not a valid model file.
+     */
+    public static MappedItemItemModel open(File file) throws IOException {
+        return open(file, false);
+    }
+
+    /**
+     * Open a model file, optionally checking all of its rows.
+     *
+     * @param file   The model file.
+     * @param verify Whether to check the offsets and neighbor indexes of every row,
+     *               reading the entire file.
+     * @return The item-item model backed by the file.
+     * @throws IOException if the file cannot be opened or is not a valid model file.
+     */
+    public static MappedItemItemModel open(File file, boolean verify) throws IOException {
+        return new MappedItemItemModel(file, verify);
+    }
+
+    /**
+     * Get the file backing this model.
+     *
+     * @return The model file.
+     */
+    public File getModelFile() {
+        return modelFile;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        map();
+    }
+
+    /**
+     * Map the model file.
+     */
+    private void map() throws IOException {
+        logger.info("mapping item-item model from {}", modelFile);
+        RandomAccessFile raf = new RandomAccessFile(modelFile, "r");
+        try {
+            if (raf.length() < HEADER_SIZE) {
+                throw new IOException(modelFile + ": file too short for item-item model");
+            }
+            if (raf.readInt() != MAGIC) {
+                throw new IOException(modelFile + ": not an item-item model file");
+            }
+            int version = raf.readInt();
+            if (version != VERSION) {
+                throw new IOException(modelFile + ": unsupported model file version " + version);
+            }
+            int nitems = raf.readInt();
+            int nnbrs = raf.readInt();
+            if (nitems < 0 || nnbrs < 0) {
+                throw new IOException(modelFile + ": invalid model file header");
+            }
+            long size = fileSize(nitems, nnbrs);
+            if (raf.length() != size) {
+                throw new IOException(String.format("%s: expected %d bytes, found %d",
+                                                    modelFile, size, raf.length()));
+            }
+
+            FileChannel chan = raf.getChannel();
+            long pos = HEADER_SIZE;
+            long[] ids = new long[nitems];
+            mapSection(chan, pos, 8L * nitems).asLongBuffer().get(ids);
+            if (!MoreArrays.isSorted(ids, 0, nitems)) {
+                throw new IOException(modelFile + ": item IDs are not sorted");
+            }
+            itemDomain = LongKeyDomain.wrap(ids, nitems, true);
+            pos += 8L * nitems;
+            rowOffsets = mapSection(chan, pos, 4L * (nitems + 1)).asIntBuffer();
+            pos += 4L * (nitems + 1);
+            neighbors = mapSection(chan, pos, 4L * nnbrs).asIntBuffer();
+            pos += 4L * nnbrs;
+            scores = mapSection(chan, pos, 4L * nnbrs).asFloatBuffer();
+            if (rowOffsets.get(0) != 0) {
+                throw new IOException(modelFile + ": first row offset is not 0");
+            }
+            if (rowOffsets.get(nitems) != nnbrs) {
+                throw new IOException(modelFile + ": last offset does not match neighbor count");
+            }
+        } finally {
+            // the mappings remain valid after the file is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * Check the row offsets and neighbor indexes of the whole mapped model, so that a
+     * corrupt file is rejected when it is opened rather than failing on lookup.  This
+     * reads every page of the offsets and neighbor indexes.
+     */
+    private void verify() throws IOException {
+        final int nitems = itemDomain.domainSize();
+        final int nnbrs = neighbors.limit();
+        for (int i = 0; i < nitems; i++) {
+            int start = rowOffsets.get(i);
+            int end = rowOffsets.get(i + 1);
+            if (end < start || end > nnbrs) {
+                throw new IOException(String.format("%s: invalid offsets [%d,%d) for row %d",
+                                                    modelFile, start, end, i));
+            }
+        }
+        for (int k = 0; k < nnbrs; k++) {
+            int j = neighbors.get(k);
+            if (j < 0 || j >= nitems) {
+                throw new IOException(String.format("%s: invalid neighbor index %d at entry %d",
+                                                    modelFile, j, k));
+            }
+        }
+    }
+
+    /**
+     * Map a section of the model file.  A mapped buffer is limited to 2 GB, so larger
+     * sections (which {@link #write(ItemItemModel, File)} never produces) are rejected
+     * rather than mapped in pieces.
+     */
+    private MappedByteBuffer mapSection(FileChannel chan, long pos, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(modelFile + ": model section too large to map");
+        }
+        return chan.map(FileChannel.MapMode.READ_ONLY, pos, size);
+    }
+
+    /**
+     * Compute the size of a model file.
+     */
+    private static long fileSize(int nitems, int nnbrs) {
+        return HEADER_SIZE + 8L * nitems + 4L * (nitems + 1) + 8L * nnbrs;
+    }
+
+    @Override
+    public LongSortedSet getItemUniverse() {
+        return itemDomain.activeSetView();
+    }
+
+    @Nonnull
+    @Override
+    public List<ScoredId> getNeighbors(long item) {
+        int idx = itemDomain.getIndex(item);
+        if (idx < 0) {
+            return Collections.emptyList();
+        }
+        int start = rowOffsets.get(idx);
+        int end = rowOffsets.get(idx + 1);
+        if (start < 0 || end < start || end > neighbors.limit()) {
+            throw new IllegalStateException(String.format("%s: invalid offsets [%d,%d) for row %d",
+                                                          modelFile, start, end, idx));
+        }
+        if (start == end) {
+            return Collections.emptyList();
+        } else {
+            return new NeighborList(start, end);
+        }
+    }
+
+    /**
+     * View of a single row of the mapped matrix.
+     */
+    private class NeighborList extends PackedNeighborList {
+        NeighborList(int start, int end) {
+            super(start, end);
+        }
+
+        @Override
+        protected long getNeighborId(int pos) {
+            int j = neighbors.get(pos);
+            if (j < 0 || j >= itemDomain.domainSize()) {
+                throw new IllegalStateException(String.format("%s: invalid neighbor index %d at entry %d",
+                                                              modelFile, j, pos));
+            }
+            return itemDomain.getKey(j);
+        }
+
+        @Override
+        protected double getNeighborScore(int pos) {
+            return scores.get(pos);
+        }
+    }
+
+    /**
+     * Write an item-item model to a file that can be opened with {@link #open(File)}.
+     * Similarity scores are stored with single precision, and side channels on
+     * the neighbor lists are discarded.
+     *
+     * @param model The model to write.
+     * @param file  The file to write to.
+     * @throws IOException if there is an error writing the file.
+     * @throws IllegalArgumentException if the model is too large to be mapped, or
+     *                                  contains neighbors outside its item universe.
+     */
+    public static void write(ItemItemModel model, File file) throws IOException {
+        LongKeyDomain domain = LongKeyDomain.fromCollection(model.getItemUniverse());
+        int nitems = domain.domainSize();
+        long total = 0;
+        for (int i = 0; i < nitems; i++) {
+            total += model.getNeighbors(domain.getKey(i)).size();
+        }
+        if (4L * total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("model has too many neighbors to map");
+        }
+        logger.info("writing {} neighbors of {} items to {}", total, nitems, file);
+
+        Closer closer = Closer.create();
+        try {
+            DataOutputStream out = closer.register(
+                    new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nitems);
+            out.writeInt((int) total);
+            for (int i = 0; i < nitems; i++) {
+                out.writeLong(domain.getKey(i));
+            }
+            int offset = 0;
+            for (int i = 0; i < nitems; i++) {
+                out.writeInt(offset);
+                offset += model.getNeighbors(domain.getKey(i)).size();
+            }
+            out.writeInt(offset);
+            for (int i = 0; i < nitems; i++) {
+                for (ScoredId id: CollectionUtils.fast(model.getNeighbors(domain.getKey(i)))) {
+                    int j = domain.getIndex(id.getId());
+                    if (j < 0) {
+                        throw new IllegalArgumentException("neighbor " + id.getId() + " not in item universe");
+                    }
+                    out.writeInt(j);
+                }
+            }
+            for (int i = 0; i < nitems; i++) {
+                for (ScoredId id: CollectionUtils.fast(model.getNeighbors(domain.getKey(i)))) {
+                    out.writeFloat((float) id.getScore());
+                }
+            }
+        } catch (Throwable th) {
+            throw closer.rethrow(th);
+        } finally {
+            closer.close();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item.model;
+
+import org.grouplens.lenskit.data.dao.DataAccessException;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Provide an item-item model by mapping a model file written by
+ * {@link MappedItemItemModel#write(ItemItemModel, File)}.  To use a model file,
+ * bind {@link ItemItemModel} to {@link MappedItemItemModel} and set the
+ * {@link ItemItemModelFile} parameter:
+ *
+ * <pre>{@code
+ * config.bind(ItemItemModel.class).to(MappedItemItemModel.class);
+ * config.set(ItemItemModelFile.class).to(new File("model.bin"));
+ * }</pre>
+ *
+ * @since 2.1
+ */
+public class MappedItemItemModelProvider implements Provider<MappedItemItemModel> {
+    private final File modelFile;
+
+    @Inject
+    public MappedItemItemModelProvider(@ItemItemModelFile File file) {
+        modelFile = file;
+    }
+
+    @Override
+    public MappedItemItemModel get() {
+        try {
+            return MappedItemItemModel.open(modelFile);
+        } catch (IOException e) {
+            throw new DataAccessException("error opening item-item model file " + modelFile, e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item.model;
+
+import org.grouplens.lenskit.core.Transient;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+/**
+ * Build a packed item-item model.  This uses an {@link ItemItemModelBuilder} to
+ * compute the similarities, and stores the resulting matrix as a
+ * {@link PackedSimilarityMatrixModel}.  To use it, bind {@link ItemItemModel} to
+ * {@link PackedSimilarityMatrixModel}.
+ *
+ * @since 2.1
+ */
+public class PackedItemItemModelBuilder implements Provider<PackedSimilarityMatrixModel> {
+    private final ItemItemModelBuilder builder;
+
+    @Inject
+    public PackedItemItemModelBuilder(@Transient ItemItemModelBuilder bld) {
+        builder = bld;
+    }
+
+    @Override
+    public PackedSimilarityMatrixModel get() {
+        return builder.accumulate().buildPacked();
+    }
+}
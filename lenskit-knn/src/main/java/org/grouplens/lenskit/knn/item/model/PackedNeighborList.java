@@ -0,0 +1,191 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item.model;
+
+import com.google.common.base.Preconditions;
+import org.grouplens.lenskit.collections.FastCollection;
+import org.grouplens.lenskit.scored.AbstractScoredId;
+import org.grouplens.lenskit.scored.ScoredId;
+import org.grouplens.lenskit.scored.ScoredIds;
+import org.grouplens.lenskit.symbols.DoubleSymbolValue;
+import org.grouplens.lenskit.symbols.Symbol;
+import org.grouplens.lenskit.symbols.SymbolValue;
+import org.grouplens.lenskit.symbols.TypedSymbol;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Base class for views of a single row of a packed similarity matrix.  The row
+ * occupies a contiguous range of positions in the matrix storage; subclasses
+ * provide access to the neighbor ID and score at each position.  Packed rows do not
+ * have side channels.
+ *
+ * @since 2.1
+ */
+abstract class PackedNeighborList extends AbstractList<ScoredId> implements FastCollection<ScoredId> {
+    private final int start;
+    private final int end;
+
+    /**
+     * Construct a new row view.
+     *
+     * @param start The position of the first neighbor in the matrix storage.
+     * @param end   The position one past the last neighbor.
+     */
+    PackedNeighborList(int start, int end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Get the ID of the neighbor at a storage position.
+     *
+     * @param pos The position in the matrix storage.
+     * @return The neighbor's item ID.
+     */
+    protected abstract long getNeighborId(int pos);
+
+    /**
+     * Get the similarity of the neighbor at a storage position.
+     *
+     * @param pos The position in the matrix storage.
+     * @return The neighbor's similarity.
+     */
+    protected abstract double getNeighborScore(int pos);
+
+    @Override
+    public int size() {
+        return end - start;
+    }
+
+    @Override
+    public ScoredId get(int i) {
+        Preconditions.checkElementIndex(i, size());
+        return new IndirectScoredId(start + i);
+    }
+
+    @Override
+    public Iterator<ScoredId> fastIterator() {
+        return new FastIter();
+    }
+
+    /**
+     * Fast iterator over the row, using a mutable flyweight.
+     */
+    private class FastIter implements Iterator<ScoredId> {
+        private int next = start;
+        private final IndirectScoredId id = new IndirectScoredId(start);
+
+        @Override
+        public boolean hasNext() {
+            return next < end;
+        }
+
+        @Override
+        public ScoredId next() {
+            if (next < end) {
+                id.position = next;
+                next++;
+                return id;
+            } else {
+                throw new NoSuchElementException();
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("packed similarity rows are immutable");
+        }
+    }
+
+    /**
+     * Flyweight scored ID backed by the matrix storage.
+     */
+    private class IndirectScoredId extends AbstractScoredId implements Serializable {
+        private int position;
+
+        IndirectScoredId(int pos) {
+            position = pos;
+        }
+
+        public Object writeReplace() {
+            return ScoredIds.create(getId(), getScore());
+        }
+
+        @Override
+        public long getId() {
+            return getNeighborId(position);
+        }
+
+        @Override
+        public double getScore() {
+            return getNeighborScore(position);
+        }
+
+        @Nonnull
+        @Override
+        public Set<Symbol> getUnboxedChannelSymbols() {
+            return Collections.emptySet();
+        }
+
+        @Nonnull
+        @Override
+        public Set<TypedSymbol<?>> getChannelSymbols() {
+            return Collections.emptySet();
+        }
+
+        @Nonnull
+        @Override
+        public Collection<SymbolValue<?>> getChannels() {
+            return Collections.emptyList();
+        }
+
+        @Nonnull
+        @Override
+        public Collection<DoubleSymbolValue> getUnboxedChannels() {
+            return Collections.emptyList();
+        }
+
+        @Nullable
+        @Override
+        public <T> T getChannelValue(@Nonnull TypedSymbol<T> sym) {
+            return null;
+        }
+
+        @Override
+        public double getUnboxedChannelValue(Symbol sym) {
+            throw new NullPointerException("no symbol " + sym);
+        }
+
+        @Override
+        public boolean hasUnboxedChannel(Symbol s) {
+            return false;
+        }
+
+        @Override
+        public boolean hasChannel(TypedSymbol<?> s) {
+            return false;
+        }
+    }
+}
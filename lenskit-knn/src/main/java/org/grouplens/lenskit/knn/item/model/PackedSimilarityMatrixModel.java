@@ -0,0 +1,147 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item.model;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.grouplens.grapht.annotation.DefaultProvider;
+import org.grouplens.lenskit.collections.LongKeyDomain;
+import org.grouplens.lenskit.core.Shareable;
+import org.grouplens.lenskit.scored.ScoredId;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Item-item similarity model storing the similarity matrix in compressed sparse row
+ * form.  All neighborhoods are stored in three flat arrays: the row offsets, the
+ * neighbor item indices, and the similarity scores (as single-precision floats).
+ * Item IDs are mapped to indices through a single item domain shared by all rows.
+ *
+ * <p>The lists returned by {@link #getNeighbors(long)} are lightweight views of
+ * these arrays.  This model takes much less memory than {@link SimilarityMatrixModel},
+ * but does not support side channels on the neighbor lists.
+ *
+ * @since 2.1
+ * @see ItemItemModelBuilder.Accumulator#buildPacked()
+ */
+@DefaultProvider(PackedItemItemModelBuilder.class)
+@Shareable
+public class PackedSimilarityMatrixModel implements Serializable, ItemItemModel {
+    private static final long serialVersionUID = 1L;
+
+    private final LongKeyDomain itemDomain;
+    private final int[] rowOffsets;
+    private final int[] neighbors;
+    private final float[] scores;
+
+    /**
+     * Construct a new packed item-item model.
+     *
+     * @param items   The item domain. All items are in the universe, and neighbor
+     *                indices are indexes in this domain.
+     * @param offsets The row offsets.  Row {@code i} occupies positions
+     *                {@code offsets[i]} (inclusive) to {@code offsets[i+1]}
+     *                (exclusive) of the neighbor and score arrays.  Its length is
+     *                one more than the number of items.
+     * @param nbrs    The neighbor item indices.
+     * @param sims    The neighbor similarities.  Each row is sorted in nonincreasing
+     *                order of similarity.
+     */
+    PackedSimilarityMatrixModel(LongKeyDomain items, int[] offsets, int[] nbrs, float[] sims) {
+        Preconditions.checkArgument(offsets.length == items.domainSize() + 1,
+                                    "offset array has incorrect size");
+        Preconditions.checkArgument(nbrs.length == sims.length,
+                                    "neighbor and score arrays have different sizes");
+        Preconditions.checkArgument(offsets[offsets.length - 1] == nbrs.length,
+                                    "last offset does not match neighbor count");
+        itemDomain = items;
+        rowOffsets = offsets;
+        neighbors = nbrs;
+        scores = sims;
+    }
+
+    /**
+     * Do some light validation of the model arrays.
+     * @param in The input stream
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (rowOffsets.length != itemDomain.domainSize() + 1) {
+            throw new InvalidObjectException("offset array has incorrect size");
+        }
+        if (neighbors.length != scores.length) {
+            throw new InvalidObjectException("score array has incorrect size");
+        }
+        if (rowOffsets[rowOffsets.length - 1] != neighbors.length) {
+            throw new InvalidObjectException("last offset does not match neighbor count");
+        }
+    }
+
+    @Override
+    public LongSortedSet getItemUniverse() {
+        return itemDomain.activeSetView();
+    }
+
+    @Override
+    @Nonnull
+    public List<ScoredId> getNeighbors(long item) {
+        int idx = itemDomain.getIndex(item);
+        if (idx < 0 || rowOffsets[idx] == rowOffsets[idx + 1]) {
+            return Collections.emptyList();
+        } else {
+            return new NeighborList(rowOffsets[idx], rowOffsets[idx + 1]);
+        }
+    }
+
+    /**
+     * Get the number of stored neighbor entries in the whole matrix.
+     *
+     * @return The total number of neighbors over all rows.
+     */
+    public int getNeighborCount() {
+        return neighbors.length;
+    }
+
+    /**
+     * View of a single row of the matrix.
+     */
+    private class NeighborList extends PackedNeighborList {
+        NeighborList(int start, int end) {
+            super(start, end);
+        }
+
+        @Override
+        protected long getNeighborId(int pos) {
+            return itemDomain.getKey(neighbors[pos]);
+        }
+
+        @Override
+        protected double getNeighborScore(int pos) {
+            return scores[pos];
+        }
+    }
+}
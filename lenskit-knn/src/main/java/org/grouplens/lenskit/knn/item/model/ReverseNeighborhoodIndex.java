@@ -0,0 +1,176 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item.model;
+
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.grouplens.grapht.annotation.DefaultProvider;
+import org.grouplens.lenskit.collections.CollectionUtils;
+import org.grouplens.lenskit.collections.LongKeyDomain;
+import org.grouplens.lenskit.collections.MoreArrays;
+import org.grouplens.lenskit.core.Shareable;
+import org.grouplens.lenskit.core.Transient;
+import org.grouplens.lenskit.scored.ScoredId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Reverse index of an item-item model's neighborhoods.  For each item <i>j</i>, it
+ * stores the items <i>i</i> whose neighborhood (row of the similarity matrix)
+ * contains <i>j</i>.  An item can only be scored for a user if its neighborhood
+ * contains at least one of the user's items, so this index lets item-item
+ * recommenders compute the candidate items for a user from the user's items
+ * instead of scoring the entire item universe.
+ *
+ * @since 2.1
+ */
+@DefaultProvider(ReverseNeighborhoodIndex.Builder.class)
+@Shareable
+public class ReverseNeighborhoodIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(ReverseNeighborhoodIndex.class);
+
+    private final LongKeyDomain itemDomain;
+    private final int[] offsets;
+    private final int[] containingItems;
+
+    /**
+     * Construct a new reverse index.
+     *
+     * @param items      The item domain.
+     * @param offsets    The list offsets.  The items whose neighborhoods contain item
+     *                   {@code j} are at positions {@code offsets[j]} (inclusive) to
+     *                   {@code offsets[j+1]} (exclusive) of {@code containing}.
+     * @param containing The indexes of the containing items, sorted within each list.
+     */
+    ReverseNeighborhoodIndex(LongKeyDomain items, int[] offsets, int[] containing) {
+        assert offsets.length == items.domainSize() + 1;
+        assert offsets[offsets.length - 1] == containing.length;
+        itemDomain = items;
+        this.offsets = offsets;
+        containingItems = containing;
+    }
+
+    /**
+     * Build the reverse index of an item-item model.
+     *
+     * @param model The model to index.
+     * @return The reverse neighborhood index.
+     */
+    public static ReverseNeighborhoodIndex create(ItemItemModel model) {
+        LongKeyDomain domain = LongKeyDomain.fromCollection(model.getItemUniverse());
+        final int nitems = domain.domainSize();
+
+        // count the neighborhoods containing each item, then make the counts offsets
+        int[] offsets = new int[nitems + 1];
+        for (int i = 0; i < nitems; i++) {
+            for (ScoredId nbr: CollectionUtils.fast(model.getNeighbors(domain.getKey(i)))) {
+                int j = domain.getIndex(nbr.getId());
+                if (j >= 0) {
+                    offsets[j + 1] += 1;
+                }
+            }
+        }
+        for (int j = 0; j < nitems; j++) {
+            offsets[j + 1] += offsets[j];
+        }
+
+        // fill in the lists; scanning rows in order leaves each list sorted
+        int[] containing = new int[offsets[nitems]];
+        int[] next = Arrays.copyOf(offsets, nitems);
+        for (int i = 0; i < nitems; i++) {
+            for (ScoredId nbr: CollectionUtils.fast(model.getNeighbors(domain.getKey(i)))) {
+                int j = domain.getIndex(nbr.getId());
+                if (j >= 0) {
+                    containing[next[j]] = i;
+                    next[j] += 1;
+                }
+            }
+        }
+
+        logger.debug("indexed {} neighborhood entries for {} items", containing.length, nitems);
+        return new ReverseNeighborhoodIndex(domain, offsets, containing);
+    }
+
+    /**
+     * Get the items whose neighborhoods contain any of a set of items.  These are the
+     * items that can be scored for a user who has rated the specified items.
+     *
+     * @param items The items (typically a user's rated items).
+     * @return The set of items having at least one of {@code items} in their
+     *         neighborhoods.
+     */
+    public LongSortedSet getCandidates(LongCollection items) {
+        int total = 0;
+        LongIterator iter = items.iterator();
+        while (iter.hasNext()) {
+            int j = itemDomain.getIndex(iter.nextLong());
+            if (j >= 0) {
+                total += offsets[j + 1] - offsets[j];
+            }
+        }
+
+        int[] found = new int[total];
+        int pos = 0;
+        iter = items.iterator();
+        while (iter.hasNext()) {
+            int j = itemDomain.getIndex(iter.nextLong());
+            if (j >= 0) {
+                int len = offsets[j + 1] - offsets[j];
+                System.arraycopy(containingItems, offsets[j], found, pos, len);
+                pos += len;
+            }
+        }
+        assert pos == total;
+
+        Arrays.sort(found);
+        int size = MoreArrays.deduplicate(found, 0, total);
+        // the domain is sorted, so sorted indexes map to sorted keys
+        long[] keys = new long[size];
+        for (int k = 0; k < size; k++) {
+            keys[k] = itemDomain.getKey(found[k]);
+        }
+        return LongKeyDomain.wrap(keys, size, true).activeSetView();
+    }
+
+    /**
+     * Build a reverse neighborhood index from the item-item model.
+     */
+    public static class Builder implements Provider<ReverseNeighborhoodIndex> {
+        private final ItemItemModel model;
+
+        @Inject
+        public Builder(@Transient ItemItemModel model) {
+            this.model = model;
+        }
+
+        @Override
+        public ReverseNeighborhoodIndex get() {
+            return create(model);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item.model;
+
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.VectorEntry;
+
+/**
+ * The change in a user's normalized rating vector caused by new events.  These are
+ * computed by {@link ItemItemBuildContextFactory#computeUserChanges(java.util.Collection)}
+ * so that models built from the item vectors can be updated.
+ *
+ * @since 2.1
+ */
+public final class UserVectorChange {
+    private final long user;
+    private final SparseVector oldVector;
+    private final SparseVector newVector;
+
+    UserVectorChange(long user, SparseVector oldv, SparseVector newv) {
+        this.user = user;
+        oldVector = oldv;
+        newVector = newv;
+    }
+
+    /**
+     * Get the user ID.
+     * @return The ID of the user whose vector changed.
+     */
+    public long getUserId() {
+        return user;
+    }
+
+    /**
+     * Get the user's normalized vector before the new events.
+     * @return The old vector (empty for a new user).
+     */
+    public SparseVector getOldVector() {
+        return oldVector;
+    }
+
+    /**
+     * Get the user's normalized vector after the new events.
+     * @return The new vector.
+     */
+    public SparseVector getNewVector() {
+        return newVector;
+    }
+
+    /**
+     * Add the items whose values changed to a set.
+     *
+     * @param items The set to which the IDs of items whose value was added, removed, or
+     *              modified should be added.
+     */
+    public void addChangedItems(LongSet items) {
+        for (VectorEntry e: oldVector.fast()) {
+            long item = e.getKey();
+            if (!newVector.containsKey(item) || newVector.get(item) != e.getValue()) {
+                items.add(item);
+            }
+        }
+        for (VectorEntry e: newVector.fast()) {
+            if (!oldVector.containsKey(e.getKey())) {
+                items.add(e.getKey());
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.user;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.grouplens.lenskit.data.dao.ItemEventDAO;
+import org.grouplens.lenskit.data.dao.UserEventDAO;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.Ratings;
+import org.grouplens.lenskit.data.history.RatingVectorUserHistorySummarizer;
+import org.grouplens.lenskit.data.history.UserHistory;
+import org.grouplens.lenskit.knn.NeighborhoodSize;
+import org.grouplens.lenskit.transform.normalize.UserVectorNormalizer;
+import org.grouplens.lenskit.vectors.ImmutableSparseVector;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Neighborhood finder that searches an approximate nearest-neighbor index.  Instead of
+ * comparing the user with every user who rated a target item, as
+ * {@link SimpleNeighborhoodFinder} does, it only compares the user with the candidates
+ * found in a {@link UserLSHIndex} who rated at least one target item, and keeps the
+ * most similar candidates who rated each target item.  The similarities of the candidates are exact, but some true neighbors
+ * may be missed; the index's {@linkplain LSHTableCount table count} and
+ * {@linkplain LSHHashBits hash bits} trade off how many are missed against the number of
+ * candidates examined.
+ *
+ * <p>The index approximates cosine similarity of normalized user vectors, so this finder
+ * works best with cosine-like {@linkplain UserSimilarity user similarities}.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+public class LSHNeighborhoodFinder implements NeighborhoodFinder {
+    private static final Logger logger = LoggerFactory.getLogger(LSHNeighborhoodFinder.class);
+
+    private final UserLSHIndex index;
+    private final UserEventDAO userDAO;
+    private final ItemEventDAO itemDAO;
+    private final int neighborhoodSize;
+    private final UserSimilarity similarity;
+    private final UserVectorNormalizer normalizer;
+
+    /**
+     * Construct a new LSH neighborhood finder.
+     *
+     * @param idx   The user index.
+     * @param udao  The user-event DAO.
+     * @param idao  The item-event DAO.
+     * @param nnbrs The number of neighbors to consider for each item.
+     * @param sim   The similarity function to use.
+     * @param norm  The normalizer for user vectors.
+     */
+    @Inject
+    public LSHNeighborhoodFinder(UserLSHIndex idx, UserEventDAO udao, ItemEventDAO idao,
+                                 @NeighborhoodSize int nnbrs,
+                                 UserSimilarity sim,
+                                 UserVectorNormalizer norm) {
+        index = idx;
+        userDAO = udao;
+        itemDAO = idao;
+        neighborhoodSize = nnbrs;
+        similarity = sim;
+        normalizer = norm;
+    }
+
+    @Override
+    public Long2ObjectMap<? extends Collection<Neighbor>>
+    findNeighbors(@Nonnull UserHistory<? extends Event> user, @Nonnull LongSet items) {
+        Preconditions.checkNotNull(user, "user profile");
+        Preconditions.checkNotNull(items, "item set");
+
+        SparseVector urs = RatingVectorUserHistorySummarizer.makeRatingVector(user);
+        final long uid1 = user.getUserId();
+        ImmutableSparseVector nratings = normalizer.normalize(uid1, urs, null).freeze();
+
+        LongSet candidates = index.getCandidates(nratings);
+        candidates.remove(uid1);
+        LongSet users = filterRaters(candidates, items);
+        logger.trace("Found {} candidate neighbors in index, {} rated target items",
+                     candidates.size(), users.size());
+
+        NeighborAccumulator acc = new NeighborAccumulator(items, neighborhoodSize);
+        LongIterator uiter = users.iterator();
+        while (uiter.hasNext()) {
+            final long uid2 = uiter.nextLong();
+            List<Rating> ratings = userDAO.getEventsForUser(uid2, Rating.class);
+            if (ratings == null) {
+                continue;
+            }
+            SparseVector urv = Ratings.userRatingVector(ratings);
+            MutableSparseVector nurv = normalizer.normalize(uid2, urv, null);
+
+            final double sim = similarity.similarity(uid1, nratings, uid2, nurv);
+            if (Double.isNaN(sim) || Double.isInfinite(sim)) {
+                continue;
+            }
+            acc.put(new Neighbor(uid2, urv, sim));
+        }
+        return acc.getNeighborhoods();
+    }
+
+    /**
+     * Restrict candidate neighbors to those who have rated any of a set of items, so
+     * candidates who cannot be neighbors for any item are not loaded and normalized.
+     *
+     * @param candidates The candidate users.
+     * @param itemSet    The items to look for.
+     * @return The candidates who have rated at least one item in {@var itemSet}.
+     */
+    private LongSet filterRaters(LongSet candidates, LongSet itemSet) {
+        LongSet users = new LongOpenHashSet();
+        LongIterator items = itemSet.iterator();
+        while (items.hasNext() && users.size() < candidates.size()) {
+            LongSet iusers = itemDAO.getUsersForItem(items.nextLong());
+            if (iusers == null) {
+                continue;
+            }
+            LongIterator iter = iusers.iterator();
+            while (iter.hasNext()) {
+                final long u = iter.nextLong();
+                if (candidates.contains(u)) {
+                    users.add(u);
+                }
+            }
+        }
+        return users;
+    }
+}
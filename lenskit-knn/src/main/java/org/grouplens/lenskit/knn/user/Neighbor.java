@@ -22,6 +22,7 @@ package org.grouplens.lenskit.knn.user;
 
 import org.grouplens.lenskit.vectors.SparseVector;
 
+import javax.annotation.Nullable;
 import java.util.Comparator;
 
 /**
@@ -33,6 +34,15 @@ public class Neighbor {
     public final long user;
     public final SparseVector vector;
     public final double similarity;
+    /**
+     * The neighbor's normalized rating vector, if the neighborhood finder already has it
+     * (normalized with the same {@link org.grouplens.lenskit.transform.normalize.UserVectorNormalizer});
+     * otherwise {@code null}.
+     *
+     * @since 2.1
+     */
+    @Nullable
+    public final SparseVector normalizedVector;
 
     /**
      * Construct a new neighbor.
@@ -42,8 +52,23 @@ public class Neighbor {
      * @param sim The neighbor's similarity to the query user.
      */
     public Neighbor(long u, SparseVector v, double sim) {
+        this(u, v, null, sim);
+    }
+
+    /**
+     * Construct a new neighbor with its normalized rating vector.
+     *
+     * @param u   The neighbor's ID.
+     * @param v   The neighbor's unnormalized rating vector.
+     * @param nv  The neighbor's normalized rating vector, or {@code null} if it is not
+     *            available.
+     * @param sim The neighbor's similarity to the query user.
+     * @since 2.1
+     */
+    public Neighbor(long u, SparseVector v, @Nullable SparseVector nv, double sim) {
         user = u;
         vector = v;
+        normalizedVector = nv;
         similarity = sim;
     }
 
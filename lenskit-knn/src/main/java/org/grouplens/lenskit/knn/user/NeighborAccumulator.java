@@ -0,0 +1,129 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.user;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.grouplens.lenskit.vectors.SparseVector;
+
+import java.util.PriorityQueue;
+
+/**
+ * Accumulate candidate neighbors into the neighborhoods of a set of target items, keeping
+ * the most similar neighbors who rated each item.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+class NeighborAccumulator {
+    private final LongSet items;
+    private final int neighborhoodSize;
+    private final Long2ObjectMap<PriorityQueue<Neighbor>> heaps;
+
+    /**
+     * Create a new accumulator.
+     *
+     * @param items The target items.
+     * @param nnbrs The number of neighbors to keep for each item, or 0 to keep all.
+     */
+    public NeighborAccumulator(LongSet items, int nnbrs) {
+        this.items = items;
+        neighborhoodSize = nnbrs;
+        heaps = new Long2ObjectOpenHashMap<PriorityQueue<Neighbor>>(items.size());
+    }
+
+    /**
+     * Add a neighbor to the neighborhoods of the target items it has rated.
+     *
+     * @param nbr The neighbor.
+     */
+    public void put(Neighbor nbr) {
+        SparseVector vec = nbr.vector;
+        // scan whichever of the item sets is smaller
+        if (vec.size() < items.size()) {
+            LongIterator iter = vec.keySet().iterator();
+            while (iter.hasNext()) {
+                long item = iter.nextLong();
+                if (items.contains(item)) {
+                    put(item, nbr);
+                }
+            }
+        } else {
+            LongIterator iter = items.iterator();
+            while (iter.hasNext()) {
+                long item = iter.nextLong();
+                if (vec.containsKey(item)) {
+                    put(item, nbr);
+                }
+            }
+        }
+    }
+
+    /**
+     * Query whether a neighbor with a given similarity would be kept in an item's
+     * neighborhood if it were added now.  Callers can use this to avoid creating neighbors
+     * that would be evicted right away; neighbors tied with the least similar neighbor
+     * are considered kept, since which of them is evicted depends on the heap.
+     *
+     * @param item The item.
+     * @param sim  The similarity of the candidate neighbor.
+     * @return {@code false} if the neighbor would certainly be evicted right away.
+     */
+    boolean wouldKeep(long item, double sim) {
+        if (neighborhoodSize <= 0) {
+            return true;
+        }
+        PriorityQueue<Neighbor> heap = heaps.get(item);
+        return heap == null || heap.size() < neighborhoodSize || sim >= heap.peek().similarity;
+    }
+
+    /**
+     * Add a neighbor to the neighborhood of a single item.  The caller is responsible for
+     * checking that the neighbor has rated the item.
+     *
+     * @param item The item.
+     * @param nbr  The neighbor.
+     */
+    void put(long item, Neighbor nbr) {
+        PriorityQueue<Neighbor> heap = heaps.get(item);
+        if (heap == null) {
+            heap = new PriorityQueue<Neighbor>(neighborhoodSize > 0 ? neighborhoodSize + 1 : 11,
+                                               Neighbor.SIMILARITY_COMPARATOR);
+            heaps.put(item, heap);
+        }
+        heap.add(nbr);
+        if (neighborhoodSize > 0 && heap.size() > neighborhoodSize) {
+            assert heap.size() == neighborhoodSize + 1;
+            heap.remove();
+        }
+    }
+
+    /**
+     * Get the accumulated neighborhoods.
+     *
+     * @return A map from item IDs to their neighborhoods.  Items with no neighbors are
+     *         absent.
+     */
+    public Long2ObjectMap<PriorityQueue<Neighbor>> getNeighborhoods() {
+        return heaps;
+    }
+}
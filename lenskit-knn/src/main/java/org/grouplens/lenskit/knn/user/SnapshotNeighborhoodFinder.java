@@ -0,0 +1,196 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.user;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.history.RatingVectorUserHistorySummarizer;
+import org.grouplens.lenskit.data.history.UserHistory;
+import org.grouplens.lenskit.knn.NeighborhoodSize;
+import org.grouplens.lenskit.transform.normalize.UserVectorNormalizer;
+import org.grouplens.lenskit.vectors.ImmutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.VectorEntry;
+import org.grouplens.lenskit.vectors.similarity.CosineVectorSimilarity;
+import org.grouplens.lenskit.vectors.similarity.VectorSimilarity;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+import java.util.Collection;
+
+/**
+ * Neighborhood finder that searches a {@link UserVectorSnapshot}.  It finds the same
+ * neighbors as {@link SimpleNeighborhoodFinder} (except that neighbors tied for the last
+ * place in a neighborhood may be chosen differently, since the candidates are visited in
+ * a different order), but the candidates' normalized vectors
+ * come from the snapshot instead of being loaded and normalized on each request, so a
+ * request only computes similarities.  For cosine similarity, the similarities are computed
+ * directly from the packed vectors and their precomputed norms.  The finder holds no
+ * locks or mutable state, so concurrent requests do not block each other.
+ *
+ * <p>The snapshot is built when the recommender is built, so neighbors' ratings added
+ * since then are not seen until the model is rebuilt.  The query user's own history is
+ * always read fresh.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.1
+ */
+@ThreadSafe
+public class SnapshotNeighborhoodFinder implements NeighborhoodFinder {
+    private final UserVectorSnapshot snapshot;
+    private final int neighborhoodSize;
+    private final UserSimilarity similarity;
+    private final UserVectorNormalizer normalizer;
+    /**
+     * The cosine similarity to compute from the packed vectors, or {@code null} to use
+     * {@link #similarity} on vectors.
+     */
+    private final CosineVectorSimilarity cosine;
+
+    /**
+     * Construct a new snapshot neighborhood finder.
+     *
+     * @param snap  The user vector snapshot.
+     * @param nnbrs The number of neighbors to consider for each item.
+     * @param sim   The similarity function to use.
+     * @param norm  The normalizer for the query user's vector (it should be the normalizer
+     *              with which the snapshot was built).
+     */
+    @Inject
+    public SnapshotNeighborhoodFinder(UserVectorSnapshot snap,
+                                      @NeighborhoodSize int nnbrs,
+                                      UserSimilarity sim,
+                                      UserVectorNormalizer norm) {
+        snapshot = snap;
+        neighborhoodSize = nnbrs;
+        similarity = sim;
+        normalizer = norm;
+        CosineVectorSimilarity cos = null;
+        if (sim instanceof UserVectorSimilarity) {
+            VectorSimilarity vsim = ((UserVectorSimilarity) sim).getDelegate();
+            // subclasses may change how similarity is computed
+            if (vsim != null && vsim.getClass().equals(CosineVectorSimilarity.class)) {
+                cos = (CosineVectorSimilarity) vsim;
+            }
+        }
+        cosine = cos;
+    }
+
+    @Override
+    public Long2ObjectMap<? extends Collection<Neighbor>>
+    findNeighbors(@Nonnull UserHistory<? extends Event> user, @Nonnull LongSet items) {
+        Preconditions.checkNotNull(user, "user profile");
+        Preconditions.checkNotNull(items, "item set");
+
+        SparseVector urs = RatingVectorUserHistorySummarizer.makeRatingVector(user);
+        Query query = new Query(user.getUserId(),
+                                normalizer.normalize(user.getUserId(), urs, null).freeze());
+
+        NeighborAccumulator acc = new NeighborAccumulator(items, neighborhoodSize);
+        LongIterator iter = items.iterator();
+        while (iter.hasNext()) {
+            final long item = iter.nextLong();
+            final int j = snapshot.getItemIndex(item);
+            if (j < 0) {
+                continue;
+            }
+            final int end = snapshot.getRaterEnd(j);
+            for (int p = snapshot.getRaterStart(j); p < end; p++) {
+                final int u = snapshot.getRater(p);
+                if (u == query.userIndex) {
+                    continue;
+                }
+                final double sim = query.similarity(u);
+                if (Double.isNaN(sim) || Double.isInfinite(sim)) {
+                    continue;
+                }
+                // don't make neighbors that would be removed again right away
+                if (acc.wouldKeep(item, sim)) {
+                    acc.put(item, query.neighbor(u, sim));
+                }
+            }
+        }
+        return acc.getNeighborhoods();
+    }
+
+    /**
+     * The state of a single neighborhood search: the query user's vector, and the
+     * similarities and neighbors computed so far, since a candidate may have rated several
+     * target items.
+     */
+    private class Query {
+        final long userId;
+        final int userIndex;
+        final ImmutableSparseVector vector;
+        final long[] keys;
+        final double[] values;
+        final Int2DoubleOpenHashMap similarities = new Int2DoubleOpenHashMap();
+        final Int2ObjectMap<Neighbor> neighbors = new Int2ObjectOpenHashMap<Neighbor>();
+
+        Query(long uid, ImmutableSparseVector vec) {
+            userId = uid;
+            userIndex = snapshot.getUserIndex(uid);
+            vector = vec;
+            keys = new long[vec.size()];
+            values = new double[vec.size()];
+            int i = 0;
+            for (VectorEntry e: vec.fast()) {
+                keys[i] = e.getKey();
+                values[i] = e.getValue();
+                i++;
+            }
+        }
+
+        double similarity(int u) {
+            if (similarities.containsKey(u)) {
+                return similarities.get(u);
+            }
+            double sim;
+            if (cosine != null) {
+                final double dot = snapshot.dot(u, keys, values, keys.length);
+                final double denom = vector.norm() * snapshot.getNorm(u) + cosine.getDampingFactor();
+                sim = denom == 0 ? 0 : dot / denom;
+            } else {
+                sim = similarity.similarity(userId, vector, snapshot.getUserId(u),
+                                            snapshot.normalizedVector(u));
+            }
+            similarities.put(u, sim);
+            return sim;
+        }
+
+        Neighbor neighbor(int u, double sim) {
+            Neighbor n = neighbors.get(u);
+            if (n == null) {
+                n = new Neighbor(snapshot.getUserId(u), snapshot.ratingVector(u),
+                                 snapshot.normalizedVector(u), sim);
+                neighbors.put(u, n);
+            }
+            return n;
+        }
+    }
+}
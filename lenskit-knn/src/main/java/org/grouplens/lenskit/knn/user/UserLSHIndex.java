@@ -0,0 +1,264 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.user;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.grouplens.grapht.annotation.DefaultProvider;
+import org.grouplens.lenskit.core.Shareable;
+import org.grouplens.lenskit.core.Transient;
+import org.grouplens.lenskit.cursors.Cursor;
+import org.grouplens.lenskit.data.dao.UserEventDAO;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.history.RatingVectorUserHistorySummarizer;
+import org.grouplens.lenskit.data.history.UserHistory;
+import org.grouplens.lenskit.transform.normalize.UserVectorNormalizer;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.VectorEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Locality-sensitive hash index of normalized user rating vectors, for finding
+ * approximate nearest neighbors by cosine similarity.  Each of the index's tables hashes a
+ * vector to a signature with one bit per random hyperplane, recording which side of the
+ * hyperplane the vector lies on; two vectors agree on each bit with probability
+ * 1 - &theta;/&pi;, where &theta; is the angle between them.  Users whose signatures match
+ * the query user's in at least one table are candidate neighbors.
+ *
+ * <p>The hyperplanes are not stored: the component of a hyperplane for an item is a random
+ * sign derived from a hash of the item ID, so vectors for users and items not seen when the
+ * index was built can still be hashed.  Each table is stored as an array of user indexes
+ * sorted by signature.
+ *
+ * @see LSHNeighborhoodFinder
+ * @see LSHTableCount
+ * @see LSHHashBits
+ * @since 2.1
+ */
+@DefaultProvider(UserLSHIndex.Builder.class)
+@Shareable
+public class UserLSHIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(UserLSHIndex.class);
+
+    /**
+     * The seed from which the random hyperplanes are derived.
+     */
+    static final long DEFAULT_SEED = 0x5DEECE66DL;
+    private static final long TABLE_STEP = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+    private final int hashBits;
+    private final long[] userIds;
+    private final int[][] signatures;
+    private final int[][] members;
+
+    /**
+     * Construct a new LSH index.
+     *
+     * @param seed    The seed for the random hyperplanes.
+     * @param bits    The number of bits per signature.
+     * @param users   The IDs of the indexed users.
+     * @param sigs    The signatures in each table, in increasing order.
+     * @param members The indexes (in {@code users}) of the users with each signature, in
+     *                parallel with {@code sigs}.
+     */
+    UserLSHIndex(long seed, int bits, long[] users, int[][] sigs, int[][] members) {
+        assert sigs.length == members.length;
+        this.seed = seed;
+        hashBits = bits;
+        userIds = users;
+        signatures = sigs;
+        this.members = members;
+    }
+
+    /**
+     * Get the number of indexed users.
+     *
+     * @return The number of users in the index.
+     */
+    public int getUserCount() {
+        return userIds.length;
+    }
+
+    /**
+     * Get the number of hash tables.
+     *
+     * @return The number of tables in the index.
+     */
+    public int getTableCount() {
+        return signatures.length;
+    }
+
+    /**
+     * Find the candidate neighbors of a vector: the indexed users who share a bucket with it
+     * in at least one table.
+     *
+     * @param vector The normalized rating vector of the query user.
+     * @return The IDs of the candidate users.
+     */
+    public LongSet getCandidates(SparseVector vector) {
+        int[] sigs = computeSignatures(vector, seed, signatures.length, hashBits);
+        LongSet users = new LongOpenHashSet();
+        for (int t = 0; t < signatures.length; t++) {
+            final int[] tsigs = signatures[t];
+            final int[] tmembers = members[t];
+            int i = Arrays.binarySearch(tsigs, sigs[t]);
+            if (i < 0) {
+                continue;
+            }
+            // the search finds any matching entry, so back up to the first
+            while (i > 0 && tsigs[i - 1] == sigs[t]) {
+                i--;
+            }
+            for (; i < tsigs.length && tsigs[i] == sigs[t]; i++) {
+                users.add(userIds[tmembers[i]]);
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Compute the signatures of a vector.
+     *
+     * @param vector The vector.
+     * @param seed   The hyperplane seed.
+     * @param tables The number of tables.
+     * @param bits   The number of bits per signature.
+     * @return The vector's signature in each table.
+     */
+    static int[] computeSignatures(SparseVector vector, long seed, int tables, int bits) {
+        double[] sums = new double[tables * bits];
+        for (VectorEntry e: vector.fast()) {
+            final double v = e.getValue();
+            final long itemHash = mix(e.getKey());
+            for (int t = 0; t < tables; t++) {
+                // one 64-bit hash gives the item's sign in each of the table's hyperplanes
+                final long signs = mix(itemHash ^ (seed + t * TABLE_STEP));
+                final int base = t * bits;
+                for (int b = 0; b < bits; b++) {
+                    if (((signs >>> b) & 1) != 0) {
+                        sums[base + b] += v;
+                    } else {
+                        sums[base + b] -= v;
+                    }
+                }
+            }
+        }
+        int[] sigs = new int[tables];
+        for (int t = 0; t < tables; t++) {
+            int sig = 0;
+            for (int b = 0; b < bits; b++) {
+                if (sums[t * bits + b] > 0) {
+                    sig |= 1 << b;
+                }
+            }
+            sigs[t] = sig;
+        }
+        return sigs;
+    }
+
+    /**
+     * Scramble the bits of a long (the finalizer of the SplitMix64 generator).
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Build an LSH index of the normalized rating vectors of all users.
+     */
+    public static class Builder implements Provider<UserLSHIndex> {
+        private final UserEventDAO userEventDAO;
+        private final UserVectorNormalizer normalizer;
+        private final int tableCount;
+        private final int hashBits;
+
+        @Inject
+        public Builder(@Transient UserEventDAO dao,
+                       @Transient UserVectorNormalizer norm,
+                       @LSHTableCount int tables,
+                       @LSHHashBits int bits) {
+            Preconditions.checkArgument(tables > 0, "table count must be positive");
+            Preconditions.checkArgument(bits > 0 && bits < 32, "hash bits must be in [1,31]");
+            userEventDAO = dao;
+            normalizer = norm;
+            tableCount = tables;
+            hashBits = bits;
+        }
+
+        @Override
+        public UserLSHIndex get() {
+            LongArrayList users = new LongArrayList();
+            // each entry packs a signature (high word) with a user index (low word)
+            LongArrayList[] entries = new LongArrayList[tableCount];
+            for (int t = 0; t < tableCount; t++) {
+                entries[t] = new LongArrayList();
+            }
+
+            Cursor<UserHistory<Event>> histories = userEventDAO.streamEventsByUser();
+            try {
+                for (UserHistory<Event> history: histories) {
+                    SparseVector vec = RatingVectorUserHistorySummarizer.makeRatingVector(history);
+                    if (vec.isEmpty()) {
+                        continue;
+                    }
+                    SparseVector normed = normalizer.normalize(history.getUserId(), vec, null);
+                    int[] sigs = computeSignatures(normed, DEFAULT_SEED, tableCount, hashBits);
+                    final long idx = users.size();
+                    users.add(history.getUserId());
+                    for (int t = 0; t < tableCount; t++) {
+                        entries[t].add(((long) sigs[t] << 32) | idx);
+                    }
+                }
+            } finally {
+                histories.close();
+            }
+
+            int[][] sigs = new int[tableCount][];
+            int[][] members = new int[tableCount][];
+            for (int t = 0; t < tableCount; t++) {
+                long[] packed = entries[t].toLongArray();
+                entries[t] = null;
+                Arrays.sort(packed);
+                sigs[t] = new int[packed.length];
+                members[t] = new int[packed.length];
+                for (int i = 0; i < packed.length; i++) {
+                    sigs[t][i] = (int) (packed[i] >>> 32);
+                    members[t][i] = (int) packed[i];
+                }
+            }
+            logger.info("indexed {} users in {} tables of {} bits",
+                        users.size(), tableCount, hashBits);
+            return new UserLSHIndex(DEFAULT_SEED, hashBits, users.toLongArray(), sigs, members);
+        }
+    }
+}
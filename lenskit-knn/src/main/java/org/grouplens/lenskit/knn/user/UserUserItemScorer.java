@@ -64,7 +64,8 @@ public class UserUserItemScorer extends AbstractItemScorer {
 
     /**
      * Normalize all neighbor rating vectors, taking care to normalize each one
-     * only once.
+     * only once.  Neighbors that already carry a normalized vector are not normalized
+     * again.
      *
      * FIXME: MDE does not like this method.
      *
@@ -75,7 +76,11 @@ public class UserUserItemScorer extends AbstractItemScorer {
                 new Long2ObjectOpenHashMap<SparseVector>();
         for (Neighbor n : Iterables.concat(neighborhoods)) {
             if (!normedVectors.containsKey(n.user)) {
-                normedVectors.put(n.user, normalizer.normalize(n.user, n.vector, null));
+                if (n.normalizedVector != null) {
+                    normedVectors.put(n.user, n.normalizedVector);
+                } else {
+                    normedVectors.put(n.user, normalizer.normalize(n.user, n.vector, null));
+                }
             }
         }
         return normedVectors;
@@ -0,0 +1,342 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.user;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.grouplens.grapht.annotation.DefaultProvider;
+import org.grouplens.lenskit.core.Shareable;
+import org.grouplens.lenskit.core.Transient;
+import org.grouplens.lenskit.cursors.Cursor;
+import org.grouplens.lenskit.data.dao.UserEventDAO;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.history.RatingVectorUserHistorySummarizer;
+import org.grouplens.lenskit.data.history.UserHistory;
+import org.grouplens.lenskit.transform.normalize.UserVectorNormalizer;
+import org.grouplens.lenskit.vectors.ImmutableSparseVector;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.VectorEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Snapshot of every user's rating vector, normalized at build time.  The ratings are
+ * stored in compressed sparse row form: the items, raw ratings and normalized ratings of
+ * all users are packed into parallel arrays, with each user's entries sorted by item.
+ * The snapshot also stores the norm of each normalized vector, and for each item the
+ * users who rated it, so {@link SnapshotNeighborhoodFinder} can find neighbors without
+ * consulting the DAO or renormalizing vectors.  It is immutable, and safe to use from
+ * many threads at once.
+ *
+ * @since 2.1
+ */
+@DefaultProvider(UserVectorSnapshot.Builder.class)
+@Shareable
+@ThreadSafe
+public class UserVectorSnapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(UserVectorSnapshot.class);
+
+    private final long[] userIds;
+    private final Long2IntMap userIndex;
+    /**
+     * The start of each user's entries, with an extra entry for the end.
+     */
+    private final int[] userOffsets;
+    private final long[] itemIds;
+    private final double[] ratings;
+    private final double[] normalized;
+    private final double[] norms;
+
+    private final Long2IntMap itemIndex;
+    /**
+     * The start of each item's raters in {@link #itemUsers}, with an extra entry for the end.
+     */
+    private final int[] itemOffsets;
+    /**
+     * The indexes of the users who rated each item, in increasing order.
+     */
+    private final int[] itemUsers;
+
+    /**
+     * Construct a new snapshot, indexing the users who rated each item.
+     *
+     * @param users   The user IDs.
+     * @param offsets The start of each user's entries, with an extra entry for the end.
+     * @param items   The item of each entry, sorted within each user.
+     * @param rs      The raw rating of each entry.
+     * @param nrs     The normalized rating of each entry.
+     * @param ns      The norm of each user's normalized vector.
+     */
+    UserVectorSnapshot(long[] users, int[] offsets, long[] items,
+                       double[] rs, double[] nrs, double[] ns) {
+        assert offsets.length == users.length + 1;
+        assert offsets[users.length] == items.length;
+        userIds = users;
+        userOffsets = offsets;
+        itemIds = items;
+        ratings = rs;
+        normalized = nrs;
+        norms = ns;
+
+        userIndex = new Long2IntOpenHashMap(users.length);
+        userIndex.defaultReturnValue(-1);
+        for (int u = 0; u < users.length; u++) {
+            userIndex.put(users[u], u);
+        }
+
+        // number the items and count their raters, then make the counts offsets
+        itemIndex = new Long2IntOpenHashMap();
+        itemIndex.defaultReturnValue(-1);
+        IntArrayList counts = new IntArrayList();
+        for (long item: items) {
+            int j = itemIndex.get(item);
+            if (j < 0) {
+                j = counts.size();
+                itemIndex.put(item, j);
+                counts.add(0);
+            }
+            counts.set(j, counts.getInt(j) + 1);
+        }
+        final int nitems = counts.size();
+        itemOffsets = new int[nitems + 1];
+        for (int j = 0; j < nitems; j++) {
+            itemOffsets[j + 1] = itemOffsets[j] + counts.getInt(j);
+        }
+
+        // scanning users in order leaves each item's raters sorted
+        itemUsers = new int[items.length];
+        int[] next = Arrays.copyOf(itemOffsets, nitems);
+        for (int u = 0; u < users.length; u++) {
+            for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                int j = itemIndex.get(items[k]);
+                itemUsers[next[j]] = u;
+                next[j] += 1;
+            }
+        }
+    }
+
+    /**
+     * Get the number of users in the snapshot.
+     *
+     * @return The number of users.
+     */
+    public int getUserCount() {
+        return userIds.length;
+    }
+
+    /**
+     * Get a user's rating vector.
+     *
+     * @param user The user ID.
+     * @return The user's (unnormalized) rating vector, or {@code null} if the user is not in
+     *         the snapshot.
+     */
+    @Nullable
+    public ImmutableSparseVector getRatingVector(long user) {
+        int u = userIndex.get(user);
+        return u < 0 ? null : ratingVector(u);
+    }
+
+    /**
+     * Get a user's normalized rating vector.
+     *
+     * @param user The user ID.
+     * @return The user's normalized rating vector, or {@code null} if the user is not in
+     *         the snapshot.
+     */
+    @Nullable
+    public ImmutableSparseVector getNormalizedVector(long user) {
+        int u = userIndex.get(user);
+        return u < 0 ? null : normalizedVector(u);
+    }
+
+    /**
+     * Get the index of a user.
+     *
+     * @param user The user ID.
+     * @return The user's index, or -1 if the user is not in the snapshot.
+     */
+    int getUserIndex(long user) {
+        return userIndex.get(user);
+    }
+
+    long getUserId(int u) {
+        return userIds[u];
+    }
+
+    double getNorm(int u) {
+        return norms[u];
+    }
+
+    ImmutableSparseVector ratingVector(int u) {
+        return sliceVector(u, ratings);
+    }
+
+    ImmutableSparseVector normalizedVector(int u) {
+        return sliceVector(u, normalized);
+    }
+
+    private ImmutableSparseVector sliceVector(int u, double[] values) {
+        final int start = userOffsets[u];
+        final int end = userOffsets[u + 1];
+        return MutableSparseVector.wrap(Arrays.copyOfRange(itemIds, start, end),
+                                        Arrays.copyOfRange(values, start, end))
+                                  .freeze();
+    }
+
+    /**
+     * Compute the dot product of a user's normalized vector with another vector, without
+     * creating a vector for the user.
+     *
+     * @param u    The user index.
+     * @param keys The other vector's keys, in increasing order.
+     * @param vals The other vector's values.
+     * @param n    The length of the other vector.
+     * @return The dot product.
+     */
+    double dot(int u, long[] keys, double[] vals, int n) {
+        int i = userOffsets[u];
+        final int end = userOffsets[u + 1];
+        int j = 0;
+        double dot = 0;
+        while (i < end && j < n) {
+            final long k1 = itemIds[i];
+            final long k2 = keys[j];
+            if (k1 < k2) {
+                i++;
+            } else if (k2 < k1) {
+                j++;
+            } else {
+                dot += normalized[i] * vals[j];
+                i++;
+                j++;
+            }
+        }
+        return dot;
+    }
+
+    /**
+     * Get the index of an item.
+     *
+     * @param item The item ID.
+     * @return The item's index, or -1 if no user in the snapshot rated it.
+     */
+    int getItemIndex(long item) {
+        return itemIndex.get(item);
+    }
+
+    /**
+     * Get the start of an item's raters.
+     *
+     * @param j The item index.
+     * @return The position of the first user who rated the item.
+     * @see #getRater(int)
+     */
+    int getRaterStart(int j) {
+        return itemOffsets[j];
+    }
+
+    /**
+     * Get the end of an item's raters.
+     *
+     * @param j The item index.
+     * @return The position after the last user who rated the item.
+     */
+    int getRaterEnd(int j) {
+        return itemOffsets[j + 1];
+    }
+
+    /**
+     * Get a rater.
+     *
+     * @param pos The position, between an item's {@linkplain #getRaterStart(int) start} and
+     *            {@linkplain #getRaterEnd(int) end}.
+     * @return The user index of the rater.
+     */
+    int getRater(int pos) {
+        return itemUsers[pos];
+    }
+
+    /**
+     * Build a snapshot of the normalized rating vectors of all users.
+     */
+    public static class Builder implements Provider<UserVectorSnapshot> {
+        private final UserEventDAO userEventDAO;
+        private final UserVectorNormalizer normalizer;
+
+        @Inject
+        public Builder(@Transient UserEventDAO dao,
+                       @Transient UserVectorNormalizer norm) {
+            userEventDAO = dao;
+            normalizer = norm;
+        }
+
+        @Override
+        public UserVectorSnapshot get() {
+            LongArrayList users = new LongArrayList();
+            IntArrayList offsets = new IntArrayList();
+            LongArrayList items = new LongArrayList();
+            DoubleArrayList rs = new DoubleArrayList();
+            DoubleArrayList nrs = new DoubleArrayList();
+            DoubleArrayList ns = new DoubleArrayList();
+            offsets.add(0);
+
+            Cursor<UserHistory<Event>> histories = userEventDAO.streamEventsByUser();
+            try {
+                for (UserHistory<Event> history: histories) {
+                    SparseVector vec = RatingVectorUserHistorySummarizer.makeRatingVector(history);
+                    if (vec.isEmpty()) {
+                        continue;
+                    }
+                    ImmutableSparseVector normed =
+                            normalizer.normalize(history.getUserId(), vec, null).freeze();
+                    for (VectorEntry e: normed.fast()) {
+                        items.add(e.getKey());
+                        rs.add(vec.get(e.getKey()));
+                        nrs.add(e.getValue());
+                    }
+                    users.add(history.getUserId());
+                    offsets.add(items.size());
+                    ns.add(normed.norm());
+                }
+            } finally {
+                histories.close();
+            }
+
+            logger.info("built snapshot of {} ratings from {} users", items.size(), users.size());
+            return new UserVectorSnapshot(users.toLongArray(), offsets.toIntArray(),
+                                          items.toLongArray(), rs.toDoubleArray(),
+                                          nrs.toDoubleArray(), ns.toDoubleArray());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.knn.item.model.ItemItemModel;
+import org.grouplens.lenskit.knn.item.model.SimilarityMatrixModel;
+import org.grouplens.lenskit.scored.ScoredId;
+import org.grouplens.lenskit.scored.ScoredIds;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.VectorEntry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class TestIndexedItemScoreAlgorithm {
+    ItemItemModel model;
+    SparseVector userData;
+
+    @Before
+    public void createModel() {
+        Long2ObjectMap<List<ScoredId>> matrix = new Long2ObjectOpenHashMap<List<ScoredId>>();
+        matrix.put(1, ScoredIds.newListBuilder()
+                               .add(3, 0.9)
+                               .add(2, 0.5)
+                               .add(5, -0.2)
+                               .add(4, -0.3)
+                               .build());
+        matrix.put(2, ScoredIds.newListBuilder()
+                               .add(1, 0.5)
+                               .add(6, 0.1)
+                               .build());
+        matrix.put(6, ScoredIds.newListBuilder()
+                               .add(7, 0.8)
+                               .build());
+        model = new SimilarityMatrixModel(LongUtils.packedSet(1, 2, 3, 4, 5, 6, 7), matrix);
+        userData = MutableSparseVector.wrap(new long[]{2, 3, 4, 6},
+                                            new double[]{0.5, -1.0, 1.5, 2.0}).freeze();
+    }
+
+    private void assertSameScores(int nnbrs, NeighborhoodScorer scorer) {
+        MutableSparseVector expected = MutableSparseVector.create(1, 2, 5, 6);
+        new DefaultItemScoreAlgorithm(nnbrs).scoreItems(model, userData, expected, scorer);
+        MutableSparseVector actual = MutableSparseVector.create(1, 2, 5, 6);
+        new IndexedItemScoreAlgorithm(nnbrs).scoreItems(model, userData, actual, scorer);
+
+        assertThat(actual.keySet(), equalTo(expected.keySet()));
+        for (VectorEntry e: expected.fast()) {
+            assertThat(actual.get(e.getKey()), closeTo(e.getValue(), 1.0e-6));
+        }
+        SparseVector expectedSizes = expected.getChannelVector(ItemItemScorer.NEIGHBORHOOD_SIZE_SYMBOL);
+        SparseVector actualSizes = actual.getChannelVector(ItemItemScorer.NEIGHBORHOOD_SIZE_SYMBOL);
+        assertThat(actualSizes, equalTo(expectedSizes));
+    }
+
+    @Test
+    public void testWeightedAverage() {
+        assertSameScores(0, new WeightedAverageNeighborhoodScorer());
+    }
+
+    @Test
+    public void testWeightedAverageTruncated() {
+        assertSameScores(2, new WeightedAverageNeighborhoodScorer());
+    }
+
+    @Test
+    public void testSimilaritySumTruncated() {
+        assertSameScores(2, new SimilaritySumNeighborhoodScorer());
+    }
+}
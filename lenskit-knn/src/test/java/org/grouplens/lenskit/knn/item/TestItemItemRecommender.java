@@ -39,6 +39,8 @@ import org.grouplens.lenskit.transform.normalize.DefaultUserVectorNormalizer;
 import org.grouplens.lenskit.transform.normalize.IdentityVectorNormalizer;
 import org.grouplens.lenskit.transform.normalize.UserVectorNormalizer;
 import org.grouplens.lenskit.transform.normalize.VectorNormalizer;
+import org.grouplens.lenskit.util.ScoredItemAccumulator;
+import org.grouplens.lenskit.util.UnlimitedScoredItemAccumulator;
 import org.grouplens.lenskit.vectors.SparseVector;
 import org.junit.Before;
 import org.junit.Test;
@@ -105,6 +107,26 @@ public class TestItemItemRecommender {
         assertThat(scores.containsKey(8), equalTo(false));
     }
 
+    /**
+     * Check that streaming scores into an accumulator produces the same scores as
+     * scoring into a vector.
+     */
+    @Test
+    public void testItemScorerStreaming() {
+        long[] items = {6, 7, 8, 9};
+        ItemItemScorer scorer = session.get(ItemItemScorer.class);
+        for (long user = 1; user <= 6; user++) {
+            SparseVector scores = scorer.score(user, LongArrayList.wrap(items));
+            ScoredItemAccumulator accum = new UnlimitedScoredItemAccumulator();
+            scorer.score(user, LongArrayList.wrap(items), accum);
+            List<ScoredId> streamed = accum.finish();
+            assertThat(streamed, hasSize(scores.size()));
+            for (ScoredId id: streamed) {
+                assertThat(id.getScore(), closeTo(scores.get(id.getId()), 1.0e-6));
+            }
+        }
+    }
+
     /**
      * Check that we score items but do not provide scores for items
      * the user has previously rated.  User 5 has rated only item 8
@@ -24,12 +24,16 @@ import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.grouplens.lenskit.collections.LongUtils;
 import org.grouplens.lenskit.knn.item.model.ItemItemBuildContext.ItemVecPair;
 import org.grouplens.lenskit.vectors.MutableSparseVector;
 import org.grouplens.lenskit.vectors.SparseVector;
 import org.junit.Test;
 
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
 
 public class TestItemItemBuildContext {
 
@@ -127,6 +131,39 @@ public class TestItemItemBuildContext {
         testRatingIntegrity(ratingMap, context);
     }
 
+    /**
+     * Test enumerating the items rated by sets of users.
+     */
+    @Test
+    public void testCandidateSet() {
+        LongSortedSet items = LongUtils.packedSet(1, 2, 3, 4, 5);
+        Long2ObjectOpenHashMap<SparseVector> ratingMap = new Long2ObjectOpenHashMap<SparseVector>();
+        for (long item: items) {
+            ratingMap.put(item, MutableSparseVector.create());
+        }
+        Long2ObjectOpenHashMap<LongSortedSet> userItems = new Long2ObjectOpenHashMap<LongSortedSet>();
+        userItems.put(101, LongUtils.packedSet(4, 2));
+        userItems.put(102, LongUtils.packedSet(1, 4));
+        userItems.put(103, LongUtils.packedSet(5));
+        ItemItemBuildContext context = new ItemItemBuildContext(items, ratingMap, userItems);
+
+        ItemItemBuildContext.CandidateSet cands = context.newCandidateSet();
+        assertThat(cands.collect(LongUtils.packedSet(101, 102)), equalTo(3));
+        assertThat(cands.getItemId(0), equalTo(1L));
+        assertThat(cands.getItemId(1), equalTo(2L));
+        assertThat(cands.getItemId(2), equalTo(4L));
+        assertThat(cands.upperBound(1), equalTo(1));
+        assertThat(cands.upperBound(3), equalTo(2));
+        assertThat(cands.upperBound(4), equalTo(3));
+
+        // reusing the set forgets the previous users' items; unknown users are ignored
+        assertThat(cands.collect(LongUtils.packedSet(103, 200)), equalTo(1));
+        assertThat(cands.getItemId(0), equalTo(5L));
+
+        assertThat(context.getUserItems(LongUtils.packedSet(101, 103)),
+                   contains(2L, 4L, 5L));
+    }
+
     private void testRatingIntegrity(Long2ObjectMap<SparseVector> trueRatings, ItemItemBuildContext context) {
         for (long itemId : context.getItems()) {
             assertEquals(trueRatings.get(itemId), context.itemVector(itemId));
@@ -0,0 +1,164 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item.model;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.grouplens.lenskit.data.dao.EventCollectionDAO;
+import org.grouplens.lenskit.data.dao.PrefetchingUserEventDAO;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.Ratings;
+import org.grouplens.lenskit.data.history.RatingVectorUserHistorySummarizer;
+import org.grouplens.lenskit.transform.normalize.DefaultUserVectorNormalizer;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class TestItemItemBuildContextFactory {
+    private List<Rating> ratings;
+    private Long2ObjectMap<MutableSparseVector> expected;
+
+    @Before
+    public void createRatings() {
+        ratings = new ArrayList<Rating>();
+        Random rng = new Random(42);
+        // enough users for several normalization batches
+        for (int u = 1; u <= 2500; u++) {
+            for (int i = 1; i <= 30; i++) {
+                if (rng.nextDouble() < 0.2) {
+                    ratings.add(Ratings.make(u, i, rng.nextInt(5) + 1));
+                }
+            }
+        }
+        Collections.shuffle(ratings, rng);
+
+        Long2ObjectMap<LongOpenHashSet> itemUsers = new Long2ObjectOpenHashMap<LongOpenHashSet>();
+        for (Rating r: ratings) {
+            LongOpenHashSet users = itemUsers.get(r.getItemId());
+            if (users == null) {
+                users = new LongOpenHashSet();
+                itemUsers.put(r.getItemId(), users);
+            }
+            users.add(r.getUserId());
+        }
+        expected = new Long2ObjectOpenHashMap<MutableSparseVector>();
+        for (Long2ObjectMap.Entry<LongOpenHashSet> e: itemUsers.long2ObjectEntrySet()) {
+            expected.put(e.getLongKey(), MutableSparseVector.create(e.getValue()));
+        }
+        for (Rating r: ratings) {
+            expected.get(r.getItemId()).set(r.getUserId(), r.getPreference().getValue());
+        }
+    }
+
+    private ItemItemBuildContext buildContext(int nthreads) {
+        ItemItemBuildContextFactory factory = new ItemItemBuildContextFactory(
+                new PrefetchingUserEventDAO(new EventCollectionDAO(ratings)),
+                new DefaultUserVectorNormalizer(),
+                new RatingVectorUserHistorySummarizer(),
+                nthreads);
+        return factory.buildContext();
+    }
+
+    private void checkContext(ItemItemBuildContext context) {
+        assertThat(context.getItems(), hasSize(expected.size()));
+        for (long item: context.getItems()) {
+            SparseVector vec = context.itemVector(item);
+            assertThat(vec, equalTo((SparseVector) expected.get(item)));
+        }
+    }
+
+    @Test
+    public void testSequentialBuild() {
+        checkContext(buildContext(1));
+    }
+
+    @Test
+    public void testParallelBuild() {
+        checkContext(buildContext(4));
+    }
+
+    @Test
+    public void testUserItems() {
+        ItemItemBuildContext context = buildContext(3);
+        LongOpenHashSet items = new LongOpenHashSet();
+        LongOpenHashSet users = new LongOpenHashSet();
+        for (Rating r: ratings) {
+            if (r.getUserId() == 7 || r.getUserId() == 2000) {
+                items.add(r.getItemId());
+            }
+        }
+        users.add(7);
+        users.add(2000);
+        assertThat(context.getUserItems(users), equalTo((Object) items));
+    }
+
+    @Test
+    public void testEmpty() {
+        ratings = new ArrayList<Rating>();
+        ItemItemBuildContext context = buildContext(2);
+        assertThat(context.getItems(), hasSize(0));
+    }
+
+    @Test
+    public void testUserChanges() {
+        List<Event> delta = new ArrayList<Event>();
+        delta.add(Ratings.make(7, 31, 4.0));
+        delta.add(Ratings.make(7, 32, 2.0));
+        delta.add(Ratings.make(2501, 5, 3.0));
+        List<Rating> all = new ArrayList<Rating>(ratings);
+        for (Event e: delta) {
+            all.add((Rating) e);
+        }
+        ItemItemBuildContextFactory factory = new ItemItemBuildContextFactory(
+                new PrefetchingUserEventDAO(new EventCollectionDAO(all)),
+                new DefaultUserVectorNormalizer(),
+                new RatingVectorUserHistorySummarizer());
+
+        List<UserVectorChange> changes = factory.computeUserChanges(delta);
+        assertThat(changes, hasSize(2));
+        LongOpenHashSet changed = new LongOpenHashSet();
+        for (UserVectorChange change: changes) {
+            long user = change.getUserId();
+            List<Rating> old = new ArrayList<Rating>();
+            for (Rating r: ratings) {
+                if (r.getUserId() == user) {
+                    old.add(r);
+                }
+            }
+            assertThat(change.getOldVector(),
+                       equalTo((SparseVector) Ratings.userRatingVector(old)));
+            assertThat(change.getNewVector().size(), equalTo(old.size() + (user == 7 ? 2 : 1)));
+            change.addChangedItems(changed);
+        }
+        assertThat(changed, containsInAnyOrder(31L, 32L, 5L));
+    }
+}
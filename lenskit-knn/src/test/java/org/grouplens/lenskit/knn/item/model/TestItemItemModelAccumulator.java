@@ -92,4 +92,52 @@ public class TestItemItemModelAccumulator {
             assertThat(s, closeTo(Math.pow(Math.E, -4) * Math.pow(Math.PI, -j), 1.0e-6));
         }
     }
+
+    @Test
+    public void testMergeTruncate() {
+        ItemItemModelBuilder.Accumulator accum = simpleAccumulator();
+        ItemItemModelBuilder.Accumulator part1 = new ItemItemModelBuilder.Accumulator(universe, new RealThreshold(0.0), 5);
+        ItemItemModelBuilder.Accumulator part2 = new ItemItemModelBuilder.Accumulator(universe, new RealThreshold(0.0), 5);
+        for (long i = 1; i <= 10; i++) {
+            for (long j = 1; j <= 10; j++) {
+                ItemItemModelBuilder.Accumulator part = j % 2 == 0 ? part1 : part2;
+                part.put(i, j, Math.pow(Math.E, -i) * Math.pow(Math.PI, -j));
+            }
+        }
+        accum.merge(part1);
+        accum.merge(part2);
+        ItemItemModel model = accum.build();
+        List<ScoredId> nbrs = model.getNeighbors(4);
+        assertThat(nbrs.size(), equalTo(5));
+        long j = 1;
+        for (ScoredId id: nbrs) {
+            assertThat(id.getId(), equalTo(j));
+            assertThat(id.getScore(), closeTo(Math.pow(Math.E, -4) * Math.pow(Math.PI, -j), 1.0e-6));
+            j += 1;
+        }
+    }
+
+    @Test
+    public void testPackedTruncate() {
+        ItemItemModelBuilder.Accumulator accum = simpleAccumulator();
+        for (long i = 1; i <= 10; i++) {
+            for (long j = 1; j <= 10; j += (i % 3) + 1) {
+                accum.put(i, j, Math.pow(Math.E, -i) * Math.pow(Math.PI, -j));
+            }
+        }
+        accum.put(7, 3, Math.E);
+        PackedSimilarityMatrixModel model = accum.buildPacked();
+        assertThat(model.getItemUniverse(), equalTo(universe));
+        List<ScoredId> nbrs = model.getNeighbors(4);
+        assertThat(nbrs.size(), equalTo(5));
+        for (ScoredId id: nbrs) {
+            long j = id.getId();
+            double s = id.getScore();
+            assertThat(s, closeTo(Math.pow(Math.E, -4) * Math.pow(Math.PI, -j), 1.0e-6));
+        }
+        nbrs = model.getNeighbors(7);
+        assertThat(nbrs.get(0).getId(), equalTo(3L));
+        assertThat(nbrs.get(0).getScore(), closeTo(Math.E, 1.0e-6));
+        assertThat(model.getNeighbors(42), hasSize(0));
+    }
 }
@@ -0,0 +1,158 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item.model;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import org.grouplens.lenskit.data.dao.EventCollectionDAO;
+import org.grouplens.lenskit.data.dao.PrefetchingUserEventDAO;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.Ratings;
+import org.grouplens.lenskit.data.history.RatingVectorUserHistorySummarizer;
+import org.grouplens.lenskit.knn.item.ItemVectorSimilarity;
+import org.grouplens.lenskit.scored.ScoredId;
+import org.grouplens.lenskit.transform.normalize.DefaultUserVectorNormalizer;
+import org.grouplens.lenskit.transform.normalize.MeanCenteringVectorNormalizer;
+import org.grouplens.lenskit.transform.threshold.NoThreshold;
+import org.grouplens.lenskit.transform.threshold.RealThreshold;
+import org.grouplens.lenskit.transform.threshold.Threshold;
+import org.grouplens.lenskit.vectors.similarity.CosineVectorSimilarity;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class TestItemItemModelBuilder {
+    private List<Rating> ratings;
+
+    @Before
+    public void createRatings() {
+        ratings = new ArrayList<Rating>();
+        Random rng = new Random(42);
+        for (int u = 1; u <= 300; u++) {
+            for (int i = 1; i <= 80; i++) {
+                // skew toward low-numbered items, so vectors have very different sizes
+                if (rng.nextDouble() < 0.6 / Math.sqrt(i)) {
+                    ratings.add(Ratings.make(u, i, 1 + rng.nextDouble() * 4));
+                }
+            }
+        }
+    }
+
+    private ItemItemModelBuilder getBuilder(List<Rating> rs, Threshold thresh,
+                                            int nthreads, boolean prune) {
+        ItemItemBuildContextFactory factory = new ItemItemBuildContextFactory(
+                new PrefetchingUserEventDAO(new EventCollectionDAO(rs)),
+                new DefaultUserVectorNormalizer(new MeanCenteringVectorNormalizer()),
+                new RatingVectorUserHistorySummarizer());
+        return new ItemItemModelBuilder(
+                new ItemVectorSimilarity(new CosineVectorSimilarity(1.0)),
+                factory, thresh, 5, nthreads, prune);
+    }
+
+    private SimilarityMatrixModel buildModel(Threshold thresh, int nthreads, boolean prune) {
+        return getBuilder(ratings, thresh, nthreads, prune).get();
+    }
+
+    private static Long2DoubleMap rowMap(List<ScoredId> row) {
+        Long2DoubleMap map = new Long2DoubleOpenHashMap();
+        for (ScoredId id: row) {
+            map.put(id.getId(), id.getScore());
+        }
+        return map;
+    }
+
+    private void checkSameModel(SimilarityMatrixModel expected, SimilarityMatrixModel actual) {
+        assertThat(actual.getItemUniverse(), equalTo(expected.getItemUniverse()));
+        for (long item: expected.getItemUniverse()) {
+            List<ScoredId> row = actual.getNeighbors(item);
+            assertThat(row.size(), lessThanOrEqualTo(5));
+            Long2DoubleMap exp = rowMap(expected.getNeighbors(item));
+            Long2DoubleMap act = rowMap(row);
+            assertThat(act.keySet(), equalTo(exp.keySet()));
+            for (Long2DoubleMap.Entry e: exp.long2DoubleEntrySet()) {
+                assertThat(act.get(e.getLongKey()), closeTo(e.getDoubleValue(), 1.0e-10));
+            }
+        }
+    }
+
+    @Test
+    public void testParallelBuild() {
+        Threshold thresh = new NoThreshold();
+        checkSameModel(buildModel(thresh, 1, false), buildModel(thresh, 4, false));
+    }
+
+    @Test
+    public void testPrunedSearch() {
+        Threshold thresh = new NoThreshold();
+        checkSameModel(buildModel(thresh, 1, false), buildModel(thresh, 1, true));
+    }
+
+    @Test
+    public void testPrunedSearchThreshold() {
+        Threshold thresh = new RealThreshold(0.05);
+        checkSameModel(buildModel(thresh, 1, false), buildModel(thresh, 1, true));
+    }
+
+    @Test
+    public void testParallelPrunedSearch() {
+        Threshold thresh = new RealThreshold(0.0);
+        checkSameModel(buildModel(thresh, 1, false), buildModel(thresh, 3, true));
+    }
+
+    @Test
+    public void testUpdate() {
+        Threshold thresh = new RealThreshold(0.0);
+        SimilarityMatrixModel model = getBuilder(ratings, thresh, 1, false).get();
+
+        List<Event> delta = new ArrayList<Event>();
+        // a new rating, a re-rating, and a new user
+        delta.add(Ratings.make(40, 75, 4.5));
+        delta.add(Ratings.make(40, 1, 1.0, 1000));
+        delta.add(Ratings.make(301, 3, 5.0));
+        delta.add(Ratings.make(301, 60, 2.0));
+        List<Rating> all = new ArrayList<Rating>(ratings);
+        for (Event e: delta) {
+            all.add((Rating) e);
+        }
+
+        ItemItemModelBuilder builder = getBuilder(all, thresh, 1, false);
+        ItemItemModel updated = builder.update(model, delta);
+        assertThat(updated, instanceOf(SimilarityMatrixModel.class));
+        checkSameModel(builder.get(), (SimilarityMatrixModel) updated);
+    }
+
+    @Test
+    public void testUpdateNoChange() {
+        Threshold thresh = new NoThreshold();
+        SimilarityMatrixModel model = buildModel(thresh, 1, false);
+        List<Event> delta = Collections.emptyList();
+        ItemItemModel updated = getBuilder(ratings, thresh, 1, false).update(model, delta);
+        assertThat(updated, sameInstance((ItemItemModel) model));
+    }
+}
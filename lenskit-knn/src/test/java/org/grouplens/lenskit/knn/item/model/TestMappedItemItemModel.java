@@ -0,0 +1,151 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item.model;
+
+import com.google.common.io.Files;
+import it.unimi.dsi.fastutil.longs.LongAVLTreeSet;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.grouplens.lenskit.scored.ScoredId;
+import org.grouplens.lenskit.transform.threshold.RealThreshold;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class TestMappedItemItemModel {
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    LongSortedSet universe;
+    ItemItemModel model;
+
+    @Before
+    public void createModel() {
+        universe = new LongAVLTreeSet();
+        for (long i = 1; i <= 10; i++) {
+            universe.add(i * 10);
+        }
+        ItemItemModelBuilder.Accumulator accum =
+                new ItemItemModelBuilder.Accumulator(universe, new RealThreshold(0.0), 5);
+        for (long i = 1; i <= 10; i++) {
+            for (long j = 1; j <= 10; j += (i % 3) + 1) {
+                accum.put(i * 10, j * 10, Math.pow(Math.E, -i) * Math.pow(Math.PI, -j));
+            }
+        }
+        model = accum.build();
+    }
+
+    @Test
+    public void testWriteAndOpen() throws IOException {
+        File file = tmpDir.newFile("model.bin");
+        MappedItemItemModel.write(model, file);
+        MappedItemItemModel mapped = MappedItemItemModel.open(file);
+
+        assertThat(mapped.getItemUniverse(), equalTo(universe));
+        for (long item: universe) {
+            List<ScoredId> expected = model.getNeighbors(item);
+            List<ScoredId> actual = mapped.getNeighbors(item);
+            assertThat(actual.size(), equalTo(expected.size()));
+            for (int i = 0; i < expected.size(); i++) {
+                assertThat(actual.get(i).getId(), equalTo(expected.get(i).getId()));
+                assertThat(actual.get(i).getScore(), closeTo(expected.get(i).getScore(), 1.0e-6));
+            }
+        }
+        assertThat(mapped.getNeighbors(5), hasSize(0));
+    }
+
+    /**
+     * Overwrite an int in a model file.
+     */
+    private static void corrupt(File file, long pos, int value) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(pos);
+            raf.writeInt(value);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Write the model with a corrupt offset for the 4th row (item 40).
+     */
+    private File writeBadOffset() throws IOException {
+        File file = tmpDir.newFile("model.bin");
+        MappedItemItemModel.write(model, file);
+        // the offset of the 4th row, after the header and the item IDs
+        long pos = MappedItemItemModel.HEADER_SIZE + 8L * universe.size() + 4L * 3;
+        corrupt(file, pos, -5);
+        return file;
+    }
+
+    /**
+     * Write the model with a corrupt first neighbor of the first row (item 10).
+     */
+    private File writeBadNeighbor() throws IOException {
+        File file = tmpDir.newFile("model.bin");
+        MappedItemItemModel.write(model, file);
+        // the first neighbor index, after the header, item IDs, and offsets
+        long pos = MappedItemItemModel.HEADER_SIZE + 8L * universe.size()
+                   + 4L * (universe.size() + 1);
+        corrupt(file, pos, universe.size());
+        return file;
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectBadOffset() throws IOException {
+        MappedItemItemModel.open(writeBadOffset(), true);
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectBadNeighbor() throws IOException {
+        MappedItemItemModel.open(writeBadNeighbor(), true);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLazyBadOffset() throws IOException {
+        MappedItemItemModel mapped = MappedItemItemModel.open(writeBadOffset());
+        // other rows are still usable
+        assertThat(mapped.getNeighbors(100), hasSize(model.getNeighbors(100).size()));
+        mapped.getNeighbors(40);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLazyBadNeighbor() throws IOException {
+        MappedItemItemModel mapped = MappedItemItemModel.open(writeBadNeighbor());
+        mapped.getNeighbors(10).get(0).getId();
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectBadFile() throws IOException {
+        File file = tmpDir.newFile("garbage.bin");
+        Files.write("not a model file".getBytes(), file);
+        MappedItemItemModel.open(file);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item.model;
+
+import it.unimi.dsi.fastutil.longs.LongAVLTreeSet;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import it.unimi.dsi.fastutil.longs.LongSortedSets;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.scored.ScoredId;
+import org.grouplens.lenskit.transform.threshold.RealThreshold;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class TestReverseNeighborhoodIndex {
+    LongSortedSet universe;
+    ItemItemModel model;
+    ReverseNeighborhoodIndex index;
+
+    @Before
+    public void createModel() {
+        universe = new LongAVLTreeSet();
+        for (long i = 1; i <= 10; i++) {
+            universe.add(i * 10);
+        }
+        ItemItemModelBuilder.Accumulator accum =
+                new ItemItemModelBuilder.Accumulator(universe, new RealThreshold(0.0), 3);
+        for (long i = 1; i <= 10; i++) {
+            for (long j = 1; j <= 10; j += (i % 3) + 1) {
+                if (i != j) {
+                    accum.put(i * 10, j * 10, Math.pow(Math.E, -i) * Math.pow(Math.PI, -j));
+                }
+            }
+        }
+        model = accum.build();
+        index = ReverseNeighborhoodIndex.create(model);
+    }
+
+    private LongSortedSet bruteForceCandidates(LongSortedSet items) {
+        LongSortedSet result = new LongAVLTreeSet();
+        for (long item: universe) {
+            for (ScoredId nbr: model.getNeighbors(item)) {
+                if (items.contains(nbr.getId())) {
+                    result.add(item);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testNoItems() {
+        assertThat(index.getCandidates(LongSortedSets.EMPTY_SET), hasSize(0));
+    }
+
+    @Test
+    public void testUnknownItem() {
+        assertThat(index.getCandidates(LongUtils.packedSet(5, 15)), hasSize(0));
+    }
+
+    @Test
+    public void testSingleItems() {
+        for (long item: universe) {
+            LongSortedSet items = LongUtils.packedSet(item);
+            assertThat(index.getCandidates(items),
+                       equalTo(bruteForceCandidates(items)));
+        }
+    }
+
+    @Test
+    public void testMultipleItems() {
+        LongSortedSet items = LongUtils.packedSet(10, 30, 35, 70, 100);
+        LongSortedSet candidates = index.getCandidates(items);
+        assertThat(candidates, equalTo(bruteForceCandidates(items)));
+        assertThat(candidates, not(hasSize(0)));
+    }
+}
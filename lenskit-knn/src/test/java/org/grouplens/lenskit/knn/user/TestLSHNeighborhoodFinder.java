@@ -0,0 +1,177 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.user;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.grouplens.lenskit.data.dao.EventCollectionDAO;
+import org.grouplens.lenskit.data.dao.EventDAO;
+import org.grouplens.lenskit.data.dao.PrefetchingItemEventDAO;
+import org.grouplens.lenskit.data.dao.PrefetchingUserEventDAO;
+import org.grouplens.lenskit.data.dao.UserEventDAO;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.Ratings;
+import org.grouplens.lenskit.data.history.UserHistory;
+import org.grouplens.lenskit.transform.normalize.DefaultUserVectorNormalizer;
+import org.grouplens.lenskit.transform.normalize.MeanCenteringVectorNormalizer;
+import org.grouplens.lenskit.transform.normalize.UserVectorNormalizer;
+import org.grouplens.lenskit.vectors.similarity.CosineVectorSimilarity;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class TestLSHNeighborhoodFinder {
+    private EventDAO dao;
+    private UserEventDAO userDAO;
+    private UserVectorNormalizer normalizer;
+    private UserSimilarity similarity;
+
+    @Before
+    public void createData() {
+        List<Rating> ratings = new ArrayList<Rating>();
+        Random rng = new Random(42);
+        // each cluster of users rates its own items, close to the cluster's taste profile
+        for (int c = 0; c < CLUSTER_COUNT; c++) {
+            double[] profile = new double[CLUSTER_ITEMS];
+            for (int i = 0; i < CLUSTER_ITEMS; i++) {
+                profile[i] = 1 + rng.nextDouble() * 4;
+            }
+            for (int u = 1; u <= CLUSTER_SIZE; u++) {
+                for (int i = 0; i < CLUSTER_ITEMS; i++) {
+                    ratings.add(Ratings.make(c * CLUSTER_SIZE + u, clusterItem(c, i),
+                                             profile[i] + rng.nextGaussian() * 0.05));
+                }
+            }
+        }
+        // user 500 has the same ratings as user 1
+        for (Rating r: new ArrayList<Rating>(ratings)) {
+            if (r.getUserId() == 1) {
+                ratings.add(Ratings.make(500, r.getItemId(), r.getPreference().getValue()));
+            }
+        }
+        dao = new EventCollectionDAO(ratings);
+        userDAO = new PrefetchingUserEventDAO(dao);
+        normalizer = new DefaultUserVectorNormalizer(new MeanCenteringVectorNormalizer());
+        similarity = new UserVectorSimilarity(new CosineVectorSimilarity());
+    }
+
+    private static final int CLUSTER_COUNT = 10;
+    private static final int CLUSTER_SIZE = 20;
+    private static final int CLUSTER_ITEMS = 20;
+    private static final int USER_COUNT = CLUSTER_COUNT * CLUSTER_SIZE;
+
+    private static long clusterItem(int cluster, int i) {
+        return cluster * 100 + i + 1;
+    }
+
+    private static int clusterOf(long user) {
+        return (int) ((user - 1) / CLUSTER_SIZE);
+    }
+
+    private UserLSHIndex buildIndex(int tables, int bits) {
+        return new UserLSHIndex.Builder(userDAO, normalizer, tables, bits).get();
+    }
+
+    @Test
+    public void testIdenticalUsersShareBuckets() {
+        UserLSHIndex index = buildIndex(4, 20);
+        assertThat(index.getUserCount(), equalTo(USER_COUNT + 1));
+        assertThat(index.getTableCount(), equalTo(4));
+        UserHistory<Event> user = userDAO.getEventsForUser(1);
+        LongSet candidates = index.getCandidates(
+                normalizer.normalize(1, Ratings.userRatingVector(user.filter(Rating.class)), null));
+        assertThat(candidates, hasItems(1L, 500L));
+    }
+
+    @Test
+    public void testFewCandidates() {
+        UserLSHIndex index = buildIndex(8, 12);
+        for (long u = 1; u <= USER_COUNT; u += 37) {
+            UserHistory<Event> user = userDAO.getEventsForUser(u);
+            LongSet candidates = index.getCandidates(
+                    normalizer.normalize(u, Ratings.userRatingVector(user.filter(Rating.class)), null));
+            // the index should only return a small fraction of the users; since the members
+            // of a cluster are near-duplicates, a chance collision brings in a whole cluster
+            assertThat(candidates.size(), lessThanOrEqualTo(2 * CLUSTER_SIZE + 1));
+            // but nearly all of the user's near-duplicates
+            int mates = 0;
+            for (long v: candidates) {
+                if (v <= USER_COUNT && clusterOf(v) == clusterOf(u)) {
+                    mates += 1;
+                }
+            }
+            assertThat(mates, greaterThanOrEqualTo(CLUSTER_SIZE - 2));
+        }
+    }
+
+    @Test
+    public void testFindsSimilarNeighbors() {
+        NeighborhoodFinder exact = new SimpleNeighborhoodFinder(
+                userDAO, new PrefetchingItemEventDAO(dao), 10, similarity, normalizer);
+        NeighborhoodFinder approx = new LSHNeighborhoodFinder(
+                buildIndex(8, 12), userDAO, new PrefetchingItemEventDAO(dao),
+                10, similarity, normalizer);
+
+        LongSet items = new LongOpenHashSet();
+        for (int c = 0; c < CLUSTER_COUNT; c++) {
+            for (int i = 0; i < CLUSTER_ITEMS; i += 3) {
+                items.add(clusterItem(c, i));
+            }
+        }
+        for (long u = 1; u <= USER_COUNT; u += 37) {
+            UserHistory<Event> user = userDAO.getEventsForUser(u);
+            Long2ObjectMap<? extends Collection<Neighbor>> expected = exact.findNeighbors(user, items);
+            Long2ObjectMap<? extends Collection<Neighbor>> actual = approx.findNeighbors(user, items);
+            int checked = 0;
+            for (long item: expected.keySet()) {
+                Long2DoubleMap found = new Long2DoubleOpenHashMap();
+                Collection<Neighbor> nbrs = actual.get(item);
+                if (nbrs != null) {
+                    for (Neighbor n: nbrs) {
+                        found.put(n.user, n.similarity);
+                    }
+                }
+                assertThat(found.size(), lessThanOrEqualTo(10));
+                // strongly similar neighbors are all but certain to share a bucket
+                for (Neighbor n: expected.get(item)) {
+                    if (n.similarity > 0.9) {
+                        assertThat(found.containsKey(n.user), equalTo(true));
+                        assertThat(found.get(n.user), closeTo(n.similarity, 1.0e-10));
+                        checked += 1;
+                    }
+                }
+            }
+            // the user's own cluster's items have strongly similar neighbors
+            assertThat(checked, greaterThan(0));
+        }
+    }
+}
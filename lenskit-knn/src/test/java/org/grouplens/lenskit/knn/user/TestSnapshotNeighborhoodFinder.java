@@ -0,0 +1,138 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.user;
+
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.grouplens.lenskit.data.dao.EventCollectionDAO;
+import org.grouplens.lenskit.data.dao.EventDAO;
+import org.grouplens.lenskit.data.dao.PrefetchingItemEventDAO;
+import org.grouplens.lenskit.data.dao.PrefetchingUserEventDAO;
+import org.grouplens.lenskit.data.dao.UserEventDAO;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.Ratings;
+import org.grouplens.lenskit.data.history.UserHistory;
+import org.grouplens.lenskit.transform.normalize.DefaultUserVectorNormalizer;
+import org.grouplens.lenskit.transform.normalize.MeanCenteringVectorNormalizer;
+import org.grouplens.lenskit.transform.normalize.UserVectorNormalizer;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.similarity.CosineVectorSimilarity;
+import org.grouplens.lenskit.vectors.similarity.PearsonCorrelation;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class TestSnapshotNeighborhoodFinder {
+    private EventDAO dao;
+    private UserEventDAO userDAO;
+    private UserVectorNormalizer normalizer;
+    private UserVectorSnapshot snapshot;
+
+    @Before
+    public void createData() {
+        List<Rating> ratings = new ArrayList<Rating>();
+        Random rng = new Random(42);
+        for (int u = 1; u <= 200; u++) {
+            for (int i = 1; i <= 40; i++) {
+                if (rng.nextDouble() < 0.3) {
+                    ratings.add(Ratings.make(u, i, 1 + rng.nextDouble() * 4));
+                }
+            }
+        }
+        dao = new EventCollectionDAO(ratings);
+        userDAO = new PrefetchingUserEventDAO(dao);
+        normalizer = new DefaultUserVectorNormalizer(new MeanCenteringVectorNormalizer());
+        snapshot = new UserVectorSnapshot.Builder(userDAO, normalizer).get();
+    }
+
+    @Test
+    public void testSnapshotVectors() {
+        assertThat(snapshot.getUserCount(), equalTo(200));
+        assertThat(snapshot.getRatingVector(1000), nullValue());
+        for (long u = 1; u <= 200; u += 13) {
+            SparseVector vec = Ratings.userRatingVector(userDAO.getEventsForUser(u, Rating.class));
+            assertThat(snapshot.getRatingVector(u), equalTo(vec));
+            assertThat(snapshot.getNormalizedVector(u),
+                       equalTo((SparseVector) normalizer.normalize(u, vec, null)));
+        }
+    }
+
+    private void checkSameNeighbors(UserSimilarity sim) {
+        NeighborhoodFinder expected = new SimpleNeighborhoodFinder(
+                userDAO, new PrefetchingItemEventDAO(dao), 10, sim, normalizer);
+        NeighborhoodFinder actual = new SnapshotNeighborhoodFinder(snapshot, 10, sim, normalizer);
+
+        LongSet items = new LongOpenHashSet();
+        for (long i = 1; i <= 40; i += 3) {
+            items.add(i);
+        }
+        for (long u = 1; u <= 200; u += 37) {
+            UserHistory<Event> user = userDAO.getEventsForUser(u);
+            Long2ObjectMap<? extends Collection<Neighbor>> exp = expected.findNeighbors(user, items);
+            Long2ObjectMap<? extends Collection<Neighbor>> act = actual.findNeighbors(user, items);
+            assertThat(act.keySet(), equalTo(exp.keySet()));
+            for (long item: exp.keySet()) {
+                Long2DoubleMap found = new Long2DoubleOpenHashMap();
+                for (Neighbor n: act.get(item)) {
+                    found.put(n.user, n.similarity);
+                    assertThat(n.vector.containsKey(item), equalTo(true));
+                    assertThat(n.normalizedVector, notNullValue());
+                }
+                assertThat(found.size(), equalTo(exp.get(item).size()));
+                // neighbors tied with the weakest one may be picked in either order
+                double min = Double.POSITIVE_INFINITY;
+                for (Neighbor n: exp.get(item)) {
+                    min = Math.min(min, n.similarity);
+                }
+                for (Neighbor n: exp.get(item)) {
+                    if (n.similarity > min + 1.0e-10) {
+                        assertThat(found.containsKey(n.user), equalTo(true));
+                        assertThat(found.get(n.user), closeTo(n.similarity, 1.0e-10));
+                    }
+                }
+                for (double s: found.values()) {
+                    assertThat(s, greaterThan(min - 1.0e-10));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCosineNeighbors() {
+        checkSameNeighbors(new UserVectorSimilarity(new CosineVectorSimilarity(0.5)));
+    }
+
+    @Test
+    public void testPearsonNeighbors() {
+        checkSameNeighbors(new UserVectorSimilarity(new PearsonCorrelation()));
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2013 Regents of the University of Minnesota and contributors
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.slopeone;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import org.grouplens.lenskit.collections.LongKeyDomain;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.VectorEntry;
+
+import java.util.Arrays;
+
+/**
+ * Accumulate the deviation sums and co-rating counts of item pairs from user rating
+ * vectors, and compact them into a {@link SlopeOneModel}.
+ *
+ * <p>Only pairs that are actually co-rated are stored.  The pairs are split into
+ * stripes by the index of their first item; each stripe keeps its sums and counts
+ * in a primitive hash map from packed pair keys to slots in flat arrays.  Different
+ * stripes can be filled concurrently by different threads, but each stripe must be
+ * filled by only one thread at a time.
+ *
+ * <p>The packed model addresses its pairs with {@code int} offsets, so at most
+ * {@link #MAX_PAIRS} co-rated pairs can be accumulated; exceeding that fails with an
+ * {@link IllegalStateException} rather than silently overflowing.
+ *
+ * @since 2.1
+ */
+final class DeviationAccumulator {
+    /**
+     * The maximum number of co-rated pairs (the largest array size the JVM reliably
+     * supports).
+     */
+    static final int MAX_PAIRS = Integer.MAX_VALUE - 8;
+
+    private final LongKeyDomain itemDomain;
+    private final Stripe[] stripes;
+
+    /**
+     * Create a new accumulator.
+     *
+     * @param items    The item domain.  Items not in the domain are ignored.
+     * @param nstripes The number of stripes.
+     */
+    DeviationAccumulator(LongKeyDomain items, int nstripes) {
+        Preconditions.checkArgument(nstripes > 0, "stripe count must be positive");
+        itemDomain = items;
+        stripes = new Stripe[nstripes];
+        for (int i = 0; i < nstripes; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Get the number of stripes.
+     * @return The number of stripes.
+     */
+    int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Add (or remove) the contributions of a user vector to all stripes.
+     *
+     * @param userVec The user's normalized rating vector.
+     * @param sign    1 to add the vector's contributions, -1 to remove them.
+     */
+    void putUserVector(SparseVector userVec, int sign) {
+        for (int s = 0; s < stripes.length; s++) {
+            putUserVector(s, userVec, sign);
+        }
+    }
+
+    /**
+     * Add (or remove) the contributions of a user vector to one stripe.  Each pair of
+     * items rated by the user contributes the difference of the user's ratings to the
+     * pair's deviation sum, and one to its co-rating count.
+     *
+     * @param stripe  The stripe to update.
+     * @param userVec The user's normalized rating vector.
+     * @param sign    1 to add the vector's contributions, -1 to remove them.
+     */
+    void putUserVector(int stripe, SparseVector userVec, int sign) {
+        final int n = userVec.size();
+        if (n < 2) {
+            return;
+        }
+        // vector keys are sorted, so the item indexes are too
+        int[] indexes = new int[n];
+        double[] values = new double[n];
+        int k = 0;
+        for (VectorEntry e: userVec.fast()) {
+            int idx = itemDomain.getIndex(e.getKey());
+            if (idx >= 0) {
+                indexes[k] = idx;
+                values[k] = e.getValue();
+                k++;
+            }
+        }
+
+        Stripe target = stripes[stripe];
+        for (int a = 0; a < k; a++) {
+            if (indexes[a] % stripes.length != stripe) {
+                continue;
+            }
+            for (int b = a + 1; b < k; b++) {
+                target.add(pairKey(indexes[a], indexes[b]),
+                           sign * (values[a] - values[b]), sign);
+            }
+        }
+    }
+
+    /**
+     * Add the pairs of an existing model to the accumulator.  The deviation sums are
+     * recovered from the model's damped averages.
+     *
+     * @param model   The model.
+     * @param damping The damping term used to build the model.
+     */
+    void putModel(SlopeOneModel model, double damping) {
+        LongKeyDomain domain = model.getItemDomain();
+        int[] offsets = model.getRowOffsets();
+        int[] cols = model.getColumns();
+        double[] devs = model.getDeviations();
+        int[] counts = model.getCoratingCounts();
+        for (int i = 0; i < domain.domainSize(); i++) {
+            int row = itemDomain.getIndex(domain.getKey(i));
+            if (row < 0) {
+                continue;
+            }
+            Stripe target = stripes[row % stripes.length];
+            for (int pos = offsets[i]; pos < offsets[i + 1]; pos++) {
+                int col = itemDomain.getIndex(domain.getKey(cols[pos]));
+                if (col >= 0) {
+                    target.add(pairKey(row, col), devs[pos] * (counts[pos] + damping), counts[pos]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compact the accumulated pairs into a model.
+     *
+     * @param damping The damping term to add to the co-rating count when averaging
+     *                deviations.
+     * @return The model.
+     */
+    SlopeOneModel build(double damping) {
+        final int nitems = itemDomain.domainSize();
+        int[] offsets = new int[nitems + 1];
+        long[][] stripeKeys = new long[stripes.length][];
+        long total = 0;
+        for (int s = 0; s < stripes.length; s++) {
+            long[] keys = stripes[s].sortedKeys();
+            total += keys.length;
+            checkPairCount(total);
+            for (long key: keys) {
+                offsets[pairRow(key) + 1] += 1;
+            }
+            stripeKeys[s] = keys;
+        }
+        // no prefix sum can overflow, since the total fits
+        for (int i = 0; i < nitems; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        final int npairs = (int) total;
+        int[] cols = new int[npairs];
+        double[] devs = new double[npairs];
+        int[] counts = new int[npairs];
+        // each row is in exactly one stripe, and the keys are sorted by row then column
+        int[] next = Arrays.copyOf(offsets, nitems);
+        for (int s = 0; s < stripes.length; s++) {
+            Stripe stripe = stripes[s];
+            for (long key: stripeKeys[s]) {
+                int slot = stripe.slots.get(key);
+                int pos = next[pairRow(key)]++;
+                cols[pos] = pairColumn(key);
+                counts[pos] = stripe.counts[slot];
+                devs[pos] = stripe.sums[slot] / (stripe.counts[slot] + damping);
+            }
+            stripeKeys[s] = null;
+        }
+
+        return new SlopeOneModel(itemDomain, offsets, cols, devs, counts);
+    }
+
+    /**
+     * Check that a number of pairs fits in a packed model.
+     *
+     * @param npairs The number of pairs.
+     * @throws IllegalStateException if there are too many pairs.
+     */
+    static void checkPairCount(long npairs) {
+        if (npairs > MAX_PAIRS) {
+            throw new IllegalStateException(
+                    String.format("%d co-rated item pairs exceed the slope-one model limit of %d",
+                                  npairs, MAX_PAIRS));
+        }
+    }
+
+    private static long pairKey(int row, int col) {
+        return ((long) row << 32) | col;
+    }
+
+    private static int pairRow(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int pairColumn(long key) {
+        return (int) key;
+    }
+
+    /**
+     * The sums and counts of one stripe of pairs.
+     */
+    private static class Stripe {
+        private final Long2IntMap slots = new Long2IntOpenHashMap();
+        private double[] sums = new double[16];
+        private int[] counts = new int[16];
+        private int size = 0;
+
+        Stripe() {
+            slots.defaultReturnValue(-1);
+        }
+
+        void add(long key, double dev, int n) {
+            int slot = slots.get(key);
+            if (slot < 0) {
+                if (size == sums.length) {
+                    checkPairCount(size + 1L);
+                    int cap = (int) Math.min(sums.length * 2L, MAX_PAIRS);
+                    sums = Arrays.copyOf(sums, cap);
+                    counts = Arrays.copyOf(counts, cap);
+                }
+                slot = size++;
+                slots.put(key, slot);
+            }
+            sums[slot] += dev;
+            counts[slot] += n;
+        }
+
+        /**
+         * Get the keys of the pairs with nonzero co-rating counts, in sorted order.
+         */
+        long[] sortedKeys() {
+            long[] keys = new long[size];
+            int n = 0;
+            for (Long2IntMap.Entry e: slots.long2IntEntrySet()) {
+                if (counts[e.getIntValue()] > 0) {
+                    keys[n++] = e.getLongKey();
+                }
+            }
+            keys = Arrays.copyOf(keys, n);
+            Arrays.sort(keys);
+            return keys;
+        }
+    }
+}
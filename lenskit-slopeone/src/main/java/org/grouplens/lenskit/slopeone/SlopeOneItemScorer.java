@@ -20,7 +20,6 @@
  */
 package org.grouplens.lenskit.slopeone;
 
-import it.unimi.dsi.fastutil.longs.LongIterator;
 import org.grouplens.lenskit.basic.AbstractItemScorer;
 import org.grouplens.lenskit.data.history.History;
 import org.grouplens.lenskit.data.history.UserHistory;
@@ -38,6 +37,8 @@ import javax.inject.Inject;
 
 /**
  * An {@link org.grouplens.lenskit.ItemScorer} that implements the Slope One algorithm.
+ * The deviations of each item from the user's rated items are looked up with
+ * {@link SlopeOneModel#joinRow(int, int[], int, double[], int[])}.
  */
 public class SlopeOneItemScorer extends AbstractItemScorer {
 
@@ -61,23 +62,24 @@ public class SlopeOneItemScorer extends AbstractItemScorer {
             history = History.forUser(uid);
         }
         SparseVector user = RatingVectorUserHistorySummarizer.makeRatingVector(history);
+        int[] items = new int[user.size()];
+        double[] values = new double[user.size()];
+        int n = model.indexRatings(user, items, values);
+        double[] devs = new double[n];
+        int[] counts = new int[n];
 
         for (VectorEntry e : scores.fast(VectorEntry.State.EITHER)) {
             final long predicteeItem = e.getKey();
             if (!user.containsKey(predicteeItem)) {
-                double total = 0;
-                int nitems = 0;
-                LongIterator ratingIter = user.keySet().iterator();
-                while (ratingIter.hasNext()) {
-                    long currentItem = ratingIter.nextLong();
-                    int nusers = model.getCoratings(predicteeItem, currentItem);
-                    if (nusers != 0) {
-                        double currentDev = model.getDeviation(predicteeItem, currentItem);
-                        total += currentDev + user.get(currentItem);
-                        nitems++;
-                    }
-                }
+                int row = model.getItemIndex(predicteeItem);
+                int nitems = row < 0 ? 0 : model.joinRow(row, items, n, devs, counts);
                 if (nitems != 0) {
+                    double total = 0;
+                    for (int k = 0; k < n; k++) {
+                        if (counts[k] != 0) {
+                            total += devs[k] + values[k];
+                        }
+                    }
                     double predValue = total / nitems;
                     if (domain != null) {
                         predValue = domain.clampValue(predValue);
@@ -20,72 +20,393 @@
  */
 package org.grouplens.lenskit.slopeone;
 
+import com.google.common.base.Preconditions;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
 import org.grouplens.grapht.annotation.DefaultProvider;
+import org.grouplens.lenskit.collections.LongKeyDomain;
 import org.grouplens.lenskit.core.Shareable;
 import org.grouplens.lenskit.symbols.Symbol;
 import org.grouplens.lenskit.vectors.ImmutableSparseVector;
 import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.VectorEntry;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.Arrays;
 
 /**
  * A model for a {@link SlopeOneItemScorer} or {@link WeightedSlopeOneItemScorer}.
  * Stores calculated deviation values and number of co-rating users for each item pair.
+ *
+ * <p>The deviations are stored as a packed upper-triangular matrix in compressed sparse
+ * row form: row {@code i} holds the pairs {@code (i, j)} with {@code i < j} (in item ID
+ * order) that have at least one co-rating user.  Pairs without co-ratings take no space,
+ * so the model's size is proportional to the number of co-rated pairs rather than the
+ * square of the number of items.
+ *
+ * <p>For scoring many items against a user's ratings, the model also provides access by
+ * dense item index: {@link #indexRatings(SparseVector, int[], double[])} maps a user's
+ * ratings to index-sorted arrays, and {@link #joinRow(int, int[], int, double[], int[])}
+ * looks up one item's deviations from all of them in a single merge pass over the item's
+ * row and column of the matrix.
  */
 @DefaultProvider(SlopeOneModelBuilder.class)
 @Shareable
 public class SlopeOneModel implements Serializable {
 
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
-    private final Long2ObjectMap<ImmutableSparseVector> matrix;
+    private final LongKeyDomain itemDomain;
+    private final int[] rowOffsets;
+    private final int[] columns;
+    private final double[] deviations;
+    private final int[] coratings;
+    /* index of the upper triangle by column, rebuilt when the model is deserialized */
+    private transient ColumnIndex columnIndex;
 
     public static final Symbol CORATINGS_SYMBOL = Symbol.of("coratings");
 
+    /**
+     * Construct a model from a matrix of deviations.
+     *
+     * @param matrix A map of item IDs to deviation vectors, as built by a
+     *               {@link SlopeOneModelDataAccumulator}.  The row for an item holds the
+     *               deviations to items with greater IDs, with the co-rating counts in the
+     *               {@link #CORATINGS_SYMBOL} channel.
+     * @deprecated Use {@link SlopeOneModelBuilder} to build models.
+     */
+    @Deprecated
     public SlopeOneModel(Long2ObjectMap<ImmutableSparseVector> matrix) {
-        this.matrix = matrix;
+        LongSet items = new LongOpenHashSet(matrix.keySet());
+        for (SparseVector row: matrix.values()) {
+            items.addAll(row.keySet());
+        }
+        itemDomain = LongKeyDomain.fromCollection(items);
+        int n = itemDomain.domainSize();
+        rowOffsets = new int[n + 1];
+        for (Long2ObjectMap.Entry<ImmutableSparseVector> e: matrix.long2ObjectEntrySet()) {
+            int row = itemDomain.getIndex(e.getLongKey());
+            rowOffsets[row + 1] = countPairs(e.getLongKey(), e.getValue());
+        }
+        for (int i = 0; i < n; i++) {
+            rowOffsets[i + 1] += rowOffsets[i];
+        }
+        columns = new int[rowOffsets[n]];
+        deviations = new double[rowOffsets[n]];
+        coratings = new int[rowOffsets[n]];
+        for (Long2ObjectMap.Entry<ImmutableSparseVector> e: matrix.long2ObjectEntrySet()) {
+            long item = e.getLongKey();
+            SparseVector row = e.getValue();
+            SparseVector counts = row.getChannelVector(CORATINGS_SYMBOL);
+            int pos = rowOffsets[itemDomain.getIndex(item)];
+            for (VectorEntry ve: row.fast()) {
+                int n2 = (int) counts.get(ve.getKey(), 0);
+                if (ve.getKey() > item && n2 > 0) {
+                    columns[pos] = itemDomain.getIndex(ve.getKey());
+                    deviations[pos] = ve.getValue();
+                    coratings[pos] = n2;
+                    pos++;
+                }
+            }
+        }
+        columnIndex = new ColumnIndex();
+    }
+
+    private static int countPairs(long item, SparseVector row) {
+        SparseVector counts = row.getChannelVector(CORATINGS_SYMBOL);
+        int n = 0;
+        for (VectorEntry ve: row.fast()) {
+            if (ve.getKey() > item && counts.get(ve.getKey(), 0) > 0) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Construct a packed model.
+     *
+     * @param items   The item domain.
+     * @param offsets The row offsets.  Row {@code i} occupies positions {@code offsets[i]}
+     *                (inclusive) to {@code offsets[i+1]} (exclusive) of the other arrays.
+     * @param cols    The column (second item) indexes.  Each row is sorted, and only
+     *                contains indexes greater than the row index.
+     * @param devs    The (damped) average deviations of the row items from the column items.
+     * @param counts  The co-rating counts.
+     */
+    SlopeOneModel(LongKeyDomain items, int[] offsets, int[] cols, double[] devs, int[] counts) {
+        Preconditions.checkArgument(offsets.length == items.domainSize() + 1,
+                                    "offset array has incorrect size");
+        Preconditions.checkArgument(cols.length == devs.length && cols.length == counts.length,
+                                    "pair arrays have different sizes");
+        Preconditions.checkArgument(offsets[offsets.length - 1] == cols.length,
+                                    "last offset does not match pair count");
+        itemDomain = items;
+        rowOffsets = offsets;
+        columns = cols;
+        deviations = devs;
+        coratings = counts;
+        columnIndex = new ColumnIndex();
+    }
+
+    /**
+     * Do some light validation of the model arrays, and index them by column.
+     * @param in The input stream
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (rowOffsets.length != itemDomain.domainSize() + 1) {
+            throw new InvalidObjectException("offset array has incorrect size");
+        }
+        if (columns.length != deviations.length || columns.length != coratings.length) {
+            throw new InvalidObjectException("pair arrays have different sizes");
+        }
+        if (rowOffsets[rowOffsets.length - 1] != columns.length) {
+            throw new InvalidObjectException("last offset does not match pair count");
+        }
+        columnIndex = new ColumnIndex();
+    }
+
+    /**
+     * Find the position of an item pair.
+     *
+     * @return The position of the pair in the pair arrays, or a negative value if the
+     *         pair has no co-ratings.
+     */
+    private int findPair(int row, int col) {
+        return Arrays.binarySearch(columns, rowOffsets[row], rowOffsets[row + 1], col);
     }
 
     public double getDeviation(long item1, long item2) {
         if (item1 == item2) {
             return 0;
-        } else if (item1 < item2) {
-            SparseVector row = matrix.get(item1);
-            if (row == null) {
-                return Double.NaN;
-            } else {
-                return row.get(item2);
-            }
+        }
+        int idx1 = itemDomain.getIndex(item1);
+        int idx2 = itemDomain.getIndex(item2);
+        if (idx1 < 0 || idx2 < 0) {
+            return Double.NaN;
+        } else if (idx1 < idx2) {
+            int pos = findPair(idx1, idx2);
+            return pos >= 0 ? deviations[pos] : Double.NaN;
         } else {
-            SparseVector row = matrix.get(item2);
-            if (row == null) {
-                return Double.NaN;
-            } else {
-                return -row.get(item1);
-            }
+            int pos = findPair(idx2, idx1);
+            return pos >= 0 ? -deviations[pos] : Double.NaN;
         }
     }
 
     public int getCoratings(long item1, long item2) {
         if (item1 == item2) {
             return 0;
-        } else if (item1 < item2) {
-            SparseVector row = matrix.get(item1);
-            if (row == null) {
-                return 0;
+        }
+        int idx1 = itemDomain.getIndex(item1);
+        int idx2 = itemDomain.getIndex(item2);
+        if (idx1 < 0 || idx2 < 0) {
+            return 0;
+        } else {
+            int pos = idx1 < idx2 ? findPair(idx1, idx2) : findPair(idx2, idx1);
+            return pos >= 0 ? coratings[pos] : 0;
+        }
+    }
+
+    /**
+     * Get the items in the model.
+     *
+     * @return The set of items the model knows about.
+     * @since 2.1
+     */
+    public LongSortedSet getItemUniverse() {
+        return itemDomain.activeSetView();
+    }
+
+    /**
+     * Get the number of co-rated item pairs stored in the model.
+     *
+     * @return The number of item pairs with at least one co-rating user.
+     * @since 2.1
+     */
+    public int getPairCount() {
+        return columns.length;
+    }
+
+    /**
+     * Get the dense index of an item.
+     *
+     * @param item The item ID.
+     * @return The item's index, or a negative value if the item is not in the model.
+     * @since 2.1
+     */
+    public int getItemIndex(long item) {
+        return itemDomain.getIndex(item);
+    }
+
+    /**
+     * Get the ID of the item with an index.
+     *
+     * @param idx The item index.
+     * @return The item ID.
+     * @since 2.1
+     */
+    public long getItemId(int idx) {
+        return itemDomain.getKey(idx);
+    }
+
+    /**
+     * Map a rating vector to item indexes.  The indexes are written in increasing order,
+     * as required by {@link #joinRow(int, int[], int, double[], int[])}; items that are not
+     * in the model are skipped.
+     *
+     * @param ratings The rating vector.
+     * @param items   The array to receive the item indexes.  Must have room for all the
+     *                entries of {@code ratings}.
+     * @param values  The array to receive the ratings of the items.
+     * @return The number of items written.
+     * @since 2.1
+     */
+    public int indexRatings(SparseVector ratings, int[] items, double[] values) {
+        int n = 0;
+        // vector keys are sorted, so their indexes are too
+        for (VectorEntry e: ratings.fast()) {
+            int idx = itemDomain.getIndex(e.getKey());
+            if (idx >= 0) {
+                items[n] = idx;
+                values[n] = e.getValue();
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Look up the deviations of an item from several other items.  This merge-joins the
+     * sorted item indexes against the item's row of the matrix (the items after it) and
+     * its column (the items before it).  For each {@code k < n}, {@code devs[k]} and
+     * {@code counts[k]} receive the same values as {@link #getDeviation(long, long)} and
+     * {@link #getCoratings(long, long)} with the row item and item {@code items[k]}.
+     *
+     * @param row    The index of the item whose deviations are wanted.
+     * @param items  The indexes of the other items, in increasing order.
+     * @param n      The number of items.
+     * @param devs   The array to receive the deviations.
+     * @param counts The array to receive the co-rating counts.
+     * @return The number of items co-rated with the row item.
+     * @since 2.1
+     */
+    public int joinRow(int row, int[] items, int n, double[] devs, int[] counts) {
+        ColumnIndex index = columnIndex;
+        int matches = 0;
+        int k = 0;
+
+        // items before the row item are in its column
+        int pos = index.offsets[row];
+        int end = index.offsets[row + 1];
+        while (k < n && items[k] < row) {
+            pos = seek(index.rows, pos, end, items[k], n - k);
+            if (pos < end && index.rows[pos] == items[k]) {
+                int pair = index.pairs[pos];
+                devs[k] = -deviations[pair];
+                counts[k] = coratings[pair];
+                matches++;
             } else {
-                double coratings = row.getChannelVector(CORATINGS_SYMBOL).get(item2, 0);
-                return (int) coratings;
+                devs[k] = Double.NaN;
+                counts[k] = 0;
             }
-        } else {
-            SparseVector row = matrix.get(item2);
-            if (row == null) {
-                return 0;
+            k++;
+        }
+        if (k < n && items[k] == row) {
+            devs[k] = 0;
+            counts[k] = 0;
+            k++;
+        }
+
+        // items after the row item are in its row
+        pos = rowOffsets[row];
+        end = rowOffsets[row + 1];
+        while (k < n) {
+            pos = seek(columns, pos, end, items[k], n - k);
+            if (pos < end && columns[pos] == items[k]) {
+                devs[k] = deviations[pos];
+                counts[k] = coratings[pos];
+                matches++;
             } else {
-                double coratings = row.getChannelVector(CORATINGS_SYMBOL).get(item1, 0);
-                return (int) coratings;
+                devs[k] = Double.NaN;
+                counts[k] = 0;
+            }
+            k++;
+        }
+        return matches;
+    }
+
+    /**
+     * Advance a position in a sorted run of keys to the first key not less than a key.
+     * If the run is much longer than the number of keys left to find, this binary
+     * searches instead of scanning.
+     */
+    private static int seek(int[] keys, int pos, int end, int key, int remaining) {
+        if (end - pos > 8 * remaining) {
+            int i = Arrays.binarySearch(keys, pos, end, key);
+            return i >= 0 ? i : -i - 1;
+        } else {
+            while (pos < end && keys[pos] < key) {
+                pos++;
             }
+            return pos;
         }
     }
+
+    /**
+     * Index of the upper triangle by column.  For each item, it lists the items before
+     * it that it is co-rated with, in order, with the positions of the pairs.
+     */
+    private class ColumnIndex {
+        final int[] offsets;
+        final int[] rows;
+        final int[] pairs;
+
+        ColumnIndex() {
+            int nitems = itemDomain.domainSize();
+            offsets = new int[nitems + 1];
+            for (int col: columns) {
+                offsets[col + 1] += 1;
+            }
+            for (int i = 0; i < nitems; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            rows = new int[columns.length];
+            pairs = new int[columns.length];
+            int[] next = Arrays.copyOf(offsets, nitems);
+            // scanning rows in order leaves each column's rows sorted
+            for (int row = 0; row < nitems; row++) {
+                for (int pos = rowOffsets[row]; pos < rowOffsets[row + 1]; pos++) {
+                    int i = next[columns[pos]]++;
+                    rows[i] = row;
+                    pairs[i] = pos;
+                }
+            }
+        }
+    }
+
+    LongKeyDomain getItemDomain() {
+        return itemDomain;
+    }
+
+    int[] getRowOffsets() {
+        return rowOffsets;
+    }
+
+    int[] getColumns() {
+        return columns;
+    }
+
+    double[] getDeviations() {
+        return deviations;
+    }
+
+    int[] getCoratingCounts() {
+        return coratings;
+    }
 }
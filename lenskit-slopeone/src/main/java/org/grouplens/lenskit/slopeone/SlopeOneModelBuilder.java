@@ -20,34 +20,71 @@
  */
 package org.grouplens.lenskit.slopeone;
 
+import com.google.common.base.Throwables;
+import org.grouplens.lenskit.collections.LongKeyDomain;
+import org.grouplens.lenskit.core.IncrementalProvider;
 import org.grouplens.lenskit.core.Transient;
 import org.grouplens.lenskit.data.dao.ItemDAO;
-import org.grouplens.lenskit.data.dao.UserEventDAO;
-import org.grouplens.lenskit.knn.item.model.ItemItemBuildContext;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.knn.item.ModelBuildThreads;
 import org.grouplens.lenskit.knn.item.model.ItemItemBuildContextFactory;
+import org.grouplens.lenskit.knn.item.model.UserVectorChange;
+import org.grouplens.lenskit.util.parallel.ExecHelpers;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
-import javax.inject.Provider;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Pre-computes the deviations and number of mutual rating users for every pair
- * of items and stores the results in a {@code DeviationMatrix} and
- * {@code CoratingMatrix}. These matrices are later used by a
- * {@code SlopeOneItemScorer}.
+ * Pre-computes the deviations and number of mutual rating users for every co-rated
+ * pair of items and stores the results in a packed {@link SlopeOneModel}.
+ *
+ * <p>The model is built by adding the pairs of items rated by each user to a
+ * {@link DeviationAccumulator}, so the work and accumulator memory are proportional to
+ * the number of co-rated pairs rather than the square of the number of items.  The user
+ * rating vectors themselves are loaded in memory by the
+ * {@link ItemItemBuildContextFactory} before accumulation starts.  With more than
+ * one {@linkplain ModelBuildThreads build thread}, each thread accumulates the pairs
+ * whose first item falls in its own stripe of the items.
+ *
+ * <p>Models can be {@linkplain #update(SlopeOneModel, List) updated} with new events
+ * by adjusting the deviations of the item pairs rated by the affected users.
  */
-public class SlopeOneModelBuilder implements Provider<SlopeOneModel> {
-    private final SlopeOneModelDataAccumulator accumulator;
+public class SlopeOneModelBuilder implements IncrementalProvider<SlopeOneModel> {
+    private static final Logger logger = LoggerFactory.getLogger(SlopeOneModelBuilder.class);
 
+    private final ItemDAO itemDAO;
     private final ItemItemBuildContextFactory contextFactory;
+    private final double damping;
+    private final int threadCount;
 
     @Inject
     public SlopeOneModelBuilder(@Transient @Nonnull ItemDAO dao,
                                 @Transient ItemItemBuildContextFactory contextFactory,
-                                @DeviationDamping double damping) {
-
+                                @DeviationDamping double damping,
+                                @ModelBuildThreads int nthreads) {
+        itemDAO = dao;
         this.contextFactory = contextFactory;
-        accumulator = new SlopeOneModelDataAccumulator(damping, dao);
+        this.damping = damping;
+        threadCount = ExecHelpers.resolveThreadCount(nthreads);
+    }
+
+    /**
+     * Construct a model builder that builds models on the calling thread.
+     */
+    public SlopeOneModelBuilder(@Nonnull ItemDAO dao,
+                                ItemItemBuildContextFactory contextFactory,
+                                double damping) {
+        this(dao, contextFactory, damping, 1);
     }
 
     /**
@@ -55,12 +92,93 @@ public class SlopeOneModelBuilder implements Provider<SlopeOneModel> {
      */
     @Override
     public SlopeOneModel get() {
-        ItemItemBuildContext buildContext = contextFactory.buildContext();
-        for (ItemItemBuildContext.ItemVecPair pair : buildContext.getItemPairs()) {
-            if (pair.itemId1 != pair.itemId2) {
-                accumulator.putItemPair(pair.itemId1, pair.vec1, pair.itemId2, pair.vec2);
+        LongKeyDomain items = LongKeyDomain.fromCollection(itemDAO.getItemIds());
+        Collection<SparseVector> users = contextFactory.buildUserVectors().values();
+        logger.info("building slope-one model for {} items from {} users",
+                    items.domainSize(), users.size());
+
+        DeviationAccumulator accumulator;
+        if (threadCount > 1) {
+            accumulator = accumulateParallel(items, users);
+        } else {
+            accumulator = new DeviationAccumulator(items, 1);
+            for (SparseVector vec: users) {
+                accumulator.putUserVector(vec, 1);
+            }
+        }
+
+        SlopeOneModel model = accumulator.build(damping);
+        logger.info("built slope-one model with {} co-rated pairs", model.getPairCount());
+        return model;
+    }
+
+    /**
+     * Accumulate the deviations with multiple threads, each filling one stripe.
+     */
+    private DeviationAccumulator accumulateParallel(LongKeyDomain items, Collection<SparseVector> users) {
+        DeviationAccumulator accumulator = new DeviationAccumulator(items, threadCount);
+        List<Callable<Void>> units = new ArrayList<Callable<Void>>(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            units.add(new StripeUnit(accumulator, i, users));
+        }
+
+        ExecutorService exec = Executors.newFixedThreadPool(threadCount);
+        try {
+            ExecHelpers.parallelRun(exec, units);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(ExecHelpers.unwrapExecutionException(e));
+        } finally {
+            exec.shutdown();
+        }
+        return accumulator;
+    }
+
+    /**
+     * Updates a model with new events.  The deviation sums and co-rating counts are
+     * recovered from the model, the old vectors of the users with new events are
+     * subtracted, and their new vectors added.
+     *
+     * @return The updated model, or {@code null} if the changes to the user vectors
+     *         cannot be computed.
+     * @see ItemItemBuildContextFactory#computeUserChanges(java.util.Collection)
+     */
+    @Override
+    public SlopeOneModel update(SlopeOneModel model, List<Event> delta) {
+        List<UserVectorChange> changes = contextFactory.computeUserChanges(delta);
+        if (changes == null) {
+            return null;
+        }
+        LongKeyDomain items = LongKeyDomain.fromCollection(itemDAO.getItemIds());
+        DeviationAccumulator accumulator = new DeviationAccumulator(items, 1);
+        accumulator.putModel(model, damping);
+        for (UserVectorChange change: changes) {
+            accumulator.putUserVector(change.getOldVector(), -1);
+            accumulator.putUserVector(change.getNewVector(), 1);
+        }
+        return accumulator.build(damping);
+    }
+
+    /**
+     * A unit of parallel model-building work, accumulating one stripe of item pairs
+     * from all users.
+     */
+    private static class StripeUnit implements Callable<Void> {
+        private final DeviationAccumulator accumulator;
+        private final int stripe;
+        private final Collection<SparseVector> users;
+
+        public StripeUnit(DeviationAccumulator acc, int s, Collection<SparseVector> vecs) {
+            accumulator = acc;
+            stripe = s;
+            users = vecs;
+        }
+
+        @Override
+        public Void call() {
+            for (SparseVector vec: users) {
+                accumulator.putUserVector(stripe, vec, 1);
             }
+            return null;
         }
-        return new SlopeOneModel(accumulator.buildMatrix());
     }
 }
@@ -24,12 +24,18 @@ import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongSet;
-import org.apache.commons.lang3.tuple.Pair;
 import org.grouplens.lenskit.data.dao.ItemDAO;
 import org.grouplens.lenskit.vectors.*;
 
 import java.util.Map;
 
+/**
+ * Accumulates the deviations of all item pairs into a dense matrix.
+ *
+ * @deprecated {@link SlopeOneModelBuilder} now accumulates only the co-rated item pairs,
+ *             and builds a packed model directly.
+ */
+@Deprecated
 public class SlopeOneModelDataAccumulator {
 
     private Long2ObjectMap<MutableSparseVector> workMatrix;
@@ -70,13 +76,9 @@ public class SlopeOneModelDataAccumulator {
 
         // to profit from matrix symmetry, always store by the lesser id
         if (id1 < id2) {
-            int coratings = 0;
-            double deviation = 0.0;
-            for (Pair<VectorEntry,VectorEntry> pair: Vectors.fastIntersect(itemVec1, itemVec2)) {
-                coratings++;
-                deviation += pair.getLeft().getValue() - pair.getRight().getValue();
-            }
-            deviation = (coratings == 0) ? Double.NaN : deviation;
+            IntersectionStatistics stats = itemVec1.intersectionStatistics(itemVec2);
+            int coratings = stats.getCount();
+            double deviation = (coratings == 0) ? Double.NaN : stats.getSum1() - stats.getSum2();
 
             workMatrix.get(id1).set(id2, deviation);
             workMatrix.get(id1).getChannelVector(SlopeOneModel.CORATINGS_SYMBOL).set(id2, coratings);
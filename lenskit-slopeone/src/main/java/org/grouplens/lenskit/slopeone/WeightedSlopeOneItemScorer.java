@@ -20,7 +20,6 @@
  */
 package org.grouplens.lenskit.slopeone;
 
-import it.unimi.dsi.fastutil.longs.LongIterator;
 import org.grouplens.lenskit.data.history.History;
 import org.grouplens.lenskit.data.history.UserHistory;
 import org.grouplens.lenskit.data.dao.UserEventDAO;
@@ -52,20 +51,25 @@ public class WeightedSlopeOneItemScorer extends SlopeOneItemScorer {
             history = History.forUser(uid);
         }
         SparseVector ratings = RatingVectorUserHistorySummarizer.makeRatingVector(history);
+        int[] items = new int[ratings.size()];
+        double[] values = new double[ratings.size()];
+        int n = model.indexRatings(ratings, items, values);
+        double[] devs = new double[n];
+        int[] counts = new int[n];
 
         for (VectorEntry e : scores.fast(VectorEntry.State.EITHER)) {
             final long predicteeItem = e.getKey();
             if (!ratings.containsKey(predicteeItem)) {
+                int row = model.getItemIndex(predicteeItem);
                 double total = 0;
                 int nusers = 0;
-                LongIterator ratingIter = ratings.keySet().iterator();
-                while (ratingIter.hasNext()) {
-                    long currentItem = ratingIter.nextLong();
-                    double currentDev = model.getDeviation(predicteeItem, currentItem);
-                    if (!Double.isNaN(currentDev)) {
-                        int weight = model.getCoratings(predicteeItem, currentItem);
-                        total += (currentDev + ratings.get(currentItem)) * weight;
-                        nusers += weight;
+                if (row >= 0 && model.joinRow(row, items, n, devs, counts) > 0) {
+                    for (int k = 0; k < n; k++) {
+                        int weight = counts[k];
+                        if (weight != 0) {
+                            total += (devs[k] + values[k]) * weight;
+                            nusers += weight;
+                        }
                     }
                 }
                 if (nusers == 0) {
@@ -20,17 +20,22 @@
  */
 package org.grouplens.lenskit.slopeone;
 
+import org.apache.commons.lang3.SerializationUtils;
+import org.grouplens.lenskit.collections.LongUtils;
 import org.grouplens.lenskit.data.dao.*;
+import org.grouplens.lenskit.data.event.Event;
 import org.grouplens.lenskit.data.event.Rating;
 import org.grouplens.lenskit.data.event.Ratings;
 import org.grouplens.lenskit.data.history.RatingVectorUserHistorySummarizer;
 import org.grouplens.lenskit.data.history.UserHistorySummarizer;
 import org.grouplens.lenskit.knn.item.model.ItemItemBuildContextFactory;
 import org.grouplens.lenskit.transform.normalize.DefaultUserVectorNormalizer;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 
@@ -49,6 +54,120 @@ public class TestSlopeOneModelBuilder {
         return provider.get();
     }
 
+    private SlopeOneModelBuilder getBuilder(List<Rating> ratings) {
+        EventDAO dao = new EventCollectionDAO(ratings);
+        UserEventDAO udao = new PrefetchingUserEventDAO(dao);
+        ItemDAO idao = new PrefetchingItemDAO(dao);
+        ItemItemBuildContextFactory contextFactory = new ItemItemBuildContextFactory(
+                udao, new DefaultUserVectorNormalizer(), new RatingVectorUserHistorySummarizer());
+        return new SlopeOneModelBuilder(idao, contextFactory, 1);
+    }
+
+    @Test
+    public void testParallelBuild() {
+        List<Rating> rs = new ArrayList<Rating>();
+        Random rng = new Random(42);
+        for (int u = 1; u <= 50; u++) {
+            for (int i = 1; i <= 40; i++) {
+                if (rng.nextDouble() < 0.3) {
+                    rs.add(Ratings.make(u, i, rng.nextInt(5) + 1));
+                }
+            }
+        }
+        EventDAO dao = new EventCollectionDAO(rs);
+        ItemItemBuildContextFactory contextFactory = new ItemItemBuildContextFactory(
+                new PrefetchingUserEventDAO(dao), new DefaultUserVectorNormalizer(),
+                new RatingVectorUserHistorySummarizer());
+        ItemDAO idao = new PrefetchingItemDAO(dao);
+        SlopeOneModel expected = new SlopeOneModelBuilder(idao, contextFactory, 1, 1).get();
+        SlopeOneModel model = new SlopeOneModelBuilder(idao, contextFactory, 1, 3).get();
+
+        assertEquals(expected.getPairCount(), model.getPairCount());
+        for (long i = 1; i <= 40; i++) {
+            for (long j = 1; j <= 40; j++) {
+                assertEquals(expected.getCoratings(i, j), model.getCoratings(i, j));
+                assertEquals(expected.getDeviation(i, j), model.getDeviation(i, j), EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void testJoinRow() {
+        List<Rating> rs = new ArrayList<Rating>();
+        Random rng = new Random(42);
+        for (int u = 1; u <= 30; u++) {
+            for (int i = 1; i <= 25; i++) {
+                if (rng.nextDouble() < 0.25) {
+                    rs.add(Ratings.make(u, i, rng.nextInt(5) + 1));
+                }
+            }
+        }
+        SlopeOneModel model = getModel(rs);
+
+        MutableSparseVector user = MutableSparseVector.create(2, 5, 7, 11, 12, 20, 25, 99);
+        user.fill(3.0);
+        int[] items = new int[user.size()];
+        double[] values = new double[user.size()];
+        int n = model.indexRatings(user, items, values);
+        // items not in the model, such as 99, are skipped
+        assertEquals(user.size() - LongUtils.setDifference(user.keySet(), model.getItemUniverse()).size(), n);
+        checkJoinRow(model, items, n);
+        // the column index is rebuilt when the model is deserialized
+        checkJoinRow(SerializationUtils.clone(model), items, n);
+    }
+
+    private void checkJoinRow(SlopeOneModel model, int[] items, int n) {
+        double[] devs = new double[n];
+        int[] counts = new int[n];
+        for (long item: model.getItemUniverse()) {
+            int matches = model.joinRow(model.getItemIndex(item), items, n, devs, counts);
+            int expected = 0;
+            for (int k = 0; k < n; k++) {
+                long other = model.getItemId(items[k]);
+                assertEquals(model.getCoratings(item, other), counts[k]);
+                assertEquals(model.getDeviation(item, other), devs[k], EPSILON);
+                if (counts[k] > 0) {
+                    expected++;
+                }
+            }
+            assertEquals(expected, matches);
+        }
+    }
+
+    @Test
+    public void testUpdate() {
+        List<Rating> rs = new ArrayList<Rating>();
+        rs.add(Ratings.make(1, 6, 4));
+        rs.add(Ratings.make(2, 6, 2));
+        rs.add(Ratings.make(1, 7, 3));
+        rs.add(Ratings.make(2, 7, 2));
+        rs.add(Ratings.make(3, 7, 5));
+        rs.add(Ratings.make(3, 8, 3));
+        SlopeOneModel model = getBuilder(rs).get();
+
+        List<Event> delta = new ArrayList<Event>();
+        delta.add(Ratings.make(3, 6, 1));
+        delta.add(Ratings.make(4, 8, 2));
+        delta.add(Ratings.make(4, 9, 5));
+        delta.add(Ratings.make(2, 8, 4));
+        List<Rating> all = new ArrayList<Rating>(rs);
+        for (Event e: delta) {
+            all.add((Rating) e);
+        }
+
+        SlopeOneModel updated = getBuilder(all).update(model, delta);
+        SlopeOneModel expected = getBuilder(all).get();
+        long[] items = {6, 7, 8, 9};
+        for (long i: items) {
+            for (long j: items) {
+                assertEquals(expected.getCoratings(i, j), updated.getCoratings(i, j));
+                if (expected.getCoratings(i, j) > 0) {
+                    assertEquals(expected.getDeviation(i, j), updated.getDeviation(i, j), EPSILON);
+                }
+            }
+        }
+    }
+
     @Test
     public void testBuild1() {
 
@@ -181,4 +300,10 @@ public class TestSlopeOneModelBuilder {
         assertEquals(-1, model4.getDeviation(6, 7), EPSILON);
         assertEquals(1, model4.getDeviation(7, 6), EPSILON);
     }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPairCountLimit() {
+        DeviationAccumulator.checkPairCount(DeviationAccumulator.MAX_PAIRS);
+        DeviationAccumulator.checkPairCount(DeviationAccumulator.MAX_PAIRS + 1L);
+    }
 }
@@ -20,11 +20,16 @@
  */
 package org.grouplens.lenskit.mf.funksvd;
 
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import it.unimi.dsi.fastutil.longs.LongSortedSet;
 import org.grouplens.lenskit.ItemScorer;
 import org.grouplens.lenskit.baseline.BaselineScorer;
 import org.grouplens.lenskit.basic.AbstractItemScorer;
+import org.grouplens.lenskit.basic.BatchableItemScorer;
+import org.grouplens.lenskit.basic.StreamingItemScorer;
 import org.grouplens.lenskit.collections.LongUtils;
 import org.grouplens.lenskit.data.dao.UserEventDAO;
 import org.grouplens.lenskit.data.event.Rating;
@@ -33,6 +38,7 @@ import org.grouplens.lenskit.data.history.History;
 import org.grouplens.lenskit.data.history.UserHistory;
 import org.grouplens.lenskit.iterative.TrainingLoopController;
 import org.grouplens.lenskit.transform.clamp.ClampingFunction;
+import org.grouplens.lenskit.util.ScoredItemAccumulator;
 import org.grouplens.lenskit.vectors.MutableSparseVector;
 import org.grouplens.lenskit.vectors.SparseVector;
 import org.grouplens.lenskit.vectors.VectorEntry;
@@ -51,7 +57,8 @@ import javax.inject.Inject;
  *
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
-public class FunkSVDItemScorer extends AbstractItemScorer {
+public class FunkSVDItemScorer extends AbstractItemScorer
+        implements StreamingItemScorer, BatchableItemScorer {
 
     protected final FunkSVDModel model;
     private UserEventDAO dao;
@@ -110,13 +117,27 @@ public class FunkSVDItemScorer extends AbstractItemScorer {
                 continue;
             }
 
-            double score = e.getValue();
-            for (int f = 0; f < featureCount; f++) {
-                score += uprefs[f] * model.getItemFeatures()[f][iidx];
-                score = clamp.apply(user, item, score);
-            }
-            output.set(e, score);
+            output.set(e, predict(user, uprefs, item, iidx, e.getValue()));
+        }
+    }
+
+    /**
+     * Predict a user's score for an item.
+     *
+     * @param user     The user ID.
+     * @param uprefs   The user's preference array.
+     * @param item     The item ID.
+     * @param iidx     The item's index in the model.
+     * @param baseline The baseline score.
+     * @return The predicted score.
+     */
+    private double predict(long user, double[] uprefs, long item, int iidx, double baseline) {
+        double score = baseline;
+        for (int f = 0; f < featureCount; f++) {
+            score += uprefs[f] * model.getItemFeatures()[f][iidx];
+            score = clamp.apply(user, item, score);
         }
+        return score;
     }
 
     /**
@@ -135,21 +156,24 @@ public class FunkSVDItemScorer extends AbstractItemScorer {
         return estimates;
     }
 
-    @Override
-    public void score(long user, @Nonnull MutableSparseVector scores) {
+    /**
+     * Compute the user's preference vector, folding in their ratings if there is an
+     * update rule.
+     *
+     * @param user      The user ID.
+     * @param ratings   The user's ratings.
+     * @param estimates The initial estimates for (at least) the user's rated items.  Modified
+     *                  by training.
+     * @return The user's preference vector, or {@code null} if only baseline predictions
+     *         can be made for this user.
+     */
+    @Nullable
+    private double[] userPreferences(long user, SparseVector ratings,
+                                     MutableSparseVector estimates) {
         int uidx = model.getUserIndex().getIndex(user);
-        UserHistory<Rating> history = dao.getEventsForUser(user, Rating.class);
-        if (history == null) {
-            history = History.forUser(user);
-        }
-        SparseVector ratings = Ratings.userRatingVector(history);
-
-        MutableSparseVector estimates = initialEstimates(user, ratings, scores.keyDomain());
-        // propagate estimates to the output scores
-        scores.set(estimates);
         if (uidx < 0 && ratings.isEmpty()) {
             // no real work to do, stop with baseline predictions
-            return;
+            return null;
         }
 
         double[] uprefs;
@@ -170,9 +194,101 @@ public class FunkSVDItemScorer extends AbstractItemScorer {
                 trainUserFeature(user, uprefs, ratings, estimates, f);
             }
         }
+        return uprefs;
+    }
+
+    private SparseVector userRatings(long user) {
+        UserHistory<Rating> history = dao.getEventsForUser(user, Rating.class);
+        if (history == null) {
+            history = History.forUser(user);
+        }
+        return Ratings.userRatingVector(history);
+    }
+
+    @Override
+    public void score(long user, @Nonnull MutableSparseVector scores) {
+        SparseVector ratings = userRatings(user);
+
+        MutableSparseVector estimates = initialEstimates(user, ratings, scores.keyDomain());
+        // propagate estimates to the output scores
+        scores.set(estimates);
+
+        double[] uprefs = userPreferences(user, ratings, estimates);
+        if (uprefs != null) {
+            // scores are the estimates, uprefs are trained up.
+            predict(user, uprefs, scores);
+        }
+    }
+
+    /**
+     * Score items into an accumulator.  The user's preferences are computed once, and then
+     * the items are scored in blocks of {@link StreamingItemScorer#BLOCK_SIZE}.
+     */
+    @Override
+    public void score(long user, @Nonnull LongCollection items,
+                      @Nonnull ScoredItemAccumulator output) {
+        SparseVector ratings = userRatings(user);
+        MutableSparseVector estimates = MutableSparseVector.create(ratings.keySet());
+        baselineScorer.score(user, estimates);
+        double[] uprefs = userPreferences(user, ratings, estimates);
+
+        LongArrayList block = new LongArrayList(Math.min(items.size(), BLOCK_SIZE));
+        LongIterator iter = items.iterator();
+        while (iter.hasNext()) {
+            block.add(iter.nextLong());
+            if (block.size() == BLOCK_SIZE || !iter.hasNext()) {
+                MutableSparseVector scores = MutableSparseVector.create(block);
+                baselineScorer.score(user, scores);
+                if (uprefs != null) {
+                    predict(user, uprefs, scores);
+                }
+                for (VectorEntry e: scores.fast()) {
+                    output.put(e.getKey(), e.getValue());
+                }
+                block.clear();
+            }
+        }
+    }
 
-        // scores are the estimates, uprefs are trained up.
-        predict(user, uprefs, scores);
+    /**
+     * {@inheritDoc}
+     * <p>The items' model indexes are looked up once for the batch.
+     */
+    @Nonnull
+    @Override
+    public UserScorer prepareBatch(@Nonnull final LongSortedSet items) {
+        final long[] keys = items.toLongArray();
+        final int[] itemIndexes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            itemIndexes[i] = model.getItemIndex().getIndex(keys[i]);
+        }
+        return new UserScorer() {
+            @Nonnull
+            @Override
+            public SparseVector score(long user) {
+                SparseVector ratings = userRatings(user);
+                MutableSparseVector estimates = MutableSparseVector.create(ratings.keySet());
+                baselineScorer.score(user, estimates);
+                double[] uprefs = userPreferences(user, ratings, estimates);
+
+                MutableSparseVector scores = MutableSparseVector.create(items);
+                baselineScorer.score(user, scores);
+                if (uprefs != null) {
+                    // both the entries and keys are in sorted order, so we can merge
+                    int i = 0;
+                    for (VectorEntry e: scores.fast()) {
+                        while (keys[i] != e.getKey()) {
+                            i++;
+                        }
+                        final int iidx = itemIndexes[i];
+                        if (iidx >= 0) {
+                            scores.set(e, predict(user, uprefs, e.getKey(), iidx, e.getValue()));
+                        }
+                    }
+                }
+                return scores.freeze();
+            }
+        };
     }
 
     private void trainUserFeature(long user, double[] uprefs, SparseVector ratings,
@@ -20,6 +20,7 @@
  */
 package org.grouplens.lenskit.mf.funksvd;
 
+import com.google.common.base.Throwables;
 import it.unimi.dsi.fastutil.doubles.DoubleArrays;
 import org.apache.commons.lang3.time.StopWatch;
 import org.grouplens.lenskit.collections.CollectionUtils;
@@ -27,7 +28,10 @@ import org.grouplens.lenskit.collections.FastCollection;
 import org.grouplens.lenskit.core.Transient;
 import org.grouplens.lenskit.data.pref.IndexedPreference;
 import org.grouplens.lenskit.data.snapshot.PreferenceSnapshot;
+import org.grouplens.lenskit.data.snapshot.RatingMatrix;
 import org.grouplens.lenskit.iterative.TrainingLoopController;
+import org.grouplens.lenskit.util.Index;
+import org.grouplens.lenskit.util.parallel.ExecHelpers;
 import org.grouplens.lenskit.vectors.MutableVec;
 import org.grouplens.lenskit.vectors.Vec;
 import org.slf4j.Logger;
@@ -38,6 +42,10 @@ import javax.inject.Inject;
 import javax.inject.Provider;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * SVD recommender builder using gradient descent (Funk SVD).
@@ -63,16 +71,25 @@ public class FunkSVDModelBuilder implements Provider<FunkSVDModel> {
     protected final double initialValue;
 
     protected final FunkSVDUpdateRule rule;
+    protected final int threadCount;
+
+    public FunkSVDModelBuilder(@Nonnull PreferenceSnapshot snapshot,
+                               @Nonnull FunkSVDUpdateRule rule,
+                               int featureCount, double initVal) {
+        this(snapshot, rule, featureCount, initVal, 1);
+    }
 
     @Inject
     public FunkSVDModelBuilder(@Transient @Nonnull PreferenceSnapshot snapshot,
                                @Transient @Nonnull FunkSVDUpdateRule rule,
                                @FeatureCount int featureCount,
-                               @InitialFeatureValue double initVal) {
+                               @InitialFeatureValue double initVal,
+                               @TrainingThreadCount int nthreads) {
         this.featureCount = featureCount;
         this.initialValue = initVal;
         this.snapshot = snapshot;
         this.rule = rule;
+        threadCount = ExecHelpers.resolveThreadCount(nthreads);
     }
 
 
@@ -88,7 +105,9 @@ public class FunkSVDModelBuilder implements Provider<FunkSVDModel> {
         logger.debug("Building SVD with {} features for {} ratings",
                      featureCount, snapshot.getRatings().size());
 
-        TrainingEstimator estimates = rule.makeEstimator(snapshot);
+        // copied once for snapshots that do not provide a matrix, and shared by all features
+        RatingMatrix ratings = RatingMatrix.fromSnapshot(snapshot);
+        TrainingEstimator estimates = rule.makeEstimator(snapshot, ratings);
 
         List<FeatureInfo> featureInfo = new ArrayList<FeatureInfo>(featureCount);
 
@@ -138,8 +157,13 @@ public class FunkSVDModelBuilder implements Provider<FunkSVDModel> {
 
     /**
      * Train a feature using a collection of ratings.  This method iteratively calls {@link
-     * #doFeatureIteration(TrainingEstimator, FastCollection, double[], double[], double)} to train
-     * the feature.  It can be overridden to customize the feature training strategy.
+     * #doFeatureIteration(TrainingEstimator, RatingMatrix, double[], double[], double)} to train
+     * the feature, or the deprecated collection-based version if a subclass overrides it.  It can
+     * be overridden to customize the feature training strategy.
+     *
+     * <p>If multiple threads are configured and neither {@code doFeatureIteration} method is
+     * overridden, partitions of the ratings are instead trained in parallel without calling either
+     * method.  Subclasses that override an iteration method are always trained sequentially.
      *
      * @param feature   The number of the current feature.
      * @param estimates The current estimator.  This method is <b>not</b> expected to update the
@@ -151,7 +175,7 @@ public class FunkSVDModelBuilder implements Provider<FunkSVDModel> {
      * @param fib       The feature info builder. This method is only expected to add information
      *                  about its training rounds to the builder; the caller takes care of feature
      *                  number and summary data.
-     * @see {@link #doFeatureIteration(TrainingEstimator, FastCollection, double[], double[],
+     * @see {@link #doFeatureIteration(TrainingEstimator, RatingMatrix, double[], double[],
      *      double)}
      * @see {@link #summarizeFeature(double[], double[], FeatureInfo.Builder)}
      */
@@ -159,9 +183,25 @@ public class FunkSVDModelBuilder implements Provider<FunkSVDModel> {
                                 double[] ufvs, double[] ifvs,
                                 FeatureInfo.Builder fib) {
         final double trail = computeTrailingValue(feature);
-        double rmse = Double.MAX_VALUE;
         TrainingLoopController controller = rule.getTrainingLoopController();
-        FastCollection<IndexedPreference> ratings = snapshot.getRatings();
+        if (overridesIteration(FastCollection.class)) {
+            FastCollection<IndexedPreference> prefs = snapshot.getRatings();
+            double rmse = Double.MAX_VALUE;
+            while (controller.keepTraining(rmse)) {
+                rmse = doFeatureIteration(estimates, prefs, ufvs, ifvs, trail);
+                fib.addTrainingRound(rmse);
+                logger.trace("iteration {} finished with RMSE {}", controller.getIterationCount(), rmse);
+            }
+            return;
+        }
+
+        RatingMatrix ratings = estimates.getRatingMatrix();
+        if (threadCount > 1 && !overridesIteration(RatingMatrix.class)) {
+            trainFeatureParallel(estimates, ratings, ufvs, ifvs, trail, controller, fib);
+            return;
+        }
+
+        double rmse = Double.MAX_VALUE;
         while (controller.keepTraining(rmse)) {
             rmse = doFeatureIteration(estimates, ratings, ufvs, ifvs, trail);
             fib.addTrainingRound(rmse);
@@ -169,6 +209,67 @@ public class FunkSVDModelBuilder implements Provider<FunkSVDModel> {
         }
     }
 
+    /**
+     * Query whether this builder's class overrides a {@code doFeatureIteration} method.
+     *
+     * @param ratingType The type of the method's ratings parameter.
+     * @return {@code true} if a subclass declares the method.
+     */
+    private boolean overridesIteration(Class<?> ratingType) {
+        for (Class<?> cls = getClass(); cls != FunkSVDModelBuilder.class; cls = cls.getSuperclass()) {
+            try {
+                cls.getDeclaredMethod("doFeatureIteration", TrainingEstimator.class, ratingType,
+                                      double[].class, double[].class, double.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                /* not declared here, try the superclass */
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Train a feature with multiple threads.  The rating chunks are split into
+     * {@link #threadCount} contiguous partitions, and each iteration trains on all
+     * partitions concurrently.  Feature values are updated without locking; races between
+     * threads just lose the occasional update, which stochastic gradient descent tolerates.
+     * Since the snapshot's ratings are shuffled, each partition is a random sample of them.
+     */
+    private void trainFeatureParallel(TrainingEstimator estimates, RatingMatrix ratings,
+                                      double[] ufvs, double[] ifvs, double trail,
+                                      TrainingLoopController controller,
+                                      FeatureInfo.Builder fib) {
+        final int nchunks = ratings.getChunkCount();
+        final int nparts = Math.max(1, Math.min(threadCount, nchunks));
+        List<Partition> partitions = new ArrayList<Partition>(nparts);
+        for (int i = 0; i < nparts; i++) {
+            partitions.add(new Partition(estimates, ratings,
+                                         (int) ((long) nchunks * i / nparts),
+                                         (int) ((long) nchunks * (i + 1) / nparts),
+                                         ufvs, ifvs, trail));
+        }
+        logger.debug("training with {} partitions", nparts);
+
+        ExecutorService exec = Executors.newFixedThreadPool(nparts);
+        try {
+            double rmse = Double.MAX_VALUE;
+            while (controller.keepTraining(rmse)) {
+                ExecHelpers.parallelRun(exec, partitions);
+                double sse = 0;
+                for (Partition part: partitions) {
+                    sse += part.sse;
+                }
+                rmse = Math.sqrt(sse / ratings.size());
+                fib.addTrainingRound(rmse);
+                logger.trace("iteration {} finished with RMSE {}", controller.getIterationCount(), rmse);
+            }
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(ExecHelpers.unwrapExecutionException(e));
+        } finally {
+            exec.shutdown();
+        }
+    }
+
     /**
      * Do a single feature iteration.
      *
@@ -178,7 +279,11 @@ public class FunkSVDModelBuilder implements Provider<FunkSVDModel> {
      * @param ifvs      The item feature values.
      * @param trail     The trailing values.
      * @return The RMSE of the feature iteration.
+     * @deprecated Override {@link #doFeatureIteration(TrainingEstimator, RatingMatrix, double[],
+     *             double[], double)} instead.  The default training strategy only calls this
+     *             method if a subclass overrides it.
      */
+    @Deprecated
     protected double doFeatureIteration(TrainingEstimator estimates,
                                         FastCollection<IndexedPreference> ratings,
                                         double[] ufvs, double[] ifvs, double trail) {
@@ -209,6 +314,71 @@ public class FunkSVDModelBuilder implements Provider<FunkSVDModel> {
         return Math.sqrt(sse / n);
     }
 
+    /**
+     * Do a single feature iteration over a rating matrix.  Parallel training does not call this
+     * method unless it is overridden, in which case training is sequential.
+     *
+     * @param estimates The estimates.
+     * @param ratings   The ratings to train on.
+     * @param ufvs      The user feature values.
+     * @param ifvs      The item feature values.
+     * @param trail     The trailing values.
+     * @return The RMSE of the feature iteration.
+     */
+    protected double doFeatureIteration(TrainingEstimator estimates, RatingMatrix ratings,
+                                        double[] ufvs, double[] ifvs, double trail) {
+        double sse = trainChunks(estimates, ratings, 0, ratings.getChunkCount(),
+                                 ufvs, ifvs, trail);
+        return Math.sqrt(sse / ratings.size());
+    }
+
+    /**
+     * Run one pass of gradient descent over a range of rating chunks.
+     *
+     * @param estimates The estimates.
+     * @param ratings   The ratings to train on.
+     * @param start     The first chunk to train on.
+     * @param end       The end of the chunk range (exclusive).
+     * @param ufvs      The user feature values.
+     * @param ifvs      The item feature values.
+     * @param trail     The trailing values.
+     * @return The sum of squared errors over the ratings.
+     */
+    private double trainChunks(TrainingEstimator estimates, RatingMatrix ratings,
+                               int start, int end,
+                               double[] ufvs, double[] ifvs, double trail) {
+        final Index users = ratings.userIndex();
+        final Index items = ratings.itemIndex();
+        double sse = 0;
+        for (int c = start; c < end; c++) {
+            final int[] uidxs = ratings.getUserIndexes(c);
+            final int[] iidxs = ratings.getItemIndexes(c);
+            final double[] values = ratings.getValues(c);
+            final int base = ratings.getChunkOffset(c);
+            final int n = ratings.getChunkSize(c);
+            for (int j = 0; j < n; j++) {
+                final int uidx = uidxs[j];
+                final int iidx = iidxs[j];
+
+                // Step 1: Save the old feature values before computing the new ones
+                final double ouf = ufvs[uidx];
+                final double oif = ifvs[iidx];
+
+                // Step 2: Compute the error
+                final double err = rule.computeError(users.getId(uidx), items.getId(iidx),
+                                                     trail, estimates.get(base + j),
+                                                     values[j], ouf, oif);
+
+                // Step 3: Update feature values
+                ufvs[uidx] += rule.userUpdate(err, ouf, oif);
+                ifvs[iidx] += rule.itemUpdate(err, ouf, oif);
+
+                sse += err * err;
+            }
+        }
+        return sse;
+    }
+
     /**
      * Add a feature's summary to the feature info builder.
      *
@@ -223,4 +393,39 @@ public class FunkSVDModelBuilder implements Provider<FunkSVDModel> {
            .setItemAverage(ifv.mean())
            .setSingularValue(ufv.norm() * ifv.norm());
     }
+
+    /**
+     * A partition of the rating chunks for parallel training.  Calling it runs one
+     * training iteration over the partition's ratings.
+     */
+    private class Partition implements Callable<Void> {
+        private final TrainingEstimator estimates;
+        private final RatingMatrix ratings;
+        private final int start;
+        private final int end;
+        private final double[] ufvs;
+        private final double[] ifvs;
+        private final double trail;
+        /**
+         * The sum of squared errors from the last iteration.
+         */
+        double sse;
+
+        Partition(TrainingEstimator estimates, RatingMatrix ratings, int start, int end,
+                  double[] ufvs, double[] ifvs, double trail) {
+            this.estimates = estimates;
+            this.ratings = ratings;
+            this.start = start;
+            this.end = end;
+            this.ufvs = ufvs;
+            this.ifvs = ifvs;
+            this.trail = trail;
+        }
+
+        @Override
+        public Void call() {
+            sse = trainChunks(estimates, ratings, start, end, ufvs, ifvs, trail);
+            return null;
+        }
+    }
 }
@@ -24,6 +24,7 @@ import org.grouplens.lenskit.ItemScorer;
 import org.grouplens.lenskit.baseline.BaselineScorer;
 import org.grouplens.lenskit.core.Shareable;
 import org.grouplens.lenskit.data.snapshot.PreferenceSnapshot;
+import org.grouplens.lenskit.data.snapshot.RatingMatrix;
 import org.grouplens.lenskit.iterative.LearningRate;
 import org.grouplens.lenskit.iterative.RegularizationTerm;
 import org.grouplens.lenskit.iterative.StoppingCondition;
@@ -78,7 +79,18 @@ public final class FunkSVDUpdateRule implements Serializable {
      * @return The estimator to use.
      */
     public TrainingEstimator makeEstimator(PreferenceSnapshot snapshot) {
-        return new TrainingEstimator(snapshot, baseline, clampingFunction);
+        return makeEstimator(snapshot, RatingMatrix.fromSnapshot(snapshot));
+    }
+
+    /**
+     * Create an estimator over an existing rating matrix of a snapshot.
+     *
+     * @param snapshot The snapshot.
+     * @param ratings  The rating matrix of {@code snapshot}.
+     * @return The estimator to use.
+     */
+    TrainingEstimator makeEstimator(PreferenceSnapshot snapshot, RatingMatrix ratings) {
+        return new TrainingEstimator(snapshot, ratings, baseline, clampingFunction);
     }
 
     public double getLearningRate() {
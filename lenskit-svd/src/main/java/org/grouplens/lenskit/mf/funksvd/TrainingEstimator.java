@@ -24,10 +24,11 @@ import it.unimi.dsi.fastutil.longs.LongCollection;
 import it.unimi.dsi.fastutil.longs.LongIterator;
 import org.grouplens.lenskit.ItemScorer;
 import org.grouplens.lenskit.collections.CollectionUtils;
-import org.grouplens.lenskit.collections.FastCollection;
 import org.grouplens.lenskit.data.pref.IndexedPreference;
 import org.grouplens.lenskit.data.snapshot.PreferenceSnapshot;
+import org.grouplens.lenskit.data.snapshot.RatingMatrix;
 import org.grouplens.lenskit.transform.clamp.ClampingFunction;
+import org.grouplens.lenskit.util.Index;
 import org.grouplens.lenskit.vectors.MutableSparseVector;
 import org.grouplens.lenskit.vectors.SparseVector;
 
@@ -39,7 +40,7 @@ import org.grouplens.lenskit.vectors.SparseVector;
  * @since 1.1
  */
 public final class TrainingEstimator {
-    private final FastCollection<IndexedPreference> ratings;
+    private final RatingMatrix ratings;
     private final ClampingFunction clamp;
     private final double[] estimates;
 
@@ -47,11 +48,13 @@ public final class TrainingEstimator {
      * Initialize the training estimator.
      *
      * @param snap     The preference snapshot.
+     * @param matrix   The rating matrix of the snapshot.
      * @param baseline The baseline predictor.
      * @param cf       The clamping function.
      */
-    TrainingEstimator(PreferenceSnapshot snap, ItemScorer baseline, ClampingFunction cf) {
-        ratings = snap.getRatings();
+    TrainingEstimator(PreferenceSnapshot snap, RatingMatrix matrix,
+                      ItemScorer baseline, ClampingFunction cf) {
+        ratings = matrix;
         clamp = cf;
         estimates = new double[ratings.size()];
 
@@ -69,6 +72,14 @@ public final class TrainingEstimator {
         }
     }
 
+    /**
+     * Get the rating matrix the estimates are for.
+     * @return The rating matrix.
+     */
+    RatingMatrix getRatingMatrix() {
+        return ratings;
+    }
+
     /**
      * Get the estimate for a preference.
      * @param pref The preference.
@@ -78,16 +89,36 @@ public final class TrainingEstimator {
         return estimates[pref.getIndex()];
     }
 
+    /**
+     * Get the estimate for a preference by index.
+     * @param index The preference index.
+     * @return The estimate.
+     */
+    public double get(int index) {
+        return estimates[index];
+    }
+
     /**
      * Update the current estimates with trained values for a new feature.
      * @param ufvs The user feature values.
      * @param ifvs The item feature values.
      */
     public void update(double[] ufvs, double[] ifvs) {
-        for (IndexedPreference r : CollectionUtils.fast(ratings)) {
-            double est = estimates[r.getIndex()];
-            double offset = ufvs[r.getUserIndex()] * ifvs[r.getItemIndex()];
-            estimates[r.getIndex()] = clamp.apply(r.getUserId(), r.getItemId(), est + offset);
+        final Index users = ratings.userIndex();
+        final Index items = ratings.itemIndex();
+        final int nchunks = ratings.getChunkCount();
+        for (int c = 0; c < nchunks; c++) {
+            final int[] uidxs = ratings.getUserIndexes(c);
+            final int[] iidxs = ratings.getItemIndexes(c);
+            final int base = ratings.getChunkOffset(c);
+            final int n = ratings.getChunkSize(c);
+            for (int j = 0; j < n; j++) {
+                final int uidx = uidxs[j];
+                final int iidx = iidxs[j];
+                double est = estimates[base + j];
+                double offset = ufvs[uidx] * ifvs[iidx];
+                estimates[base + j] = clamp.apply(users.getId(uidx), items.getId(iidx), est + offset);
+            }
         }
     }
 }
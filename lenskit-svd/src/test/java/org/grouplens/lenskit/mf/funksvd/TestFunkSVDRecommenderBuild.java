@@ -25,11 +25,13 @@ import org.grouplens.lenskit.RatingPredictor;
 import org.grouplens.lenskit.Recommender;
 import org.grouplens.lenskit.RecommenderBuildException;
 import org.grouplens.lenskit.baseline.BaselineScorer;
+import org.grouplens.lenskit.baseline.GlobalMeanRatingItemScorer;
 import org.grouplens.lenskit.baseline.ItemMeanRatingItemScorer;
 import org.grouplens.lenskit.baseline.UserMeanBaseline;
 import org.grouplens.lenskit.baseline.UserMeanItemScorer;
 import org.grouplens.lenskit.basic.SimpleRatingPredictor;
 import org.grouplens.lenskit.basic.TopNItemRecommender;
+import org.grouplens.lenskit.collections.FastCollection;
 import org.grouplens.lenskit.core.LenskitConfiguration;
 import org.grouplens.lenskit.core.LenskitRecommender;
 import org.grouplens.lenskit.core.LenskitRecommenderEngine;
@@ -37,16 +39,19 @@ import org.grouplens.lenskit.data.dao.EventCollectionDAO;
 import org.grouplens.lenskit.data.dao.EventDAO;
 import org.grouplens.lenskit.data.event.Rating;
 import org.grouplens.lenskit.data.event.Ratings;
+import org.grouplens.lenskit.data.pref.IndexedPreference;
 import org.grouplens.lenskit.data.snapshot.PackedPreferenceSnapshot;
 import org.grouplens.lenskit.data.snapshot.PreferenceSnapshot;
 import org.grouplens.lenskit.iterative.IterationCount;
 import org.grouplens.lenskit.iterative.IterationCountStoppingCondition;
 import org.grouplens.lenskit.iterative.StoppingCondition;
+import org.grouplens.lenskit.transform.clamp.IdentityClampingFunction;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
@@ -65,8 +70,12 @@ public class TestFunkSVDRecommenderBuild {
         dao = new EventCollectionDAO(rs);
     }
 
-    @SuppressWarnings({"deprecation", "unchecked"})
     private LenskitRecommenderEngine makeEngine() throws RecommenderBuildException {
+        return makeEngine(1);
+    }
+
+    @SuppressWarnings({"deprecation", "unchecked"})
+    private LenskitRecommenderEngine makeEngine(int nthreads) throws RecommenderBuildException {
         LenskitConfiguration config = new LenskitConfiguration();
         config.bind(EventDAO.class).to(dao);
         config.bind(PreferenceSnapshot.class)
@@ -83,6 +92,8 @@ public class TestFunkSVDRecommenderBuild {
               .to(10);
         config.set(FeatureCount.class)
               .to(20);
+        config.set(TrainingThreadCount.class)
+              .to(nthreads);
 
         return LenskitRecommenderEngine.build(config);
     }
@@ -121,6 +132,54 @@ public class TestFunkSVDRecommenderBuild {
         }
     }
 
+    @Test
+    public void testParallelFeatureInfo() throws RecommenderBuildException {
+        LenskitRecommenderEngine engine = makeEngine(2);
+        LenskitRecommender rec = engine.createRecommender();
+
+        FunkSVDModel model = rec.get(FunkSVDModel.class);
+        assertThat(model, notNullValue());
+        assertThat(model.getFeatureInfo().size(),
+                   equalTo(20));
+        for (FeatureInfo feat: model.getFeatureInfo()) {
+            assertThat(feat.getIterCount(), equalTo(10));
+        }
+    }
+
+    /**
+     * Test that subclasses overriding the deprecated iteration method still have it called,
+     * even when parallel training is configured.
+     */
+    @Test
+    public void testLegacyIterationOverride() {
+        PreferenceSnapshot snap = new PackedPreferenceSnapshot.Provider(dao, new Random()).get();
+        FunkSVDUpdateRule rule = new FunkSVDUpdateRule(0.001, 0.015, true,
+                                                       new GlobalMeanRatingItemScorer(3.5),
+                                                       new IdentityClampingFunction(),
+                                                       new IterationCountStoppingCondition(5));
+        LegacyBuilder builder = new LegacyBuilder(snap, rule);
+        FunkSVDModel model = builder.get();
+        assertThat(model.getFeatureInfo().size(), equalTo(3));
+        assertThat(builder.iterations, equalTo(15));
+    }
+
+    private static class LegacyBuilder extends FunkSVDModelBuilder {
+        int iterations = 0;
+
+        public LegacyBuilder(PreferenceSnapshot snap, FunkSVDUpdateRule rule) {
+            super(snap, rule, 3, 0.1, 2);
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        protected double doFeatureIteration(TrainingEstimator estimates,
+                                            FastCollection<IndexedPreference> ratings,
+                                            double[] ufvs, double[] ifvs, double trail) {
+            iterations += 1;
+            return super.doFeatureIteration(estimates, ratings, ufvs, ifvs, trail);
+        }
+    }
+
     @Test
     public void testConfigSeparation() throws RecommenderBuildException {
         LenskitRecommenderEngine engine = makeEngine();